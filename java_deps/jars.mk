@@ -39,3 +39,9 @@ JUNIT_JARS = $(JUNIT_JAR)
 
 MOCKITO_JAR = mockito-core-1.9.5.jar
 MOCKITO_SOURCE_JAR = mockito-core-1.9.5-sources.jar
+
+JMH_JARS = \
+    commons-math3-3.2.jar \
+    jmh-core-1.11.3.jar \
+    jmh-generator-annprocess-1.11.3.jar \
+    jopt-simple-4.6.jar
@@ -669,6 +669,13 @@ static BOOL hasModifier(IOSClass *cls, int flag) {
       J2ObjcClassInfo *rawData = (ARCBRIDGE J2ObjcClassInfo *) method_invoke(cls, metadataMethod);
       return AUTORELEASE([[JavaClassMetadata alloc] initWithMetadata:rawData]);
     }
+    metadataMethod = JreFindClassMethod(cls, "__compactMetadata");
+    if (metadataMethod) {
+      J2ObjcCompactClassInfo *compactData =
+          (ARCBRIDGE J2ObjcCompactClassInfo *) method_invoke(cls, metadataMethod);
+      return AUTORELEASE([[JavaClassMetadata alloc]
+                          initWithMetadata:JreExpandClassInfo(compactData)]);
+    }
   }
   return nil;
 }
@@ -295,7 +295,8 @@ static JavaLangReflectConstructor *GetConstructorImpl(
 + (void)initialize {
   if (self == [IOSConcreteClass class]) {
     _invalidMethodNames =
-        [NSArray arrayWithObjects:@"__metadata", @"__boxValue:", @"__unboxValue:toRawValue:", nil];
+        [NSArray arrayWithObjects:@"__metadata", @"__compactMetadata", @"__boxValue:",
+            @"__unboxValue:toRawValue:", nil];
   }
 }
 
@@ -121,6 +121,42 @@ typedef struct J2ObjcClassInfo {
   const J2ObjCAttribute *attributes;
 } J2ObjcClassInfo;
 
+// Compact metadata, generated with --compact-reflection. Strings are
+// offsets into a pool shared by the classes of a translation unit, where
+// offset 0 is NULL, so the method and field tables need no relocations.
+// The runtime expands it into a J2ObjcClassInfo on first reflective access.
+
+typedef struct J2ObjcCompactMethodInfo {
+  uint32_t selector;
+  uint32_t javaName;
+  uint32_t returnType;
+  uint16_t modifiers;
+  uint32_t exceptions;
+} J2ObjcCompactMethodInfo;
+
+typedef struct J2ObjcCompactFieldInfo {
+  uint32_t name;
+  uint32_t javaName;
+  uint16_t modifiers;
+  uint32_t type;
+} J2ObjcCompactFieldInfo;
+
+typedef struct J2ObjcCompactClassInfo {
+  const char *strings;
+  uint32_t typeName;
+  uint32_t packageName;
+  uint32_t enclosingName;
+  uint16_t modifiers;
+  uint16_t methodCount;
+  const J2ObjcCompactMethodInfo *methods;
+  uint16_t fieldCount;
+  const J2ObjcCompactFieldInfo *fields;
+  uint16_t superclassTypeArgsCount;
+  const uint32_t *superclassTypeArgs;
+  // Set by JreExpandClassInfo(), and never freed.
+  J2ObjcClassInfo *expanded;
+} J2ObjcCompactClassInfo;
+
 // Autoboxing support.
 
 // A raw value is the union of all possible native types.
@@ -139,5 +175,6 @@ typedef union {
 extern id<JavaLangReflectType> JreTypeForString(const char *typeStr);
 extern Method JreFindInstanceMethod(Class cls, const char *name);
 extern Method JreFindClassMethod(Class cls, const char *name);
+extern J2ObjcClassInfo *JreExpandClassInfo(J2ObjcCompactClassInfo *compactInfo);
 
 #endif // JreEmulation_IOSReflection_h
@@ -23,6 +23,74 @@
 #import "IOSObjectArray.h"
 #import "IOSReflection.h"
 
+#import <libkern/OSAtomic.h>
+
+static const char *MetadataString(const char *strings, uint32_t offset) {
+  return offset ? strings + offset : NULL;
+}
+
+static void FreeClassInfo(J2ObjcClassInfo *info) {
+  free((void *) info->methods);
+  free((void *) info->fields);
+  free((void *) info->superclassTypeArgs);
+  free(info);
+}
+
+// Expands compact metadata the first time it's needed. The expanded
+// strings point into the pool, so they aren't copied.
+J2ObjcClassInfo *JreExpandClassInfo(J2ObjcCompactClassInfo *compactInfo) {
+  J2ObjcClassInfo *info = compactInfo->expanded;
+  if (info) {
+    return info;
+  }
+  const char *strings = compactInfo->strings;
+  info = calloc(1, sizeof(J2ObjcClassInfo));
+  info->typeName = MetadataString(strings, compactInfo->typeName);
+  info->packageName = MetadataString(strings, compactInfo->packageName);
+  info->enclosingName = MetadataString(strings, compactInfo->enclosingName);
+  info->modifiers = compactInfo->modifiers;
+  info->methodCount = compactInfo->methodCount;
+  if (info->methodCount > 0) {
+    J2ObjcMethodInfo *methods = calloc(info->methodCount, sizeof(J2ObjcMethodInfo));
+    for (int i = 0; i < info->methodCount; i++) {
+      const J2ObjcCompactMethodInfo *compactMethod = &compactInfo->methods[i];
+      methods[i].selector = MetadataString(strings, compactMethod->selector);
+      methods[i].javaName = MetadataString(strings, compactMethod->javaName);
+      methods[i].returnType = MetadataString(strings, compactMethod->returnType);
+      methods[i].modifiers = compactMethod->modifiers;
+      methods[i].exceptions = MetadataString(strings, compactMethod->exceptions);
+    }
+    info->methods = methods;
+  }
+  info->fieldCount = compactInfo->fieldCount;
+  if (info->fieldCount > 0) {
+    J2ObjcFieldInfo *fields = calloc(info->fieldCount, sizeof(J2ObjcFieldInfo));
+    for (int i = 0; i < info->fieldCount; i++) {
+      const J2ObjcCompactFieldInfo *compactField = &compactInfo->fields[i];
+      fields[i].name = MetadataString(strings, compactField->name);
+      fields[i].javaName = MetadataString(strings, compactField->javaName);
+      fields[i].modifiers = compactField->modifiers;
+      fields[i].type = MetadataString(strings, compactField->type);
+    }
+    info->fields = fields;
+  }
+  info->superclassTypeArgsCount = compactInfo->superclassTypeArgsCount;
+  if (info->superclassTypeArgsCount > 0) {
+    const char **typeArgs = calloc(info->superclassTypeArgsCount, sizeof(const char *));
+    for (int i = 0; i < info->superclassTypeArgsCount; i++) {
+      typeArgs[i] = MetadataString(strings, compactInfo->superclassTypeArgs[i]);
+    }
+    info->superclassTypeArgs = typeArgs;
+  }
+  if (!OSAtomicCompareAndSwapPtrBarrier(
+      NULL, info, (void * volatile *) &compactInfo->expanded)) {
+    // Another thread expanded it first.
+    FreeClassInfo(info);
+    info = compactInfo->expanded;
+  }
+  return info;
+}
+
 @implementation JavaClassMetadata
 
 @synthesize typeName;
@@ -142,6 +142,13 @@ static inline id JreOperatorRetainedAssign(id *pIvar, id self, id value) {
 FOUNDATION_EXPORT
     IOSObjectArray *JreEmulationMainArguments(int argc, const char *argv[]);
 
+// Concatenates the string conversions of its arguments, as Java's string
+// concatenation operator does. The types string has a code for each
+// argument: 'B', 'C', 'D', 'F', 'I', 'J', 'S' and 'Z' for Java primitive
+// types, '*' for an ASCII C string, '$' for an NSString and '@' for any other
+// object. The translator generates these calls for --string-concat-function.
+FOUNDATION_EXPORT NSString *JreStrcat(const char *types, ...);
+
 #if __has_feature(objc_arc)
 #define J2OBJC_FIELD_SETTER(CLASS, FIELD, TYPE) \
   static inline TYPE CLASS##_set_##FIELD(CLASS *instance, TYPE value) { \
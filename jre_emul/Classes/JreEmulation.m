@@ -21,6 +21,8 @@
 
 #import "JreEmulation.h"
 #import "IOSClass.h"
+#import "java/lang/Double.h"
+#import "java/lang/Float.h"
 #import "java/lang/NullPointerException.h"
 
 void JreThrowNullPointerException() {
@@ -63,3 +65,104 @@ FOUNDATION_EXPORT
   }
   return args;
 }
+
+// A converted argument of JreStrcat: either ASCII characters, a string, or a
+// single character.
+typedef struct {
+  const char *chars;
+  NSString *string;
+  unichar ch;
+  NSUInteger length;
+  char digits[24];
+} JreStrcatSegment;
+
+NSString *JreStrcat(const char *types, ...) {
+  size_t count = strlen(types);
+  JreStrcatSegment segments[count];
+  NSUInteger capacity = 0;
+
+  // Convert each argument once, so the result's length is known before any
+  // characters are copied.
+  va_list args;
+  va_start(args, types);
+  for (size_t i = 0; i < count; i++) {
+    JreStrcatSegment *segment = &segments[i];
+    segment->chars = NULL;
+    segment->string = nil;
+    switch (types[i]) {
+      case 'B':
+      case 'I':
+      case 'S':
+        // Smaller integer types are promoted to int.
+        snprintf(segment->digits, sizeof(segment->digits), "%d", va_arg(args, int));
+        segment->chars = segment->digits;
+        break;
+      case 'J':
+        snprintf(segment->digits, sizeof(segment->digits), "%lld", va_arg(args, long long));
+        segment->chars = segment->digits;
+        break;
+      case 'C':
+        segment->ch = (unichar) va_arg(args, int);
+        break;
+      case 'Z':
+        segment->chars = va_arg(args, int) ? "true" : "false";
+        break;
+      case 'F':
+        segment->string = [JavaLangFloat toStringWithFloat:(float) va_arg(args, double)];
+        break;
+      case 'D':
+        segment->string = [JavaLangDouble toStringWithDouble:va_arg(args, double)];
+        break;
+      case '*':
+        segment->chars = va_arg(args, const char *);
+        break;
+      case '$':
+        segment->string = va_arg(args, NSString *);
+        break;
+      case '@': {
+        id obj = va_arg(args, id);
+        segment->string = obj ? [obj description] : nil;
+        break;
+      }
+      default:
+        va_end(args);
+        @throw [NSException exceptionWithName:NSInvalidArgumentException
+                                       reason:@"invalid JreStrcat type code"
+                                     userInfo:nil];
+    }
+    if (types[i] == 'C') {
+      segment->length = 1;
+    } else if (segment->chars) {
+      segment->length = strlen(segment->chars);
+    } else if (segment->string) {
+      segment->length = [segment->string length];
+    } else {
+      segment->chars = "null";
+      segment->length = 4;
+    }
+    capacity += segment->length;
+  }
+  va_end(args);
+
+  if (capacity == 0) {
+    return @"";
+  }
+  unichar *buffer = malloc(capacity * sizeof(unichar));
+  unichar *p = buffer;
+  for (size_t i = 0; i < count; i++) {
+    JreStrcatSegment *segment = &segments[i];
+    if (types[i] == 'C') {
+      *p = segment->ch;
+    } else if (segment->chars) {
+      for (NSUInteger j = 0; j < segment->length; j++) {
+        p[j] = (unsigned char) segment->chars[j];
+      }
+    } else {
+      [segment->string getCharacters:p range:NSMakeRange(0, segment->length)];
+    }
+    p += segment->length;
+  }
+  return AUTORELEASE([[NSString alloc] initWithCharactersNoCopy:buffer
+                                                         length:capacity
+                                                   freeWhenDone:YES]);
+}
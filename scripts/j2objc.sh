@@ -11,6 +11,10 @@
 #     [-d <output-directory>]
 #     <file.java> ...
 #
+# If J2OBJC_DAEMON_PORT is set, the request is forwarded to a translator
+# started with "j2objc --daemon <port>" by the same user, authenticated by
+# the token it writes to ~/.j2objc-daemon-<port>.
+#
 
 if [ -L "$0" ]; then
   readonly DIR=$(dirname $(readlink "$0"))
@@ -66,5 +70,31 @@ if [ ${SOURCEPATH_SET} -eq 0 ]; then
   SOURCEPATH="."
 fi
 
+if [ x${J2OBJC_DAEMON_PORT} != x ]; then
+  read -r TOKEN < "${HOME}/.j2objc-daemon-${J2OBJC_DAEMON_PORT}" || exit 1
+  exec 3<>/dev/tcp/127.0.0.1/${J2OBJC_DAEMON_PORT} || exit 1
+  {
+    echo "${TOKEN}"
+    echo "${PWD}"
+    for arg in "${BOOT_PATH}" -classpath "${CLASSPATH}" -sourcepath "${SOURCEPATH}" \
+        "${J2OBJC_ARGS[@]}"; do
+      # An empty line ends the request.
+      if [ -n "${arg}" ]; then
+        echo "${arg}"
+      fi
+    done
+    echo
+  } >&3
+  STATUS=1
+  while IFS= read -r line <&3; do
+    case "${line}" in
+      "j2objc-exit-status: "*) STATUS=${line#j2objc-exit-status: };;
+      *) echo "${line}";;
+    esac
+  done
+  exec 3<&-
+  exit ${STATUS}
+fi
+
 java ${JAVA_ARGS[*]} -jar "${JAR}" "${BOOT_PATH}" -classpath "${CLASSPATH}" \
     -sourcepath "${SOURCEPATH}" "${J2OBJC_ARGS[@]}"
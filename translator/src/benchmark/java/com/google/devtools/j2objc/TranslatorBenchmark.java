@@ -0,0 +1,298 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.devtools.j2objc;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Joiner;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.common.io.Files;
+import com.google.devtools.j2objc.gen.HiddenFieldDetector;
+import com.google.devtools.j2objc.gen.ObjectiveCHeaderGenerator;
+import com.google.devtools.j2objc.gen.ObjectiveCImplementationGenerator;
+import com.google.devtools.j2objc.gen.SourcePosition;
+import com.google.devtools.j2objc.gen.StatementGenerator;
+import com.google.devtools.j2objc.translate.Autoboxer;
+import com.google.devtools.j2objc.translate.NilCheckResolver;
+import com.google.devtools.j2objc.translate.OuterReferenceResolver;
+import com.google.devtools.j2objc.translate.Rewriter;
+import com.google.devtools.j2objc.types.Types;
+import com.google.devtools.j2objc.util.NameTable;
+
+import org.eclipse.jdt.core.compiler.IProblem;
+import org.eclipse.jdt.core.dom.ASTParser;
+import org.eclipse.jdt.core.dom.ASTVisitor;
+import org.eclipse.jdt.core.dom.Block;
+import org.eclipse.jdt.core.dom.CompilationUnit;
+import org.eclipse.jdt.core.dom.IVariableBinding;
+import org.eclipse.jdt.core.dom.MethodDeclaration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * JMH benchmarks of the translator, over the jre_emul and guava sources.
+ * Run them with "make benchmark" in the translator directory, which passes
+ * the corpora's source manifests. JMH_ARGS selects benchmarks and corpora,
+ * for example: make benchmark JMH_ARGS="autoboxer -p corpus=guava"
+ * <p>
+ * End-to-end translation is measured over a whole corpus. The passes and
+ * generators are measured per file: each invocation's setup parses the
+ * corpus's next file and runs the passes that precede the measured one.
+ * </p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+public class TranslatorBenchmark {
+
+  private static final Pattern PACKAGE_PATTERN =
+      Pattern.compile("^\\s*package\\s+([\\w.]+)\\s*;", Pattern.MULTILINE);
+
+  /**
+   * The source files of a corpus. The translator's options are loaded with
+   * the corpus's sourcepath, and its output is written to a temporary
+   * directory.
+   */
+  @State(Scope.Benchmark)
+  public static class Corpus {
+    @Param({ "jre_emul", "guava" })
+    public String corpus;
+
+    private final List<String> files = Lists.newArrayList();
+    private File outputDirectory;
+
+    @Setup(Level.Trial)
+    public void load() throws IOException {
+      String manifest = System.getProperty("j2objc.benchmark.corpus." + corpus);
+      if (manifest == null) {
+        throw new IllegalStateException("no source manifest for " + corpus
+            + ", set j2objc.benchmark.corpus." + corpus + " or run \"make benchmark\"");
+      }
+      Set<String> sourcePath = Sets.newLinkedHashSet();
+      for (String line : Files.readLines(new File(manifest), Charsets.UTF_8)) {
+        line = line.trim();
+        if (line.endsWith(".java")) {
+          files.add(line);
+          sourcePath.add(getSourceRoot(new File(line)));
+        }
+      }
+      outputDirectory = Files.createTempDir();
+      Options.reset();
+      J2ObjC.reset();
+      Options.load(new String[] {
+        "-q", "-d", outputDirectory.getPath(), "-encoding", "UTF-8", "--extract-unsequenced",
+        "-classpath", System.getProperty("j2objc.benchmark.classpath", "."),
+        "-sourcepath", Joiner.on(':').join(sourcePath)
+      });
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteOutput() {
+      deleteDir(outputDirectory);
+    }
+
+    /**
+     * Returns the directory a source file's package is relative to.
+     */
+    private static String getSourceRoot(File file) throws IOException {
+      File root = file.getParentFile();
+      Matcher m = PACKAGE_PATTERN.matcher(Files.toString(file, Charsets.UTF_8));
+      if (m.find()) {
+        for (int i = m.group(1).split("\\.").length; i > 0 && root != null; i--) {
+          root = root.getParentFile();
+        }
+      }
+      return root != null ? root.getPath() : ".";
+    }
+
+    private static void deleteDir(File dir) {
+      for (File f : dir.listFiles()) {
+        if (f.isDirectory()) {
+          deleteDir(f);
+        } else {
+          f.delete();
+        }
+      }
+      dir.delete();
+    }
+  }
+
+  /**
+   * A file of a corpus, parsed and translated up to the measured pass. Each
+   * invocation uses the corpus's next file that compiles without errors.
+   */
+  public abstract static class UnitState {
+    private int nextFile = 0;
+    String fileName;
+    String source;
+    CompilationUnit unit;
+
+    @Setup(Level.Invocation)
+    public void parseNextFile(Corpus corpus) throws IOException {
+      for (int i = 0; i < corpus.files.size(); i++) {
+        fileName = corpus.files.get(nextFile++ % corpus.files.size());
+        source = Files.toString(new File(fileName), Options.getCharset());
+        ASTParser parser = J2ObjC.newParser();
+        parser.setSource(source.toCharArray());
+        parser.setUnitName(fileName);
+        unit = (CompilationUnit) parser.createAST(null);
+        if (!hasErrors(unit)) {
+          J2ObjC.initializeTranslation(unit);
+          prepare();
+          return;
+        }
+      }
+      throw new IllegalStateException("no file in " + corpus.corpus + " compiles");
+    }
+
+    @TearDown(Level.Invocation)
+    public void cleanup() {
+      NameTable.cleanup();
+      Types.cleanup();
+      OuterReferenceResolver.cleanup();
+    }
+
+    /**
+     * Runs the passes that precede the measured one.
+     */
+    abstract void prepare();
+
+    private static boolean hasErrors(CompilationUnit unit) {
+      for (IProblem problem : unit.getProblems()) {
+        if (problem.isError()) {
+          return true;
+        }
+      }
+      return false;
+    }
+  }
+
+  @State(Scope.Thread)
+  public static class RewriterInput extends UnitState {
+    @Override
+    void prepare() {
+      J2ObjC.translate(unit, Rewriter.class);
+    }
+  }
+
+  @State(Scope.Thread)
+  public static class AutoboxerInput extends UnitState {
+    @Override
+    void prepare() {
+      J2ObjC.translate(unit, Autoboxer.class);
+    }
+  }
+
+  @State(Scope.Thread)
+  public static class NilCheckResolverInput extends UnitState {
+    @Override
+    void prepare() {
+      J2ObjC.translate(unit, NilCheckResolver.class);
+    }
+  }
+
+  /**
+   * A fully translated file, ready for generation.
+   */
+  @State(Scope.Thread)
+  public static class TranslatedUnit extends UnitState {
+    final List<Block> methodBodies = Lists.newArrayList();
+    Set<IVariableBinding> fieldHiders;
+
+    @Override
+    void prepare() {
+      J2ObjC.translate(unit);
+      fieldHiders = HiddenFieldDetector.getFieldNameConflicts(unit);
+      methodBodies.clear();
+      unit.accept(new ASTVisitor() {
+        @Override
+        public boolean visit(MethodDeclaration node) {
+          if (node.getBody() != null) {
+            methodBodies.add(node.getBody());
+          }
+          return true;
+        }
+      });
+    }
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.SingleShotTime)
+  @OutputTimeUnit(TimeUnit.SECONDS)
+  @Warmup(iterations = 1)
+  @Measurement(iterations = 3)
+  public void translateCorpus(Corpus corpus) throws IOException {
+    for (String file : corpus.files) {
+      J2ObjC.translate(file);
+    }
+  }
+
+  @Benchmark
+  public void rewriter(RewriterInput input) {
+    new Rewriter().run(input.unit);
+  }
+
+  @Benchmark
+  public void autoboxer(AutoboxerInput input) {
+    new Autoboxer(input.unit.getAST()).run(input.unit);
+  }
+
+  @Benchmark
+  public void nilCheckResolver(NilCheckResolverInput input) {
+    new NilCheckResolver().run(input.unit);
+  }
+
+  @Benchmark
+  public void statementGenerator(TranslatedUnit input, Blackhole blackhole) {
+    for (Block body : input.methodBodies) {
+      SourcePosition position = new SourcePosition(
+          input.fileName, input.unit.getLineNumber(body.getStartPosition()), input.source);
+      blackhole.consume(StatementGenerator.generate(body, input.fieldHiders, false, position));
+    }
+  }
+
+  @Benchmark
+  public void headerGenerator(TranslatedUnit input) {
+    ObjectiveCHeaderGenerator.generate(input.fileName, input.source, input.unit);
+  }
+
+  @Benchmark
+  public void implementationGenerator(TranslatedUnit input) {
+    ObjectiveCImplementationGenerator.generate(
+        input.fileName, Options.getLanguage(), input.unit, input.source);
+  }
+}
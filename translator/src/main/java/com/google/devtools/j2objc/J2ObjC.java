@@ -18,19 +18,25 @@ package com.google.devtools.j2objc;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Charsets;
+import com.google.common.base.Throwables;
 import com.google.common.collect.Lists;
-import com.google.common.io.CharStreams;
+import com.google.common.collect.Maps;
 import com.google.common.io.Files;
 import com.google.devtools.j2objc.gen.ObjectiveCHeaderGenerator;
 import com.google.devtools.j2objc.gen.ObjectiveCImplementationGenerator;
 import com.google.devtools.j2objc.gen.ObjectiveCSegmentedHeaderGenerator;
+import com.google.devtools.j2objc.gen.SourceFileGenerator;
+import com.google.devtools.j2objc.gen.UnityFileGenerator;
 import com.google.devtools.j2objc.translate.AnonymousClassConverter;
 import com.google.devtools.j2objc.translate.ArrayRewriter;
 import com.google.devtools.j2objc.translate.Autoboxer;
+import com.google.devtools.j2objc.translate.BoxingEliminator;
+import com.google.devtools.j2objc.translate.ClassHierarchyAnalyzer;
 import com.google.devtools.j2objc.translate.ComplexExpressionExtractor;
 import com.google.devtools.j2objc.translate.CopyAllFieldsWriter;
 import com.google.devtools.j2objc.translate.DeadCodeEliminator;
 import com.google.devtools.j2objc.translate.DestructorGenerator;
+import com.google.devtools.j2objc.translate.Functionizer;
 import com.google.devtools.j2objc.translate.GwtConverter;
 import com.google.devtools.j2objc.translate.InitializationNormalizer;
 import com.google.devtools.j2objc.translate.InnerClassExtractor;
@@ -40,6 +46,7 @@ import com.google.devtools.j2objc.translate.NilCheckResolver;
 import com.google.devtools.j2objc.translate.OperatorRewriter;
 import com.google.devtools.j2objc.translate.OuterReferenceFixer;
 import com.google.devtools.j2objc.translate.OuterReferenceResolver;
+import com.google.devtools.j2objc.translate.ReachabilityAnalyzer;
 import com.google.devtools.j2objc.translate.Rewriter;
 import com.google.devtools.j2objc.translate.StaticVarRewriter;
 import com.google.devtools.j2objc.translate.TypeSorter;
@@ -50,15 +57,20 @@ import com.google.devtools.j2objc.types.ImplementationImportCollector;
 import com.google.devtools.j2objc.types.Import;
 import com.google.devtools.j2objc.types.Types;
 import com.google.devtools.j2objc.util.ASTNodeException;
+import com.google.devtools.j2objc.util.ClassHierarchy;
 import com.google.devtools.j2objc.util.DeadCodeMap;
+import com.google.devtools.j2objc.util.ErrorReportingASTVisitor;
 import com.google.devtools.j2objc.util.NameTable;
 import com.google.devtools.j2objc.util.ProGuardUsageParser;
+import com.google.devtools.j2objc.util.ReachabilityGraph;
+import com.google.devtools.j2objc.util.TranslationStatistics;
 
 import org.eclipse.jdt.core.compiler.IProblem;
 import org.eclipse.jdt.core.dom.AST;
 import org.eclipse.jdt.core.dom.ASTNode;
 import org.eclipse.jdt.core.dom.ASTParser;
 import org.eclipse.jdt.core.dom.CompilationUnit;
+import org.eclipse.jdt.core.dom.FileASTRequestor;
 import org.eclipse.jdt.core.dom.ITypeBinding;
 import org.eclipse.jface.text.BadLocationException;
 import org.eclipse.jface.text.Document;
@@ -70,8 +82,6 @@ import java.io.FileInputStream;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.Reader;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.net.MalformedURLException;
@@ -80,12 +90,20 @@ import java.net.URLClassLoader;
 import java.nio.charset.Charset;
 import java.text.DateFormat;
 import java.util.ArrayDeque;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.Enumeration;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.jar.JarEntry;
 import java.util.jar.JarInputStream;
 import java.util.logging.Level;
@@ -104,12 +122,41 @@ import java.util.zip.ZipFile;
  * @author Tom Ball
  */
 public class J2ObjC {
-  private static String currentFileName;
-  private static CompilationUnit currentUnit;
   private static ArrayDeque<String> pendingFiles = new ArrayDeque<String>();
   private static List<String> translatedFiles = Lists.newArrayList();
-  private static int nErrors = 0;
-  private static int nWarnings = 0;
+  private static final AtomicInteger nErrors = new AtomicInteger();
+  private static final AtomicInteger nWarnings = new AtomicInteger();
+
+  // Mapping files loaded from the translator's resources, which don't change
+  // between the requests a daemon serves.
+  private static final Map<String, Properties> resourceMappings = Maps.newHashMap();
+
+  // Created when a source file is first looked up, and again if the
+  // sourcepath changes.
+  private static SourcePathIndex sourcePathIndex = null;
+
+  // Set when --translation-cache is specified.
+  private static TranslationCache translationCache = null;
+
+  private static final ThreadLocal<TranslationContext> context =
+      new ThreadLocal<TranslationContext>() {
+        @Override
+        protected TranslationContext initialValue() {
+          return new TranslationContext();
+        }
+      };
+
+  /**
+   * The state of the translation being done by a single thread: the file
+   * and unit being translated, and the errors and warnings that thread has
+   * reported.
+   */
+  private static class TranslationContext {
+    private String currentFileName;
+    private CompilationUnit currentUnit;
+    private int nErrors = 0;
+    private int nWarnings = 0;
+  }
 
   public enum Language {
     OBJECTIVE_C(".m"), OBJECTIVE_CPP(".mm");
@@ -136,16 +183,92 @@ public class J2ObjC {
   private static final Logger logger = Logger.getLogger(J2ObjC.class.getName());
 
   static void translate() throws IOException {
-    while (!pendingFiles.isEmpty()) {
+    int nThreads = Options.translationThreads();
+    if (nThreads > 1) {
+      translateConcurrently(nThreads);
+      return;
+    }
+    List<String> files;
+    while (!(files = nextFiles()).isEmpty()) {
+      translate(files);
+    }
+  }
+
+  /**
+   * Removes the next files to translate from the pending list, marking them
+   * as translated. One file is returned unless batch translation is enabled.
+   *
+   * @return the files to translate, or an empty list if none are pending
+   */
+  private static synchronized List<String> nextFiles() {
+    int max = Math.max(Options.batchTranslateMaximum(), 1);
+    List<String> files = Lists.newArrayList();
+    while (!pendingFiles.isEmpty() && files.size() < max) {
       String file = pendingFiles.remove();
       if (!translatedFiles.contains(file)) {
         translatedFiles.add(file);  // Do before translating, to avoid recursion.
+        files.add(file);
+      }
+    }
+    return files;
+  }
+
+  private static void translate(List<String> files) throws IOException {
+    if (Options.batchTranslateMaximum() > 1) {
+      translateBatch(files);
+    } else {
+      for (String file : files) {
         printInfo("translating " + file);
         translate(file);
       }
     }
   }
 
+  /**
+   * Translates the pending files on a pool of worker threads. Each worker
+   * parses and translates its own units; files added by --build-closure
+   * while they run are handed out as earlier work completes.
+   */
+  private static void translateConcurrently(int nThreads) throws IOException {
+    // Mappings are otherwise loaded lazily by translate(CompilationUnit),
+    // which isn't safe to do from several threads.
+    if (Options.getMethodMappings().isEmpty()) {
+      loadMappingFiles();
+    }
+    ExecutorService executor = Executors.newFixedThreadPool(nThreads);
+    CompletionService<Void> workers = new ExecutorCompletionService<Void>(executor);
+    int nRunning = 0;
+    try {
+      while (true) {
+        List<String> files;
+        while (!(files = nextFiles()).isEmpty()) {
+          final List<String> workerFiles = files;
+          workers.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws IOException {
+              translate(workerFiles);
+              return null;
+            }
+          });
+          nRunning++;
+        }
+        if (nRunning == 0) {
+          break;
+        }
+        workers.take().get();
+        nRunning--;
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("translation interrupted", e);
+    } catch (ExecutionException e) {
+      Throwables.propagateIfInstanceOf(e.getCause(), IOException.class);
+      throw Throwables.propagate(e.getCause());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
   /**
    * Parse a specified Java source file and generate Objective C header(s)
    * and implementation file(s) from it.
@@ -158,60 +281,165 @@ public class J2ObjC {
     logger.finest("reading " + filename);
 
     // Read file
-    currentFileName = filename;
+    context.get().currentFileName = filename;
     String source = getSource(filename);
     if (source == null) {
       error("no such file: " + filename);
       return;
     }
     long readTime = logTime("read source", startTime);
+    if (restoreCachedTranslation(filename, source)) {
+      return;
+    }
 
     // Parse and resolve source
-    currentUnit = parse(filename, source);
+    CompilationUnit unit = parse(filename, source);
     long compileTime = logTime("parse", readTime);
     if (getCurrentErrorLevel() > beginningErrorLevel) {
       return; // Continue to next file.
     }
 
+    translate(filename, source, unit, startTime, readTime, compileTime);
+  }
+
+  /**
+   * Parses a batch of Java source files with a single ASTParser, so that the
+   * JDT lookup environment (and the bindings it resolves from the class and
+   * source paths) is shared by all of them, then translates each resolved
+   * unit as it is accepted. Files that aren't found in the file system, such
+   * as sources in a jar on the sourcepath, are translated individually.
+   *
+   * @param files the source files to translate
+   */
+  private static void translateBatch(List<String> files) throws IOException {
+    List<String> paths = Lists.newArrayList();
+    final Map<String, String> fileNames = Maps.newHashMap();
+    for (String file : files) {
+      File f = findSourceFile(file);
+      if (f == null) {
+        printInfo("translating " + file);
+        translate(file);
+      } else if (translationCache != null
+          && restoreCachedTranslation(file, Files.toString(f, Options.getCharset()))) {
+        printInfo("translating " + file);
+      } else {
+        paths.add(f.getPath());
+        fileNames.put(f.getPath(), file);
+      }
+    }
+    if (paths.isEmpty()) {
+      return;
+    }
+
+    logger.finest("parsing batch of " + paths.size() + " files");
+    ASTParser parser = newParser();
+    String[] encodings = new String[paths.size()];
+    Arrays.fill(encodings, Options.fileEncoding());
+    FileASTRequestor requestor = new FileASTRequestor() {
+      // Bindings are resolved lazily as each unit is accepted, so the time
+      // since the previous unit was accepted is that unit's parse time.
+      private long lastAcceptTime = System.currentTimeMillis();
+
+      @Override
+      public void acceptAST(String path, CompilationUnit unit) {
+        String filename = fileNames.get(path);
+        long startTime = lastAcceptTime;
+        int beginningErrorLevel = getCurrentErrorLevel();
+        printInfo("translating " + filename);
+        context.get().currentFileName = filename;
+        reportCompilationErrors(filename, unit);
+        long parseTime = logTime("parse", startTime);
+        if (getCurrentErrorLevel() <= beginningErrorLevel) {
+          try {
+            String source = Files.toString(new File(path), Options.getCharset());
+            long readTime = logTime("read source", parseTime);
+            // The source is read after it is parsed here, so shift the
+            // phase boundary to keep the per-phase times accurate.
+            translate(filename, source, unit, startTime, startTime + (readTime - parseTime),
+                readTime);
+          } catch (IOException e) {
+            error(e.getMessage());
+          }
+        }
+        lastAcceptTime = System.currentTimeMillis();
+      }
+    };
+    parser.createASTs(paths.toArray(new String[paths.size()]), encodings, new String[0],
+        requestor, null);
+  }
+
+  /**
+   * Translates a parsed and resolved compilation unit, then generates its
+   * Objective C header and implementation files.
+   */
+  private static void translate(String filename, String source, CompilationUnit unit,
+      long startTime, long readTime, long compileTime) {
+    TranslationContext ctx = context.get();
+    ctx.currentFileName = filename;
+    ctx.currentUnit = unit;
     logger.finest("translating " + filename);
     long translateTime = 0L;
-    initializeTranslation(currentUnit);
+    int beginningReportCount = ctx.nErrors + ctx.nWarnings;
+    if (Options.getTimingReportFile() != null) {
+      TranslationStatistics.startFile(filename);
+      TranslationStatistics.recordPass("read", (readTime - startTime) * 1000000L, 0);
+      TranslationStatistics.recordPass("parse", (compileTime - readTime) * 1000000L, 0);
+    }
+    initializeTranslation(unit);
     try {
-      translate(currentUnit);
+      // Type bindings are collected before the unit is modified.
+      TranslationCache.UnitApi api =
+          translationCache != null ? TranslationCache.getApi(unit) : null;
+      translate(unit);
       translateTime = System.currentTimeMillis();
 
-      if (currentUnit.types().isEmpty()) {
+      if (unit.types().isEmpty()) {
         logger.finest("skipping dead file " + filename);
       } else {
         if (Options.printConvertedSources()) {
-          saveConvertedSource(filename, source, currentUnit);
+          saveConvertedSource(filename, source, unit);
         }
 
         logger.finest(
             "writing output file(s) to " + Options.getOutputDirectory().getAbsolutePath());
 
         // write header
+        long startNanos = System.nanoTime();
         if (Options.generateSegmentedHeaders()) {
-          ObjectiveCSegmentedHeaderGenerator.generate(filename, source, currentUnit);
+          ObjectiveCSegmentedHeaderGenerator.generate(filename, source, unit);
         } else {
-          ObjectiveCHeaderGenerator.generate(filename, source, currentUnit);
+          ObjectiveCHeaderGenerator.generate(filename, source, unit);
         }
+        TranslationStatistics.recordPass(
+            "header generation", System.nanoTime() - startNanos, 0);
         long writeTime = logTime("header generation", translateTime);
 
         // write implementation file
+        startNanos = System.nanoTime();
         ObjectiveCImplementationGenerator.generate(
-            filename, Options.getLanguage(), currentUnit, source);
+            filename, Options.getLanguage(), unit, source);
+        TranslationStatistics.recordPass(
+            "implementation generation", System.nanoTime() - startNanos, 0);
         logTime("implementation generation", writeTime);
 
+        List<String> closureTypes = getClosureTypes(filename, unit);
         if (Options.buildClosure()) {
           // Add out-of-date dependencies to translation list.
-          checkDependencies(filename, currentUnit);
+          for (String type : closureTypes) {
+            maybeAddToClosure(type);
+          }
+        }
+        if (api != null && ctx.nErrors + ctx.nWarnings == beginningReportCount) {
+          translationCache.store(filename, source, unit, api, closureTypes);
         }
       }
     } catch (ASTNodeException e) {
       error(e);
+    } catch (IOException e) {
+      error(e.getMessage());
     } finally {
       cleanup();
+      TranslationStatistics.endFile();
     }
 
     long endTime = System.currentTimeMillis();
@@ -219,7 +447,11 @@ public class J2ObjC {
         endTime - translateTime, endTime - startTime);
   }
 
-  private static void checkDependencies(String sourceFile, CompilationUnit unit) {
+  /**
+   * Returns the qualified names of the types a translated unit imports,
+   * which --build-closure checks for out-of-date translations.
+   */
+  private static List<String> getClosureTypes(String sourceFile, CompilationUnit unit) {
     HeaderImportCollector hdrCollector = new HeaderImportCollector();
     hdrCollector.collect(unit);
     ImplementationImportCollector implCollector = new ImplementationImportCollector();
@@ -227,92 +459,93 @@ public class J2ObjC {
     Set<Import> imports = hdrCollector.getForwardDeclarations();
     imports.addAll(hdrCollector.getSuperTypes());
     imports.addAll(implCollector.getImports());
+    List<String> types = Lists.newArrayList();
     for (Import imp : imports) {
-      maybeAddToClosure(imp.getType());
+      ITypeBinding type = imp.getType();
+      if (!(type instanceof IOSTypeBinding)) {  // Ignore core types.
+        types.add(type.getErasure().getQualifiedName());
+      }
     }
+    return types;
   }
 
-  private static void maybeAddToClosure(ITypeBinding type) {
-    if (type instanceof IOSTypeBinding) {
-      return;  // Ignore core types.
+  /**
+   * Writes the cached translation of a source file, if there is a valid one.
+   *
+   * @return true if the source file doesn't need to be translated
+   */
+  private static boolean restoreCachedTranslation(String filename, String source)
+      throws IOException {
+    if (translationCache == null) {
+      return false;
     }
-    String sourceName = type.getErasure().getQualifiedName().replace('.', '/') + ".java";
-
-    // Check if source file exists.
-    boolean sourceExists = false;
-    for (String path : Options.getSourcePathEntries()) {
-      if (lastModified(path, sourceName) > 0L) {
-        sourceExists = true;
-        break;
+    List<String> closureTypes = translationCache.restore(filename, source);
+    if (closureTypes == null) {
+      return false;
+    }
+    logger.finest("restored cached translation of " + filename);
+    if (Options.buildClosure()) {
+      for (String type : closureTypes) {
+        maybeAddToClosure(type);
       }
     }
-    if (!sourceExists) {
+    return true;
+  }
+
+  private static void maybeAddToClosure(String qualifiedName) {
+    String sourceName = qualifiedName.replace('.', '/') + ".java";
+
+    // Check if source file exists.
+    SourcePathIndex.Entry source = getSourcePathIndex().find(sourceName);
+    if (source == null) {
       return;
     }
 
     // Check if generated file doesn't exist, or is older than source file.
     File headerSource = new File(Options.getOutputDirectory(), sourceName.replace(".java", ".h"));
-    for (String path : Options.getSourcePathEntries()) {
-      long sourceModified = lastModified(path, sourceName);
-      if (sourceModified != 0L) {
-        if (sourceModified < headerSource.lastModified()) {
-          return;
-        }
-        File f = new File(path);
-        if (f.isDirectory()) {
-          addSourceFile(path + '/' + sourceName);
-        } else {
-          addSourceFile(sourceName);
-        }
-        return;
-      }
+    if (source.lastModified() < headerSource.lastModified()) {
+      return;
+    }
+    if (source.isArchived()) {
+      addSourceFile(sourceName);
+    } else {
+      addSourceFile(source.getPathEntry() + '/' + sourceName);
     }
-    warning("could not find source path for " + sourceName);
   }
 
-  /**
-   * Returns the lastModified time of the specified file in the specified
-   * path. If the file is not in the path, 0L is returned.
-   */
-  private static long lastModified(String path, String fileName) {
-    File f = new File(path);
-    if (f.isDirectory()) {
-      File source = new File(path, fileName);
-      return source.exists() ? source.lastModified() : 0L;
-    } else if (f.isFile() && (path.endsWith(".jar") || path.endsWith(".zip"))) {
-      try {
-        ZipFile archive = new ZipFile(f);
-        try {
-          ZipEntry entry = archive.getEntry(fileName);
-          return entry != null ? f.lastModified() : 0L;
-        } finally {
-          archive.close();
-        }
-      } catch (IOException e) {
-        // Silently fail (like javac does).
-      }
+  private static synchronized SourcePathIndex getSourcePathIndex() {
+    String[] pathEntries = Options.getSourcePathEntries();
+    if (sourcePathIndex == null || !sourcePathIndex.hasPathEntries(pathEntries)) {
+      sourcePathIndex = new SourcePathIndex(pathEntries);
     }
-    return 0L;
+    return sourcePathIndex;
   }
 
   private static CompilationUnit parse(String filename, String source) {
     logger.finest("parsing " + filename);
-    ASTParser parser = ASTParser.newParser(AST.JLS4);
-    Map<String, String> compilerOptions = Options.getCompilerOptions();
-    parser.setCompilerOptions(compilerOptions);
+    ASTParser parser = newParser();
     parser.setSource(source.toCharArray());
-    parser.setResolveBindings(true);
-    setPaths(parser);
     parser.setUnitName(filename);
     CompilationUnit unit = (CompilationUnit) parser.createAST(null);
+    reportCompilationErrors(filename, unit);
+    return unit;
+  }
 
+  static ASTParser newParser() {
+    ASTParser parser = ASTParser.newParser(AST.JLS4);
+    parser.setCompilerOptions(Options.getCompilerOptions());
+    parser.setResolveBindings(true);
+    setPaths(parser);
+    return parser;
+  }
+
+  private static void reportCompilationErrors(String filename, CompilationUnit unit) {
     for (IProblem problem : getCompilationErrors(unit)) {
       if (problem.isError()) {
         error(String.format("%s:%s: %s",
             filename, problem.getSourceLineNumber(), problem.getMessage()));
       }
     }
-    return unit;
   }
 
   private static List<IProblem> getCompilationErrors(CompilationUnit unit) {
@@ -335,108 +568,6 @@ public class J2ObjC {
     OuterReferenceResolver.cleanup();
   }
 
-  /**
-   * Removes dead types and methods, declared in a dead code map.
-   *
-   * @param unit the compilation unit created by ASTParser
-   * @param source the Java source used by ASTParser
-   * @return the rewritten source
-   * @throws AssertionError if the dead code eliminator makes invalid edits
-   */
-  public static String removeDeadCode(CompilationUnit unit, String source) {
-    if (Options.getDeadCodeMap() == null) {
-      return source;
-    }
-    logger.finest("removing dead code");
-    new DeadCodeEliminator(Options.getDeadCodeMap()).run(unit);
-
-    Document doc = new Document(source);
-    TextEdit edit = unit.rewrite(doc, Options.getCompilerOptions());
-    try {
-      edit.apply(doc);
-    } catch (MalformedTreeException e) {
-      throw new AssertionError(e);
-    } catch (BadLocationException e) {
-      throw new AssertionError(e);
-    }
-    return doc.get();
-  }
-
-  private static String[] removeDeadCode(String[] files) throws IOException {
-    loadDeadCodeMap();
-    if (Options.getDeadCodeMap() != null) {
-      for (int i = 0; i < files.length; i++) {
-        String filename = files[i];
-        logger.finest("reading " + filename);
-
-        if (filename.endsWith(".java")) {
-          // Read file
-          String source = getSource(filename);
-          if (source == null) {
-            error("no such file: " + filename);
-            return files;
-          }
-
-          String newPath = removeDeadCode(filename, source);
-          if (!filename.equals(newPath)) {
-            files[i] = newPath;
-          }
-        } else if (filename.endsWith(".jar")) {
-          File f = new File(filename);
-          if (f.exists() && f.isFile()) {
-            ZipFile zfile = new ZipFile(f);
-            try {
-              Enumeration<? extends ZipEntry> enumerator = zfile.entries();
-              while (enumerator.hasMoreElements()) {
-                ZipEntry entry = enumerator.nextElement();
-                String path = entry.getName();
-                if (path.endsWith(".java")) {
-                  removeDeadCode(path, getSource(path));
-                }
-              }
-            } finally {
-              zfile.close();  // Also closes input stream.
-            }
-          }
-        }
-      }
-    }
-    Options.insertSourcePath(0, Options.getTemporaryDirectory());
-    return files;
-  }
-
-  private static String removeDeadCode(String path, String source) throws IOException {
-    long startTime = System.currentTimeMillis();
-    int beginningErrorLevel = getCurrentErrorLevel();
-
-    // Parse and resolve source
-    CompilationUnit unit = parse(path, source);
-    if (getCurrentErrorLevel() > beginningErrorLevel) {
-      return path;
-    }
-    initializeTranslation(unit);
-    String newSource = removeDeadCode(unit, source);
-    if (!newSource.equals(source)) {
-      // Save the new source to the tmpdir and update the files list.
-      String pkg = unit.getPackage().getName().getFullyQualifiedName();
-      File packageDir = new File(Options.getTemporaryDirectory(),
-          pkg.replace('.', File.separatorChar));
-      packageDir.mkdirs();
-      int index = path.lastIndexOf(File.separatorChar);
-      String outputName = index >= 0 ? path.substring(index + 1) : path;
-      File outFile = new File(packageDir, outputName);
-      Files.write(newSource, outFile, Options.getCharset());
-      path = outFile.getAbsolutePath();
-    }
-
-    long elapsedTime = System.currentTimeMillis() - startTime;
-    if (logger.getLevel().intValue() <= Level.FINE.intValue()) {
-      System.out.println(
-        String.format("dead-code elimination time: %.3f", inSeconds(elapsedTime)));
-    }
-    return path;
-  }
-
   private static long logTime(String phase, long start) {
     long mark = System.currentTimeMillis();
     if (logger.getLevel().intValue() <= Level.FINEST.intValue()) {
@@ -464,82 +595,100 @@ public class J2ObjC {
    * @throws AssertionError if the translator makes invalid edits
    */
   public static void translate(CompilationUnit unit) {
-    long starttime = System.currentTimeMillis();
+    translate(unit, null);
+  }
+
+  /**
+   * Runs the translation passes on a unit in order, stopping before the first
+   * pass of a given class, or running them all if it is null. Benchmarks use
+   * this to prepare a pass's input exactly as translation does.
+   */
+  public static void translate(
+      CompilationUnit unit, Class<? extends ErrorReportingASTVisitor> stopBefore) {
+    PassRunner passes = new PassRunner(unit, stopBefore);
+
+    // Remove the methods and fields that a ProGuard usage report lists as dead.
+    DeadCodeMap deadCodeMap = Options.getDeadCodeMap();
+    if (deadCodeMap != null) {
+      passes.run(new DeadCodeEliminator(deadCodeMap));
+    }
 
     // Update code that has GWT references.
-    new GwtConverter().run(unit);
-    starttime = logTime("GwtConverter", starttime);
+    passes.run(new GwtConverter());
 
     // Modify AST to be more compatible with Objective C
-    new Rewriter().run(unit);
-    starttime = logTime("Rewriter", starttime);
+    passes.run(new Rewriter());
 
     // Add auto-boxing conversions.
-    new Autoboxer(unit.getAST()).run(unit);
-    starttime = logTime("Autoboxer", starttime);
+    passes.run(new Autoboxer(unit.getAST()));
+    if (Options.eliminateBoxing()) {
+      passes.run(new BoxingEliminator());
+    }
 
     // Extract inner and anonymous classes
-    new AnonymousClassConverter(unit).run(unit);
-    starttime = logTime("AnonymousClassConverter", starttime);
-    new InnerClassExtractor(unit).run(unit);
-    starttime = logTime("InnerClassConverter", starttime);
+    passes.run(new AnonymousClassConverter(unit));
+    passes.run(new InnerClassExtractor(unit));
 
     // Normalize init statements
-    new InitializationNormalizer().run(unit);
-    starttime = logTime("InitializationNormalizer", starttime);
+    passes.run(new InitializationNormalizer());
 
     // Fix references to outer scope and captured variables.
-    new OuterReferenceFixer().run(unit);
-    starttime = logTime("OuterReferenceFixer", starttime);
+    passes.run(new OuterReferenceFixer());
 
     // Rewrites expressions that would cause unsequenced compile errors.
     if (Options.extractUnsequencedModifications()) {
-      new UnsequencedExpressionRewriter().run(unit);
-      starttime = logTime("UnsequencedExpressionRewriter", starttime);
+      passes.run(new UnsequencedExpressionRewriter());
     }
 
     // Breaks up deeply nested expressions such as chained method calls.
-    new ComplexExpressionExtractor().run(unit);
-    starttime = logTime("ComplexExpressionExtractor", starttime);
+    passes.run(new ComplexExpressionExtractor());
 
     // Adds nil_chk calls wherever an expression is dereferenced.
-    new NilCheckResolver().run(unit);
-    starttime = logTime("NilCheckResolver", starttime);
+    passes.run(new NilCheckResolver());
 
     // Translate core Java type use to similar iOS types
-    new JavaToIOSTypeConverter().run(unit);
-    starttime = logTime("JavaToIOSTypeConverter", starttime);
+    passes.run(new JavaToIOSTypeConverter());
+    if (passes.isStopped()) {
+      return;
+    }
     Map<String, String> methodMappings = Options.getMethodMappings();
     if (methodMappings.isEmpty()) {
       // Method maps are loaded here so tests can call translate() directly.
       loadMappingFiles();
     }
-    new JavaToIOSMethodTranslator(unit.getAST(), methodMappings).run(unit);
-    starttime = logTime("JavaToIOSMethodTranslator", starttime);
+    passes.run(new JavaToIOSMethodTranslator(unit.getAST(), methodMappings));
 
-    new ArrayRewriter().run(unit);
-    starttime = logTime("ArrayRewriter", starttime);
+    passes.run(new ArrayRewriter());
 
-    new StaticVarRewriter().run(unit);
-    starttime = logTime("StaticVarRewriter", starttime);
+    passes.run(new StaticVarRewriter());
 
     // Reorders the types so that superclasses are declared before classes that
     // extend them.
+    if (passes.isStopped()) {
+      return;
+    }
+    long startNanos = System.nanoTime();
     TypeSorter.sortTypes(unit);
-    starttime = logTime("TypeSorter", starttime);
+    TranslationStatistics.recordPass("TypeSorter", System.nanoTime() - startNanos, 0);
+    passes.startTime = logTime("TypeSorter", passes.startTime);
 
     // Add dealloc/finalize method(s), if necessary.  This is done
     // after inner class extraction, so that each class releases
     // only its own instance variables.
-    new DestructorGenerator().run(unit);
-    starttime = logTime("DestructorGenerator", starttime);
+    passes.run(new DestructorGenerator());
 
-    new CopyAllFieldsWriter().run(unit);
-    starttime = logTime("CopyAllFieldsWriter", starttime);
+    passes.run(new CopyAllFieldsWriter());
 
-    new OperatorRewriter().run(unit);
-    starttime = logTime("OperatorRewriter", starttime);
+    passes.run(new OperatorRewriter());
+
+    // Implement methods that can't be overridden as C functions.
+    if (Options.devirtualize()) {
+      passes.run(new Functionizer());
+    }
 
+    if (passes.isStopped()) {
+      return;
+    }
     for (Plugin plugin : Options.getPlugins()) {
       plugin.processUnit(unit);
     }
@@ -548,6 +697,47 @@ public class J2ObjC {
     Types.verifyNode(unit);
   }
 
+  /**
+   * Runs a unit's translation passes, logging and recording the time of each,
+   * until the first pass of a given class. Later passes are then skipped.
+   */
+  private static class PassRunner {
+    private final CompilationUnit unit;
+    private final Class<? extends ErrorReportingASTVisitor> stopBefore;
+    private long startTime = System.currentTimeMillis();
+    private boolean stopped = false;
+
+    PassRunner(CompilationUnit unit, Class<? extends ErrorReportingASTVisitor> stopBefore) {
+      this.unit = unit;
+      this.stopBefore = stopBefore;
+    }
+
+    void run(ErrorReportingASTVisitor pass) {
+      if (stopped || pass.getClass() == stopBefore) {
+        stopped = true;
+        return;
+      }
+      startTime = runPass(pass, unit, startTime);
+    }
+
+    boolean isStopped() {
+      return stopped;
+    }
+  }
+
+  /**
+   * Runs a translation pass, logging and recording the time it took.
+   *
+   * @return the time the pass finished, in milliseconds
+   */
+  private static long runPass(ErrorReportingASTVisitor pass, CompilationUnit unit, long start) {
+    long startNanos = System.nanoTime();
+    pass.run(unit);
+    TranslationStatistics.recordPass(pass.getClass().getSimpleName(),
+        System.nanoTime() - startNanos, pass.getVisitedNodeCount());
+    return logTime(pass.getClass().getSimpleName(), start);
+  }
+
   public static void initializeTranslation(CompilationUnit unit) {
     unit.recordModifications();
     NameTable.initialize(unit);
@@ -605,11 +795,11 @@ public class J2ObjC {
     } catch (Exception e) {
       // should never happen, since only the one known class is manipulated
       e.printStackTrace();
-      System.exit(1);
+      exit(1);
     }
   }
 
-  private static String getSource(String path) throws IOException {
+  static String getSource(String path) throws IOException {
     File file = findSourceFile(path);
     if (file == null) {
       return findArchivedSource(path);
@@ -623,48 +813,22 @@ public class J2ObjC {
     if (f != null) {
       return f;
     }
-    for (String pathEntry : Options.getSourcePathEntries()) {
-      f = getFileOrNull(pathEntry + File.separatorChar + filename);
-      if (f != null) {
-        return f;
-      }
-    }
-    return null;
+    SourcePathIndex.Entry entry = getSourcePathIndex().findFile(filename);
+    return entry != null ? entry.getFile() : null;
   }
 
   private static String findArchivedSource(String path) throws IOException {
-    for (String pathEntry : Options.getSourcePathEntries()) {
-      File f = new File(pathEntry);
-      if (f.exists() && f.isFile()) {
-        ZipFile zfile;
-        try {
-          zfile = new ZipFile(f);
-        } catch (ZipException e) {
-          // Not a zip or jar file, so skip it.
-          continue;
-        }
-        ZipEntry entry = zfile.getEntry(path);
-        if (entry == null) {
-          continue;
-        }
-        try {
-          Reader in = new InputStreamReader(zfile.getInputStream(entry));
-          return CharStreams.toString(in);
-        } finally {
-          zfile.close();  // Also closes input stream.
-        }
-      }
-    }
-    return null;
+    SourcePathIndex.Entry entry = getSourcePathIndex().findArchived(path);
+    return entry != null ? SourcePathIndex.readArchivedSource(entry, path) : null;
   }
 
   private static File getFileOrNull(String fileName) {
-    File f = new File(fileName);
+    File f = Options.getFile(fileName);
     return f.exists() ? f : null;
   }
 
   private static void translateSourceJar(String jarPath) throws IOException {
-    File f = new File(jarPath);
+    File f = Options.getFile(jarPath);
     if (f.exists() && f.isFile()) {
       ZipFile zfile = new ZipFile(f);
       try {
@@ -673,8 +837,12 @@ public class J2ObjC {
           ZipEntry entry = enumerator.nextElement();
           String path = entry.getName();
           if (path.endsWith(".java")) {
-            printInfo("translating " + path);
-            translate(path);
+            if (analyzesWholeProgram()) {
+              addSourceFile(path);
+            } else {
+              printInfo("translating " + path);
+              translate(path);
+            }
           }
         }
       } catch (ZipException e) {
@@ -689,7 +857,7 @@ public class J2ObjC {
   /**
    * Add a file to be translated, if it hasn't been yet.
    */
-  public static void addSourceFile(String file) {
+  public static synchronized void addSourceFile(String file) {
     if (!translatedFiles.contains(file) && !pendingFiles.contains(file)) {
       pendingFiles.add(file);
     }
@@ -703,7 +871,7 @@ public class J2ObjC {
       error("no @ file specified");
       exit();
     }
-    File f = new File(atFile);
+    File f = Options.getFile(atFile);
     if (!f.exists()) {
       error("no such file: " + atFile);
       exit();
@@ -729,16 +897,18 @@ public class J2ObjC {
    * error conditions.
    */
   public static void error() {
-    nErrors++;
+    nErrors.incrementAndGet();
+    context.get().nErrors++;
   }
 
   /**
    * Report an ASTVisitor error.
    */
   public static void error(ASTNodeException e) {
+    TranslationContext ctx = context.get();
     System.err.println(String.format("Internal error, translating %s, line %d\nStack trace:",
-        currentFileName, currentUnit.getLineNumber(e.getSourcePosition())));
-    nErrors++;
+        ctx.currentFileName, ctx.currentUnit.getLineNumber(e.getSourcePosition())));
+    error();
     e.getCause().printStackTrace(System.err);
   }
 
@@ -748,20 +918,23 @@ public class J2ObjC {
   public static void warning(String message) {
     System.err.println("warning: " + message);
     if (Options.treatWarningsAsErrors()) {
-      nErrors++;
+      error();
     } else {
-      nWarnings++;
+      nWarnings.incrementAndGet();
+      context.get().nWarnings++;
     }
   }
 
   @VisibleForTesting
   static void resetWarnings() {
-    nWarnings = 0;
+    nWarnings.set(0);
+    context.get().nWarnings = 0;
   }
 
   @VisibleForTesting
   static void resetErrors() {
-    nErrors = 0;
+    nErrors.set(0);
+    context.get().nErrors = 0;
   }
 
   /**
@@ -769,7 +942,7 @@ public class J2ObjC {
    */
   public static void error(ASTNode node, String message) {
     int line = getNodeLine(node);
-    error(String.format("%s:%s: %s", currentFileName, line, message));
+    error(String.format("%s:%s: %s", context.get().currentFileName, line, message));
   }
 
   /**
@@ -777,11 +950,16 @@ public class J2ObjC {
    */
   public static void warning(ASTNode node, String message) {
     int line = getNodeLine(node);
-    warning(String.format("%s:%s: %s", currentFileName, line, message));
+    warning(String.format("%s:%s: %s", context.get().currentFileName, line, message));
   }
 
+  /**
+   * Returns the number of errors reported by the current thread, so that a
+   * failed unit isn't affected by units translated on other threads.
+   */
   private static int getCurrentErrorLevel() {
-    return Options.treatWarningsAsErrors() ? nErrors + nWarnings : nErrors;
+    TranslationContext ctx = context.get();
+    return Options.treatWarningsAsErrors() ? ctx.nErrors + ctx.nWarnings : ctx.nErrors;
   }
 
   private static int getNodeLine(ASTNode node) {
@@ -793,8 +971,17 @@ public class J2ObjC {
     DeadCodeMap map = null;
     File file = Options.getProGuardUsageFile();
     if (file != null) {
+      File cacheFile = Options.getDeadCodeCacheFile();
       try {
-        map = ProGuardUsageParser.parse(Files.newReaderSupplier(file, Charset.defaultCharset()));
+        if (cacheFile != null) {
+          map = DeadCodeMap.readCache(cacheFile, file);
+        }
+        if (map == null) {
+          map = ProGuardUsageParser.parse(Files.newReaderSupplier(file, Charset.defaultCharset()));
+          if (cacheFile != null) {
+            map.writeCache(cacheFile, file);
+          }
+        }
       } catch (IOException e) {
         throw new AssertionError(e);
       }
@@ -802,6 +989,101 @@ public class J2ObjC {
     Options.setDeadCodeMap(map);
   }
 
+  /**
+   * Returns true if all source files are parsed and analyzed before any is
+   * translated, for closed-world devirtualization or for finding dead code.
+   */
+  private static boolean analyzesWholeProgram() {
+    return Options.closedWorld() || Options.getDeadCodeRootsFile() != null;
+  }
+
+  /**
+   * Parses all pending source files and runs the whole-program analyses on
+   * them, before any are translated: the class hierarchy of a closed world,
+   * and the code that is unreachable from the dead code roots. Compilation
+   * errors are reported when the files are translated, which parses them
+   * again since the analyses must finish first.
+   */
+  static void analyzeWholeProgram() throws IOException {
+    long startTime = System.currentTimeMillis();
+    if (Options.getMethodMappings().isEmpty()) {
+      // The class hierarchy analyzer skips methods that are mapped to iOS methods.
+      loadMappingFiles();
+    }
+    final List<ErrorReportingASTVisitor> analyzers = Lists.newArrayList();
+    ClassHierarchy.Builder hierarchy = null;
+    if (Options.closedWorld()) {
+      hierarchy = ClassHierarchy.builder();
+      analyzers.add(new ClassHierarchyAnalyzer(hierarchy));
+    }
+    ReachabilityGraph graph = null;
+    if (Options.getDeadCodeRootsFile() != null) {
+      graph = new ReachabilityGraph();
+      analyzers.add(new ReachabilityAnalyzer(graph));
+    }
+
+    List<String> paths = Lists.newArrayList();
+    for (String file : pendingFiles) {
+      File f = findSourceFile(file);
+      if (f != null) {
+        paths.add(f.getPath());
+      } else {
+        String source = getSource(file);
+        if (source != null) {
+          ASTParser parser = newParser();
+          parser.setSource(source.toCharArray());
+          parser.setUnitName(file);
+          CompilationUnit unit = (CompilationUnit) parser.createAST(null);
+          for (ErrorReportingASTVisitor analyzer : analyzers) {
+            analyzer.run(unit);
+          }
+        }
+      }
+    }
+    FileASTRequestor requestor = new FileASTRequestor() {
+      @Override
+      public void acceptAST(String path, CompilationUnit unit) {
+        for (ErrorReportingASTVisitor analyzer : analyzers) {
+          analyzer.run(unit);
+        }
+      }
+    };
+    // Files are parsed in batches of the same size as they are translated,
+    // so that the parser's lookup environment doesn't hold the bindings of
+    // the whole program at once.
+    int max = Math.max(Options.batchTranslateMaximum(), 1);
+    for (List<String> batch : Lists.partition(paths, max)) {
+      String[] encodings = new String[batch.size()];
+      Arrays.fill(encodings, Options.fileEncoding());
+      newParser().createASTs(batch.toArray(new String[batch.size()]), encodings, new String[0],
+          requestor, null);
+    }
+
+    if (hierarchy != null) {
+      Options.setClassHierarchy(hierarchy.build());
+    }
+    if (graph != null) {
+      addDeadCodeRoots(graph, Options.getDeadCodeRootsFile());
+      Options.setDeadCodeMap(graph.findDeadCode());
+    }
+    logTime("whole program analysis", startTime);
+  }
+
+  /**
+   * Adds the roots listed in a file to a reachability graph. Each line names
+   * a class, or a class and member separated by '#'; blank lines and lines
+   * starting with '#' are ignored.
+   */
+  private static void addDeadCodeRoots(ReachabilityGraph graph, File rootsFile)
+      throws IOException {
+    for (String line : Files.readLines(rootsFile, Options.getCharset())) {
+      line = line.trim();
+      if (!line.isEmpty() && !line.startsWith("#") && !graph.addRootByName(line)) {
+        warning("dead code root not found: " + line);
+      }
+    }
+  }
+
   private static void loadMappingFiles() {
     for (String resourceName : Options.getMappingFiles()) {
       Properties mappings = new Properties();
@@ -814,6 +1096,8 @@ public class J2ObjC {
           } finally {
             reader.close();
           }
+        } else if (resourceMappings.containsKey(resourceName)) {
+          mappings = resourceMappings.get(resourceName);
         } else {
           InputStream stream = J2ObjC.class.getResourceAsStream(resourceName);
           if (stream == null) {
@@ -821,6 +1105,7 @@ public class J2ObjC {
           } else {
             try {
               mappings.load(stream);
+              resourceMappings.put(resourceName, mappings);
             } finally {
               stream.close();
             }
@@ -847,26 +1132,54 @@ public class J2ObjC {
 
   @VisibleForTesting
   static void reset() {
-    nErrors = 0;
-    nWarnings = 0;
-    currentFileName = null;
-    currentUnit = null;
+    pendingFiles.clear();
+    translatedFiles.clear();
+    nErrors.set(0);
+    nWarnings.set(0);
+    context.remove();
+    translationCache = null;
+    sourcePathIndex = null;
+    SourceFileGenerator.resetOutputCounts();
+    UnityFileGenerator.reset();
+    TranslationStatistics.reset();
   }
 
   public static int getErrorCount() {
-    return nErrors;
+    return nErrors.get();
   }
 
   public static int getWarningCount() {
-    return nWarnings;
+    return nWarnings.get();
   }
 
   private static void exit() {
     int nFiles = translatedFiles.size();
     printInfo(String.format("Translated %d %s: %d errors, %d warnings",
-        nFiles, nFiles == 1 ? "file" : "files", nErrors, nWarnings));
-    Options.deleteTemporaryDirectory();
-    System.exit(nErrors);
+        nFiles, nFiles == 1 ? "file" : "files", nErrors.get(), nWarnings.get()));
+    if (Options.writeIfChanged()) {
+      printInfo(String.format("%d of %d output files changed",
+          SourceFileGenerator.getChangedOutputCount(), SourceFileGenerator.getOutputCount()));
+    }
+    File timingReportFile = Options.getTimingReportFile();
+    if (timingReportFile != null) {
+      try {
+        TranslationStatistics.writeReport(timingReportFile);
+      } catch (IOException e) {
+        error(e.getMessage());
+      }
+    }
+    exit(nErrors.get());
+  }
+
+  /**
+   * Exits with the specified status. When running as a daemon, only the
+   * current request is ended.
+   */
+  static void exit(int status) {
+    if (TranslationDaemon.isServing()) {
+      throw new TranslationDaemon.RequestExit(status);
+    }
+    System.exit(status);
   }
 
   private static void printInfo(String msg) {
@@ -958,7 +1271,7 @@ public class J2ObjC {
 
   public static void error(Exception e) {
     logger.log(Level.SEVERE, "Exiting due to exception", e);
-    System.exit(1);
+    exit(1);
   }
 
   /**
@@ -968,6 +1281,17 @@ public class J2ObjC {
    * @throws IOException
    */
   public static void main(String[] args) {
+    if (args.length > 0 && args[0].equals("--daemon")) {
+      TranslationDaemon.main(args);
+      return;
+    }
+    run(args);
+  }
+
+  /**
+   * Translates the files specified by a command-line.
+   */
+  static void run(String[] args) {
     if (args.length == 0) {
       Options.help(true);
     }
@@ -979,7 +1303,7 @@ public class J2ObjC {
       }
     } catch (IOException e) {
       error(e.getMessage());
-      System.exit(1);
+      exit(1);
     }
 
     try {
@@ -988,18 +1312,21 @@ public class J2ObjC {
       error(e);
     }
 
-    // Remove dead-code first, so modified file paths are replaced in the
-    // translation list.
-    int beginningErrorLevel = getCurrentErrorLevel();
-    try {
-      files = removeDeadCode(files);
-    } catch (IOException e) {
-      error(e.getMessage());
-    }
-    if (getCurrentErrorLevel() > beginningErrorLevel) {
-      return;
+    // Plugins and converted sources may depend on more than the generated
+    // files, and whole-program analyses on every source file.
+    File cacheDirectory = Options.getTranslationCacheDirectory();
+    if (cacheDirectory != null && Options.getPlugins().isEmpty()
+        && !Options.printConvertedSources() && !analyzesWholeProgram()) {
+      try {
+        translationCache = new TranslationCache(cacheDirectory);
+      } catch (IOException e) {
+        error(e.getMessage());
+        exit(1);
+      }
     }
 
+    loadDeadCodeMap();
+
     try {
       for (int i = 0; i < files.length; i++) {
         if (files[i].endsWith(".java")) {  // Eclipse may send all project entities.
@@ -1009,12 +1336,26 @@ public class J2ObjC {
         } else  if (files[i].startsWith("@")) {
           addAtFiles(files[i].substring(1));
         }
+        if (!analyzesWholeProgram()) {
+          translate();
+        }
+      }
+      if (analyzesWholeProgram()) {
+        analyzeWholeProgram();
         translate();
       }
     } catch (IOException e) {
       error(e.getMessage());
     }
 
+    if (Options.unityBuild()) {
+      try {
+        UnityFileGenerator.generate();
+      } catch (IOException e) {
+        error(e.getMessage());
+      }
+    }
+
     for (Plugin plugin : Options.getPlugins()) {
       plugin.endProcessing(Options.getOutputDirectory());
     }
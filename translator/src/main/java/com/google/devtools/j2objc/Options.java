@@ -17,12 +17,14 @@
 package com.google.devtools.j2objc;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Joiner;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Splitter;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.io.Resources;
 import com.google.devtools.j2objc.J2ObjC.Language;
+import com.google.devtools.j2objc.util.ClassHierarchy;
 import com.google.devtools.j2objc.util.DeadCodeMap;
 
 import java.io.File;
@@ -32,6 +34,7 @@ import java.net.URL;
 import java.nio.charset.Charset;
 import java.nio.charset.UnsupportedCharsetException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
@@ -54,6 +57,7 @@ public class Options {
   private static String pluginOptionString = "";
   private static List<Plugin> plugins = new ArrayList<Plugin>();
   private static File outputDirectory = new File(".");
+  private static File workingDirectory = null;
   private static boolean usePackageDirectories = true;
   private static Language language = Language.OBJECTIVE_C;
   private static boolean printConvertedSources = false;
@@ -72,10 +76,26 @@ public class Options {
   private static boolean jsniWarnings = true;
   private static boolean buildClosure = false;
   private static boolean stripReflection = false;
+  private static boolean compactReflection = false;
   private static boolean extractUnsequencedModifications = false;
+  private static boolean eliminateBoxing = true;
+  private static boolean devirtualize = false;
+  private static boolean stringConcatFunction = false;
+  private static boolean closedWorld = false;
+  private static int batchTranslateMaximum = 0;
+  private static int translationThreads = 1;
+  private static File translationCacheDirectory = null;
+  private static boolean writeIfChanged = false;
+  private static boolean unityBuild = false;
+  private static int unityBuildMaximum = 0;
+  private static File timingReportFile = null;
+  private static List<String> flags = Lists.newArrayList();
 
   private static DeadCodeMap deadCodeMap = null;
+  private static ClassHierarchy classHierarchy = null;
   private static File proGuardUsageFile = null;
+  private static File deadCodeCacheFile = null;
+  private static File deadCodeRootsFile = null;
 
   private static final String JRE_MAPPINGS_FILE = "JRE.mappings";
   private static final List<String> mappingFiles = Lists.newArrayList(JRE_MAPPINGS_FILE);
@@ -86,7 +106,6 @@ public class Options {
   private static String helpMessage;
   private static final String USAGE_MSG_KEY = "usage-message";
   private static final String HELP_MSG_KEY = "help-message";
-  private static String temporaryDirectory;
   private static final String XBOOTCLASSPATH = "-Xbootclasspath:";
   private static String bootclasspath = null;
   private static Map<String, String> packagePrefixes = Maps.newHashMap();
@@ -129,8 +148,6 @@ public class Options {
     compilerOptions.put(org.eclipse.jdt.core.JavaCore.COMPILER_COMPLIANCE, "1.7");
     logger.setLevel(Level.INFO);
 
-    // Create a temporary directory as the sourcepath's first entry, so that
-    // modified sources will take precedence over regular files.
     sourcePathEntries = Lists.newArrayList();
 
     int nArg = 0;
@@ -165,17 +182,28 @@ public class Options {
         if (++nArg == args.length) {
           usage("-d requires an argument");
         }
-        outputDirectory = new File(args[nArg]);
+        outputDirectory = getFile(args[nArg]);
       } else if (arg.equals("--mapping")) {
         if (++nArg == args.length) {
           usage("--mapping requires an argument");
         }
-        mappingFiles.add(args[nArg]);
+        File mappingFile = getFile(args[nArg]);
+        mappingFiles.add(mappingFile.exists() ? mappingFile.getPath() : args[nArg]);
       } else if (arg.equals("--dead-code-report")) {
         if (++nArg == args.length) {
           usage("--dead-code-report requires an argument");
         }
-        proGuardUsageFile = new File(args[nArg]);
+        proGuardUsageFile = getFile(args[nArg]);
+      } else if (arg.equals("--dead-code-cache")) {
+        if (++nArg == args.length) {
+          usage("--dead-code-cache requires an argument");
+        }
+        deadCodeCacheFile = getFile(args[nArg]);
+      } else if (arg.equals("--dead-code-roots")) {
+        if (++nArg == args.length) {
+          usage("--dead-code-roots requires an argument");
+        }
+        deadCodeRootsFile = getFile(args[nArg]);
       } else if (arg.equals("--prefix")) {
         if (++nArg == args.length) {
           usage("--prefix requires an argument");
@@ -223,7 +251,11 @@ public class Options {
       } else if (arg.equals("-v") || arg.equals("--verbose")) {
         logger.setLevel(Level.FINEST);
       } else if (arg.startsWith(XBOOTCLASSPATH)) {
-        bootclasspath = arg.substring(XBOOTCLASSPATH.length());
+        List<String> entries = Lists.newArrayList();
+        for (String entry : Splitter.on(':').split(arg.substring(XBOOTCLASSPATH.length()))) {
+          entries.add(entry.isEmpty() ? entry : getFile(entry).getPath());
+        }
+        bootclasspath = Joiner.on(':').join(entries);
       } else if (arg.equals("-Xno-jsni-delimiters")) {
         // TODO(tball): remove flag when all client builds stop using it.
       } else if (arg.equals("--mem-debug")) {
@@ -247,6 +279,8 @@ public class Options {
         stripGwtIncompatible = true;
       } else if (arg.equals("--strip-reflection")) {
         stripReflection = true;
+      } else if (arg.equals("--compact-reflection")) {
+        compactReflection = true;
       } else if (arg.equals("--generate-test-main") || arg.equals("--no-generate-test-main")) {
         // obsolete
       } else if (arg.equals("--segmented-headers")) {
@@ -255,6 +289,66 @@ public class Options {
         buildClosure = true;
       } else if (arg.equals("--extract-unsequenced")) {
         extractUnsequencedModifications = true;
+      } else if (arg.equals("--no-boxing-elimination")) {
+        eliminateBoxing = false;
+      } else if (arg.equals("--devirtualize")) {
+        devirtualize = true;
+      } else if (arg.equals("--string-concat-function")) {
+        stringConcatFunction = true;
+      } else if (arg.equals("--closed-world")) {
+        closedWorld = true;
+        devirtualize = true;
+      } else if (arg.equals("--timing-report")) {
+        if (++nArg == args.length) {
+          usage("--timing-report requires an argument");
+        }
+        timingReportFile = getFile(args[nArg]);
+      } else if (arg.equals("--write-if-changed")) {
+        writeIfChanged = true;
+      } else if (arg.equals("--unity-build")) {
+        unityBuild = true;
+      } else if (arg.equals("--unity-build-maximum")) {
+        if (++nArg == args.length) {
+          usage("--unity-build-maximum requires an argument");
+        }
+        try {
+          unityBuildMaximum = Integer.parseInt(args[nArg]);
+        } catch (NumberFormatException e) {
+          usage("invalid --unity-build-maximum value: " + args[nArg]);
+        }
+        if (unityBuildMaximum < 1) {
+          usage("invalid --unity-build-maximum value: " + args[nArg]);
+        }
+        unityBuild = true;
+      } else if (arg.equals("--translation-cache")) {
+        if (++nArg == args.length) {
+          usage("--translation-cache requires an argument");
+        }
+        translationCacheDirectory = getFile(args[nArg]);
+      } else if (arg.equals("-j")) {
+        if (++nArg == args.length) {
+          usage("-j requires an argument");
+        }
+        try {
+          translationThreads = Integer.parseInt(args[nArg]);
+        } catch (NumberFormatException e) {
+          usage("invalid -j value: " + args[nArg]);
+        }
+        if (translationThreads < 1) {
+          usage("invalid -j value: " + args[nArg]);
+        }
+      } else if (arg.equals("--batch-translate-maximum")) {
+        if (++nArg == args.length) {
+          usage("--batch-translate-maximum requires an argument");
+        }
+        try {
+          batchTranslateMaximum = Integer.parseInt(args[nArg]);
+        } catch (NumberFormatException e) {
+          usage("invalid --batch-translate-maximum value: " + args[nArg]);
+        }
+        if (batchTranslateMaximum < 1) {
+          usage("invalid --batch-translate-maximum value: " + args[nArg]);
+        }
       } else if (arg.equals("--doc-comments")) {
         // BodyDeclaration.getJavadoc() always returns null without this option enabled,
         // so by default no doc comments are generated.
@@ -272,6 +366,19 @@ public class Options {
     if (memoryManagementOption == null) {
       memoryManagementOption = MemoryManagementOption.REFERENCE_COUNTING;
     }
+    if (closedWorld && buildClosure) {
+      // The classes added by the closure aren't known before translation.
+      usage("--closed-world can't be used with --build-closure");
+    }
+    if (deadCodeRootsFile != null) {
+      if (proGuardUsageFile != null) {
+        usage("--dead-code-roots can't be used with --dead-code-report");
+      }
+      if (buildClosure) {
+        usage("--dead-code-roots can't be used with --build-closure");
+      }
+    }
+    flags = Lists.newArrayList(Arrays.asList(args).subList(0, nArg));
 
     int nFiles = args.length - nArg;
     String[] files = new String[nFiles];
@@ -285,6 +392,62 @@ public class Options {
     return files;
   }
 
+  /**
+   * Restores all options to their default values, so that a long-running
+   * translator process can load a new command-line for each request.
+   */
+  static void reset() {
+    compilerOptions = null;
+    sourcePathEntries = Lists.newArrayList(".");
+    classPathEntries = Lists.newArrayList(".");
+    pluginPathEntries = Lists.newArrayList();
+    pluginOptionString = "";
+    plugins.clear();
+    outputDirectory = new File(".");
+    workingDirectory = null;
+    usePackageDirectories = true;
+    language = Language.OBJECTIVE_C;
+    printConvertedSources = false;
+    ignoreMissingImports = false;
+    memoryManagementOption = null;
+    emitLineDirectives = false;
+    warningsAsErrors = false;
+    deprecatedDeclarations = false;
+    classMappings.clear();
+    methodMappings.clear();
+    memoryDebug = false;
+    generateNativeStubs = false;
+    stripGwtIncompatible = false;
+    segmentedHeaders = false;
+    fileEncoding = System.getProperty("file.encoding", "UTF-8");
+    jsniWarnings = true;
+    buildClosure = false;
+    stripReflection = false;
+    compactReflection = false;
+    extractUnsequencedModifications = false;
+    eliminateBoxing = true;
+    devirtualize = false;
+    stringConcatFunction = false;
+    closedWorld = false;
+    batchTranslateMaximum = 0;
+    translationThreads = 1;
+    translationCacheDirectory = null;
+    writeIfChanged = false;
+    unityBuild = false;
+    unityBuildMaximum = 0;
+    timingReportFile = null;
+    flags = Lists.newArrayList();
+    deadCodeMap = null;
+    classHierarchy = null;
+    proGuardUsageFile = null;
+    deadCodeCacheFile = null;
+    deadCodeRootsFile = null;
+    mappingFiles.clear();
+    mappingFiles.add(JRE_MAPPINGS_FILE);
+    bootclasspath = null;
+    packagePrefixes.clear();
+  }
+
   /**
    * Add prefix option, which has a format of "<package>=<prefix>".
    */
@@ -306,7 +469,7 @@ public class Options {
    */
   private static void addPrefixesFile(String filename) throws IOException {
     Properties props = new Properties();
-    FileInputStream fis = new FileInputStream(filename);
+    FileInputStream fis = new FileInputStream(getFile(filename));
     props.load(fis);
     fis.close();
     addPrefixProperties(props);
@@ -334,20 +497,21 @@ public class Options {
   public static void usage(String invalidUseMsg) {
     System.err.println("j2objc: " + invalidUseMsg);
     System.err.println(usageMessage);
-    System.exit(1);
+    J2ObjC.exit(1);
   }
 
   public static void help(boolean errorExit) {
     System.err.println(helpMessage);
     // javac exits with 2, but any non-zero value works.
-    System.exit(errorExit ? 2 : 0);
+    J2ObjC.exit(errorExit ? 2 : 0);
   }
 
   private static List<String> getPathArgument(String argument) {
     List<String> entries = Lists.newArrayList();
     for (String entry : Splitter.on(':').split(argument)) {
-      if (new File(entry).exists()) {  // JDT fails with bad path entries.
-        entries.add(entry);
+      File file = getFile(entry);
+      if (file.exists()) {  // JDT fails with bad path entries.
+        entries.add(file.getPath());
       } else if (entry.startsWith("~/")) {
         // Expand bash/csh tildes, which don't get expanded by the shell
         // first if in the middle of a path string.
@@ -396,6 +560,25 @@ public class Options {
     return outputDirectory;
   }
 
+  /**
+   * Returns the file a command-line argument names. Relative names are
+   * resolved against the working directory of the request a daemon is
+   * serving, and otherwise against the process's working directory.
+   */
+  public static File getFile(String name) {
+    File file = new File(name);
+    return workingDirectory == null || file.isAbsolute() ? file : new File(workingDirectory, name);
+  }
+
+  /**
+   * Sets the directory that relative file names are resolved against, which
+   * is also the default output directory.
+   */
+  static void setWorkingDirectory(File dir) {
+    workingDirectory = dir;
+    outputDirectory = dir;
+  }
+
   public static boolean memoryDebug() {
     return memoryDebug;
   }
@@ -511,6 +694,32 @@ public class Options {
     return proGuardUsageFile;
   }
 
+  /**
+   * Returns the file the parsed dead code report is cached in, or null if it
+   * isn't cached.
+   */
+  public static File getDeadCodeCacheFile() {
+    return deadCodeCacheFile;
+  }
+
+  @VisibleForTesting
+  public static void setDeadCodeCacheFile(File file) {
+    deadCodeCacheFile = file;
+  }
+
+  /**
+   * Returns the file listing the classes and members that dead code is found
+   * from, or null if dead code isn't found by the translator.
+   */
+  public static File getDeadCodeRootsFile() {
+    return deadCodeRootsFile;
+  }
+
+  @VisibleForTesting
+  public static void setDeadCodeRootsFile(File file) {
+    deadCodeRootsFile = file;
+  }
+
   public static DeadCodeMap getDeadCodeMap() {
     return deadCodeMap;
   }
@@ -519,6 +728,18 @@ public class Options {
     deadCodeMap = map;
   }
 
+  /**
+   * Returns the class hierarchy of all source files, which is only built
+   * when they're translated as a closed world.
+   */
+  public static ClassHierarchy getClassHierarchy() {
+    return classHierarchy;
+  }
+
+  public static void setClassHierarchy(ClassHierarchy hierarchy) {
+    classHierarchy = hierarchy;
+  }
+
   public static String getBootClasspath() {
     return bootclasspath != null ? bootclasspath : System.getProperty("sun.boot.class.path");
   }
@@ -536,44 +757,6 @@ public class Options {
     packagePrefixes.clear();
   }
 
-  public static String getTemporaryDirectory() throws IOException {
-    if (temporaryDirectory != null) {
-      return temporaryDirectory;
-    }
-    File tmpfile = File.createTempFile("j2objc", Long.toString(System.nanoTime()));
-    if (!tmpfile.delete()) {
-      throw new IOException("Could not delete temp file: " + tmpfile.getAbsolutePath());
-    }
-    if (!tmpfile.mkdir()) {
-      throw new IOException("Could not create temp directory: " + tmpfile.getAbsolutePath());
-    }
-    temporaryDirectory = tmpfile.getAbsolutePath();
-    return temporaryDirectory;
-  }
-
-  // Called on exit.  This is done here rather than using File.deleteOnExit(),
-  // so the package directories created by the dead-code-eliminator don't have
-  // to be tracked.
-  public static void deleteTemporaryDirectory() {
-    if (temporaryDirectory != null) {
-      deleteDir(new File(temporaryDirectory));
-      temporaryDirectory = null;
-    }
-  }
-
-  private static void deleteDir(File dir) {
-    for (File f : dir.listFiles()) {
-      if (f.isDirectory()) {
-        deleteDir(f);
-      } else if (f.getName().endsWith(".java")) {
-        // Only delete Java files, as other temporary files (like hsperfdata)
-        // may also be in tmpdir.
-        f.delete();
-      }
-    }
-    dir.delete();  // Will fail if other files in dir, which is fine.
-  }
-
   public static String fileEncoding() {
     return fileEncoding;
   }
@@ -639,6 +822,19 @@ public class Options {
     stripReflection = b;
   }
 
+  /**
+   * Returns true if reflection metadata refers to strings by their offsets
+   * in a pool shared by the types of a source file, rather than by pointers.
+   */
+  public static boolean compactReflection() {
+    return compactReflection;
+  }
+
+  @VisibleForTesting
+  public static void setCompactReflection(boolean b) {
+    compactReflection = b;
+  }
+
   public static boolean extractUnsequencedModifications() {
     return extractUnsequencedModifications;
   }
@@ -652,4 +848,140 @@ public class Options {
   public static void resetExtractUnsequencedModifications() {
     extractUnsequencedModifications = false;
   }
+
+  /**
+   * Returns true if local variables that are only boxed to be unboxed again
+   * are declared as primitives.
+   */
+  public static boolean eliminateBoxing() {
+    return eliminateBoxing;
+  }
+
+  @VisibleForTesting
+  public static void setEliminateBoxing(boolean b) {
+    eliminateBoxing = b;
+  }
+
+  /**
+   * Returns true if methods that can't be overridden are implemented as C
+   * functions, which are called directly from the same source file.
+   */
+  public static boolean devirtualize() {
+    return devirtualize;
+  }
+
+  @VisibleForTesting
+  public static void setDevirtualize(boolean b) {
+    devirtualize = b;
+  }
+
+  /**
+   * Returns true if string concatenations are generated as calls to the
+   * JreStrcat runtime function, rather than NSString format strings.
+   */
+  public static boolean stringConcatFunction() {
+    return stringConcatFunction;
+  }
+
+  @VisibleForTesting
+  public static void setStringConcatFunction(boolean b) {
+    stringConcatFunction = b;
+  }
+
+  /**
+   * Returns true if the source files are the whole program, so that methods
+   * no source overrides are devirtualized, and called directly from any
+   * source file.
+   */
+  public static boolean closedWorld() {
+    return closedWorld;
+  }
+
+  @VisibleForTesting
+  public static void setClosedWorld(boolean b) {
+    closedWorld = b;
+  }
+
+  /**
+   * Returns the maximum number of source files that are parsed together by a
+   * single ASTParser, or zero if each file is parsed separately.
+   */
+  public static int batchTranslateMaximum() {
+    return batchTranslateMaximum;
+  }
+
+  @VisibleForTesting
+  public static void setBatchTranslateMaximum(int max) {
+    batchTranslateMaximum = max;
+  }
+
+  /**
+   * Returns the number of worker threads that translate files concurrently.
+   */
+  public static int translationThreads() {
+    return translationThreads;
+  }
+
+  @VisibleForTesting
+  public static void setTranslationThreads(int n) {
+    translationThreads = n;
+  }
+
+  /**
+   * Returns the directory where translations are cached between runs, or
+   * null if translations aren't cached.
+   */
+  public static File getTranslationCacheDirectory() {
+    return translationCacheDirectory;
+  }
+
+  public static boolean writeIfChanged() {
+    return writeIfChanged;
+  }
+
+  @VisibleForTesting
+  public static void setWriteIfChanged(boolean b) {
+    writeIfChanged = b;
+  }
+
+  /**
+   * Returns true if the implementation files generated in each output
+   * directory are also included by unity files, compiled in their place.
+   */
+  public static boolean unityBuild() {
+    return unityBuild;
+  }
+
+  @VisibleForTesting
+  public static void setUnityBuild(boolean b) {
+    unityBuild = b;
+  }
+
+  /**
+   * Returns the maximum number of implementation files a unity file
+   * includes, or zero if each output directory has a single unity file.
+   */
+  public static int unityBuildMaximum() {
+    return unityBuildMaximum;
+  }
+
+  @VisibleForTesting
+  public static void setUnityBuildMaximum(int max) {
+    unityBuildMaximum = max;
+  }
+
+  /**
+   * Returns the file per-pass timing and counters are reported to, or null
+   * if they aren't reported.
+   */
+  public static File getTimingReportFile() {
+    return timingReportFile;
+  }
+
+  /**
+   * Returns the flags from the command-line, without its source files.
+   */
+  public static List<String> getFlags() {
+    return flags;
+  }
 }
@@ -69,7 +69,8 @@ public abstract class Plugin {
 
   /**
    * Called to process the given CompilationUnit after J2ObjC has processed
-   * it.
+   * it. When files are translated concurrently (the -j option), this may be
+   * called from several threads at once.
    */
   public abstract void processUnit(CompilationUnit unit);
 
@@ -0,0 +1,242 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.devtools.j2objc;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.io.CharStreams;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+
+/**
+ * An index of the files on the sourcepath, so that looking up a source file
+ * doesn't open every archive or stat every directory on the path. Archive
+ * entries are read once, when the index is created. Directories are listed
+ * the first time a file in them is looked up, since a sourcepath directory
+ * (like the default ".") may hold far more than the sources translated.
+ * <p>
+ * The index doesn't notice files that are added to the sourcepath after they
+ * were looked up, so it is only used for the length of a translation run.
+ * </p>
+ * <p>
+ * Like {@link File#exists}, a directory lookup matches a file whose name only
+ * differs in case when the file system is case-insensitive, as on Mac OS X.
+ * Archive lookups are case-sensitive.
+ * </p>
+ */
+class SourcePathIndex {
+
+  private final String[] pathEntries;
+  private final List<Root> roots = Lists.newArrayList();
+
+  /**
+   * A source file found on the sourcepath.
+   */
+  static class Entry {
+    private final String pathEntry;
+    private final File file;
+    private final boolean archived;
+
+    private Entry(String pathEntry, File file, boolean archived) {
+      this.pathEntry = pathEntry;
+      this.file = file;
+      this.archived = archived;
+    }
+
+    /**
+     * Returns the sourcepath entry the file was found in.
+     */
+    String getPathEntry() {
+      return pathEntry;
+    }
+
+    /**
+     * Returns the source file, or the archive that contains it.
+     */
+    File getFile() {
+      return file;
+    }
+
+    boolean isArchived() {
+      return archived;
+    }
+
+    /**
+     * Returns when the file was last modified. Archived files use the
+     * archive's modification time.
+     */
+    long lastModified() {
+      return file.lastModified();
+    }
+  }
+
+  /**
+   * A directory or archive on the sourcepath.
+   */
+  private static class Root {
+    private final String pathEntry;
+    private final File file;
+
+    // The names of an archive's entries, or null for a directory.
+    private final Set<String> archiveEntries;
+
+    // The names of the files in each directory that was looked up, by the
+    // directory's path relative to this root.
+    private final Map<String, Set<String>> directoryListings = Maps.newHashMap();
+
+    // The same names in lower case, for lookups that miss by case.
+    private final Map<String, Set<String>> foldedListings = Maps.newHashMap();
+
+    Root(String pathEntry, File file, Set<String> archiveEntries) {
+      this.pathEntry = pathEntry;
+      this.file = file;
+      this.archiveEntries = archiveEntries;
+    }
+
+    boolean contains(String relativePath) {
+      if (archiveEntries != null) {
+        return archiveEntries.contains(relativePath);
+      }
+      int index = relativePath.lastIndexOf('/');
+      String dir = index >= 0 ? relativePath.substring(0, index) : "";
+      String name = relativePath.substring(index + 1);
+      Set<String> names = directoryListings.get(dir);
+      if (names == null) {
+        String[] list = new File(file, dir).list();
+        names = list != null ? ImmutableSet.copyOf(list) : Collections.<String>emptySet();
+        directoryListings.put(dir, names);
+        ImmutableSet.Builder<String> folded = ImmutableSet.builder();
+        for (String listedName : names) {
+          folded.add(listedName.toLowerCase(Locale.ENGLISH));
+        }
+        foldedListings.put(dir, folded.build());
+      }
+      if (names.contains(name)) {
+        return true;
+      }
+      // Only stat the file if a listed name matches when case is ignored, so
+      // the file system decides whether it matches.
+      return foldedListings.get(dir).contains(name.toLowerCase(Locale.ENGLISH))
+          && new File(file, relativePath).exists();
+    }
+  }
+
+  SourcePathIndex(String[] pathEntries) {
+    this.pathEntries = pathEntries;
+    for (String pathEntry : pathEntries) {
+      File f = new File(pathEntry);
+      if (f.isDirectory()) {
+        roots.add(new Root(pathEntry, f, null));
+      } else if (f.isFile()) {
+        Set<String> entries = readArchiveEntries(f);
+        if (entries != null) {
+          roots.add(new Root(pathEntry, f, entries));
+        }
+      }
+    }
+  }
+
+  private static Set<String> readArchiveEntries(File f) {
+    try {
+      ZipFile zfile = new ZipFile(f);
+      try {
+        ImmutableSet.Builder<String> entries = ImmutableSet.builder();
+        Enumeration<? extends ZipEntry> enumerator = zfile.entries();
+        while (enumerator.hasMoreElements()) {
+          entries.add(enumerator.nextElement().getName());
+        }
+        return entries.build();
+      } finally {
+        zfile.close();
+      }
+    } catch (ZipException e) {
+      // Not a zip or jar file, so skip it.
+    } catch (IOException e) {
+      // Silently fail (like javac does).
+    }
+    return null;
+  }
+
+  /**
+   * Returns true if this index was created from the specified sourcepath.
+   */
+  boolean hasPathEntries(String[] entries) {
+    return Arrays.equals(pathEntries, entries);
+  }
+
+  /**
+   * Returns the first sourcepath directory or archive that contains a file.
+   *
+   * @param relativePath the file's path, relative to the sourcepath
+   * @return the file's entry, or null if it isn't on the sourcepath
+   */
+  synchronized Entry find(String relativePath) {
+    return find(relativePath, true, true);
+  }
+
+  /**
+   * Returns the first sourcepath directory that contains a file, ignoring
+   * archives.
+   */
+  synchronized Entry findFile(String relativePath) {
+    return find(relativePath, true, false);
+  }
+
+  /**
+   * Returns the first sourcepath archive that contains a file, ignoring
+   * directories.
+   */
+  synchronized Entry findArchived(String relativePath) {
+    return find(relativePath, false, true);
+  }
+
+  private Entry find(String relativePath, boolean directories, boolean archives) {
+    for (Root root : roots) {
+      boolean archived = root.archiveEntries != null;
+      if ((archived ? archives : directories) && root.contains(relativePath)) {
+        File file = archived ? root.file : new File(root.file, relativePath);
+        return new Entry(root.pathEntry, file, archived);
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Reads an archived source file.
+   */
+  static String readArchivedSource(Entry entry, String relativePath) throws IOException {
+    ZipFile zfile = new ZipFile(entry.getFile());
+    try {
+      Reader in = new InputStreamReader(zfile.getInputStream(zfile.getEntry(relativePath)));
+      return CharStreams.toString(in);
+    } finally {
+      zfile.close();  // Also closes input stream.
+    }
+  }
+}
@@ -0,0 +1,558 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.devtools.j2objc;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+import com.google.devtools.j2objc.gen.SourceFileGenerator;
+import com.google.devtools.j2objc.gen.UnityFileGenerator;
+
+import org.eclipse.jdt.core.dom.ASTParser;
+import org.eclipse.jdt.core.dom.ASTVisitor;
+import org.eclipse.jdt.core.dom.AbstractTypeDeclaration;
+import org.eclipse.jdt.core.dom.CompilationUnit;
+import org.eclipse.jdt.core.dom.IAnnotationBinding;
+import org.eclipse.jdt.core.dom.IBinding;
+import org.eclipse.jdt.core.dom.IMethodBinding;
+import org.eclipse.jdt.core.dom.ITypeBinding;
+import org.eclipse.jdt.core.dom.IVariableBinding;
+import org.eclipse.jdt.core.dom.Modifier;
+import org.eclipse.jdt.core.dom.SimpleName;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.security.CodeSource;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.logging.Logger;
+
+/**
+ * Caches the files generated for each source file, so that later runs can
+ * reuse them without parsing or translating unchanged sources.
+ * <p>
+ * An entry's key is a hash of the source file's name and contents, and of an
+ * options fingerprint: the command-line flags, the translator build, the
+ * mapping files, package prefixes, dead code report and class path entries.
+ * Files are identified by the hashes of their contents rather than by their
+ * paths and modification times, so that a fresh checkout or a rebuilt but
+ * identical jar still finds the entries of an earlier run.
+ * An entry also records the API signature of each type from the sourcepath
+ * that its unit references, and is only reused while those are unchanged.
+ * The API signatures of translated and referenced types are indexed by a hash
+ * of their source, so they can be checked without parsing those sources.
+ * </p>
+ */
+class TranslationCache {
+
+  private static final Logger logger = Logger.getLogger(TranslationCache.class.getName());
+
+  private static final HashFunction HASH = Hashing.sha1();
+  private static final String MANIFEST = "manifest";
+  private static final String OUTPUT_PREFIX = "output";
+
+  // Flags that don't change the generated files.
+  private static final Set<String> IGNORED_FLAGS =
+      ImmutableSet.of("-q", "--quiet", "-t", "--timing-info", "-v", "--verbose",
+          "--write-if-changed", "--unity-build");
+  private static final Set<String> IGNORED_FLAGS_WITH_ARGUMENT =
+      ImmutableSet.of("-j", "--batch-translate-maximum", "--translation-cache", "--timing-report",
+          "--dead-code-cache", "--unity-build-maximum");
+  // Flags whose file or path arguments are fingerprinted by their contents.
+  private static final Set<String> PATH_FLAGS_WITH_ARGUMENT =
+      ImmutableSet.of("-classpath", "-sourcepath", "-d", "--mapping", "--dead-code-report",
+          "--prefixes");
+  private static final String XBOOTCLASSPATH = "-Xbootclasspath:";
+
+  // Content hashes of the files read by this process, by path, length and
+  // modification time.
+  private static final Map<String, String> fileHashes = Maps.newConcurrentMap();
+
+  private final File directory;
+  private final File apiDirectory;
+  private final String optionsFingerprint;
+
+  // Hashes of the sources of referenced types, by qualified name. An empty
+  // string means the type's source wasn't found.
+  private final Map<String, String> sourceHashes = Maps.newConcurrentMap();
+
+  /**
+   * The API signature hashes of the top-level types a unit declares and
+   * references, by qualified name.
+   */
+  static class UnitApi {
+    private final Map<String, String> declaredTypes = Maps.newTreeMap();
+    private final Map<String, String> referencedTypes = Maps.newTreeMap();
+    // Hashes of the class files read from class path directories, by their
+    // path relative to the directory.
+    private final Map<String, String> classFiles = Maps.newTreeMap();
+  }
+
+  TranslationCache(File directory) throws IOException {
+    this.directory = directory;
+    this.apiDirectory = new File(directory, "api");
+    if (!apiDirectory.isDirectory() && !apiDirectory.mkdirs()) {
+      throw new IOException("cannot create translation cache directory: " + directory);
+    }
+    optionsFingerprint = getOptionsFingerprint();
+  }
+
+  /**
+   * Writes the cached translation of a source file to the output directory.
+   *
+   * @return the types to check for --build-closure, or null if the source
+   *     doesn't have a valid cached translation
+   */
+  List<String> restore(String filename, String source) throws IOException {
+    File entryDir = new File(directory, getEntryKey(filename, source));
+    File manifest = new File(entryDir, MANIFEST);
+    if (!manifest.exists()) {
+      return null;
+    }
+    List<String> outputs = Lists.newArrayList();
+    List<String> closureTypes = Lists.newArrayList();
+    for (String line : Files.readLines(manifest, Charsets.UTF_8)) {
+      String[] fields = line.split(" ");
+      if (fields[0].equals("dep")) {
+        if (!fields[2].equals(getCurrentApiHash(fields[1]))) {
+          logger.finest("API of " + fields[1] + " changed, retranslating " + filename);
+          return null;
+        }
+      } else if (fields[0].equals("class")) {
+        String[] classFields = line.split(" ", 3);
+        if (!classFields[1].equals(getFileHash(findClassFile(classFields[2])))) {
+          logger.finest(classFields[2] + " changed, retranslating " + filename);
+          return null;
+        }
+      } else if (fields[0].equals("closure")) {
+        closureTypes.add(fields[1]);
+      } else if (fields[0].equals("output")) {
+        outputs.add(fields[1]);
+      }
+    }
+    for (int i = 0; i < outputs.size(); i++) {
+      File outputFile = new File(Options.getOutputDirectory(), outputs.get(i));
+      Files.createParentDirs(outputFile);
+      SourceFileGenerator.writeOutputFile(outputFile,
+          Files.toString(new File(entryDir, OUTPUT_PREFIX + i), Options.getCharset()));
+      if (Options.unityBuild() && outputs.get(i).endsWith(Options.getLanguage().getSuffix())) {
+        UnityFileGenerator.addImplementation(outputs.get(i));
+      }
+    }
+    return closureTypes;
+  }
+
+  /**
+   * Returns the API signatures of the types a unit declares and references.
+   * This must be called before the unit is translated.
+   */
+  static UnitApi getApi(CompilationUnit unit) {
+    final Set<ITypeBinding> referencedTypes = Sets.newLinkedHashSet();
+    unit.accept(new ASTVisitor() {
+      @Override
+      public boolean visit(SimpleName node) {
+        IBinding binding = node.resolveBinding();
+        if (binding instanceof ITypeBinding) {
+          addReferencedType((ITypeBinding) binding, referencedTypes);
+        } else if (binding instanceof IVariableBinding) {
+          IVariableBinding var = (IVariableBinding) binding;
+          addReferencedType(var.getDeclaringClass(), referencedTypes);
+          addReferencedType(var.getType(), referencedTypes);
+        } else if (binding instanceof IMethodBinding) {
+          IMethodBinding method = (IMethodBinding) binding;
+          addReferencedType(method.getDeclaringClass(), referencedTypes);
+          addReferencedType(method.getReturnType(), referencedTypes);
+        }
+        return true;
+      }
+    });
+    UnitApi api = new UnitApi();
+    Set<ITypeBinding> declaredTypes = Sets.newHashSet();
+    for (Object decl : unit.types()) {
+      ITypeBinding type = ((AbstractTypeDeclaration) decl).resolveBinding();
+      if (type != null) {
+        declaredTypes.add(type);
+        api.declaredTypes.put(type.getQualifiedName(), getApiHash(type));
+      }
+    }
+    for (ITypeBinding type : referencedTypes) {
+      if (type.isFromSource()) {
+        if (!declaredTypes.contains(type)) {
+          api.referencedTypes.put(type.getQualifiedName(), getApiHash(type));
+        }
+      } else {
+        addClassFiles(type, api.classFiles);
+      }
+    }
+    return api;
+  }
+
+  /**
+   * Adds the hashes of the class files of a binary type and its member types,
+   * if they are read from a class path directory. Types in jars are covered
+   * by the jars' hashes in the options fingerprint.
+   */
+  private static void addClassFiles(ITypeBinding type, Map<String, String> classFiles) {
+    String binaryName = type.getBinaryName();
+    if (binaryName == null) {
+      return;
+    }
+    String classFileName = binaryName.replace('.', '/') + ".class";
+    File file = findClassFile(classFileName);
+    if (file != null) {
+      classFiles.put(classFileName, getFileHash(file));
+    }
+    for (ITypeBinding member : type.getDeclaredTypes()) {
+      addClassFiles(member, classFiles);
+    }
+  }
+
+  /**
+   * Returns the first class file with a relative path in the class path's
+   * directories, or null if there isn't one.
+   */
+  private static File findClassFile(String classFileName) {
+    for (String entry : Iterables.concat(Arrays.asList(Options.getClassPathEntries()),
+        Arrays.asList(Options.getBootClasspath().split(":")))) {
+      File file = new File(entry);
+      if (file.isFile()) {
+        continue;
+      }
+      file = new File(file, classFileName);
+      if (file.exists()) {
+        return file;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Returns the hash of a file's contents, or "none" if it doesn't exist. A
+   * file is only read again if its length or modification time changes.
+   */
+  private static String getFileHash(File file) {
+    if (file == null || !file.isFile()) {
+      return "none";
+    }
+    String stamp = file.getPath() + '\0' + file.length() + '\0' + file.lastModified();
+    String hash = fileHashes.get(stamp);
+    if (hash == null) {
+      try {
+        hash = Files.hash(file, HASH).toString();
+      } catch (IOException e) {
+        return "none";
+      }
+      fileHashes.put(stamp, hash);
+    }
+    return hash;
+  }
+
+  /**
+   * Adds the top-level type of a referenced type, and its supertypes.
+   */
+  private static void addReferencedType(ITypeBinding type, Set<ITypeBinding> types) {
+    if (type == null) {
+      return;
+    }
+    if (type.isArray()) {
+      type = type.getElementType();
+    }
+    if (type.isPrimitive() || type.isTypeVariable() || type.isWildcardType()
+        || type.isCapture() || type.isNullType()) {
+      return;
+    }
+    type = type.getTypeDeclaration();
+    ITypeBinding topLevelType = type;
+    while (topLevelType.getDeclaringClass() != null) {
+      topLevelType = topLevelType.getDeclaringClass();
+    }
+    if (types.add(topLevelType)) {
+      addSupertypes(topLevelType, types);
+    }
+    if (type != topLevelType) {
+      addSupertypes(type, types);
+    }
+  }
+
+  private static void addSupertypes(ITypeBinding type, Set<ITypeBinding> types) {
+    addReferencedType(type.getSuperclass(), types);
+    for (ITypeBinding intrface : type.getInterfaces()) {
+      addReferencedType(intrface, types);
+    }
+  }
+
+  /**
+   * Returns a hash of the parts of a type that the translation of other
+   * units can depend on.
+   */
+  private static String getApiHash(ITypeBinding type) {
+    StringBuilder sb = new StringBuilder();
+    appendApi(type, sb);
+    return HASH.hashString(sb).toString();
+  }
+
+  private static void appendApi(ITypeBinding type, StringBuilder sb) {
+    sb.append(type.getModifiers()).append(' ').append(type.getKey());
+    appendAnnotations(type.getAnnotations(), sb);
+    if (type.getSuperclass() != null) {
+      sb.append(" extends ").append(type.getSuperclass().getKey());
+    }
+    for (ITypeBinding intrface : type.getInterfaces()) {
+      sb.append(" implements ").append(intrface.getKey());
+    }
+    sb.append('\n');
+    for (IVariableBinding field : type.getDeclaredFields()) {
+      if (!Modifier.isPrivate(field.getModifiers())) {
+        sb.append(field.getModifiers()).append(' ').append(field.getKey())
+            .append(" = ").append(field.getConstantValue());
+        appendAnnotations(field.getAnnotations(), sb);
+        sb.append('\n');
+      }
+    }
+    for (IMethodBinding method : type.getDeclaredMethods()) {
+      if (Modifier.isPrivate(method.getModifiers())) {
+        // Field names are renamed when they match any method's name.
+        sb.append("private ").append(method.getName()).append('\n');
+        continue;
+      }
+      sb.append(method.getModifiers()).append(' ').append(method.getKey());
+      for (ITypeBinding exception : method.getExceptionTypes()) {
+        sb.append(" throws ").append(exception.getKey());
+      }
+      appendAnnotations(method.getAnnotations(), sb);
+      sb.append('\n');
+    }
+    for (ITypeBinding member : type.getDeclaredTypes()) {
+      if (!Modifier.isPrivate(member.getModifiers())) {
+        appendApi(member, sb);
+      }
+    }
+  }
+
+  private static void appendAnnotations(IAnnotationBinding[] annotations, StringBuilder sb) {
+    for (IAnnotationBinding annotation : annotations) {
+      sb.append(' ').append(annotation);
+    }
+  }
+
+  /**
+   * Caches the files generated for a source file.
+   *
+   * @param api the unit's API signatures, from {@link #getApi}
+   * @param closureTypes the types to check for --build-closure
+   */
+  void store(String filename, String source, CompilationUnit unit, UnitApi api,
+      Collection<String> closureTypes) throws IOException {
+    // Index the API signatures of the unit's types, so the units that reference
+    // them can be validated.
+    Map<String, String> apiHashes = Maps.newHashMap(api.referencedTypes);
+    apiHashes.putAll(api.declaredTypes);
+    for (Map.Entry<String, String> entry : apiHashes.entrySet()) {
+      String sourceHash = getSourceHash(entry.getKey());
+      if (sourceHash != null) {
+        writeAtomically(new File(apiDirectory, getApiKey(entry.getKey(), sourceHash)),
+            entry.getValue().getBytes(Charsets.UTF_8));
+      }
+    }
+
+    StringBuilder manifest = new StringBuilder();
+    for (Map.Entry<String, String> entry : api.referencedTypes.entrySet()) {
+      manifest.append("dep ").append(entry.getKey()).append(' ').append(entry.getValue())
+          .append('\n');
+    }
+    for (Map.Entry<String, String> entry : api.classFiles.entrySet()) {
+      manifest.append("class ").append(entry.getValue()).append(' ').append(entry.getKey())
+          .append('\n');
+    }
+    for (String type : closureTypes) {
+      manifest.append("closure ").append(type).append('\n');
+    }
+    List<String> outputs = Arrays.asList(
+        SourceFileGenerator.getOutputFileName(unit, filename, ".h"),
+        SourceFileGenerator.getOutputFileName(unit, filename, Options.getLanguage().getSuffix()));
+    File entryDir = new File(directory, getEntryKey(filename, source));
+    File tempDir =
+        new File(directory, entryDir.getName() + ".tmp" + Thread.currentThread().getId());
+    if (!tempDir.isDirectory() && !tempDir.mkdirs()) {
+      throw new IOException("cannot create translation cache entry: " + tempDir);
+    }
+    for (int i = 0; i < outputs.size(); i++) {
+      manifest.append("output ").append(outputs.get(i)).append('\n');
+      Files.copy(new File(Options.getOutputDirectory(), outputs.get(i)),
+          new File(tempDir, OUTPUT_PREFIX + i));
+    }
+    Files.write(manifest, new File(tempDir, MANIFEST), Charsets.UTF_8);
+
+    // Replace any entry that was invalidated by a changed API.
+    if (entryDir.exists()) {
+      deleteDir(entryDir);
+    }
+    if (!tempDir.renameTo(entryDir)) {
+      deleteDir(tempDir);
+    }
+  }
+
+  private String getEntryKey(String filename, String source) {
+    return HASH.newHasher()
+        .putString(optionsFingerprint).putChar('\0')
+        .putString(filename).putChar('\0')
+        .putString(source)
+        .hash().toString();
+  }
+
+  private String getApiKey(String qualifiedName, String sourceHash) {
+    return HASH.newHasher()
+        .putString(optionsFingerprint).putChar('\0')
+        .putString(qualifiedName).putChar('\0')
+        .putString(sourceHash)
+        .hash().toString();
+  }
+
+  /**
+   * Returns the API signature hash of the current source of a type, or null
+   * if its source isn't found. A type whose source changed since it was
+   * indexed is parsed (but not translated) to index it again, since a change
+   * that doesn't affect its API shouldn't invalidate the units using it.
+   */
+  private String getCurrentApiHash(String qualifiedName) throws IOException {
+    String sourceHash = getSourceHash(qualifiedName);
+    if (sourceHash == null) {
+      return null;
+    }
+    File apiFile = new File(apiDirectory, getApiKey(qualifiedName, sourceHash));
+    if (apiFile.exists()) {
+      return Files.toString(apiFile, Charsets.UTF_8);
+    }
+    logger.finest("indexing API of " + qualifiedName);
+    String sourceName = qualifiedName.replace('.', '/') + ".java";
+    ASTParser parser = J2ObjC.newParser();
+    parser.setSource(J2ObjC.getSource(sourceName).toCharArray());
+    parser.setUnitName(sourceName);
+    CompilationUnit unit = (CompilationUnit) parser.createAST(null);
+    String apiHash = getApi(unit).declaredTypes.get(qualifiedName);
+    if (apiHash != null) {
+      writeAtomically(apiFile, apiHash.getBytes(Charsets.UTF_8));
+    }
+    return apiHash;
+  }
+
+  private String getSourceHash(String qualifiedName) throws IOException {
+    String hash = sourceHashes.get(qualifiedName);
+    if (hash == null) {
+      String source = J2ObjC.getSource(qualifiedName.replace('.', '/') + ".java");
+      hash = source != null ? HASH.hashString(source).toString() : "";
+      sourceHashes.put(qualifiedName, hash);
+    }
+    return hash.isEmpty() ? null : hash;
+  }
+
+  private static String getOptionsFingerprint() throws IOException {
+    Hasher hasher = HASH.newHasher();
+    List<String> flags = Options.getFlags();
+    for (int i = 0; i < flags.size(); i++) {
+      String flag = flags.get(i);
+      if (IGNORED_FLAGS_WITH_ARGUMENT.contains(flag)) {
+        i++;
+      } else if (PATH_FLAGS_WITH_ARGUMENT.contains(flag)) {
+        hasher.putString(flag).putChar('\0');
+        i++;
+      } else if (flag.startsWith(XBOOTCLASSPATH)) {
+        hasher.putString(XBOOTCLASSPATH).putChar('\0');
+      } else if (!IGNORED_FLAGS.contains(flag)) {
+        hasher.putString(flag).putChar('\0');
+      }
+    }
+
+    // The translator build.
+    CodeSource codeSource = J2ObjC.class.getProtectionDomain().getCodeSource();
+    if (codeSource != null) {
+      try {
+        putFileHashes(new File(codeSource.getLocation().toURI()), "", hasher);
+      } catch (URISyntaxException e) {
+        throw new IOException(e);
+      }
+    }
+
+    for (String mappingFile : Options.getMappingFiles()) {
+      File f = new File(mappingFile);
+      if (f.exists()) {
+        hasher.putBytes(Files.toByteArray(f));
+      }
+    }
+    for (Map.Entry<String, String> entry : new TreeMap<String, String>(Options.getPackagePrefixes())
+        .entrySet()) {
+      hasher.putString(entry.getKey()).putChar('=').putString(entry.getValue()).putChar('\0');
+    }
+    File proGuardUsageFile = Options.getProGuardUsageFile();
+    if (proGuardUsageFile != null) {
+      hasher.putString(getFileHash(proGuardUsageFile)).putChar('\0');
+    }
+    // Class path directories, such as the default ".", aren't scanned. Each
+    // cache entry checks the class files its unit read from them instead.
+    for (String entry : Iterables.concat(Arrays.asList(Options.getClassPathEntries()),
+        Arrays.asList(Options.getBootClasspath().split(":")))) {
+      File file = new File(entry);
+      hasher.putString(file.isDirectory() ? "dir" : getFileHash(file)).putChar('\0');
+    }
+    return hasher.hash().toString();
+  }
+
+  /**
+   * Adds the hash of a file, or the relative paths and hashes of the class
+   * files, jars and resources in a directory.
+   */
+  private static void putFileHashes(File file, String relativePath, Hasher hasher) {
+    if (file.isDirectory()) {
+      File[] children = file.listFiles();
+      Arrays.sort(children);
+      for (File child : children) {
+        putFileHashes(child, relativePath + '/' + child.getName(), hasher);
+      }
+    } else if (file.exists()) {
+      hasher.putString(relativePath).putChar('\0').putString(getFileHash(file)).putChar('\0');
+    }
+  }
+
+  private static void writeAtomically(File file, byte[] contents) throws IOException {
+    File tempFile = new File(file.getPath() + ".tmp" + Thread.currentThread().getId());
+    Files.write(contents, tempFile);
+    if (!tempFile.renameTo(file)) {
+      tempFile.delete();
+    }
+  }
+
+  private static void deleteDir(File dir) {
+    for (File f : dir.listFiles()) {
+      if (f.isDirectory()) {
+        deleteDir(f);
+      } else {
+        f.delete();
+      }
+    }
+    dir.delete();
+  }
+}
@@ -0,0 +1,219 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.devtools.j2objc;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.List;
+
+/**
+ * A long-running translator process, which serves translation requests from
+ * a loopback socket. Repeated builds then avoid paying for JVM startup,
+ * class loading, JIT warm-up and mapping file loading on every invocation.
+ * <p>
+ * Since any local user can connect to the socket, the daemon writes a random
+ * token to a file only its user can read, and only serves requests that
+ * start with it. A request is the token and the client's working directory,
+ * followed by one command-line argument per line and then an empty line.
+ * Relative file names are resolved against the client's directory. The
+ * translator's output is sent back, followed by a final line with the
+ * request's exit status. Requests are served one at a time, since options
+ * and output streams are global.
+ * </p>
+ */
+class TranslationDaemon {
+
+  static final String EXIT_STATUS_PREFIX = "j2objc-exit-status: ";
+
+  private static volatile boolean serving = false;
+
+  private final ServerSocket serverSocket;
+  private final File tokenFile;
+  private final String token;
+
+  /**
+   * Thrown instead of exiting the process when a request is finished early,
+   * for example because of an invalid flag.
+   */
+  static class RequestExit extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    private final int status;
+
+    RequestExit(int status) {
+      this.status = status;
+    }
+
+    int getStatus() {
+      return status;
+    }
+  }
+
+  /**
+   * Listens on a loopback port, writing the token clients must send to a
+   * file that is only readable by the current user.
+   */
+  TranslationDaemon(int port, File tokenFile) throws IOException {
+    byte[] bytes = new byte[32];
+    new SecureRandom().nextBytes(bytes);
+    StringBuilder sb = new StringBuilder();
+    for (byte b : bytes) {
+      sb.append(String.format("%02x", b));
+    }
+    token = sb.toString();
+    this.tokenFile = tokenFile;
+    writeTokenFile();
+    serverSocket = new ServerSocket(port, 0, InetAddress.getByName("127.0.0.1"));
+  }
+
+  /**
+   * Returns the default token file of a daemon port, which the j2objc script
+   * also reads.
+   */
+  static File getDefaultTokenFile(int port) {
+    return new File(System.getProperty("user.home"), ".j2objc-daemon-" + port);
+  }
+
+  // The file is created empty and restricted to its owner before the token
+  // is written to it.
+  private void writeTokenFile() throws IOException {
+    if (tokenFile.exists() && !tokenFile.delete()) {
+      throw new IOException("cannot replace daemon token file: " + tokenFile);
+    }
+    if (!tokenFile.createNewFile()
+        || !tokenFile.setReadable(false, false) || !tokenFile.setWritable(false, false)
+        || !tokenFile.setReadable(true, true) || !tokenFile.setWritable(true, true)) {
+      throw new IOException("cannot create daemon token file: " + tokenFile);
+    }
+    tokenFile.deleteOnExit();
+    Files.write(token + '\n', tokenFile, Charsets.UTF_8);
+  }
+
+  /**
+   * Returns true if the translator is serving a daemon request.
+   */
+  static boolean isServing() {
+    return serving;
+  }
+
+  int getPort() {
+    return serverSocket.getLocalPort();
+  }
+
+  void serve() throws IOException {
+    System.out.println("j2objc daemon listening on port " + getPort()
+        + ", token in " + tokenFile);
+    while (true) {
+      Socket client = serverSocket.accept();
+      try {
+        serveRequest(client.getInputStream(), client.getOutputStream());
+      } catch (IOException e) {
+        System.err.println("j2objc daemon: " + e.getMessage());
+      } finally {
+        client.close();
+      }
+    }
+  }
+
+  void close() throws IOException {
+    serverSocket.close();
+    tokenFile.delete();
+  }
+
+  void serveRequest(InputStream input, OutputStream output) throws IOException {
+    BufferedReader in = new BufferedReader(new InputStreamReader(input, Charsets.UTF_8));
+    String clientToken = in.readLine();
+    String clientDirectory = in.readLine();
+    List<String> args = Lists.newArrayList();
+    String line;
+    while ((line = in.readLine()) != null && !line.isEmpty()) {
+      args.add(line);
+    }
+
+    PrintStream out = new PrintStream(output, true, Charsets.UTF_8.name());
+    int status;
+    if (clientToken == null || !MessageDigest.isEqual(
+        clientToken.getBytes(Charsets.UTF_8), token.getBytes(Charsets.UTF_8))) {
+      out.println("j2objc: invalid daemon token, see " + tokenFile);
+      status = 2;
+    } else if (clientDirectory == null || !new File(clientDirectory).isAbsolute()
+        || !new File(clientDirectory).isDirectory()) {
+      out.println("j2objc: invalid working directory: " + clientDirectory);
+      status = 2;
+    } else {
+      status = translate(new File(clientDirectory), args.toArray(new String[args.size()]), out);
+    }
+    out.println(EXIT_STATUS_PREFIX + status);
+    out.flush();
+  }
+
+  private int translate(File workingDirectory, String[] args, PrintStream out) {
+    PrintStream stdout = System.out;
+    PrintStream stderr = System.err;
+    System.setOut(out);
+    System.setErr(out);
+    serving = true;
+    try {
+      Options.reset();
+      J2ObjC.reset();
+      Options.setWorkingDirectory(workingDirectory);
+      J2ObjC.run(args);
+      return J2ObjC.getErrorCount();
+    } catch (RequestExit e) {
+      return e.getStatus();
+    } catch (RuntimeException e) {
+      e.printStackTrace(out);
+      return 1;
+    } catch (AssertionError e) {
+      e.printStackTrace(out);
+      return 1;
+    } finally {
+      serving = false;
+      System.setOut(stdout);
+      System.setErr(stderr);
+    }
+  }
+
+  /**
+   * Entry point for "j2objc --daemon &lt;port&gt;".
+   */
+  static void main(String[] args) {
+    if (args.length != 2) {
+      Options.usage("--daemon requires a port number");
+    }
+    try {
+      int port = Integer.parseInt(args[1]);
+      new TranslationDaemon(port, getDefaultTokenFile(port)).serve();
+    } catch (NumberFormatException e) {
+      Options.usage("invalid --daemon port: " + args[1]);
+    } catch (IOException e) {
+      J2ObjC.error(e);
+    }
+  }
+}
@@ -14,9 +14,11 @@
 
 package com.google.devtools.j2objc.gen;
 
+import com.google.common.base.Charsets;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.devtools.j2objc.types.GeneratedMethodBinding;
 import com.google.devtools.j2objc.types.Types;
 import com.google.devtools.j2objc.util.ASTUtil;
@@ -34,25 +36,83 @@ import org.eclipse.jdt.core.dom.VariableDeclarationFragment;
 
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 /**
- * Generates the "__metadata" method for a class.
+ * Generates the "__metadata" method for a class, or its "__compactMetadata"
+ * method, whose strings are offsets in a pool shared by the classes of a
+ * source file.
  *
  * @author Tom Ball, Keith Stanger
  */
 public class MetadataGenerator {
 
+  /**
+   * The strings of a source file's compact metadata. Each string is stored
+   * once, and referenced by its offset in the pool; offset 0 is NULL.
+   */
+  public static class StringPool {
+    private final String name;
+    private final Map<String, Integer> offsets = Maps.newLinkedHashMap();
+    private int size = 1;
+
+    public StringPool(String name) {
+      this.name = name;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public int add(String s) {
+      if (s == null) {
+        return 0;
+      }
+      Integer offset = offsets.get(s);
+      if (offset == null) {
+        offset = size;
+        offsets.put(s, offset);
+        size += s.getBytes(Charsets.UTF_8).length + 1;
+      }
+      return offset;
+    }
+
+    /**
+     * Returns the pool's C declaration, with a literal for each string so
+     * that no NUL escape is followed by a digit.
+     */
+    public String getDeclaration() {
+      StringBuilder sb = new StringBuilder();
+      sb.append(String.format("static const char %s[] =\n  \"\\0\"", name));
+      for (String s : offsets.keySet()) {
+        sb.append(String.format("\n  \"%s\\0\"", s));
+      }
+      sb.append(";\n");
+      return sb.toString();
+    }
+  }
+
   private final StringBuilder builder;
   private final AbstractTypeDeclaration typeNode;
   private final ITypeBinding type;
+  private final StringPool strings;
   private boolean generated = false;
   private int methodMetadataCount = 0;
   private int fieldMetadataCount = 0;
 
   public MetadataGenerator(AbstractTypeDeclaration typeNode) {
+    this(typeNode, null);
+  }
+
+  /**
+   * Creates a generator for a class's metadata, which is compact if a string
+   * pool is specified.
+   */
+  public MetadataGenerator(AbstractTypeDeclaration typeNode, StringPool strings) {
     this.builder = new StringBuilder();
     this.typeNode = Preconditions.checkNotNull(typeNode);
     this.type = Types.getTypeBinding(typeNode);
+    this.strings = strings;
   }
 
   public String getMetadataSource() {
@@ -69,19 +129,23 @@ public class MetadataGenerator {
 
   private void generateMetadata() {
     String fullName = NameTable.getFullName(type);
-    println("+ (J2ObjcClassInfo *)__metadata {");
+    if (strings != null) {
+      println("+ (J2ObjcCompactClassInfo *)__compactMetadata {");
+    } else {
+      println("+ (J2ObjcClassInfo *)__metadata {");
+    }
     generateMethodsMetadata();
     generateFieldsMetadata();
     int superclassTypeArgsSize = printSuperclassTypeArguments();
-    printf("  static J2ObjcClassInfo _%s = { ", fullName);
-    printf("\"%s\", ", type.getName());
-    String pkgName = type.getPackage().getName();
-    if (Strings.isNullOrEmpty(pkgName)) {
-      printf("NULL, ");
+    if (strings != null) {
+      printf("  static J2ObjcCompactClassInfo _%s = { %s, ", fullName, strings.getName());
     } else {
-      printf("\"%s\", ", pkgName);
+      printf("  static J2ObjcClassInfo _%s = { ", fullName);
     }
-    printf("%s, ", getEnclosingName());
+    printf("%s, ", str(type.getName()));
+    String pkgName = type.getPackage().getName();
+    printf("%s, ", str(Strings.isNullOrEmpty(pkgName) ? null : pkgName));
+    printf("%s, ", str(getEnclosingName()));
     printf("0x%s, ", Integer.toHexString(getTypeModifiers()));
     printf("%s, ", Integer.toString(methodMetadataCount));
     print(methodMetadataCount > 0 ? "methods, " : "NULL, ");
@@ -96,9 +160,9 @@ public class MetadataGenerator {
   private String getEnclosingName() {
     ITypeBinding declaringType = type.getDeclaringClass();
     if (declaringType == null) {
-      return "NULL";
+      return null;
     }
-    StringBuilder sb = new StringBuilder("\"");
+    StringBuilder sb = new StringBuilder();
     List<String> types = Lists.newArrayList();
     while (declaringType != null) {
       types.add(declaringType.getName());
@@ -110,7 +174,6 @@ public class MetadataGenerator {
         sb.append("$");
       }
     }
-    sb.append("\"");
     return sb.toString();
   }
 
@@ -123,7 +186,8 @@ public class MetadataGenerator {
       }
     }
     if (methodMetadata.size() > 0) {
-      builder.append("  static J2ObjcMethodInfo methods[] = {\n");
+      builder.append(strings != null ? "  static const J2ObjcCompactMethodInfo methods[] = {\n"
+          : "  static J2ObjcMethodInfo methods[] = {\n");
       for (String metadata : methodMetadata) {
         builder.append(metadata);
       }
@@ -146,15 +210,14 @@ public class MetadataGenerator {
             // Don't print Java name if it matches the default pattern, to conserve space.
             javaName = null;
           }
-          String metadata = String.format("    { \"%s\", ", objcName);
-          metadata += javaName != null ? String.format("\"%s\", ", javaName) : "NULL, ";
-          metadata +=
-              String.format("0x%x, \"%s\" },\n", modifiers, getTypeName(Types.getTypeBinding(f)));
+          String metadata = String.format("    { %s, %s, 0x%x, %s },\n", str(objcName),
+              str(javaName), modifiers, str(getTypeName(Types.getTypeBinding(f))));
           fieldMetadata.add(metadata);
         }
       }
       if (fieldMetadata.size() > 0) {
-        builder.append("  static J2ObjcFieldInfo fields[] = {\n");
+        builder.append(strings != null ? "  static const J2ObjcCompactFieldInfo fields[] = {\n"
+            : "  static J2ObjcFieldInfo fields[] = {\n");
         for (String metadata : fieldMetadata) {
           builder.append(metadata);
         }
@@ -177,9 +240,9 @@ public class MetadataGenerator {
 
     int modifiers = getMethodModifiers(method);
     String returnTypeStr = method.isConstructor() ? null : getTypeName(method.getReturnType());
-    return String.format("    { \"%s\", %s, %s, 0x%x, %s },\n",
-        selector, cStr(methodName), cStr(returnTypeStr), modifiers,
-        cStr(getThrownExceptions(method)));
+    return String.format("    { %s, %s, %s, 0x%x, %s },\n",
+        str(selector), str(methodName), str(returnTypeStr), modifiers,
+        str(getThrownExceptions(method)));
   }
 
   private String getThrownExceptions(IMethodBinding method) {
@@ -203,12 +266,13 @@ public class MetadataGenerator {
     if (typeArgs.length == 0) {
       return 0;
     }
-    print("  static const char *superclass_type_args[] = {");
+    print(strings != null ? "  static const uint32_t superclass_type_args[] = {"
+        : "  static const char *superclass_type_args[] = {");
     for (int i = 0; i < typeArgs.length; i++) {
       if (i != 0) {
         print(", ");
       }
-      printf("\"%s\"", getTypeName(typeArgs[i]));
+      print(str(getTypeName(typeArgs[i])));
     }
     println("};");
     return typeArgs.length;
@@ -278,7 +342,11 @@ public class MetadataGenerator {
     return modifiers;
   }
 
-  private String cStr(String s) {
+  // Returns a string as a C string literal, or as its offset in the pool.
+  private String str(String s) {
+    if (strings != null) {
+      return Integer.toString(strings.add(s));
+    }
     return s == null ? "NULL" : "\"" + s + "\"";
   }
 
@@ -21,6 +21,7 @@ import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 import com.google.devtools.j2objc.J2ObjC;
 import com.google.devtools.j2objc.Options;
+import com.google.devtools.j2objc.translate.DeadCodeEliminator;
 import com.google.devtools.j2objc.types.HeaderImportCollector;
 import com.google.devtools.j2objc.types.IOSMethod;
 import com.google.devtools.j2objc.types.Import;
@@ -28,7 +29,7 @@ import com.google.devtools.j2objc.types.Types;
 import com.google.devtools.j2objc.util.ASTUtil;
 import com.google.devtools.j2objc.util.BindingUtil;
 import com.google.devtools.j2objc.util.NameTable;
-import com.google.devtools.j2objc.util.UnicodeUtils;
+import com.google.devtools.j2objc.util.TranslationStatistics;
 
 import org.eclipse.jdt.core.dom.ASTVisitor;
 import org.eclipse.jdt.core.dom.AbstractTypeDeclaration;
@@ -156,6 +157,7 @@ public class ObjectiveCHeaderGenerator extends ObjectiveCSourceFileGenerator {
     println("@end");
     if (!isInterface) {
       printFieldSetters(binding, fields);
+      printExportedFunctions(methods);
     }
 
     if (isInterface) {
@@ -338,6 +340,25 @@ public class ObjectiveCHeaderGenerator extends ObjectiveCSourceFileGenerator {
     printMethods(methods);
     println("@end");
     printFieldSetters(enumType, fields);
+    printExportedFunctions(methods);
+  }
+
+  /**
+   * Declares the C functions implementing methods that callers in other
+   * compilation units invoke directly.
+   */
+  private void printExportedFunctions(List<MethodDeclaration> methods) {
+    boolean declarationPrinted = false;
+    for (MethodDeclaration m : methods) {
+      if (Types.isFunctionizedMethod(Types.getMethodBinding(m))
+          && Types.isExportedFunction(Types.getMethodBinding(m))) {
+        if (!declarationPrinted) {
+          newline();
+          declarationPrinted = true;
+        }
+        printf("FOUNDATION_EXPORT %s;\n", functionSignature(m));
+      }
+    }
   }
 
   @Override
@@ -443,15 +464,28 @@ public class ObjectiveCHeaderGenerator extends ObjectiveCSourceFileGenerator {
 
     // Print collected includes.
     Set<Import> superTypes = collector.getSuperTypes();
-    if (!superTypes.isEmpty()) {
-      Set<String> includeStmts = Sets.newTreeSet();
-      for (Import imp : superTypes) {
-        includeStmts.add(String.format("#include \"%s.h\"", imp.getImportFileName()));
-      }
-      for (String stmt : includeStmts) {
-        println(stmt);
-      }
+    Set<String> includeStmts = Sets.newTreeSet();
+    for (Import imp : superTypes) {
+      includeStmts.add(String.format("#include \"%s.h\"", imp.getImportFileName()));
     }
+    for (String stmt : includeStmts) {
+      println(stmt);
+    }
+    recordIncludeFanOut(collector, includeStmts.size());
+  }
+
+  /**
+   * Records a header's include fan-out for --timing-report: the headers it
+   * includes and forward declares, the includes left out because another
+   * included header includes them, and the size of its include closure.
+   */
+  protected static void recordIncludeFanOut(HeaderImportCollector collector, int includes) {
+    TranslationStatistics.add("header_includes", includes);
+    TranslationStatistics.add("header_includes_removed",
+        collector.getIndirectSuperTypes().size());
+    TranslationStatistics.add("header_forward_declarations",
+        collector.getForwardDeclarations().size());
+    TranslationStatistics.add("header_include_closure", collector.getIncludeClosure().size());
   }
 
   protected String createForwardDeclaration(String typeName, boolean isInterface) {
@@ -599,63 +633,11 @@ public class ObjectiveCHeaderGenerator extends ObjectiveCSourceFileGenerator {
     ITypeBinding type = Types.getTypeBinding(node);
     boolean hadConstant = false;
     for (IVariableBinding field : type.getDeclaredFields()) {
-      if (BindingUtil.isPrimitiveConstant(field)) {
+      if (BindingUtil.isPrimitiveConstant(field) && !DeadCodeEliminator.isDeadConstant(field)) {
         printf("#define %s ", NameTable.getPrimitiveConstantName(field));
         Object value = field.getConstantValue();
         assert value != null;
-        if (value instanceof Boolean) {
-          println(((Boolean) value).booleanValue() ? "TRUE" : "FALSE");
-        } else if (value instanceof Character) {
-          println(UnicodeUtils.escapeCharLiteral(((Character) value).charValue()));
-        } else if (value instanceof Long) {
-          long l = ((Long) value).longValue();
-          if (l == Long.MIN_VALUE) {
-            println("((long long) 0x8000000000000000LL)");
-          } else {
-            println(value.toString() + "LL");
-          }
-        } else if (value instanceof Integer) {
-          long l = ((Integer) value).intValue();
-          if (l == Integer.MIN_VALUE) {
-            println("((int) 0x80000000)");
-          } else {
-            println(value.toString());
-          }
-        } else if (value instanceof Float) {
-          float f = ((Float) value).floatValue();
-          if (Float.isNaN(f)) {
-            println("NAN");
-          } else if (f == Float.POSITIVE_INFINITY) {
-            println("INFINITY");
-          } else if (f == Float.NEGATIVE_INFINITY) {
-            // FP representations are symmetrical.
-            println("-INFINITY");
-          } else if (f == Float.MAX_VALUE) {
-            println("__FLT_MAX__");
-          } else if (f == Float.MIN_NORMAL) {
-            println("__FLT_MIN__");
-          } else {
-            println(value.toString() + "f");
-          }
-        } else if (value instanceof Double) {
-          double d = ((Double) value).doubleValue();
-          if (Double.isNaN(d)) {
-            println("NAN");
-          } else if (d == Double.POSITIVE_INFINITY) {
-            println("INFINITY");
-          } else if (d == Double.NEGATIVE_INFINITY) {
-            // FP representations are symmetrical.
-            println("-INFINITY");
-          } else if (d == Double.MAX_VALUE) {
-            println("__DBL_MAX__");
-          } else if (d == Double.MIN_NORMAL) {
-            println("__DBL_MIN__");
-          } else {
-            println(value.toString());
-          }
-        } else {
-          println(value.toString());
-        }
+        println(StatementGenerator.generateConstantValue(value));
         hadConstant = true;
       }
     }
@@ -16,9 +16,11 @@
 
 package com.google.devtools.j2objc.gen;
 
+import com.google.common.base.Joiner;
 import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.ListMultimap;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import com.google.devtools.j2objc.J2ObjC;
 import com.google.devtools.j2objc.J2ObjC.Language;
@@ -66,6 +68,7 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -81,6 +84,7 @@ public class ObjectiveCImplementationGenerator extends ObjectiveCSourceFileGener
   private final Set<String> invokedConstructors = Sets.newHashSet();
   private final ListMultimap<AbstractTypeDeclaration, Comment> blockComments =
       ArrayListMultimap.create();
+  private final Map<AbstractTypeDeclaration, String> compactMetadata = Maps.newHashMap();
 
   /**
    * Generate an Objective-C implementation file for each type declared in a
@@ -114,6 +118,8 @@ public class ObjectiveCImplementationGenerator extends ObjectiveCSourceFileGener
       printStart(getSourceFileName());
       printImports(unit);
       pushIgnoreDeprecatedDeclarationsPragma();
+      printFunctionDeclarations(typesToGenerate);
+      printMetadataStrings(typesToGenerate);
       for (AbstractTypeDeclaration type : typesToGenerate) {
         generate(type);
       }
@@ -126,6 +132,9 @@ public class ObjectiveCImplementationGenerator extends ObjectiveCSourceFileGener
       }
     }
     save(unit);
+    if (Options.unityBuild()) {
+      UnityFileGenerator.addImplementation(getOutputFileName(unit));
+    }
   }
 
   private List<AbstractTypeDeclaration> collectTypes(CompilationUnit unit) {
@@ -561,6 +570,7 @@ public class ObjectiveCImplementationGenerator extends ObjectiveCSourceFileGener
       printf("static %s *%s;\n", typeName, NameTable.getStaticVarQualifiedName(var));
     }
     printf("IOSObjectArray *%s_values;\n", typeName);
+    printf("static NSDictionary *%s_namesToValues;\n", typeName);
     newline();
 
     printf("@implementation %s\n\n", typeName);
@@ -607,6 +617,16 @@ public class ObjectiveCImplementationGenerator extends ObjectiveCSourceFileGener
     }
     printf("nil } count:%d type:[IOSClass classWithClass:[%s class]]];\n",
         constants.size(), typeName);
+    // The constants by name, so valueOf doesn't compare each one's name.
+    printf("    %s_namesToValues = [[NSDictionary alloc] initWithObjects:(id[]){ ", typeName);
+    for (EnumConstantDeclaration constant : constants) {
+      printf("%s_%s, ", typeName, NameTable.getName(constant.getName()));
+    }
+    print("nil } forKeys:(id[]){ ");
+    for (EnumConstantDeclaration constant : constants) {
+      printf("@\"%s\", ", NameTable.getName(constant.getName()));
+    }
+    printf("nil } count:%d];\n", constants.size());
     if (initializeMethod != null) {
       for (Statement s : ASTUtil.getStatements(initializeMethod.getBody())) {
         printf("    %s", StatementGenerator.generate(s, fieldHiders, false,
@@ -620,11 +640,9 @@ public class ObjectiveCImplementationGenerator extends ObjectiveCSourceFileGener
     printf("  return [IOSObjectArray arrayWithArray:%s_values];\n", typeName);
     println("}\n");
     printf("+ (%s *)valueOfWithNSString:(NSString *)name {\n", typeName);
-    printf("  for (int i = 0; i < [%s_values count]; i++) {\n", typeName);
-    printf("    %s *e = %s_values->buffer_[i];\n", typeName, typeName);
-    printf("    if ([name isEqual:[e name]]) {\n");
-    printf("      return e;\n");
-    printf("    }\n");
+    printf("  %s *e = [%s_namesToValues objectForKey:name];\n", typeName, typeName);
+    printf("  if (e) {\n");
+    printf("    return e;\n");
     printf("  }\n");
     if (Options.useReferenceCounting()) {
       printf("  @throw [[[JavaLangIllegalArgumentException alloc] initWithNSString:name]"
@@ -645,7 +663,7 @@ public class ObjectiveCImplementationGenerator extends ObjectiveCSourceFileGener
   @Override
   protected void printStaticFieldGetter(IVariableBinding var) {
     String name = BindingUtil.isPrimitiveConstant(var) ?
-        NameTable.getPrimitiveConstantName(var) :
+        StatementGenerator.generatePrimitiveConstant(var) :
         NameTable.getStaticVarQualifiedName(var);
     printf("%s {\n  return %s;\n}\n\n", staticFieldGetterSignature(var), name);
   }
@@ -675,9 +693,55 @@ public class ObjectiveCImplementationGenerator extends ObjectiveCSourceFileGener
     if (methodBody == null) {
       return "";
     }
+    if (Types.isFunctionizedMethod(Types.getMethodBinding(m))) {
+      return functionizedMethodDeclaration(m, methodBody);
+    }
     return super.methodDeclaration(m) + " " + reindent(methodBody) + "\n\n";
   }
 
+  /**
+   * Prints the declarations of the C functions implementing methods, so that
+   * they can be called before they're defined.
+   */
+  private void printFunctionDeclarations(List<AbstractTypeDeclaration> types) {
+    Set<IVariableBinding> unitFieldHiders = fieldHiders;
+    boolean declarationPrinted = false;
+    for (AbstractTypeDeclaration type : types) {
+      if (type instanceof TypeDeclaration) {
+        fieldHiders = HiddenFieldDetector.getFieldNameConflicts(type);
+      }
+      for (MethodDeclaration m : ASTUtil.getMethodDeclarations(type)) {
+        if (Types.isFunctionizedMethod(Types.getMethodBinding(m))) {
+          printf("%s;\n", functionSignature(m));
+          declarationPrinted = true;
+        }
+      }
+      fieldHiders = unitFieldHiders;
+    }
+    if (declarationPrinted) {
+      newline();
+    }
+  }
+
+  /**
+   * Returns a method that forwards to the C function that implements it,
+   * followed by the function.
+   */
+  private String functionizedMethodDeclaration(MethodDeclaration m, String functionBody) {
+    IMethodBinding binding = Types.getMethodBinding(m);
+    List<String> args = Lists.newArrayList();
+    if (!BindingUtil.isStatic(binding)) {
+      args.add("self");
+    }
+    for (SingleVariableDeclaration param : ASTUtil.getParameters(m)) {
+      args.add(getParameterName(param));
+    }
+    return String.format("%s {\n  %s%s(%s);\n}\n\n%s %s\n\n",
+        super.methodDeclaration(m), Types.isVoidType(m.getReturnType2()) ? "" : "return ",
+        NameTable.getFunctionName(binding), Joiner.on(", ").join(args),
+        functionSignature(m), reindent(functionBody));
+  }
+
   private String generateNativeStub(MethodDeclaration m) {
     IMethodBinding binding = Types.getMethodBinding(m);
     String methodName = NameTable.getName(binding);
@@ -715,7 +779,8 @@ public class ObjectiveCImplementationGenerator extends ObjectiveCSourceFileGener
       return body + "}";
     } else {
       // generate a normal method body
-      methodBody = generateStatement(m.getBody(), false);
+      methodBody = generateStatement(m.getBody(),
+          Types.isFunctionizedMethod(Types.getMethodBinding(m)));
     }
 
     boolean isStatic = (m.getModifiers() & Modifier.STATIC) != 0;
@@ -1099,7 +1164,25 @@ public class ObjectiveCImplementationGenerator extends ObjectiveCSourceFileGener
     }
   }
 
+  /**
+   * Generates the compact metadata of all the types, and prints the pool of
+   * their strings before the types that refer to it.
+   */
+  private void printMetadataStrings(List<AbstractTypeDeclaration> types) {
+    if (Options.stripReflection() || !Options.compactReflection()) {
+      return;
+    }
+    MetadataGenerator.StringPool strings = new MetadataGenerator.StringPool(
+        NameTable.getFullName(types.get(0)) + "_metadataStrings");
+    for (AbstractTypeDeclaration type : types) {
+      compactMetadata.put(type, new MetadataGenerator(type, strings).getMetadataSource());
+    }
+    print(strings.getDeclaration());
+    newline();
+  }
+
   private void printMetadata(AbstractTypeDeclaration node) {
-    print(new MetadataGenerator(node).getMetadataSource());
+    String metadata = compactMetadata.get(node);
+    print(metadata != null ? metadata : new MetadataGenerator(node).getMetadataSource());
   }
 }
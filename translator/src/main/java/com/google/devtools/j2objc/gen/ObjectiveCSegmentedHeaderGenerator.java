@@ -100,6 +100,7 @@ public class ObjectiveCSegmentedHeaderGenerator extends ObjectiveCHeaderGenerato
     newline();
     printForwardDeclarations(collector.getForwardDeclarations());
 
+    int includes = 0;
     for (Import imp : collector.getSuperTypes()) {
       if (mainTypeName.equals(imp.getMainTypeName())) {
         continue;
@@ -108,7 +109,9 @@ public class ObjectiveCSegmentedHeaderGenerator extends ObjectiveCHeaderGenerato
       printf("#define %s_INCLUDE 1\n", imp.getTypeName());
       printf("#include \"%s.h\"\n", imp.getImportFileName());
       newline();
+      includes++;
     }
+    recordIncludeFanOut(collector, includes);
 
     super.generate(node);
     println("#endif");
@@ -16,6 +16,7 @@
 
 package com.google.devtools.j2objc.gen;
 
+import com.google.common.base.Joiner;
 import com.google.common.collect.Lists;
 import com.google.devtools.j2objc.Options;
 import com.google.devtools.j2objc.types.IOSMethod;
@@ -362,6 +363,26 @@ public abstract class ObjectiveCSourceFileGenerator extends SourceFileGenerator
     }
   }
 
+  /**
+   * Returns the signature of the C function implementing a method.
+   */
+  protected String functionSignature(MethodDeclaration m) {
+    IMethodBinding binding = Types.getMethodBinding(m);
+    List<String> params = Lists.newArrayList();
+    if (!BindingUtil.isStatic(binding)) {
+      params.add(NameTable.getFullName(binding.getDeclaringClass()) + " *self");
+    }
+    for (SingleVariableDeclaration param : ASTUtil.getParameters(m)) {
+      String type = NameTable.getSpecificObjCType(Types.getTypeBinding(param));
+      params.add(type + (type.endsWith("*") ? "" : " ") + getParameterName(param));
+    }
+    String returnType = NameTable.getObjCType(binding.getReturnType());
+    // Exported functions are declared by the header.
+    return String.format("%s%s%s%s(%s)", Types.isExportedFunction(binding) ? "" : "static ",
+        returnType, returnType.endsWith("*") ? "" : " ", NameTable.getFunctionName(binding),
+        params.isEmpty() ? "void" : Joiner.on(", ").join(params));
+  }
+
   protected String getParameterName(SingleVariableDeclaration param) {
     String name = NameTable.getName(param.getName());
     if (NameTable.isReservedName(name)) {
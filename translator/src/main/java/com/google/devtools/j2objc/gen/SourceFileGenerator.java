@@ -29,6 +29,7 @@ import org.eclipse.jdt.core.dom.PackageDeclaration;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * This class handles common actions shared by the header, implementation, and
@@ -43,6 +44,9 @@ public abstract class SourceFileGenerator {
   private final String sourceFileName;
   private final String source;
 
+  private static final AtomicInteger outputCount = new AtomicInteger();
+  private static final AtomicInteger changedOutputCount = new AtomicInteger();
+
   public SourceFileGenerator(String sourceFileName, String source, CompilationUnit unit, boolean emitLineDirectives) {
     builder = new SourceBuilder(unit, sourceFileName, source, emitLineDirectives);
     this.sourceFileName = sourceFileName;
@@ -60,13 +64,22 @@ public abstract class SourceFileGenerator {
    * Note: class names are still camel-cased to avoid name collisions.
    */
   protected String getOutputFileName(CompilationUnit node) {
+    return getOutputFileName(node, sourceFileName, getSuffix());
+  }
+
+  /**
+   * Returns the name a generated file with the specified suffix is saved as,
+   * relative to the output directory.
+   */
+  public static String getOutputFileName(
+      CompilationUnit node, String sourceFileName, String suffix) {
     String javaName = NameTable.getMainJavaName(node, sourceFileName);
     PackageDeclaration pkg = node.getPackage();
     if (Options.usePackageDirectories() || pkg == null) {
-      return javaName.replace('.', '/') + getSuffix();
+      return javaName.replace('.', '/') + suffix;
     } else {
       String pkgName = pkg.getName().getFullyQualifiedName();
-      return javaName.substring(pkgName.length() + 1) + getSuffix();
+      return javaName.substring(pkgName.length() + 1) + suffix;
     }
   }
 
@@ -148,7 +161,7 @@ public abstract class SourceFileGenerator {
         source += '\n';
       }
 
-      Files.write(source, outputFile, Options.getCharset());
+      writeOutputFile(outputFile, source);
     } catch (IOException e) {
       J2ObjC.error(e.getMessage());
     } finally {
@@ -156,6 +169,61 @@ public abstract class SourceFileGenerator {
     }
   }
 
+  /**
+   * Writes a generated file. With --write-if-changed, an existing file isn't
+   * rewritten if only its file header changed, so its modification time
+   * doesn't cause the files that import it to be recompiled.
+   */
+  public static void writeOutputFile(File outputFile, String source) throws IOException {
+    outputCount.incrementAndGet();
+    if (Options.writeIfChanged() && outputFile.exists()
+        && skipFileHeader(Files.toString(outputFile, Options.getCharset()))
+            .equals(skipFileHeader(source))) {
+      return;
+    }
+    changedOutputCount.incrementAndGet();
+    Files.write(source, outputFile, Options.getCharset());
+  }
+
+  /**
+   * Returns a generated file's text after its file header, which includes
+   * the generation date.
+   */
+  private static String skipFileHeader(String source) {
+    String header = Options.getFileHeader();
+    int index = 0;
+    for (int i = 0; i < header.length(); i++) {
+      if (header.charAt(i) == '\n') {
+        index = source.indexOf('\n', index) + 1;
+        if (index == 0) {
+          return source;
+        }
+      }
+    }
+    return source.substring(index);
+  }
+
+  /**
+   * Returns the number of files written by generators.
+   */
+  public static int getOutputCount() {
+    return outputCount.get();
+  }
+
+  /**
+   * Returns the number of files written by generators whose contents
+   * changed. This is less than the output count only with
+   * --write-if-changed.
+   */
+  public static int getChangedOutputCount() {
+    return changedOutputCount.get();
+  }
+
+  public static void resetOutputCounts() {
+    outputCount.set(0);
+    changedOutputCount.set(0);
+  }
+
   protected void print(String s) {
     builder.print(s);
   }
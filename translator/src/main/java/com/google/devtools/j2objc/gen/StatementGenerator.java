@@ -22,11 +22,13 @@ import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.devtools.j2objc.J2ObjC;
 import com.google.devtools.j2objc.Options;
+import com.google.devtools.j2objc.translate.DeadCodeEliminator;
 import com.google.devtools.j2objc.translate.DestructorGenerator;
 import com.google.devtools.j2objc.types.GeneratedMethodBinding;
 import com.google.devtools.j2objc.types.IOSMethod;
 import com.google.devtools.j2objc.types.IOSMethodBinding;
 import com.google.devtools.j2objc.types.IOSTypeBinding;
+import com.google.devtools.j2objc.types.PointerTypeBinding;
 import com.google.devtools.j2objc.types.Types;
 import com.google.devtools.j2objc.util.ASTNodeException;
 import com.google.devtools.j2objc.util.ASTUtil;
@@ -37,6 +39,7 @@ import com.google.devtools.j2objc.util.UnicodeUtils;
 
 import org.eclipse.jdt.core.dom.AST;
 import org.eclipse.jdt.core.dom.ASTNode;
+import org.eclipse.jdt.core.dom.AbstractTypeDeclaration;
 import org.eclipse.jdt.core.dom.AnonymousClassDeclaration;
 import org.eclipse.jdt.core.dom.ArrayAccess;
 import org.eclipse.jdt.core.dom.ArrayCreation;
@@ -88,6 +91,7 @@ import org.eclipse.jdt.core.dom.SimpleType;
 import org.eclipse.jdt.core.dom.SingleVariableDeclaration;
 import org.eclipse.jdt.core.dom.Statement;
 import org.eclipse.jdt.core.dom.StringLiteral;
+import org.eclipse.jdt.core.dom.StructuralPropertyDescriptor;
 import org.eclipse.jdt.core.dom.SuperConstructorInvocation;
 import org.eclipse.jdt.core.dom.SuperFieldAccess;
 import org.eclipse.jdt.core.dom.SuperMethodInvocation;
@@ -162,6 +166,77 @@ public class StatementGenerator extends ErrorReportingASTVisitor {
     return generator.getResult();
   }
 
+  /**
+   * Returns the Objective-C literal for a primitive constant's value.
+   */
+  public static String generateConstantValue(Object value) {
+    if (value instanceof Boolean) {
+      return ((Boolean) value).booleanValue() ? "TRUE" : "FALSE";
+    } else if (value instanceof Character) {
+      return UnicodeUtils.escapeCharLiteral(((Character) value).charValue());
+    } else if (value instanceof Long) {
+      long l = ((Long) value).longValue();
+      if (l == Long.MIN_VALUE) {
+        return "((long long) 0x8000000000000000LL)";
+      } else {
+        return value.toString() + "LL";
+      }
+    } else if (value instanceof Integer) {
+      long l = ((Integer) value).intValue();
+      if (l == Integer.MIN_VALUE) {
+        return "((int) 0x80000000)";
+      } else {
+        return value.toString();
+      }
+    } else if (value instanceof Float) {
+      float f = ((Float) value).floatValue();
+      if (Float.isNaN(f)) {
+        return "NAN";
+      } else if (f == Float.POSITIVE_INFINITY) {
+        return "INFINITY";
+      } else if (f == Float.NEGATIVE_INFINITY) {
+        // FP representations are symmetrical.
+        return "-INFINITY";
+      } else if (f == Float.MAX_VALUE) {
+        return "__FLT_MAX__";
+      } else if (f == Float.MIN_NORMAL) {
+        return "__FLT_MIN__";
+      } else {
+        return value.toString() + "f";
+      }
+    } else if (value instanceof Double) {
+      double d = ((Double) value).doubleValue();
+      if (Double.isNaN(d)) {
+        return "NAN";
+      } else if (d == Double.POSITIVE_INFINITY) {
+        return "INFINITY";
+      } else if (d == Double.NEGATIVE_INFINITY) {
+        // FP representations are symmetrical.
+        return "-INFINITY";
+      } else if (d == Double.MAX_VALUE) {
+        return "__DBL_MAX__";
+      } else if (d == Double.MIN_NORMAL) {
+        return "__DBL_MIN__";
+      } else {
+        return value.toString();
+      }
+    } else {
+      return value.toString();
+    }
+  }
+
+  /**
+   * Returns a reference to a primitive constant: its #define, or its value if
+   * the constant is dead and so has no #define.
+   */
+  static String generatePrimitiveConstant(IVariableBinding var) {
+    if (DeadCodeEliminator.isDeadConstant(var)) {
+      String value = generateConstantValue(var.getConstantValue());
+      return value.startsWith("-") ? "(" + value + ")" : value;
+    }
+    return NameTable.getPrimitiveConstantName(var);
+  }
+
   private StatementGenerator(ASTNode node, Set<IVariableBinding> fieldHiders, boolean asFunction,
                              SourcePosition sourcePosition) {
     CompilationUnit unit = null;
@@ -259,7 +334,20 @@ public class StatementGenerator extends ErrorReportingASTVisitor {
 
   @Override
   public boolean visit(ArrayAccess node) {
-    throw new AssertionError("ArrayAccess nodes are rewritten by ArrayRewriter.");
+    // ArrayRewriter only leaves accesses of an array's buffer.
+    if (!(Types.getTypeBinding(node.getArray()) instanceof PointerTypeBinding)) {
+      throw new AssertionError("ArrayAccess nodes are rewritten by ArrayRewriter.");
+    }
+    // An object array's buffer holds ids, which may need a cast.
+    boolean castPrinted = maybePrintCastFromId(node);
+    node.getArray().accept(this);
+    buffer.append('[');
+    node.getIndex().accept(this);
+    buffer.append(']');
+    if (castPrinted) {
+      buffer.append(')');
+    }
+    return false;
   }
 
   @Override
@@ -775,6 +863,10 @@ public class StatementGenerator extends ErrorReportingASTVisitor {
     // Copy all operands into a single list.
     List<Expression> operands = Lists.newArrayList(leftOperand, rightOperand);
     operands.addAll(extendedOperands);
+    if (Options.stringConcatFunction()) {
+      printStrcat(operands);
+      return;
+    }
     StringBuilder format = new StringBuilder();
 
     List<Expression> args = Lists.newArrayList();
@@ -868,6 +960,94 @@ public class StatementGenerator extends ErrorReportingASTVisitor {
     buffer.append(']');
   }
 
+  /**
+   * Prints a string concatenation as a call to the JreStrcat runtime
+   * function, which is passed a string with a type code for each following
+   * argument. Adjacent constant operands are folded into a single literal
+   * argument.
+   */
+  private void printStrcat(List<Expression> operands) {
+    // Each segment is either the folded text of constant operands, or an
+    // operand that is converted at runtime.
+    List<Object> segments = Lists.newArrayList();
+    StringBuilder constant = null;
+    for (Expression operand : operands) {
+      String value = getConstantString(operand);
+      if (value != null) {
+        if (constant == null) {
+          constant = new StringBuilder();
+          segments.add(constant);
+        }
+        constant.append(value);
+      } else {
+        segments.add(operand);
+        constant = null;
+      }
+    }
+    if (segments.size() == 1 && constant != null) {
+      buffer.append(generateStringLiteral(constant.toString()));
+      return;
+    }
+
+    StringBuilder types = new StringBuilder();
+    for (Object segment : segments) {
+      if (segment instanceof Expression) {
+        ITypeBinding type = Types.getTypeBinding(segment);
+        if (type.isPrimitive()) {
+          types.append(type.getBinaryName());
+        } else {
+          types.append(Types.isJavaStringType(type) || type == Types.getNSString() ? '$' : '@');
+        }
+      } else {
+        types.append(isAsciiText(segment.toString()) ? '*' : '$');
+      }
+    }
+    buffer.append("JreStrcat(\"").append(types.toString()).append('"');
+    for (Object segment : segments) {
+      buffer.append(", ");
+      if (segment instanceof Expression) {
+        ((Expression) segment).accept(this);
+      } else if (isAsciiText(segment.toString())) {
+        // Split trigraphs, as visit(StringLiteral) does.
+        buffer.append('"').append(UnicodeUtils.escapeStringLiteral(segment.toString())
+            .replace("??", "?\" \"?")).append('"');
+      } else {
+        buffer.append(generateStringLiteral(segment.toString()));
+      }
+    }
+    buffer.append(')');
+  }
+
+  /**
+   * Returns the string conversion of a constant operand, or null if the
+   * operand isn't constant.
+   */
+  private static String getConstantString(Expression operand) {
+    if (operand instanceof NullLiteral) {
+      return "null";
+    }
+    IBinding binding = Types.getBinding(operand);
+    Object value = null;
+    if (binding instanceof IVariableBinding) {
+      value = ((IVariableBinding) binding).getVariableDeclaration().getConstantValue();
+    }
+    if (value == null) {
+      value = operand.resolveConstantExpressionValue();
+    }
+    return value != null ? String.valueOf(value) : null;
+  }
+
+  // Returns true if text can be passed to JreStrcat as a C string.
+  private static boolean isAsciiText(String s) {
+    for (int i = 0; i < s.length(); i++) {
+      char c = s.charAt(i);
+      if ((c < 0x20 || c > 0x7E) && c != '\n' && c != '\t') {
+        return false;
+      }
+    }
+    return true;
+  }
+
   private void printStringConcatenationArg(Expression arg) {
     if (Types.getTypeBinding(arg).isEqualTo(arg.getAST().resolveWellKnownType("boolean"))) {
       buffer.append("[JavaLangBoolean toStringWithBoolean:");
@@ -969,7 +1149,11 @@ public class StatementGenerator extends ErrorReportingASTVisitor {
           buffer.append("((int) ");
           castPrinted = true;
         }
-        printMethodInvocation(binding, methodName, receiver, ASTUtil.getArguments(node));
+        if (callsFunction(node, binding)) {
+          printFunctionCall(binding, receiver, ASTUtil.getArguments(node));
+        } else {
+          printMethodInvocation(binding, methodName, receiver, ASTUtil.getArguments(node));
+        }
       }
       if (castPrinted) {
         buffer.append(')');
@@ -1010,6 +1194,53 @@ public class StatementGenerator extends ErrorReportingASTVisitor {
     buffer.append(')');
   }
 
+  /**
+   * Returns true if a method is implemented by a C function that can be
+   * called directly. Static methods' functions are only called from their
+   * own class, which has already been initialized.
+   */
+  private static boolean callsFunction(MethodInvocation node, IMethodBinding method) {
+    if (!Types.isFunctionizedMethod(method)) {
+      return Types.isExportedFunction(method);
+    }
+    if (BindingUtil.isStatic(method)) {
+      AbstractTypeDeclaration owner = ASTUtil.getOwningType(node);
+      return owner != null && Types.getTypeBinding(owner).getTypeDeclaration().isEqualTo(
+          method.getDeclaringClass().getTypeDeclaration());
+    }
+    return true;
+  }
+
+  private void printFunctionCall(
+      IMethodBinding method, Expression receiver, List<Expression> args) {
+    buffer.append(NameTable.getFunctionName(method));
+    buffer.append('(');
+    boolean isFirst = true;
+    if (!BindingUtil.isStatic(method)) {
+      if (receiver != null) {
+        boolean hasNilCheck = Types.hasNilCheck(receiver);
+        if (hasNilCheck) {
+          buffer.append("nil_chk(");
+        }
+        receiver.accept(this);
+        if (hasNilCheck) {
+          buffer.append(')');
+        }
+      } else {
+        buffer.append("self");
+      }
+      isFirst = false;
+    }
+    for (Expression arg : args) {
+      if (!isFirst) {
+        buffer.append(", ");
+      }
+      isFirst = false;
+      arg.accept(this);
+    }
+    buffer.append(')');
+  }
+
   private void printMethodInvocation(
       IMethodBinding binding, String methodName, Expression receiver, List<Expression> args) {
     buffer.append('[');
@@ -1240,7 +1471,7 @@ public class StatementGenerator extends ErrorReportingASTVisitor {
     if (binding instanceof IVariableBinding) {
       IVariableBinding var = (IVariableBinding) binding;
       if (BindingUtil.isPrimitiveConstant(var)) {
-        buffer.append(NameTable.getPrimitiveConstantName(var));
+        buffer.append(generatePrimitiveConstant(var));
         return false;
       } else if (BindingUtil.isStatic(var)) {
         buffer.append(NameTable.getStaticVarQualifiedName(var));
@@ -1305,10 +1536,14 @@ public class StatementGenerator extends ErrorReportingASTVisitor {
     if (binding instanceof IVariableBinding) {
       IVariableBinding var = (IVariableBinding) binding;
       if (BindingUtil.isPrimitiveConstant(var)) {
-        buffer.append(NameTable.getPrimitiveConstantName(var));
+        buffer.append(generatePrimitiveConstant(var));
       } else if (BindingUtil.isStatic(var)) {
         buffer.append(NameTable.getStaticVarQualifiedName(var));
       } else if (var.isField()) {
+        if (asFunction && !isQualifiedName(node)) {
+          // Functions have no implicit self.
+          buffer.append("self->");
+        }
         buffer.append(NameTable.javaFieldToObjC(NameTable.getName(var)));
       } else {
         String name = NameTable.getName(var);
@@ -1331,6 +1566,12 @@ public class StatementGenerator extends ErrorReportingASTVisitor {
     return false;
   }
 
+  private static boolean isQualifiedName(SimpleName node) {
+    StructuralPropertyDescriptor location = node.getLocationInParent();
+    return location == QualifiedName.NAME_PROPERTY || location == FieldAccess.NAME_PROPERTY
+        || location == SuperFieldAccess.NAME_PROPERTY;
+  }
+
   @Override
   public boolean visit(SimpleType node) {
     ITypeBinding binding = Types.getTypeBinding(node);
@@ -1381,10 +1622,14 @@ public class StatementGenerator extends ErrorReportingASTVisitor {
   }
 
   public static String generateStringLiteral(StringLiteral node) {
-    if (UnicodeUtils.hasValidCppCharacters(node.getLiteralValue())) {
-      return "@\"" + UnicodeUtils.escapeStringLiteral(node.getLiteralValue()) + "\"";
+    return generateStringLiteral(node.getLiteralValue());
+  }
+
+  private static String generateStringLiteral(String s) {
+    if (UnicodeUtils.hasValidCppCharacters(s)) {
+      return "@\"" + UnicodeUtils.escapeStringLiteral(s) + "\"";
     } else {
-      return buildStringFromChars(node.getLiteralValue());
+      return buildStringFromChars(s);
     }
   }
 
@@ -1426,6 +1671,9 @@ public class StatementGenerator extends ErrorReportingASTVisitor {
 
   @Override
   public boolean visit(SuperFieldAccess node) {
+    if (asFunction) {
+      buffer.append("self->");
+    }
     buffer.append(NameTable.javaFieldToObjC(NameTable.getName(node.getName())));
     return false;
   }
@@ -1513,13 +1761,7 @@ public class StatementGenerator extends ErrorReportingASTVisitor {
       return false;
     }
     buffer.append("switch (");
-    if (exprType.isEnum()) {
-      buffer.append('[');
-    }
     expr.accept(this);
-    if (exprType.isEnum()) {
-      buffer.append(" ordinal]");
-    }
     buffer.append(") ");
     buffer.append("{\n");
     List<Statement> stmts = ASTUtil.getStatements(node);
@@ -1539,7 +1781,7 @@ public class StatementGenerator extends ErrorReportingASTVisitor {
   private void printStringSwitchStatement(SwitchStatement node) {
     buffer.append("{\n");
 
-    // Define an array of all the string constant case values.
+    // Collect all the string constant case values.
     List<String> caseValues = Lists.newArrayList();
     List<Statement> stmts = ASTUtil.getStatements(node);
     for (Statement stmt : stmts) {
@@ -1551,18 +1793,24 @@ public class StatementGenerator extends ErrorReportingASTVisitor {
         }
       }
     }
+    // Map each case value to its index in a dictionary that is built once per
+    // switch statement, so that a dispatch is a single hashed lookup.
     buffer.syncLineNumbers(node);
-    buffer.append("NSArray *__caseValues = [NSArray arrayWithObjects:");
-    for (String value : caseValues) {
-      buffer.append("@" + value + ", ");
+    buffer.append("static NSDictionary *__caseIndexes;\n");
+    buffer.append("static dispatch_once_t __caseIndexesOnce;\n");
+    buffer.append("dispatch_once(&__caseIndexesOnce, ^{\n");
+    buffer.append("__caseIndexes = [[NSDictionary alloc] initWithObjectsAndKeys:");
+    for (int i = 0; i < caseValues.size(); i++) {
+      buffer.append("[NSNumber numberWithInt:" + i + "], @" + caseValues.get(i) + ", ");
     }
     buffer.append("nil];\n");
+    buffer.append("});\n");
     buffer.syncLineNumbers(node);
-    buffer.append("NSUInteger __index = [__caseValues indexOfObject:");
+    buffer.append("NSNumber *__index = [__caseIndexes objectForKey:");
     node.getExpression().accept(this);
     buffer.append("];\n");
     buffer.syncLineNumbers(node);
-    buffer.append("switch (__index) {\n");
+    buffer.append("switch (__index ? [__index intValue] : -1) {\n");
     for (Statement stmt : stmts) {
       buffer.syncLineNumbers(stmt);
       if (stmt instanceof SwitchCase) {
@@ -0,0 +1,152 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.devtools.j2objc.gen;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Multimaps;
+import com.google.common.collect.Sets;
+import com.google.common.collect.SortedSetMultimap;
+import com.google.common.collect.TreeMultimap;
+import com.google.common.io.Files;
+import com.google.devtools.j2objc.J2ObjC;
+import com.google.devtools.j2objc.Options;
+import com.google.devtools.j2objc.util.NameTable;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+
+/**
+ * Generates the unity files of a unity build. Each one includes the
+ * implementation files that were generated in an output directory, which is
+ * a package's directory unless --no-package-directories is specified, and is
+ * compiled instead of them. Clang then parses the headers those files share
+ * once per unity file rather than once per file.
+ *
+ * The generated statics and functions of a class are prefixed with its name,
+ * so they don't collide when several implementation files are compiled
+ * together. Headers are still generated per source file.
+ */
+public class UnityFileGenerator {
+
+  private static final String UNITY_SUFFIX = "+Unity";
+  private static final String INCLUDE_PREFIX = "#include \"";
+
+  // Implementation file names, by output directory relative to the output
+  // root. Files are added by the threads translating them.
+  private static final SortedSetMultimap<String, String> implementations =
+      Multimaps.synchronizedSortedSetMultimap(TreeMultimap.<String, String>create());
+
+  /**
+   * Adds an implementation file, given its path relative to the output
+   * directory.
+   */
+  public static void addImplementation(String path) {
+    int slash = path.lastIndexOf('/');
+    implementations.put(slash < 0 ? "" : path.substring(0, slash), path.substring(slash + 1));
+  }
+
+  /**
+   * Writes the unity files of the output directories that implementation
+   * files were added to since the last reset. Since an incremental build
+   * translates just the changed sources, each also includes the files its
+   * directory's previous unity files included, if they still exist; other
+   * files in the directory, such as hand-written ones, aren't included.
+   * Files are included in name order, so that an unchanged set of sources
+   * generates identical unity files, and numbered unity files left over
+   * from a run that needed more of them are deleted.
+   */
+  public static void generate() throws IOException {
+    synchronized (implementations) {
+      for (Map.Entry<String, Collection<String>> entry : implementations.asMap().entrySet()) {
+        String dir = entry.getKey();
+        SortedSet<String> fileSet = Sets.newTreeSet(entry.getValue());
+        fileSet.addAll(listIncludedImplementations(dir));
+        List<String> files = Lists.newArrayList(fileSet);
+        int max = Options.unityBuildMaximum();
+        List<List<String>> parts =
+            max > 0 ? Lists.partition(files, max) : Collections.singletonList(files);
+        for (int i = 0; i < parts.size(); i++) {
+          writeUnityFile(dir, i + 1, parts.get(i));
+        }
+        for (int i = parts.size() + 1; ; i++) {
+          File staleFile = new File(Options.getOutputDirectory(), getUnityFileName(dir, i));
+          if (!staleFile.exists()) {
+            break;
+          }
+          if (!staleFile.delete()) {
+            throw new IOException("can't delete " + staleFile.getPath());
+          }
+        }
+      }
+    }
+  }
+
+  // Returns the existing implementation files that an output directory's
+  // unity files include, which were generated by this or earlier runs.
+  private static List<String> listIncludedImplementations(String dir) throws IOException {
+    File outputDir =
+        dir.isEmpty() ? Options.getOutputDirectory() : new File(Options.getOutputDirectory(), dir);
+    List<String> files = Lists.newArrayList();
+    for (int i = 1; ; i++) {
+      File unityFile = new File(Options.getOutputDirectory(), getUnityFileName(dir, i));
+      if (!unityFile.exists()) {
+        break;
+      }
+      for (String line : Files.readLines(unityFile, Options.getCharset())) {
+        if (line.startsWith(INCLUDE_PREFIX) && line.endsWith("\"")) {
+          String file = line.substring(INCLUDE_PREFIX.length(), line.length() - 1);
+          if (new File(outputDir, file).isFile()) {
+            files.add(file);
+          }
+        }
+      }
+    }
+    return files;
+  }
+
+  private static void writeUnityFile(String dir, int index, List<String> files)
+      throws IOException {
+    StringBuilder sb = new StringBuilder(J2ObjC.getFileHeader(dir.isEmpty() ? "." : dir));
+    sb.append('\n');
+    for (String file : files) {
+      sb.append(INCLUDE_PREFIX).append(file).append("\"\n");
+    }
+    File outputFile = new File(Options.getOutputDirectory(), getUnityFileName(dir, index));
+    Files.createParentDirs(outputFile);
+    SourceFileGenerator.writeOutputFile(outputFile, sb.toString());
+  }
+
+  /**
+   * Returns the name of an output directory's unity file, relative to the
+   * output root. A package directory's file is named after its package, such
+   * as com/foo/ComFoo+Unity.m; files after the first are numbered.
+   */
+  public static String getUnityFileName(String dir, int index) {
+    String name =
+        dir.isEmpty() ? "Default" : NameTable.camelCaseQualifiedName(dir.replace('/', '.'));
+    name += UNITY_SUFFIX + (index > 1 ? Integer.toString(index) : "")
+        + Options.getLanguage().getSuffix();
+    return dir.isEmpty() ? name : dir + '/' + name;
+  }
+
+  public static void reset() {
+    implementations.clear();
+  }
+}
@@ -17,7 +17,9 @@ package com.google.devtools.j2objc.translate;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import com.google.devtools.j2objc.types.GeneratedTypeBinding;
+import com.google.devtools.j2objc.types.GeneratedVariableBinding;
 import com.google.devtools.j2objc.types.IOSMethod;
 import com.google.devtools.j2objc.types.IOSMethodBinding;
 import com.google.devtools.j2objc.types.IOSTypeBinding;
@@ -26,6 +28,7 @@ import com.google.devtools.j2objc.types.PointerTypeBinding;
 import com.google.devtools.j2objc.types.Types;
 import com.google.devtools.j2objc.util.ASTUtil;
 import com.google.devtools.j2objc.util.ErrorReportingASTVisitor;
+import com.google.devtools.j2objc.util.TranslationStatistics;
 
 import org.eclipse.jdt.core.dom.AST;
 import org.eclipse.jdt.core.dom.ASTNode;
@@ -38,11 +41,16 @@ import org.eclipse.jdt.core.dom.ConstructorInvocation;
 import org.eclipse.jdt.core.dom.EnumConstantDeclaration;
 import org.eclipse.jdt.core.dom.Expression;
 import org.eclipse.jdt.core.dom.FieldAccess;
+import org.eclipse.jdt.core.dom.ForStatement;
 import org.eclipse.jdt.core.dom.IMethodBinding;
 import org.eclipse.jdt.core.dom.ITypeBinding;
+import org.eclipse.jdt.core.dom.IVariableBinding;
+import org.eclipse.jdt.core.dom.InfixExpression;
 import org.eclipse.jdt.core.dom.InstanceofExpression;
 import org.eclipse.jdt.core.dom.MethodInvocation;
 import org.eclipse.jdt.core.dom.Modifier;
+import org.eclipse.jdt.core.dom.NumberLiteral;
+import org.eclipse.jdt.core.dom.ParenthesizedExpression;
 import org.eclipse.jdt.core.dom.PostfixExpression;
 import org.eclipse.jdt.core.dom.PrefixExpression;
 import org.eclipse.jdt.core.dom.QualifiedName;
@@ -50,15 +58,22 @@ import org.eclipse.jdt.core.dom.SimpleName;
 import org.eclipse.jdt.core.dom.SuperConstructorInvocation;
 import org.eclipse.jdt.core.dom.SuperMethodInvocation;
 import org.eclipse.jdt.core.dom.TypeLiteral;
+import org.eclipse.jdt.core.dom.VariableDeclarationExpression;
+import org.eclipse.jdt.core.dom.VariableDeclarationFragment;
 
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * Rewrites array creation into a method invocation on an IOSArray class.
  * Must be run after JavaToIOSMethodTranslator because the varargs conversion
  * needs to know if the method is mapped.
  *
+ * Array accesses are rewritten into range-checked access functions, except
+ * where a counted loop's condition already keeps the index in bounds. Those
+ * access the array's buffer directly.
+ *
  * @author Keith Stanger
  */
 public class ArrayRewriter extends ErrorReportingASTVisitor {
@@ -306,6 +321,164 @@ public class ArrayRewriter extends ErrorReportingASTVisitor {
     return binding;
   }
 
+  // Accesses within counted loops whose indexes are known to be in bounds.
+  private final Set<ArrayAccess> inBoundsAccesses = Sets.newHashSet();
+
+  /**
+   * Finds the array accesses of a counted loop, such as
+   * "for (int i = 0; i < a.length; i++)", that index the loop's array with
+   * its counter. Each such index is checked by the loop condition, provided
+   * the counter starts at a non-negative literal, only the updater modifies
+   * it, and the array variable isn't assigned in the loop.
+   */
+  @Override
+  public boolean visit(ForStatement node) {
+    if (!(node.getExpression() instanceof InfixExpression)) {
+      return true;
+    }
+    InfixExpression condition = (InfixExpression) node.getExpression();
+    if (condition.getOperator() != InfixExpression.Operator.LESS
+        || condition.hasExtendedOperands()) {
+      return true;
+    }
+    final IVariableBinding counter = getVariable(condition.getLeftOperand());
+    final IVariableBinding array = getArrayLengthVariable(condition.getRightOperand());
+    if (counter == null || array == null
+        || array.isField() && !Modifier.isFinal(array.getModifiers())
+        || !hasNonNegativeInitializer(node, counter) || !isIncrement(node, counter)) {
+      return true;
+    }
+    Set<IVariableBinding> assignedVars = getAssignedVariables(node.getBody());
+    assignedVars.addAll(getAssignedVariables(condition));
+    if (assignedVars.contains(counter) || assignedVars.contains(array)) {
+      return true;
+    }
+    new ErrorReportingASTVisitor() {
+      @Override
+      public void endVisit(ArrayAccess access) {
+        if (array.equals(getVariable(access.getArray()))
+            && counter.equals(getVariable(access.getIndex()))) {
+          inBoundsAccesses.add(access);
+        }
+      }
+    }.run(node.getBody());
+    return true;
+  }
+
+  /**
+   * Returns the local variable or field a simple name refers to, looking
+   * through parentheses and nil_chk calls.
+   */
+  private static IVariableBinding getVariable(Expression expr) {
+    if (expr instanceof ParenthesizedExpression) {
+      return getVariable(((ParenthesizedExpression) expr).getExpression());
+    }
+    if (expr instanceof MethodInvocation) {
+      MethodInvocation invocation = (MethodInvocation) expr;
+      IMethodBinding method = Types.getMethodBinding(invocation);
+      List<Expression> args = ASTUtil.getArguments(invocation);
+      return method != null && method.getName().equals("nil_chk") && args.size() == 1
+          ? getVariable(args.get(0)) : null;
+    }
+    return expr instanceof SimpleName ? Types.getVariableBinding(expr) : null;
+  }
+
+  /**
+   * Returns the array variable of an "array.length" expression.
+   */
+  private static IVariableBinding getArrayLengthVariable(Expression expr) {
+    Expression array;
+    if (expr instanceof QualifiedName) {
+      QualifiedName name = (QualifiedName) expr;
+      if (!name.getName().getIdentifier().equals("length")) {
+        return null;
+      }
+      array = name.getQualifier();
+    } else if (expr instanceof FieldAccess) {
+      FieldAccess access = (FieldAccess) expr;
+      if (!access.getName().getIdentifier().equals("length")) {
+        return null;
+      }
+      array = access.getExpression();
+    } else {
+      return null;
+    }
+    IVariableBinding var = getVariable(array);
+    return var != null && var.getType().isArray() ? var : null;
+  }
+
+  private static boolean hasNonNegativeInitializer(ForStatement node, IVariableBinding counter) {
+    List<Expression> initializers = ASTUtil.getInitializers(node);
+    if (initializers.size() != 1
+        || !(initializers.get(0) instanceof VariableDeclarationExpression)) {
+      return false;
+    }
+    for (VariableDeclarationFragment fragment :
+         ASTUtil.getFragments((VariableDeclarationExpression) initializers.get(0))) {
+      if (counter.equals(Types.getVariableBinding(fragment))) {
+        Expression init = fragment.getInitializer();
+        if (!(init instanceof NumberLiteral) || !counter.getType().getName().equals("int")) {
+          return false;
+        }
+        try {
+          return Integer.decode(((NumberLiteral) init).getToken()) >= 0;
+        } catch (NumberFormatException e) {
+          return false;
+        }
+      }
+    }
+    return false;
+  }
+
+  private static boolean isIncrement(ForStatement node, IVariableBinding counter) {
+    List<Expression> updaters = ASTUtil.getUpdaters(node);
+    if (updaters.size() != 1) {
+      return false;
+    }
+    Expression updater = updaters.get(0);
+    if (updater instanceof PostfixExpression) {
+      PostfixExpression postfix = (PostfixExpression) updater;
+      return postfix.getOperator() == PostfixExpression.Operator.INCREMENT
+          && counter.equals(getVariable(postfix.getOperand()));
+    } else if (updater instanceof PrefixExpression) {
+      PrefixExpression prefix = (PrefixExpression) updater;
+      return prefix.getOperator() == PrefixExpression.Operator.INCREMENT
+          && counter.equals(getVariable(prefix.getOperand()));
+    } else if (updater instanceof Assignment) {
+      Assignment assignment = (Assignment) updater;
+      return assignment.getOperator() == Assignment.Operator.PLUS_ASSIGN
+          && counter.equals(getVariable(assignment.getLeftHandSide()))
+          && assignment.getRightHandSide() instanceof NumberLiteral
+          && ((NumberLiteral) assignment.getRightHandSide()).getToken().equals("1");
+    }
+    return false;
+  }
+
+  private static Set<IVariableBinding> getAssignedVariables(ASTNode node) {
+    final Set<IVariableBinding> vars = Sets.newHashSet();
+    new ErrorReportingASTVisitor() {
+      @Override
+      public void endVisit(Assignment assignment) {
+        vars.add(Types.getVariableBinding(assignment.getLeftHandSide()));
+      }
+
+      @Override
+      public void endVisit(PostfixExpression postfix) {
+        vars.add(Types.getVariableBinding(postfix.getOperand()));
+      }
+
+      @Override
+      public void endVisit(PrefixExpression prefix) {
+        PrefixExpression.Operator op = prefix.getOperator();
+        if (op == PrefixExpression.Operator.INCREMENT
+            || op == PrefixExpression.Operator.DECREMENT) {
+          vars.add(Types.getVariableBinding(prefix.getOperand()));
+        }
+      }
+    }.run(node);
+    return vars;
+  }
+
   @Override
   public void endVisit(ArrayAccess node) {
     AST ast = node.getAST();
@@ -315,6 +488,11 @@ public class ArrayRewriter extends ErrorReportingASTVisitor {
     IOSTypeBinding iosArrayBinding = Types.resolveArrayType(componentType);
 
     Assignment assignment = getArrayAssignment(node);
+    if (inBoundsAccesses.remove(node)
+        && (assignment == null || componentType.isPrimitive())) {
+      ASTUtil.setProperty(node, newBufferAccess(ast, node, componentType, iosArrayBinding));
+      return;
+    }
     if (assignment != null && !componentType.isPrimitive()) {
       assignment.getRightHandSide().accept(this);
       ASTUtil.setProperty(assignment, newArrayAssignment(ast, assignment, node, componentType));
@@ -378,6 +556,7 @@ public class ArrayRewriter extends ErrorReportingASTVisitor {
   private MethodInvocation newArrayAccess(
       AST ast, ArrayAccess arrayAccessNode, ITypeBinding componentType,
       IOSTypeBinding iosArrayBinding, boolean assignable) {
+    TranslationStatistics.increment("array_access");
     IOSMethodBinding binding = getArrayAccessBinding(componentType, iosArrayBinding, assignable);
     if (!componentType.isPrimitive()) {
       binding = IOSMethodBinding.newTypedInvocation(binding, componentType);
@@ -391,6 +570,26 @@ public class ArrayRewriter extends ErrorReportingASTVisitor {
     return invocation;
   }
 
+  /**
+   * Returns an access of an array's buffer, which isn't range checked.
+   * Object arrays are only read this way, since their elements must be
+   * assigned by IOSObjectArray_Set to be retained.
+   */
+  private ArrayAccess newBufferAccess(
+      AST ast, ArrayAccess arrayAccessNode, ITypeBinding componentType,
+      IOSTypeBinding iosArrayBinding) {
+    TranslationStatistics.increment("array_access_unchecked");
+    PointerTypeBinding bufferType = new PointerTypeBinding(componentType);
+    IVariableBinding bufferField = new GeneratedVariableBinding(
+        "buffer", Modifier.PUBLIC, bufferType, true, false, iosArrayBinding, null);
+    ArrayAccess access = ast.newArrayAccess();
+    access.setArray(ASTFactory.newFieldAccess(
+        ast, bufferField, NodeCopier.copySubtree(ast, arrayAccessNode.getArray())));
+    access.setIndex(NodeCopier.copySubtree(ast, arrayAccessNode.getIndex()));
+    Types.addBinding(access, componentType);
+    return access;
+  }
+
   private static IOSMethodBinding createObjectArrayAssignmentFunction() {
     ITypeBinding idType = Types.resolveIOSType("id");
     ITypeBinding objArrayType = Types.resolveIOSType("IOSObjectArray");
@@ -403,6 +602,7 @@ public class ArrayRewriter extends ErrorReportingASTVisitor {
 
   private MethodInvocation newArrayAssignment(
       AST ast, Assignment assignmentNode, ArrayAccess arrayAccessNode, ITypeBinding componentType) {
+    TranslationStatistics.increment("array_assignment");
     Assignment.Operator op = assignmentNode.getOperator();
     assert !componentType.isPrimitive();
     assert op == Assignment.Operator.ASSIGN;
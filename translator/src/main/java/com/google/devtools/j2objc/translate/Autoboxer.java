@@ -24,6 +24,7 @@ import com.google.devtools.j2objc.util.ASTUtil;
 import com.google.devtools.j2objc.util.BindingUtil;
 import com.google.devtools.j2objc.util.ErrorReportingASTVisitor;
 import com.google.devtools.j2objc.util.NameTable;
+import com.google.devtools.j2objc.util.TranslationStatistics;
 
 import org.eclipse.jdt.core.dom.AST;
 import org.eclipse.jdt.core.dom.ASTNode;
@@ -96,6 +97,7 @@ public class Autoboxer extends ErrorReportingASTVisitor {
     IMethodBinding wrapperMethod = BindingUtil.findDeclaredMethod(
         wrapperType, VALUEOF_METHOD, primitiveType.getName());
     assert wrapperMethod != null : "could not find valueOf method for " + wrapperType;
+    TranslationStatistics.increment("box");
     MethodInvocation invocation = ASTFactory.newMethodInvocation(
         ast, wrapperMethod, ASTFactory.newSimpleName(ast, wrapperType));
     ASTUtil.getArguments(invocation).add(NodeCopier.copySubtree(ast, expr));
@@ -125,6 +127,7 @@ public class Autoboxer extends ErrorReportingASTVisitor {
       IMethodBinding valueMethod = BindingUtil.findDeclaredMethod(
           wrapperType, primitiveType.getName() + VALUE_METHOD);
       assert valueMethod != null : "could not find value method for " + wrapperType;
+      TranslationStatistics.increment("unbox");
       return ASTFactory.newMethodInvocation(ast, valueMethod, NodeCopier.copySubtree(ast, expr));
     } else {
       return NodeCopier.copySubtree(ast, expr);
@@ -0,0 +1,326 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.devtools.j2objc.translate;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.devtools.j2objc.types.GeneratedVariableBinding;
+import com.google.devtools.j2objc.types.IOSMethod;
+import com.google.devtools.j2objc.types.IOSMethodBinding;
+import com.google.devtools.j2objc.types.Types;
+import com.google.devtools.j2objc.util.ASTUtil;
+import com.google.devtools.j2objc.util.ErrorReportingASTVisitor;
+import com.google.devtools.j2objc.util.TranslationStatistics;
+
+import org.eclipse.jdt.core.dom.AST;
+import org.eclipse.jdt.core.dom.ASTNode;
+import org.eclipse.jdt.core.dom.Assignment;
+import org.eclipse.jdt.core.dom.CompilationUnit;
+import org.eclipse.jdt.core.dom.Expression;
+import org.eclipse.jdt.core.dom.ExpressionStatement;
+import org.eclipse.jdt.core.dom.ForStatement;
+import org.eclipse.jdt.core.dom.IMethodBinding;
+import org.eclipse.jdt.core.dom.ITypeBinding;
+import org.eclipse.jdt.core.dom.IVariableBinding;
+import org.eclipse.jdt.core.dom.MethodDeclaration;
+import org.eclipse.jdt.core.dom.MethodInvocation;
+import org.eclipse.jdt.core.dom.ParenthesizedExpression;
+import org.eclipse.jdt.core.dom.PostfixExpression;
+import org.eclipse.jdt.core.dom.PrefixExpression;
+import org.eclipse.jdt.core.dom.SimpleName;
+import org.eclipse.jdt.core.dom.VariableDeclarationExpression;
+import org.eclipse.jdt.core.dom.VariableDeclarationFragment;
+import org.eclipse.jdt.core.dom.VariableDeclarationStatement;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Removes boxing conversions added by the Autoboxer that don't need a wrapper
+ * object. Local variables of a wrapper type that are only assigned boxed
+ * primitives and only read to be unboxed are declared as primitives instead,
+ * and "Wrapper.valueOf(expr).xxxValue()" chains are replaced by "expr".
+ * Each wrapper allocation removed is counted as "box_eliminated".
+ *
+ * Must be run immediately after the Autoboxer, before anonymous and inner
+ * classes capture local variables.
+ */
+public class BoxingEliminator extends ErrorReportingASTVisitor {
+
+  /**
+   * A local variable of a wrapper type, with the references to it found so
+   * far. Its references are cleared if one of them needs the wrapper object.
+   */
+  private static class BoxedLocal {
+    private final VariableDeclarationFragment fragment;
+    private final ITypeBinding primitiveType;
+    private final List<SimpleName> references = Lists.newArrayList();
+    private boolean escapes = false;
+
+    BoxedLocal(VariableDeclarationFragment fragment, ITypeBinding primitiveType) {
+      this.fragment = fragment;
+      this.primitiveType = primitiveType;
+    }
+  }
+
+  private final Map<IVariableBinding, BoxedLocal> boxedLocals = Maps.newLinkedHashMap();
+
+  @Override
+  public boolean visit(VariableDeclarationStatement node) {
+    List<VariableDeclarationFragment> fragments = ASTUtil.getFragments(node);
+    if (fragments.size() == 1) {
+      addBoxedLocal(fragments.get(0));
+    }
+    return true;
+  }
+
+  @Override
+  public boolean visit(VariableDeclarationExpression node) {
+    List<VariableDeclarationFragment> fragments = ASTUtil.getFragments(node);
+    if (fragments.size() == 1) {
+      addBoxedLocal(fragments.get(0));
+    }
+    return true;
+  }
+
+  private void addBoxedLocal(VariableDeclarationFragment fragment) {
+    IVariableBinding var = Types.getVariableBinding(fragment);
+    ITypeBinding type = var.getType();
+    if (!Types.isBoxedPrimitive(type) || fragment.getExtraDimensions() > 0) {
+      return;
+    }
+    Expression initializer = fragment.getInitializer();
+    if (initializer == null || getBoxedValue(initializer, type) != null) {
+      boxedLocals.put(var.getVariableDeclaration(),
+          new BoxedLocal(fragment, Types.getPrimitiveType(type)));
+    }
+  }
+
+  @Override
+  public boolean visit(SimpleName node) {
+    if (node.getLocationInParent() == VariableDeclarationFragment.NAME_PROPERTY) {
+      return false;
+    }
+    IVariableBinding var = Types.getVariableBinding(node);
+    BoxedLocal local = var != null ? boxedLocals.get(var.getVariableDeclaration()) : null;
+    if (local != null && !local.escapes) {
+      if (isUnboxableReference(node, local)) {
+        local.references.add(node);
+      } else {
+        local.escapes = true;
+        local.references.clear();
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public void endVisit(CompilationUnit node) {
+    for (BoxedLocal local : boxedLocals.values()) {
+      if (!local.escapes) {
+        unboxLocal(local);
+      }
+    }
+  }
+
+  /**
+   * Returns true if the reference doesn't need the local's wrapper object:
+   * it's unboxed, assigned a boxed primitive, or incremented or decremented
+   * as a statement, and is in the same method as the declaration.
+   */
+  private boolean isUnboxableReference(SimpleName node, BoxedLocal local) {
+    if (getEnclosingMethod(node) != getEnclosingMethod(local.fragment)) {
+      return false;
+    }
+    ITypeBinding wrapperType = Types.getWrapperType(local.primitiveType);
+    ASTNode parent = node.getParent();
+    if (parent instanceof MethodInvocation) {
+      MethodInvocation invocation = (MethodInvocation) parent;
+      if (node == invocation.getExpression()) {
+        return isUnboxingMethod(invocation, wrapperType);
+      }
+      return isAddressOf(invocation) && getIncrementFunction(invocation) != null
+          && isStatementExpression(invocation.getParent());
+    } else if (parent instanceof Assignment) {
+      Assignment assignment = (Assignment) parent;
+      return node == assignment.getLeftHandSide()
+          && assignment.getOperator() == Assignment.Operator.ASSIGN
+          && getBoxedValue(assignment.getRightHandSide(), wrapperType) != null
+          && isStatementExpression(assignment);
+    }
+    return false;
+  }
+
+  private static MethodDeclaration getEnclosingMethod(ASTNode node) {
+    while (node != null && !(node instanceof MethodDeclaration)) {
+      node = node.getParent();
+    }
+    return (MethodDeclaration) node;
+  }
+
+  // Whether an expression's value is discarded.
+  private static boolean isStatementExpression(ASTNode node) {
+    ASTNode parent = node.getParent();
+    return parent instanceof ExpressionStatement
+        || (parent instanceof ForStatement && node != ((ForStatement) parent).getExpression());
+  }
+
+  private static boolean isAddressOf(MethodInvocation node) {
+    IMethodBinding binding = Types.getMethodBinding(node);
+    return binding instanceof IOSMethodBinding
+        && ((IOSMethodBinding) binding).getIOSMethod() == IOSMethod.ADDRESS_OF;
+  }
+
+  /**
+   * Returns the Autoboxer's PreIncr, PreDecr, PostIncr or PostDecr function
+   * call taking the address-of expression, or null.
+   */
+  private static MethodInvocation getIncrementFunction(MethodInvocation addressOf) {
+    ASTNode parent = addressOf.getParent();
+    if (parent instanceof MethodInvocation) {
+      IMethodBinding binding = Types.getMethodBinding(parent);
+      if (binding instanceof IOSMethodBinding && ((MethodInvocation) parent).getExpression() == null
+          && binding.getName().matches("(Pre|Post)(Incr|Decr)\\w+")) {
+        return (MethodInvocation) parent;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Returns the primitive argument if the expression is a
+   * "Wrapper.valueOf(primitive)" invocation of the specified wrapper type,
+   * otherwise null.
+   */
+  private static Expression getBoxedValue(Expression expr, ITypeBinding wrapperType) {
+    while (expr instanceof ParenthesizedExpression) {
+      expr = ((ParenthesizedExpression) expr).getExpression();
+    }
+    if (!(expr instanceof MethodInvocation)) {
+      return null;
+    }
+    MethodInvocation invocation = (MethodInvocation) expr;
+    IMethodBinding binding = Types.getMethodBinding(invocation);
+    List<Expression> args = ASTUtil.getArguments(invocation);
+    if (binding == null || !binding.getName().equals("valueOf") || args.size() != 1
+        || !binding.getDeclaringClass().isEqualTo(wrapperType)) {
+      return null;
+    }
+    Expression arg = args.get(0);
+    return Types.getTypeBinding(arg).isEqualTo(Types.getPrimitiveType(wrapperType)) ? arg : null;
+  }
+
+  private static boolean isUnboxingMethod(MethodInvocation node, ITypeBinding wrapperType) {
+    IMethodBinding binding = Types.getMethodBinding(node);
+    ITypeBinding primitiveType = Types.getPrimitiveType(wrapperType);
+    return binding != null && node.arguments().isEmpty()
+        && binding.getName().equals(primitiveType.getName() + "Value")
+        && binding.getDeclaringClass().isEqualTo(wrapperType);
+  }
+
+  /**
+   * Replaces "Wrapper.valueOf(expr).xxxValue()" with "expr".
+   */
+  @Override
+  public void endVisit(MethodInvocation node) {
+    Expression receiver = node.getExpression();
+    if (receiver == null) {
+      return;
+    }
+    ITypeBinding wrapperType = Types.getTypeBinding(receiver);
+    if (!Types.isBoxedPrimitive(wrapperType) || !isUnboxingMethod(node, wrapperType)) {
+      return;
+    }
+    Expression value = getBoxedValue(receiver, wrapperType);
+    if (value != null) {
+      value.delete();
+      ASTUtil.setProperty(node, value);
+      TranslationStatistics.increment("box_eliminated");
+    }
+  }
+
+  private void unboxLocal(BoxedLocal local) {
+    VariableDeclarationFragment fragment = local.fragment;
+    AST ast = fragment.getAST();
+    IVariableBinding oldVar = Types.getVariableBinding(fragment);
+    IVariableBinding newVar = new GeneratedVariableBinding(
+        oldVar.getName(), oldVar.getModifiers(), local.primitiveType, false, false,
+        oldVar.getDeclaringClass(), oldVar.getDeclaringMethod());
+    Types.addBinding(fragment, newVar);
+    Types.addBinding(fragment.getName(), newVar);
+
+    ASTNode declaration = fragment.getParent();
+    if (declaration instanceof VariableDeclarationStatement) {
+      ((VariableDeclarationStatement) declaration).setType(
+          ASTFactory.newType(ast, local.primitiveType));
+    } else {
+      ((VariableDeclarationExpression) declaration).setType(
+          ASTFactory.newType(ast, local.primitiveType));
+      Types.addBinding(declaration, local.primitiveType);
+    }
+    Expression initializer = fragment.getInitializer();
+    if (initializer != null) {
+      fragment.setInitializer(unboxValue(initializer, local));
+    }
+
+    for (SimpleName name : local.references) {
+      Types.addBinding(name, newVar);
+      ASTNode parent = name.getParent();
+      if (parent instanceof Assignment) {
+        Assignment assignment = (Assignment) parent;
+        assignment.setRightHandSide(unboxValue(assignment.getRightHandSide(), local));
+        Types.addBinding(assignment, local.primitiveType);
+      } else if (isAddressOf((MethodInvocation) parent)) {
+        MethodInvocation function = getIncrementFunction((MethodInvocation) parent);
+        name.delete();
+        ASTUtil.setProperty(function, newIncrementExpression(
+            ast, function, name, local.primitiveType));
+      } else {
+        name.delete();
+        ASTUtil.setProperty(parent, name);
+      }
+    }
+  }
+
+  private Expression unboxValue(Expression boxed, BoxedLocal local) {
+    Expression value = getBoxedValue(boxed, Types.getWrapperType(local.primitiveType));
+    value.delete();
+    TranslationStatistics.increment("box_eliminated");
+    return value;
+  }
+
+  private static Expression newIncrementExpression(
+      AST ast, MethodInvocation function, SimpleName operand, ITypeBinding type) {
+    String name = Types.getMethodBinding(function).getName();
+    boolean increment = name.contains("Incr");
+    Expression expr;
+    if (name.startsWith("Pre")) {
+      PrefixExpression prefix = ast.newPrefixExpression();
+      prefix.setOperator(
+          increment ? PrefixExpression.Operator.INCREMENT : PrefixExpression.Operator.DECREMENT);
+      prefix.setOperand(operand);
+      expr = prefix;
+    } else {
+      PostfixExpression postfix = ast.newPostfixExpression();
+      postfix.setOperator(
+          increment ? PostfixExpression.Operator.INCREMENT : PostfixExpression.Operator.DECREMENT);
+      postfix.setOperand(operand);
+      expr = postfix;
+    }
+    Types.addBinding(expr, type);
+    TranslationStatistics.increment("box_eliminated");
+    return expr;
+  }
+}
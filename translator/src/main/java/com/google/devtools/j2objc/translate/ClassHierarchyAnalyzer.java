@@ -0,0 +1,105 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.devtools.j2objc.translate;
+
+import com.google.devtools.j2objc.util.ClassHierarchy;
+import com.google.devtools.j2objc.util.ErrorReportingASTVisitor;
+
+import org.eclipse.jdt.core.dom.AnonymousClassDeclaration;
+import org.eclipse.jdt.core.dom.EnumDeclaration;
+import org.eclipse.jdt.core.dom.IMethodBinding;
+import org.eclipse.jdt.core.dom.ITypeBinding;
+import org.eclipse.jdt.core.dom.MethodDeclaration;
+import org.eclipse.jdt.core.dom.Modifier;
+import org.eclipse.jdt.core.dom.TypeDeclaration;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+
+/**
+ * Adds the classes of a parsed, untranslated compilation unit to a closed
+ * world's class hierarchy, along with the instance methods that could be
+ * implemented as C functions. All units are analyzed before any is
+ * translated, so that the Functionizer knows which methods no class in the
+ * program overrides.
+ */
+public class ClassHierarchyAnalyzer extends ErrorReportingASTVisitor {
+
+  private final ClassHierarchy.Builder builder;
+
+  public ClassHierarchyAnalyzer(ClassHierarchy.Builder builder) {
+    this.builder = builder;
+  }
+
+  @Override
+  public boolean visit(TypeDeclaration node) {
+    addClass(node.resolveBinding());
+    return true;
+  }
+
+  @Override
+  public boolean visit(EnumDeclaration node) {
+    addClass(node.resolveBinding());
+    return true;
+  }
+
+  @Override
+  public boolean visit(AnonymousClassDeclaration node) {
+    addClass(node.resolveBinding());
+    return true;
+  }
+
+  @Override
+  public boolean visit(MethodDeclaration node) {
+    IMethodBinding binding = node.resolveBinding();
+    if (binding != null && !Modifier.isStatic(node.getModifiers())
+        && Functionizer.hasFunctionBody(node, binding) && !overridesLibraryMethod(binding)) {
+      builder.addFunctionCandidate(binding);
+    }
+    return true;
+  }
+
+  /**
+   * Returns true if a method overrides a method of a class or interface that
+   * isn't parsed from source. These may be mapped to iOS methods, which are
+   * never functionized.
+   */
+  private static boolean overridesLibraryMethod(IMethodBinding method) {
+    Deque<ITypeBinding> types = new ArrayDeque<ITypeBinding>();
+    types.add(method.getDeclaringClass());
+    while (!types.isEmpty()) {
+      ITypeBinding type = types.remove();
+      if (!type.isFromSource()) {
+        for (IMethodBinding superMethod : type.getDeclaredMethods()) {
+          if (method.overrides(superMethod)) {
+            return true;
+          }
+        }
+      }
+      if (type.getSuperclass() != null) {
+        types.add(type.getSuperclass());
+      }
+      types.addAll(Arrays.asList(type.getInterfaces()));
+    }
+    return false;
+  }
+
+  private void addClass(ITypeBinding binding) {
+    if (binding != null) {
+      builder.addClass(binding);
+    }
+  }
+}
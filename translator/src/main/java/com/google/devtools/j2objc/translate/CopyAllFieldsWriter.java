@@ -15,6 +15,7 @@
 package com.google.devtools.j2objc.translate;
 
 import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
 import com.google.devtools.j2objc.types.GeneratedVariableBinding;
 import com.google.devtools.j2objc.types.IOSMethod;
 import com.google.devtools.j2objc.types.IOSMethodBinding;
@@ -26,6 +27,7 @@ import com.google.devtools.j2objc.util.NameTable;
 
 import org.eclipse.jdt.core.dom.AST;
 import org.eclipse.jdt.core.dom.Block;
+import org.eclipse.jdt.core.dom.FieldDeclaration;
 import org.eclipse.jdt.core.dom.ITypeBinding;
 import org.eclipse.jdt.core.dom.IVariableBinding;
 import org.eclipse.jdt.core.dom.MethodDeclaration;
@@ -34,8 +36,10 @@ import org.eclipse.jdt.core.dom.SingleVariableDeclaration;
 import org.eclipse.jdt.core.dom.Statement;
 import org.eclipse.jdt.core.dom.SuperMethodInvocation;
 import org.eclipse.jdt.core.dom.TypeDeclaration;
+import org.eclipse.jdt.core.dom.VariableDeclarationFragment;
 
 import java.util.List;
+import java.util.Set;
 
 /**
  * Writes the copyAllFieldsTo method in order to support correct Java clone()
@@ -61,7 +65,7 @@ public class CopyAllFieldsWriter extends ErrorReportingASTVisitor {
   @Override
   public void endVisit(TypeDeclaration node) {
     ITypeBinding type = Types.getTypeBinding(node);
-    List<IVariableBinding> fields = getNonStaticFields(type);
+    List<IVariableBinding> fields = getNonStaticFields(node, type);
     if (fields.size() == 0) {
       return;
     }
@@ -99,10 +103,21 @@ public class CopyAllFieldsWriter extends ErrorReportingASTVisitor {
     }
   }
 
-  private static List<IVariableBinding> getNonStaticFields(ITypeBinding type) {
+  /**
+   * Returns the instance fields of a type in declaration order, skipping any
+   * whose declarations were removed from the AST, such as dead fields.
+   */
+  private static List<IVariableBinding> getNonStaticFields(
+      TypeDeclaration node, ITypeBinding type) {
+    Set<IVariableBinding> declaredFields = Sets.newHashSet();
+    for (FieldDeclaration field : node.getFields()) {
+      for (VariableDeclarationFragment fragment : ASTUtil.getFragments(field)) {
+        declaredFields.add(Types.getVariableBinding(fragment));
+      }
+    }
     List<IVariableBinding> fields = Lists.newArrayList();
     for (IVariableBinding field : type.getDeclaredFields()) {
-      if (!BindingUtil.isStatic(field)) {
+      if (!BindingUtil.isStatic(field) && declaredFields.contains(field)) {
         fields.add(field);
       }
     }
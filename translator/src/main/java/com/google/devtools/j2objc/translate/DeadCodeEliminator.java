@@ -22,8 +22,12 @@ import com.google.common.base.Predicates;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Iterators;
 import com.google.common.collect.Lists;
-import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
+import com.google.devtools.j2objc.Options;
+import com.google.devtools.j2objc.types.GeneratedMethodBinding;
+import com.google.devtools.j2objc.types.GeneratedTypeBinding;
+import com.google.devtools.j2objc.types.GeneratedVariableBinding;
+import com.google.devtools.j2objc.types.Types;
 import com.google.devtools.j2objc.util.ASTUtil;
 import com.google.devtools.j2objc.util.BindingUtil;
 import com.google.devtools.j2objc.util.DeadCodeMap;
@@ -42,6 +46,7 @@ import org.eclipse.jdt.core.dom.FieldDeclaration;
 import org.eclipse.jdt.core.dom.IBinding;
 import org.eclipse.jdt.core.dom.IExtendedModifier;
 import org.eclipse.jdt.core.dom.IMethodBinding;
+import org.eclipse.jdt.core.dom.IPackageBinding;
 import org.eclipse.jdt.core.dom.ITypeBinding;
 import org.eclipse.jdt.core.dom.IVariableBinding;
 import org.eclipse.jdt.core.dom.ImportDeclaration;
@@ -49,8 +54,10 @@ import org.eclipse.jdt.core.dom.Initializer;
 import org.eclipse.jdt.core.dom.MethodDeclaration;
 import org.eclipse.jdt.core.dom.Modifier;
 import org.eclipse.jdt.core.dom.Modifier.ModifierKeyword;
+import org.eclipse.jdt.core.dom.Name;
 import org.eclipse.jdt.core.dom.ParameterizedType;
 import org.eclipse.jdt.core.dom.PrimitiveType;
+import org.eclipse.jdt.core.dom.SimpleName;
 import org.eclipse.jdt.core.dom.SingleVariableDeclaration;
 import org.eclipse.jdt.core.dom.StringLiteral;
 import org.eclipse.jdt.core.dom.SuperConstructorInvocation;
@@ -64,12 +71,13 @@ import org.eclipse.jdt.core.dom.WildcardType;
 import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Updates the Java AST to remove methods and classes reported as dead
- * by a ProGuard usage report.
+ * by a ProGuard usage report. The nodes it generates are bound like those
+ * of the other translation passes, so the unit doesn't need to be reparsed.
  *
  * @author Daniel Connelly
  */
@@ -77,17 +85,14 @@ public class DeadCodeEliminator extends ErrorReportingASTVisitor {
 
   private static final Joiner innerClassJoiner = Joiner.on('$');
 
-  private static int classCount = 0;
+  private static final AtomicInteger classCount = new AtomicInteger();
   private static String generateClassName() {
-    return "J2OBJC_DUMMY_CLASS_" + (classCount++);
+    return "J2OBJC_DUMMY_CLASS_" + classCount.getAndIncrement();
   }
 
   // Keep track of generated method declarations so we don't delete them.
   private final Set<MethodDeclaration> generatedMethods = Sets.newHashSet();
 
-  // Keep track of generated Type instances so we can resolve their bindings.
-  private final Map<Type, ITypeBinding> generatedTypes = Maps.newHashMap();
-
   private final DeadCodeMap deadCodeMap;
 
   public DeadCodeEliminator(DeadCodeMap deadCodeMap) {
@@ -187,7 +192,6 @@ public class DeadCodeEliminator extends ErrorReportingASTVisitor {
    * Per-type cleanup.
    */
   private void finishElimination() {
-    generatedTypes.clear();
     generatedMethods.clear();
   }
 
@@ -450,7 +454,27 @@ public class DeadCodeEliminator extends ErrorReportingASTVisitor {
       IMethodBinding method,
       Type returnType) {
     MethodDeclaration decl = ast.newMethodDeclaration();
-    decl.setName(ast.newSimpleName(method.getName()));
+
+    // Modifiers
+    int modifiers = method.getModifiers();
+    // Always make the new method public.  Even if this method overrides a
+    // protected method, it might also need to implement an interface.
+    List<IExtendedModifier> newModifiers = ASTUtil.getModifiers(decl);
+    newModifiers.add(ast.newModifier(ModifierKeyword.PUBLIC_KEYWORD));
+    if (Modifier.isStrictfp(modifiers)){
+      newModifiers.add(ast.newModifier(Modifier.ModifierKeyword.STRICTFP_KEYWORD));
+    }
+    if (Modifier.isSynchronized(modifiers)) {
+      newModifiers.add(ast.newModifier(Modifier.ModifierKeyword.SYNCHRONIZED_KEYWORD));
+    }
+
+    // The stub overrides the method, so it's named like it.
+    GeneratedMethodBinding binding = new GeneratedMethodBinding(method, method.getName(),
+        Modifier.PUBLIC | (modifiers & (Modifier.STRICTFP | Modifier.SYNCHRONIZED)),
+        Types.getTypeBinding(returnType), null, scope, false, false, false);
+    binding.addParameters(method);
+    Types.addBinding(decl, binding);
+    decl.setName(ASTFactory.newSimpleName(ast, binding));
 
     // Return type
     decl.setReturnType2(returnType);
@@ -458,7 +482,8 @@ public class DeadCodeEliminator extends ErrorReportingASTVisitor {
     // Generic type
     for (ITypeBinding typeParamBinding : method.getTypeParameters()) {
       TypeParameter typeParam = ast.newTypeParameter();
-      typeParam.setName(ast.newSimpleName(typeParamBinding.getName()));
+      typeParam.setName(ASTFactory.newSimpleName(ast, typeParamBinding));
+      Types.addBinding(typeParam, typeParamBinding);
       for (ITypeBinding typeBound : typeParamBinding.getTypeBounds()) {
         ASTUtil.getTypeBounds(typeParam).add(createType(ast, scope, typeBound));
       }
@@ -472,25 +497,15 @@ public class DeadCodeEliminator extends ErrorReportingASTVisitor {
 
       // Binding doesn't track original parameter name; generate new parameter names.
       String paramName = "arg" + (paramCount++);
+      IVariableBinding varBinding =
+          new GeneratedVariableBinding(paramName, 0, paramBinding, false, true, null, binding);
 
-      var.setName(ast.newSimpleName(paramName));
+      var.setName(ASTFactory.newSimpleName(ast, varBinding));
       var.setType(createType(ast, scope, paramBinding));
+      Types.addBinding(var, varBinding);
       ASTUtil.getParameters(decl).add(var);
     }
 
-    // Modifiers
-    int modifiers = method.getModifiers();
-    // Always make the new method public.  Even if this method overrides a
-    // protected method, it might also need to implement an interface.
-    List<IExtendedModifier> newModifiers = ASTUtil.getModifiers(decl);
-    newModifiers.add(ast.newModifier(ModifierKeyword.PUBLIC_KEYWORD));
-    if (Modifier.isStrictfp(modifiers)){
-      newModifiers.add(ast.newModifier(Modifier.ModifierKeyword.STRICTFP_KEYWORD));
-    }
-    if (Modifier.isSynchronized(modifiers)) {
-      newModifiers.add(ast.newModifier(Modifier.ModifierKeyword.SYNCHRONIZED_KEYWORD));
-    }
-
     // Body
     Block block = ast.newBlock();
     decl.setBody(block);
@@ -510,14 +525,17 @@ public class DeadCodeEliminator extends ErrorReportingASTVisitor {
     ThrowStatement throwStatement = ast.newThrowStatement();
     ASTUtil.getStatements(block).add(throwStatement);
 
+    ITypeBinding assertionError = ast.resolveWellKnownType("java.lang.AssertionError");
     ClassInstanceCreation newException = ast.newClassInstanceCreation();
+    Types.addBinding(newException,
+        BindingUtil.findDeclaredMethod(assertionError, "AssertionError", "java.lang.Object"));
     throwStatement.setExpression(newException);
 
-    Type assertionError = ast.newSimpleType(ast.newSimpleName("AssertionError"));
-    newException.setType(assertionError);
+    newException.setType(ASTFactory.newType(ast, assertionError));
 
     StringLiteral assertionDescription = ast.newStringLiteral();
     assertionDescription.setLiteralValue("Cannot invoke dead method");
+    Types.addBinding(assertionDescription, ast.resolveWellKnownType("java.lang.String"));
     ASTUtil.getArguments(newException).add(assertionDescription);
   }
 
@@ -638,15 +656,23 @@ public class DeadCodeEliminator extends ErrorReportingASTVisitor {
 
     // Add an explicit constructor that calls super with suitable default arguments.
     AST ast = node.getAST();
+    GeneratedMethodBinding binding =
+        GeneratedMethodBinding.newConstructor(clazz, Modifier.PROTECTED);
     MethodDeclaration constructor = ast.newMethodDeclaration();
     constructor.setConstructor(true);
-    constructor.setName(ast.newSimpleName(node.getName().getIdentifier()));
+    // Like a parsed constructor, it has no return type.
+    constructor.setReturnType2(null);
+    SimpleName name = ast.newSimpleName(node.getName().getIdentifier());
+    Types.addBinding(name, binding);
+    constructor.setName(name);
     ASTUtil.getModifiers(constructor).add(ast.newModifier(ModifierKeyword.PROTECTED_KEYWORD));
+    Types.addBinding(constructor, binding);
     ASTUtil.getBodyDeclarations(node).add(constructor);
 
     Block block = ast.newBlock();
     constructor.setBody(block);
-    SuperConstructorInvocation invocation = ast.newSuperConstructorInvocation();
+    SuperConstructorInvocation invocation =
+        ASTFactory.newSuperConstructorInvocation(ast, superConstructor);
     ASTUtil.getStatements(block).add(invocation);
     addAssertionError(block);
 
@@ -655,6 +681,7 @@ public class DeadCodeEliminator extends ErrorReportingASTVisitor {
       CastExpression cast = ast.newCastExpression();
       cast.setExpression(value);
       cast.setType(createType(ast, clazz, type));
+      Types.addBinding(cast, type);
       ASTUtil.getArguments(invocation).add(cast);
     }
   }
@@ -702,18 +729,57 @@ public class DeadCodeEliminator extends ErrorReportingASTVisitor {
   private Expression getDefaultValue(AST ast, ITypeBinding type) {
     if (type.isPrimitive()) {
       if (type.getName().equals("boolean")) {
-        return ast.newBooleanLiteral(false);
+        return ASTFactory.newBooleanLiteral(ast, false);
       }
       // All primitives types except boolean can be initialized as "0".
-      return ast.newNumberLiteral("0");
+      return ASTFactory.newNumberLiteral(ast, "0", type.getName());
     } else {
-      return ast.newNullLiteral();
+      return ASTFactory.newNullLiteral(ast);
     }
   }
 
   // =========================================================================
   // Utilities
 
+  /**
+   * Returns true if a method is removed by this pass, given the dead code map
+   * of the translation. Later passes that look up members through bindings
+   * use this, since the bindings still hold removed members.
+   */
+  public static boolean isRemovedMethod(IMethodBinding method) {
+    DeadCodeMap map = Options.getDeadCodeMap();
+    if (map == null) {
+      return false;
+    }
+    method = method.getMethodDeclaration();
+    return map.isDeadMethod(BindingUtil.getSignature(method.getDeclaringClass()),
+        getProGuardName(method), BindingUtil.getSignature(method));
+  }
+
+  /**
+   * Returns true if a field is removed by this pass. Constants are never
+   * removed.
+   */
+  public static boolean isRemovedField(IVariableBinding field) {
+    return field.getConstantValue() == null && isDeadField(field);
+  }
+
+  /**
+   * Returns true if a primitive constant is listed as dead. Its declaration
+   * is kept, since uses that javac inlined aren't reported, but no #define is
+   * generated for it.
+   */
+  public static boolean isDeadConstant(IVariableBinding field) {
+    return BindingUtil.isPrimitiveConstant(field) && isDeadField(field);
+  }
+
+  private static boolean isDeadField(IVariableBinding field) {
+    DeadCodeMap map = Options.getDeadCodeMap();
+    ITypeBinding declaringClass = field.getVariableDeclaration().getDeclaringClass();
+    return map != null && declaringClass != null
+        && map.isDeadField(BindingUtil.getSignature(declaringClass), field.getName());
+  }
+
   /**
    * Get the ProGuard name of a method.
    * For non-constructors this is the method's name.
@@ -721,7 +787,7 @@ public class DeadCodeEliminator extends ErrorReportingASTVisitor {
    * For constructors of inner classes, this is the $-delimited name path
    * from the outermost class declaration to the inner class declaration.
    */
-  private String getProGuardName(IMethodBinding method) {
+  static String getProGuardName(IMethodBinding method) {
     if (!method.isConstructor() || !method.getDeclaringClass().isMember()) {
       return method.getName();
     }
@@ -753,8 +819,14 @@ public class DeadCodeEliminator extends ErrorReportingASTVisitor {
   private Type createType(AST ast, ITypeBinding scope, ITypeBinding type) {
     Type newType;
     if (type.isArray()) {
-      newType = ast.newArrayType(
-          createType(ast, scope, type.getElementType()), type.getDimensions());
+      newType = createType(ast, scope, type.getElementType());
+      ITypeBinding arrayType = type.getElementType();
+      for (int i = 0; i < type.getDimensions(); i++) {
+        arrayType = arrayType.createArrayType(1);
+        newType = ast.newArrayType(newType);
+        Types.addBinding(newType, arrayType);
+      }
+      return newType;
     } else if (type.isPrimitive()) {
       newType = ast.newPrimitiveType(PrimitiveType.toCode(type.getName()));
     } else if (type.isWildcardType()) {
@@ -765,12 +837,11 @@ public class DeadCodeEliminator extends ErrorReportingASTVisitor {
       }
       newType = wildType;
     } else if (!type.isParameterizedType()) {
-      String name = inScope(type, scope) ? type.getName() : type.getQualifiedName();
-      newType = ast.newSimpleType(ast.newName(name));
+      newType = ast.newSimpleType(createName(ast, scope, type));
     } else {
       ITypeBinding erasure = type.getErasure();
-      String name = inScope(type, scope) ? erasure.getName() : erasure.getQualifiedName();
-      Type rawType = ast.newSimpleType(ast.newName(name));
+      Type rawType = ast.newSimpleType(createName(ast, scope, erasure));
+      Types.addBinding(rawType, erasure);
       ParameterizedType paramType = ast.newParameterizedType(rawType);
       ITypeBinding[] typeArgs = type.getTypeArguments();
       for (ITypeBinding param : typeArgs) {
@@ -778,10 +849,39 @@ public class DeadCodeEliminator extends ErrorReportingASTVisitor {
       }
       newType = paramType;
     }
-    generatedTypes.put(newType, type);
+    Types.addBinding(newType, type);
     return newType;
   }
 
+  /**
+   * Create a name for a type, which is qualified unless the type is visible
+   * in the scope.
+   */
+  private Name createName(AST ast, ITypeBinding scope, ITypeBinding type) {
+    if (inScope(type, scope) || type.isTypeVariable()) {
+      return ASTFactory.newSimpleName(ast, type);
+    }
+    return createQualifiedName(ast, type);
+  }
+
+  private Name createQualifiedName(AST ast, ITypeBinding type) {
+    Name qualifier = null;
+    ITypeBinding declaringClass = type.getDeclaringClass();
+    IPackageBinding pkg = type.getPackage();
+    if (declaringClass != null) {
+      qualifier = createQualifiedName(ast, declaringClass);
+    } else if (pkg != null && !pkg.isUnnamed()) {
+      // Each of the package name's components is bound to the package.
+      for (String component : pkg.getNameComponents()) {
+        SimpleName name = ast.newSimpleName(component);
+        Types.addBinding(name, pkg);
+        qualifier = qualifier == null ? name : ASTFactory.newQualifiedName(ast, qualifier, name);
+      }
+    }
+    SimpleName name = ASTFactory.newSimpleName(ast, type);
+    return qualifier == null ? name : ASTFactory.newQualifiedName(ast, qualifier, name);
+  }
+
   /**
    * Create a new Type instance that is return-type-substitutable for all
    * of a list of types.  If necessary, a new class is created and added
@@ -831,7 +931,10 @@ public class DeadCodeEliminator extends ErrorReportingASTVisitor {
     // Create the new abstract class and add it to the current scope.
     TypeDeclaration newClass = createClass(ast, scope, parent, interfaces);
     scopeBody.add(newClass);
-    return ast.newSimpleType(ast.newName(newClass.getName().getFullyQualifiedName()));
+    ITypeBinding newClassBinding = Types.getTypeBinding(newClass);
+    Type newType = ast.newSimpleType(ASTFactory.newSimpleName(ast, newClassBinding));
+    Types.addBinding(newType, newClassBinding);
+    return newType;
   }
 
   /**
@@ -848,8 +951,58 @@ public class DeadCodeEliminator extends ErrorReportingASTVisitor {
       ASTUtil.getSuperInterfaceTypes(decl).add(createType(ast, scope, intrface));
     }
     ASTUtil.getModifiers(decl).add(ast.newModifier(ModifierKeyword.ABSTRACT_KEYWORD));
-    decl.setName(ast.newSimpleName(generateClassName()));
+    ITypeBinding binding = new DummyClassBinding(generateClassName(), scope,
+        superClass != null ? superClass : ast.resolveWellKnownType("java.lang.Object"),
+        interfaces.toArray(new ITypeBinding[interfaces.size()]));
+    Types.addBinding(decl, binding);
+    decl.setName(ASTFactory.newSimpleName(ast, binding));
     return decl;
   }
 
+  /**
+   * The binding of a class created to be a common return type. It is never
+   * instantiated, so it doesn't need an outer reference.
+   */
+  private static class DummyClassBinding extends GeneratedTypeBinding {
+    private final ITypeBinding declaringClass;
+    private final ITypeBinding[] interfaces;
+
+    DummyClassBinding(String name, ITypeBinding declaringClass, ITypeBinding superClass,
+        ITypeBinding[] interfaces) {
+      super(name, declaringClass.getPackage(), superClass, false, null);
+      this.declaringClass = declaringClass;
+      this.interfaces = interfaces;
+    }
+
+    @Override
+    public String getQualifiedName() {
+      return declaringClass.getQualifiedName() + '.' + name;
+    }
+
+    @Override
+    public ITypeBinding getDeclaringClass() {
+      return declaringClass;
+    }
+
+    @Override
+    public ITypeBinding[] getInterfaces() {
+      return interfaces;
+    }
+
+    @Override
+    public int getModifiers() {
+      return Modifier.ABSTRACT | Modifier.STATIC;
+    }
+
+    @Override
+    public boolean isMember() {
+      return true;
+    }
+
+    @Override
+    public boolean isNested() {
+      return true;
+    }
+  }
+
 }
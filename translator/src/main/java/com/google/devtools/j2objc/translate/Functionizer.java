@@ -0,0 +1,111 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.devtools.j2objc.translate;
+
+import com.google.devtools.j2objc.Options;
+import com.google.devtools.j2objc.types.IOSMethodBinding;
+import com.google.devtools.j2objc.types.Types;
+import com.google.devtools.j2objc.util.BindingUtil;
+import com.google.devtools.j2objc.util.ClassHierarchy;
+import com.google.devtools.j2objc.util.ErrorReportingASTVisitor;
+import com.google.devtools.j2objc.util.NameTable;
+import com.google.devtools.j2objc.util.TranslationStatistics;
+
+import org.eclipse.jdt.core.dom.IMethodBinding;
+import org.eclipse.jdt.core.dom.MethodDeclaration;
+import org.eclipse.jdt.core.dom.Modifier;
+import org.eclipse.jdt.core.dom.SuperMethodInvocation;
+
+/**
+ * Finds the methods that can't be overridden, which are private, static or
+ * final methods and methods of final classes, and marks them to be
+ * implemented as C functions. Their Objective-C methods forward to the
+ * functions, and calls from the same compilation unit invoke the functions
+ * directly, avoiding objc_msgSend and allowing clang to inline them.
+ * With --closed-world, methods that no translated class overrides are
+ * functionized as well, and their functions can be called from any source.
+ *
+ * Must be run last, after the method bodies are in their final form.
+ */
+public class Functionizer extends ErrorReportingASTVisitor {
+
+  @Override
+  public boolean visit(MethodDeclaration node) {
+    IMethodBinding binding = Types.getMethodBinding(node);
+    if (binding != null && canFunctionize(node, binding)) {
+      Types.addFunctionizedMethod(binding);
+      TranslationStatistics.increment("functionized_methods");
+    }
+    return false;
+  }
+
+  private static boolean canFunctionize(MethodDeclaration node, IMethodBinding binding) {
+    if (!hasFunctionBody(node, binding)) {
+      return false;
+    }
+    int modifiers = node.getModifiers();
+    if (Modifier.isStatic(modifiers)) {
+      // Static initializers run from +initialize, and static synchronized
+      // methods lock the class object.
+      if (NameTable.CLINIT_NAME.equals(node.getName().getIdentifier())
+          || Modifier.isSynchronized(modifiers)) {
+        return false;
+      }
+    } else if (!Modifier.isPrivate(modifiers) && !Modifier.isFinal(modifiers)
+        && !BindingUtil.isFinal(binding.getDeclaringClass())
+        && !isEffectivelyFinal(binding)) {
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Returns true if a method's body can be implemented as a C function,
+   * provided the method can't be overridden.
+   */
+  static boolean hasFunctionBody(MethodDeclaration node, IMethodBinding binding) {
+    int modifiers = node.getModifiers();
+    if (node.isConstructor() || node.getBody() == null
+        || Modifier.isAbstract(modifiers) || Modifier.isNative(modifiers)
+        || binding.getDeclaringClass().isInterface()
+        || binding instanceof IOSMethodBinding || IOSMethodBinding.getIOSMethod(binding) != null) {
+      return false;
+    }
+    return !hasSuperMethodInvocation(node);
+  }
+
+  // In a closed world, methods that no class overrides are final too.
+  private static boolean isEffectivelyFinal(IMethodBinding binding) {
+    ClassHierarchy hierarchy = Options.getClassHierarchy();
+    if (hierarchy != null && hierarchy.isEffectivelyFinal(binding)) {
+      TranslationStatistics.increment("effectively_final_methods");
+      return true;
+    }
+    return false;
+  }
+
+  // A function has no superclass to send messages to.
+  private static boolean hasSuperMethodInvocation(MethodDeclaration node) {
+    final boolean[] result = new boolean[1];
+    new ErrorReportingASTVisitor() {
+      @Override
+      public boolean visit(SuperMethodInvocation node) {
+        result[0] = true;
+        return false;
+      }
+    }.run(node.getBody());
+    return result[0];
+  }
+}
@@ -22,6 +22,7 @@ import com.google.devtools.j2objc.types.Types;
 import com.google.devtools.j2objc.util.ASTUtil;
 import com.google.devtools.j2objc.util.BindingUtil;
 import com.google.devtools.j2objc.util.ErrorReportingASTVisitor;
+import com.google.devtools.j2objc.util.TranslationStatistics;
 
 import org.eclipse.jdt.core.dom.AST;
 import org.eclipse.jdt.core.dom.ASTNode;
@@ -36,16 +37,22 @@ import org.eclipse.jdt.core.dom.EnhancedForStatement;
 import org.eclipse.jdt.core.dom.Expression;
 import org.eclipse.jdt.core.dom.FieldAccess;
 import org.eclipse.jdt.core.dom.ForStatement;
+import org.eclipse.jdt.core.dom.IAnnotationBinding;
+import org.eclipse.jdt.core.dom.IBinding;
 import org.eclipse.jdt.core.dom.IMethodBinding;
 import org.eclipse.jdt.core.dom.IVariableBinding;
 import org.eclipse.jdt.core.dom.IfStatement;
 import org.eclipse.jdt.core.dom.InfixExpression;
+import org.eclipse.jdt.core.dom.InstanceofExpression;
+import org.eclipse.jdt.core.dom.LabeledStatement;
 import org.eclipse.jdt.core.dom.MethodDeclaration;
 import org.eclipse.jdt.core.dom.MethodInvocation;
 import org.eclipse.jdt.core.dom.NullLiteral;
 import org.eclipse.jdt.core.dom.ParenthesizedExpression;
+import org.eclipse.jdt.core.dom.PrefixExpression;
 import org.eclipse.jdt.core.dom.QualifiedName;
 import org.eclipse.jdt.core.dom.Statement;
+import org.eclipse.jdt.core.dom.StructuralPropertyDescriptor;
 import org.eclipse.jdt.core.dom.SwitchCase;
 import org.eclipse.jdt.core.dom.SwitchStatement;
 import org.eclipse.jdt.core.dom.TryStatement;
@@ -54,12 +61,26 @@ import org.eclipse.jdt.core.dom.VariableDeclarationFragment;
 import org.eclipse.jdt.core.dom.WhileStatement;
 
 import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
 
+import javax.annotation.Nonnull;
+import javax.annotation.meta.When;
+
 /**
  * Adds nil_chk calls where required to maintain compatibility Java's
  * NullPointerException being thrown when null is dereferenced.
  *
+ * Variables are tracked through the method's control flow, so a variable
+ * that was checked, compared to null or assigned a non-null value isn't
+ * checked again while it remains safe on every path. Outer references,
+ * object creations, literals, and variables and methods annotated with
+ * javax.annotation.Nonnull are never checked. The dereferences that don't
+ * need a check only because of this tracking or an annotation are counted as
+ * "nil_chk_removed" in the translation statistics; a variable that was
+ * already checked or compared to null within the same condition isn't
+ * counted.
+ *
  * TODO(kstanger): We need to be more strict with fields. When an external call
  * such as a MethodInvocation or ConstructorInvocation is encountered it could
  * have the side-effect of re-assigning the field. Therefore when encountering
@@ -76,19 +97,70 @@ public class NilCheckResolver extends ErrorReportingASTVisitor {
   // Contains the set of "safe" variables that don't need nil checks. A new
   // "scope" is added to the stack when entering conditionally executed code
   // such as if-statements, loops, conditional operators (&&, ||).
-  private final ArrayList<Set<IVariableBinding>> safeVarsStack = Lists.newArrayList();
+  private final ArrayList<SafeVars> safeVarsStack = Lists.newArrayList();
 
   // These sets are used to pass down to parent nodes the set of variables that
-  // are safe given that the expression is true or false.
-  private Set<IVariableBinding> safeVarsTrue = Sets.newHashSet();
-  private Set<IVariableBinding> safeVarsFalse = Sets.newHashSet();
+  // are safe given that the expression is true or false. They are only kept
+  // for an expression that is a condition, or an operand of a condition's
+  // &&, ||, ! or parentheses.
+  private SafeVars safeVarsTrue = new SafeVars();
+  private SafeVars safeVarsFalse = new SafeVars();
+
+  /**
+   * A set of safe variables. The baseline subset holds the variables that are
+   * safe because of a nil_chk, a non-null assignment or a comparison with
+   * null, which were tracked before flow analysis and annotations were added.
+   * Only the dereferences that are safe because of the other variables are
+   * counted as removed checks.
+   */
+  private static class SafeVars {
+    private final Set<IVariableBinding> vars = Sets.newHashSet();
+    private final Set<IVariableBinding> baseline = Sets.newHashSet();
+
+    SafeVars() {}
+
+    SafeVars(SafeVars other) {
+      addAll(other);
+    }
+
+    void add(IVariableBinding var, boolean isBaseline) {
+      vars.add(var);
+      if (isBaseline) {
+        baseline.add(var);
+      }
+    }
+
+    void addAll(SafeVars other) {
+      vars.addAll(other.vars);
+      baseline.addAll(other.baseline);
+    }
+
+    void retainAll(SafeVars other) {
+      vars.retainAll(other.vars);
+      baseline.retainAll(other.baseline);
+    }
+
+    void remove(IVariableBinding var) {
+      vars.remove(var);
+      baseline.remove(var);
+    }
+
+    boolean contains(IVariableBinding var, boolean baselineOnly) {
+      return (baselineOnly ? baseline : vars).contains(var);
+    }
+
+    void clear() {
+      vars.clear();
+      baseline.clear();
+    }
+  }
 
   private void pushScope() {
-    safeVarsStack.add(Sets.<IVariableBinding>newHashSet());
+    safeVarsStack.add(new SafeVars());
   }
 
-  private void popScope() {
-    safeVarsStack.remove(safeVarsStack.size() - 1);
+  private SafeVars popScope() {
+    return safeVarsStack.remove(safeVarsStack.size() - 1);
   }
 
   // A node visitor must call this before visiting a child if it wishes to use
@@ -98,35 +170,27 @@ public class NilCheckResolver extends ErrorReportingASTVisitor {
     safeVarsFalse.clear();
   }
 
-  private void addSafeVar(IVariableBinding var) {
+  private void addSafeVar(IVariableBinding var, boolean isBaseline) {
     if (safeVarsStack.size() > 0) {
-      safeVarsStack.get(safeVarsStack.size() - 1).add(var);
+      safeVarsStack.get(safeVarsStack.size() - 1).add(var, isBaseline);
     }
   }
 
-  private void addSafeVars(Set<IVariableBinding> vars) {
+  private void addSafeVars(SafeVars vars) {
     if (safeVarsStack.size() > 0) {
       safeVarsStack.get(safeVarsStack.size() - 1).addAll(vars);
     }
   }
 
   private void removeSafeVar(IVariableBinding var) {
-    for (Set<IVariableBinding> scope : safeVarsStack) {
+    for (SafeVars scope : safeVarsStack) {
       scope.remove(var);
     }
   }
 
-  private Set<IVariableBinding> getAllSafeVars() {
-    Set<IVariableBinding> safeVars = Sets.newHashSet();
-    for (Set<IVariableBinding> scope : safeVarsStack) {
-      safeVars.addAll(scope);
-    }
-    return safeVars;
-  }
-
-  private boolean isSafeVar(IVariableBinding var) {
-    for (Set<IVariableBinding> scope : safeVarsStack) {
-      if (scope.contains(var)) {
+  private boolean isSafeVar(IVariableBinding var, boolean baselineOnly) {
+    for (SafeVars scope : safeVarsStack) {
+      if (scope.contains(var, baselineOnly)) {
         return true;
       }
     }
@@ -134,11 +198,18 @@ public class NilCheckResolver extends ErrorReportingASTVisitor {
   }
 
   private boolean needsNilCheck(Expression e) {
+    return mayBeNull(e) && !isKnownNonNull(e, false);
+  }
+
+  /**
+   * Returns true if an expression's value can be null, regardless of what is
+   * known about the variables and methods it refers to.
+   */
+  private static boolean mayBeNull(Expression e) {
     IVariableBinding sym = Types.getVariableBinding(e);
     if (sym != null) {
       // Outer class references should always be non-nil.
-      return !isSafeVar(sym) && !sym.getName().startsWith("this$")
-          && !sym.getName().equals("outer$");
+      return !sym.getName().startsWith("this$") && !sym.getName().equals("outer$");
     }
     IMethodBinding method = Types.getMethodBinding(e);
     if (method != null) {
@@ -148,10 +219,10 @@ public class NilCheckResolver extends ErrorReportingASTVisitor {
                && method.getName().equals("valueOf"));
     }
     if (e instanceof ParenthesizedExpression) {
-      return needsNilCheck(((ParenthesizedExpression) e).getExpression());
+      return mayBeNull(((ParenthesizedExpression) e).getExpression());
     }
     if (e instanceof CastExpression) {
-      return needsNilCheck(((CastExpression) e).getExpression());
+      return mayBeNull(((CastExpression) e).getExpression());
     }
     switch (e.getNodeType()) {
       case ASTNode.ARRAY_ACCESS:
@@ -161,15 +232,66 @@ public class NilCheckResolver extends ErrorReportingASTVisitor {
     return false;
   }
 
+  /**
+   * Returns true if an expression is a variable that is safe at this point,
+   * or a variable or method result that is annotated as non-null.
+   *
+   * @param baselineOnly only consider the baseline safe variables
+   */
+  private boolean isKnownNonNull(Expression e, boolean baselineOnly) {
+    if (e instanceof ParenthesizedExpression) {
+      return isKnownNonNull(((ParenthesizedExpression) e).getExpression(), baselineOnly);
+    }
+    if (e instanceof CastExpression) {
+      return isKnownNonNull(((CastExpression) e).getExpression(), baselineOnly);
+    }
+    IVariableBinding sym = Types.getVariableBinding(e);
+    if (sym != null) {
+      return isSafeVar(sym, baselineOnly)
+          || (!baselineOnly && isNonnull(sym.getVariableDeclaration()));
+    }
+    IMethodBinding method = Types.getMethodBinding(e);
+    return !baselineOnly && method != null && isNonnull(method.getMethodDeclaration());
+  }
+
+  private static boolean isNonnull(IBinding binding) {
+    IAnnotationBinding annotation = BindingUtil.getAnnotation(binding, Nonnull.class);
+    if (annotation == null) {
+      return false;
+    }
+    Object when = BindingUtil.getAnnotationValue(annotation, "when");
+    return !(when instanceof IVariableBinding)
+        || ((IVariableBinding) when).getName().equals(When.ALWAYS.name());
+  }
+
+  /**
+   * Returns true if a dereference of an expression needs a nil_chk, counting
+   * the dereferences that don't only because of flow analysis or an
+   * annotation.
+   */
+  private boolean needsNilCheckOnDereference(Expression e) {
+    if (!mayBeNull(e)) {
+      return false;
+    }
+    if (isKnownNonNull(e, false)) {
+      if (!isKnownNonNull(e, true)) {
+        TranslationStatistics.increment("nil_chk_removed");
+      }
+      return false;
+    }
+    return true;
+  }
+
   private void addNilCheck(Expression node, boolean deferAdd) {
-    if (!needsNilCheck(node)) {
+    if (!needsNilCheckOnDereference(node)) {
       return;
     }
+    TranslationStatistics.increment("nil_chk");
     IVariableBinding var = Types.getVariableBinding(node);
     if (var != null) {
-      addSafeVar(var);
-      safeVarsTrue.add(var);
-      safeVarsFalse.add(var);
+      addSafeVar(var, true);
+      safeVarsTrue.add(var, true);
+      safeVarsFalse.add(var, true);
     }
     if (deferAdd) {
       Types.addNilCheck(node);
@@ -195,7 +317,7 @@ public class NilCheckResolver extends ErrorReportingASTVisitor {
 
   @Override
   public boolean visit(QualifiedName node) {
-    if (!needsNilCheck(node.getQualifier())) {
+    if (!needsNilCheckOnDereference(node.getQualifier())) {
       return true;
     }
 
@@ -255,17 +377,121 @@ public class NilCheckResolver extends ErrorReportingASTVisitor {
   private boolean handleConditional(Expression expr, ASTNode thenNode, ASTNode elseNode) {
     clearConditionalSafeVars();
     expr.accept(this);
-    Set<IVariableBinding> safeVarsElse = getAllSafeVars();
-    safeVarsElse.addAll(safeVarsFalse);
+    SafeVars safeVarsThen = new SafeVars(safeVarsTrue);
+    SafeVars safeVarsElse = new SafeVars(safeVarsFalse);
     pushScope();
-    addSafeVars(safeVarsTrue);
+    addSafeVars(safeVarsThen);
     thenNode.accept(this);
-    popScope();
+    safeVarsThen = popScope();
     if (elseNode != null) {
       pushScope();
       addSafeVars(safeVarsElse);
       elseNode.accept(this);
-      popScope();
+      safeVarsElse = popScope();
+    }
+
+    // Variables that are safe at the end of each branch that can complete
+    // normally are safe after the conditional.
+    boolean thenCompletes = completesNormally(thenNode);
+    boolean elseCompletes = elseNode == null || completesNormally(elseNode);
+    SafeVars safeVarsAfter = null;
+    if (thenCompletes && elseCompletes) {
+      safeVarsThen.retainAll(safeVarsElse);
+      safeVarsAfter = safeVarsThen;
+    } else if (thenCompletes) {
+      safeVarsAfter = safeVarsThen;
+    } else if (elseCompletes) {
+      safeVarsAfter = safeVarsElse;
+    }
+    if (safeVarsAfter != null) {
+      for (IVariableBinding var : safeVarsAfter.vars) {
+        addSafeVar(var, false);
+      }
+    }
+    // A conditional expression's value says nothing about its condition.
+    clearConditionalSafeVars();
+    return false;
+  }
+
+  /**
+   * Returns false if a statement always transfers control elsewhere, by
+   * returning, throwing, breaking or continuing. Other nodes are assumed to
+   * complete normally.
+   */
+  private static boolean completesNormally(ASTNode node) {
+    switch (node.getNodeType()) {
+      case ASTNode.RETURN_STATEMENT:
+      case ASTNode.THROW_STATEMENT:
+      case ASTNode.BREAK_STATEMENT:
+      case ASTNode.CONTINUE_STATEMENT:
+        return false;
+      case ASTNode.BLOCK:
+        List<Statement> stmts = ASTUtil.getStatements((Block) node);
+        return stmts.isEmpty() || completesNormally(stmts.get(stmts.size() - 1));
+      case ASTNode.IF_STATEMENT:
+        IfStatement ifStmt = (IfStatement) node;
+        return ifStmt.getElseStatement() == null || completesNormally(ifStmt.getThenStatement())
+            || completesNormally(ifStmt.getElseStatement());
+      default:
+        return true;
+    }
+  }
+
+  @Override
+  public boolean visit(PrefixExpression node) {
+    if (node.getOperator() != PrefixExpression.Operator.NOT) {
+      return true;
+    }
+    clearConditionalSafeVars();
+    node.getOperand().accept(this);
+    SafeVars newSafeVarsTrue = safeVarsFalse;
+    safeVarsFalse = safeVarsTrue;
+    safeVarsTrue = newSafeVarsTrue;
+    // Negated facts weren't tracked before flow analysis.
+    safeVarsTrue.baseline.clear();
+    safeVarsFalse.baseline.clear();
+    return false;
+  }
+
+  @Override
+  public void endVisit(InstanceofExpression node) {
+    IVariableBinding var = Types.getVariableBinding(node.getLeftOperand());
+    if (var != null) {
+      safeVarsTrue.add(var, false);
+    }
+  }
+
+  @Override
+  public void postVisit(ASTNode node) {
+    // Drop what an expression says about its variables unless it is a
+    // condition, or an operand that passes them on to a condition.
+    if (node instanceof Expression && !isConditionOperand(node)) {
+      clearConditionalSafeVars();
+    }
+    super.postVisit(node);
+  }
+
+  /**
+   * Returns true if a node is the condition of an if statement or
+   * conditional expression, or an operand of &&, ||, ! or parentheses.
+   */
+  private static boolean isConditionOperand(ASTNode node) {
+    StructuralPropertyDescriptor location = node.getLocationInParent();
+    if (location == IfStatement.EXPRESSION_PROPERTY
+        || location == ConditionalExpression.EXPRESSION_PROPERTY) {
+      return true;
+    }
+    ASTNode parent = node.getParent();
+    if (parent instanceof ParenthesizedExpression) {
+      return true;
+    }
+    if (parent instanceof PrefixExpression) {
+      return ((PrefixExpression) parent).getOperator() == PrefixExpression.Operator.NOT;
+    }
+    if (parent instanceof InfixExpression) {
+      InfixExpression.Operator op = ((InfixExpression) parent).getOperator();
+      return op == InfixExpression.Operator.CONDITIONAL_AND
+          || op == InfixExpression.Operator.CONDITIONAL_OR;
     }
     return false;
   }
@@ -278,6 +504,14 @@ public class NilCheckResolver extends ErrorReportingASTVisitor {
     if (logicalAnd || logicalOr) {
       return handleConditionalOperator(node, logicalAnd);
     }
+    return true;
+  }
+
+  // Null comparisons are handled after their operands are visited, since
+  // visiting the operands drops the conditional safe variables.
+  @Override
+  public void endVisit(InfixExpression node) {
+    InfixExpression.Operator op = node.getOperator();
     boolean equals = op == InfixExpression.Operator.EQUALS;
     boolean notEquals = op == InfixExpression.Operator.NOT_EQUALS;
     if (equals || notEquals) {
@@ -291,18 +525,17 @@ public class NilCheckResolver extends ErrorReportingASTVisitor {
       }
       if (maybeNullVar != null) {
         if (equals) {
-          safeVarsFalse.add(maybeNullVar);
+          safeVarsFalse.add(maybeNullVar, true);
         } else {
-          safeVarsTrue.add(maybeNullVar);
+          safeVarsTrue.add(maybeNullVar, true);
         }
       }
     }
-    return true;
   }
 
   private boolean handleConditionalOperator(InfixExpression node, boolean logicalAnd) {
-    Set<IVariableBinding> newSafeVarsTrue = Sets.newHashSet();
-    Set<IVariableBinding> newSafeVarsFalse = Sets.newHashSet();
+    SafeVars newSafeVarsTrue = new SafeVars();
+    SafeVars newSafeVarsFalse = new SafeVars();
     clearConditionalSafeVars();
     node.getLeftOperand().accept(this);
     if (logicalAnd) {
@@ -341,10 +574,13 @@ public class NilCheckResolver extends ErrorReportingASTVisitor {
   }
 
   private void handleAssignment(IVariableBinding var, Expression value) {
+    if (var == null) {
+      return;
+    }
     if (needsNilCheck(value)) {
       removeSafeVar(var);
     } else {
-      addSafeVar(var);
+      addSafeVar(var, !mayBeNull(value) || isKnownNonNull(value, true));
     }
   }
 
@@ -363,8 +599,28 @@ public class NilCheckResolver extends ErrorReportingASTVisitor {
     }
   }
 
+  /**
+   * Removes the variables assigned in a loop from the safe variables, since
+   * those assignments may run before any part of the loop is executed again.
+   */
+  private void removeLoopAssignedVars(ASTNode node) {
+    if (node == null) {
+      return;
+    }
+    new ErrorReportingASTVisitor() {
+      @Override
+      public void endVisit(Assignment assignment) {
+        IVariableBinding var = Types.getVariableBinding(assignment.getLeftHandSide());
+        if (var != null) {
+          removeSafeVar(var);
+        }
+      }
+    }.run(node);
+  }
+
   @Override
   public boolean visit(DoStatement node) {
+    removeLoopAssignedVars(node);
     pushScope();
     node.getBody().accept(this);
     node.getExpression().accept(this);
@@ -376,6 +632,7 @@ public class NilCheckResolver extends ErrorReportingASTVisitor {
   public boolean visit(EnhancedForStatement node) {
     addNilCheck(node.getExpression(), false);
     node.getExpression().accept(this);
+    removeLoopAssignedVars(node.getBody());
     pushScope();
     node.getBody().accept(this);
     popScope();
@@ -388,6 +645,11 @@ public class NilCheckResolver extends ErrorReportingASTVisitor {
       initializer.accept(this);
     }
     Expression expr = node.getExpression();
+    removeLoopAssignedVars(expr);
+    removeLoopAssignedVars(node.getBody());
+    for (Expression updater : ASTUtil.getUpdaters(node)) {
+      removeLoopAssignedVars(updater);
+    }
     if (expr != null) {
       expr.accept(this);
     }
@@ -400,6 +662,16 @@ public class NilCheckResolver extends ErrorReportingASTVisitor {
     return false;
   }
 
+  // A labeled statement can be exited with a break from any point, so the
+  // variables found safe within it aren't safe after it.
+  @Override
+  public boolean visit(LabeledStatement node) {
+    pushScope();
+    node.getBody().accept(this);
+    popScope();
+    return false;
+  }
+
   @Override
   public boolean visit(SwitchStatement node) {
     node.getExpression().accept(this);
@@ -440,6 +712,7 @@ public class NilCheckResolver extends ErrorReportingASTVisitor {
 
   @Override
   public boolean visit(WhileStatement node) {
+    removeLoopAssignedVars(node);
     node.getExpression().accept(this);
     pushScope();
     node.getBody().accept(this);
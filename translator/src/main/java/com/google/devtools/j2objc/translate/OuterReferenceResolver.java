@@ -69,7 +69,9 @@ public class OuterReferenceResolver extends ASTVisitor {
   // parameter in a constructor.
   public static final IVariableBinding OUTER_PARAMETER = GeneratedVariableBinding.newPlaceholder();
 
-  private static OuterReferenceResolver instance;
+  // Each translation thread has its own instance.
+  private static final ThreadLocal<OuterReferenceResolver> instances =
+      new ThreadLocal<OuterReferenceResolver>();
 
   private Map<ITypeBinding, IVariableBinding> outerVars = Maps.newHashMap();
   private Set<ITypeBinding> usesOuterParam = Sets.newHashSet();
@@ -78,38 +80,43 @@ public class OuterReferenceResolver extends ASTVisitor {
   private ArrayList<Scope> scopeStack = Lists.newArrayList();
 
   public static void cleanup() {
-    instance = null;
+    instances.remove();
   }
 
   public static void initialize() {
-    if (instance == null) {
-      instance = new OuterReferenceResolver();
+    if (instances.get() == null) {
+      instances.set(new OuterReferenceResolver());
     }
   }
 
   public static void resolve(ASTNode node) {
     initialize();
+    OuterReferenceResolver instance = instances.get();
     assert instance.scopeStack.size() == 0;
     node.accept(instance);
   }
 
   public static boolean needsOuterReference(ITypeBinding type) {
+    OuterReferenceResolver instance = instances.get();
     assert instance != null;
     return instance.outerVars.containsKey(type);
   }
 
   public static boolean needsOuterParam(ITypeBinding type) {
+    OuterReferenceResolver instance = instances.get();
     assert instance != null;
     return !type.isLocal() || instance.outerVars.containsKey(type)
         || instance.usesOuterParam.contains(type);
   }
 
   public static IVariableBinding getOuterField(ITypeBinding type) {
+    OuterReferenceResolver instance = instances.get();
     assert instance != null;
     return instance.outerVars.get(type);
   }
 
   public static List<IVariableBinding> getCapturedVars(ITypeBinding type) {
+    OuterReferenceResolver instance = instances.get();
     assert instance != null;
     List<Capture> capturesForType = instance.captures.get(type);
     List<IVariableBinding> capturedVars = Lists.newArrayListWithCapacity(capturesForType.size());
@@ -120,6 +127,7 @@ public class OuterReferenceResolver extends ASTVisitor {
   }
 
   public static List<IVariableBinding> getInnerFields(ITypeBinding type) {
+    OuterReferenceResolver instance = instances.get();
     assert instance != null;
     List<Capture> capturesForType = instance.captures.get(type);
     List<IVariableBinding> innerFields = Lists.newArrayListWithCapacity(capturesForType.size());
@@ -130,11 +138,13 @@ public class OuterReferenceResolver extends ASTVisitor {
   }
 
   public static List<IVariableBinding> getPath(ASTNode node) {
+    OuterReferenceResolver instance = instances.get();
     assert instance != null;
     return instance.outerPaths.get(node);
   }
 
   public static void copyNode(ASTNode oldNode, ASTNode newNode) {
+    OuterReferenceResolver instance = instances.get();
     assert instance != null;
     List<IVariableBinding> path = instance.outerPaths.get(oldNode);
     if (path != null) {
@@ -0,0 +1,403 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.devtools.j2objc.translate;
+
+import com.google.common.collect.Lists;
+import com.google.devtools.j2objc.util.BindingUtil;
+import com.google.devtools.j2objc.util.ErrorReportingASTVisitor;
+import com.google.devtools.j2objc.util.ReachabilityGraph;
+import com.google.j2objc.annotations.ReachabilityRoot;
+
+import org.eclipse.jdt.core.dom.AnnotationTypeDeclaration;
+import org.eclipse.jdt.core.dom.AnonymousClassDeclaration;
+import org.eclipse.jdt.core.dom.ClassInstanceCreation;
+import org.eclipse.jdt.core.dom.ConstructorInvocation;
+import org.eclipse.jdt.core.dom.EnumConstantDeclaration;
+import org.eclipse.jdt.core.dom.EnumDeclaration;
+import org.eclipse.jdt.core.dom.FieldDeclaration;
+import org.eclipse.jdt.core.dom.IBinding;
+import org.eclipse.jdt.core.dom.IMethodBinding;
+import org.eclipse.jdt.core.dom.ITypeBinding;
+import org.eclipse.jdt.core.dom.IVariableBinding;
+import org.eclipse.jdt.core.dom.Initializer;
+import org.eclipse.jdt.core.dom.MethodDeclaration;
+import org.eclipse.jdt.core.dom.MethodInvocation;
+import org.eclipse.jdt.core.dom.Modifier;
+import org.eclipse.jdt.core.dom.SimpleName;
+import org.eclipse.jdt.core.dom.SuperConstructorInvocation;
+import org.eclipse.jdt.core.dom.SuperMethodInvocation;
+import org.eclipse.jdt.core.dom.TypeDeclaration;
+import org.eclipse.jdt.core.dom.TypeLiteral;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Adds the classes and members of a parsed, untranslated compilation unit to
+ * a program's reachability graph, with the methods, constructors, fields and
+ * classes each of them references. Members annotated with ReachabilityRoot,
+ * and all the members of annotated classes, are added as roots.
+ *
+ * Native methods may call anything in their class, so they reference all
+ * its members. Their OCNI code isn't parsed, though: other classes and
+ * members it uses must be listed as dead code roots.
+ */
+public class ReachabilityAnalyzer extends ErrorReportingASTVisitor {
+
+  private final ReachabilityGraph graph;
+
+  // The keys of the members whose references are being collected.
+  private final Deque<String> owners = new ArrayDeque<String>();
+
+  public ReachabilityAnalyzer(ReachabilityGraph graph) {
+    this.graph = graph;
+  }
+
+  @Override
+  public boolean visit(TypeDeclaration node) {
+    return addClass(node.resolveBinding());
+  }
+
+  @Override
+  public void endVisit(TypeDeclaration node) {
+    owners.pop();
+  }
+
+  @Override
+  public boolean visit(EnumDeclaration node) {
+    return addClass(node.resolveBinding());
+  }
+
+  @Override
+  public void endVisit(EnumDeclaration node) {
+    owners.pop();
+  }
+
+  @Override
+  public boolean visit(AnnotationTypeDeclaration node) {
+    return addClass(node.resolveBinding());
+  }
+
+  @Override
+  public void endVisit(AnnotationTypeDeclaration node) {
+    owners.pop();
+  }
+
+  @Override
+  public boolean visit(AnonymousClassDeclaration node) {
+    ITypeBinding binding = node.resolveBinding();
+    if (binding != null && !owners.isEmpty()) {
+      // The creation reaches the class, and all its superclass's constructors.
+      addReference(getClassName(binding));
+      ITypeBinding superclass = binding.getSuperclass();
+      if (superclass != null) {
+        for (IMethodBinding method : superclass.getDeclaredMethods()) {
+          if (method.isConstructor()) {
+            addReference(getMethodKey(method));
+          }
+        }
+      }
+    }
+    return addClass(binding);
+  }
+
+  @Override
+  public void endVisit(AnonymousClassDeclaration node) {
+    owners.pop();
+  }
+
+  /**
+   * Adds a class and its members, pushing the class's key as the owner of
+   * any references outside its members.
+   *
+   * @return true if the class's declarations should be visited
+   */
+  private boolean addClass(ITypeBinding type) {
+    String clazz = type != null ? getClassName(type) : null;
+    owners.push(clazz != null ? clazz : "");
+    if (clazz == null) {
+      return false;
+    }
+    List<String> supertypes = Lists.newArrayList();
+    if (type.getSuperclass() != null) {
+      supertypes.add(getClassName(type.getSuperclass()));
+    }
+    for (ITypeBinding intrface : type.getInterfaces()) {
+      supertypes.add(getClassName(intrface));
+    }
+    ITypeBinding declaringClass = type.getDeclaringClass();
+    graph.addClass(clazz, declaringClass != null ? getClassName(declaringClass) : null,
+        supertypes, type.isAnnotation());
+    boolean isRoot = BindingUtil.hasAnnotation(type, ReachabilityRoot.class);
+    if (isRoot) {
+      graph.addRoot(clazz);
+    }
+
+    String instanceInitializer = ReachabilityGraph.getInstanceInitializerKey(clazz);
+    IMethodBinding superConstructor = getDefaultConstructor(type.getSuperclass());
+    for (IMethodBinding method : type.getDeclaredMethods()) {
+      String key = getMethodKey(method);
+      graph.addMethod(clazz, DeadCodeEliminator.getProGuardName(method),
+          BindingUtil.getSignature(method));
+      if (isRoot || BindingUtil.hasAnnotation(method, ReachabilityRoot.class)) {
+        graph.addRoot(key);
+      }
+      if (method.isConstructor()) {
+        graph.addReference(key, instanceInitializer);
+        if (superConstructor != null) {
+          graph.addReference(key, getMethodKey(superConstructor));
+        }
+      } else if (!BindingUtil.isStatic(method) && !BindingUtil.isPrivate(method)) {
+        addOverrides(key, method);
+      }
+    }
+    for (IVariableBinding field : type.getDeclaredFields()) {
+      String key = graph.addField(clazz, field.getName());
+      if (isRoot || BindingUtil.hasAnnotation(field, ReachabilityRoot.class)) {
+        graph.addRoot(key);
+      }
+    }
+    if (!type.isInterface()) {
+      addInheritedImplementations(clazz, type);
+    }
+    return true;
+  }
+
+  // A superclass method can implement a method of an interface that only
+  // the subclass implements, as in "class B extends A implements I {}".
+  private void addInheritedImplementations(String clazz, ITypeBinding type) {
+    Deque<ITypeBinding> interfaces = new ArrayDeque<ITypeBinding>(
+        Arrays.asList(type.getInterfaces()));
+    while (!interfaces.isEmpty()) {
+      ITypeBinding intrface = interfaces.remove();
+      for (IMethodBinding method : intrface.getDeclaredMethods()) {
+        if (BindingUtil.isStatic(method) || findImplementation(type, method) != null) {
+          continue;
+        }
+        for (ITypeBinding superclass = type.getSuperclass(); superclass != null;
+            superclass = superclass.getSuperclass()) {
+          IMethodBinding implementation = findImplementation(superclass, method);
+          if (implementation != null) {
+            graph.addInheritedImplementation(
+                clazz, getMethodKey(implementation), getMethodKey(method));
+            break;
+          }
+        }
+      }
+      interfaces.addAll(Arrays.asList(intrface.getInterfaces()));
+    }
+  }
+
+  private static IMethodBinding findImplementation(ITypeBinding type, IMethodBinding method) {
+    for (IMethodBinding declared : type.getDeclaredMethods()) {
+      if (!declared.isConstructor() && !BindingUtil.isStatic(declared)
+          && declared.getName().equals(method.getName()) && declared.isSubsignature(method)) {
+        return declared;
+      }
+    }
+    return null;
+  }
+
+  private void addOverrides(String key, IMethodBinding method) {
+    Deque<ITypeBinding> supertypes = new ArrayDeque<ITypeBinding>();
+    ITypeBinding type = method.getDeclaringClass();
+    if (type.getSuperclass() != null) {
+      supertypes.add(type.getSuperclass());
+    }
+    supertypes.addAll(Arrays.asList(type.getInterfaces()));
+    while (!supertypes.isEmpty()) {
+      ITypeBinding supertype = supertypes.remove();
+      for (IMethodBinding superMethod : supertype.getDeclaredMethods()) {
+        if (method.overrides(superMethod)) {
+          graph.addOverride(key, getMethodKey(superMethod));
+        }
+      }
+      if (supertype.getSuperclass() != null) {
+        supertypes.add(supertype.getSuperclass());
+      }
+      supertypes.addAll(Arrays.asList(supertype.getInterfaces()));
+    }
+  }
+
+  // Constructors without an explicit this() or super() call run the
+  // superclass's default constructor.
+  private static IMethodBinding getDefaultConstructor(ITypeBinding type) {
+    if (type != null) {
+      for (IMethodBinding method : type.getDeclaredMethods()) {
+        if (method.isConstructor() && method.getParameterTypes().length == 0) {
+          return method;
+        }
+      }
+    }
+    return null;
+  }
+
+  @Override
+  public boolean visit(MethodDeclaration node) {
+    IMethodBinding binding = node.resolveBinding();
+    if (binding == null) {
+      return false;
+    }
+    String key = getMethodKey(binding);
+    if (Modifier.isNative(node.getModifiers())) {
+      ITypeBinding type = binding.getDeclaringClass();
+      for (IMethodBinding method : type.getDeclaredMethods()) {
+        graph.addReference(key, getMethodKey(method));
+      }
+      for (IVariableBinding field : type.getDeclaredFields()) {
+        graph.addReference(key, getFieldKey(field));
+      }
+    }
+    owners.push(key);
+    return true;
+  }
+
+  @Override
+  public void endVisit(MethodDeclaration node) {
+    if (node.resolveBinding() != null) {
+      owners.pop();
+    }
+  }
+
+  @Override
+  public boolean visit(Initializer node) {
+    owners.push(getInitializerKey(node.getModifiers()));
+    return true;
+  }
+
+  @Override
+  public void endVisit(Initializer node) {
+    owners.pop();
+  }
+
+  @Override
+  public boolean visit(FieldDeclaration node) {
+    owners.push(getInitializerKey(node.getModifiers()));
+    return true;
+  }
+
+  @Override
+  public void endVisit(FieldDeclaration node) {
+    owners.pop();
+  }
+
+  @Override
+  public boolean visit(EnumConstantDeclaration node) {
+    owners.push(getInitializerKey(Modifier.STATIC));
+    addReference(node.resolveConstructorBinding());
+    return true;
+  }
+
+  @Override
+  public void endVisit(EnumConstantDeclaration node) {
+    owners.pop();
+  }
+
+  // Field initializers and initializer blocks are part of their class's
+  // static or instance initialization.
+  private String getInitializerKey(int modifiers) {
+    String clazz = owners.peek();
+    if (clazz.isEmpty()) {
+      return "";
+    }
+    return Modifier.isStatic(modifiers) ? ReachabilityGraph.getClassInitializerKey(clazz)
+        : ReachabilityGraph.getInstanceInitializerKey(clazz);
+  }
+
+  @Override
+  public void endVisit(MethodInvocation node) {
+    addReference(node.resolveMethodBinding());
+  }
+
+  @Override
+  public void endVisit(SuperMethodInvocation node) {
+    addReference(node.resolveMethodBinding());
+  }
+
+  @Override
+  public void endVisit(ClassInstanceCreation node) {
+    if (node.getAnonymousClassDeclaration() == null) {
+      addReference(node.resolveConstructorBinding());
+    }
+  }
+
+  @Override
+  public void endVisit(ConstructorInvocation node) {
+    addReference(node.resolveConstructorBinding());
+  }
+
+  @Override
+  public void endVisit(SuperConstructorInvocation node) {
+    addReference(node.resolveConstructorBinding());
+  }
+
+  @Override
+  public void endVisit(SimpleName node) {
+    IBinding binding = node.resolveBinding();
+    if (!node.isDeclaration() && binding instanceof IVariableBinding
+        && ((IVariableBinding) binding).isField()) {
+      addReference(getFieldKey((IVariableBinding) binding));
+    }
+  }
+
+  @Override
+  public void endVisit(TypeLiteral node) {
+    // Classes may be instantiated by reflection, with Class.newInstance() or
+    // one of their Constructor objects, so their constructors are reached too.
+    ITypeBinding type = node.getType().resolveBinding();
+    if (type != null && !type.isPrimitive() && !type.isArray()) {
+      addReference(getClassName(type));
+      for (IMethodBinding method : type.getDeclaredMethods()) {
+        if (method.isConstructor()) {
+          addReference(getMethodKey(method));
+        }
+      }
+    }
+  }
+
+  private void addReference(IMethodBinding method) {
+    if (method != null) {
+      addReference(getMethodKey(method));
+    }
+  }
+
+  private void addReference(String key) {
+    String owner = owners.peek();
+    if (owner != null && !owner.isEmpty() && key != null) {
+      graph.addReference(owner, key);
+    }
+  }
+
+  private static String getClassName(ITypeBinding type) {
+    return type.getErasure().getBinaryName();
+  }
+
+  private static String getMethodKey(IMethodBinding method) {
+    method = method.getMethodDeclaration();
+    return ReachabilityGraph.getMethodKey(getClassName(method.getDeclaringClass()),
+        DeadCodeEliminator.getProGuardName(method), BindingUtil.getSignature(method));
+  }
+
+  private static String getFieldKey(IVariableBinding field) {
+    field = field.getVariableDeclaration();
+    ITypeBinding declaringClass = field.getDeclaringClass();
+    if (declaringClass == null) {
+      return null;  // The length of an array.
+    }
+    return ReachabilityGraph.getFieldKey(getClassName(declaringClass), field.getName());
+  }
+}
@@ -35,7 +35,9 @@ import com.google.j2objc.annotations.LoopTranslation;
 import com.google.j2objc.annotations.LoopTranslation.LoopStyle;
 
 import org.eclipse.jdt.core.dom.AST;
+import org.eclipse.jdt.core.dom.ASTNode;
 import org.eclipse.jdt.core.dom.ASTVisitor;
+import org.eclipse.jdt.core.dom.AbstractTypeDeclaration;
 import org.eclipse.jdt.core.dom.AnnotationTypeDeclaration;
 import org.eclipse.jdt.core.dom.AnonymousClassDeclaration;
 import org.eclipse.jdt.core.dom.Assignment;
@@ -105,6 +107,10 @@ public class Rewriter extends ErrorReportingASTVisitor {
   private static final List<String> typeQualifierKeywords = Lists.newArrayList("in", "out",
       "inout", "oneway", "bycopy", "byref");
 
+  // Number of random access list loops rewritten, used to name their
+  // variables so that nested loops don't shadow each other.
+  private int listLoopCount = 0;
+
   @Override
   public boolean visit(TypeDeclaration node) {
     return visitType(node.getAST(), Types.getTypeBinding(node), ASTUtil.getBodyDeclarations(node),
@@ -212,6 +218,9 @@ public class Rewriter extends ErrorReportingASTVisitor {
     }
 
     for (IMethodBinding m : type.getDeclaredMethods()) {
+      if (DeadCodeEliminator.isRemovedMethod(m)) {
+        continue;
+      }
       if (method.isSubsignature(m) ||
           (method.getName().equals(m.getName()) &&
           method.getReturnType().getErasure().isEqualTo(m.getReturnType().getErasure()) &&
@@ -489,12 +498,24 @@ public class Rewriter extends ErrorReportingASTVisitor {
       Types.addAutoreleasePool(makeBlock(node.getBody()));
     }
 
-    if (expressionType.isArray()) {
+    if (isOwnEnumValues(node, expression)) {
+      // The enum's shared values array doesn't escape the loop, so it's
+      // iterated instead of the copy that values() returns.
+      IVariableBinding valuesVariable = new GeneratedVariableBinding(
+          NameTable.getFullName(expressionType.getElementType()) + "_values", 0,
+          expressionType, false, false, null, null);
+      ASTUtil.setProperty(node, makeArrayIterationBlock(ast,
+          ASTFactory.newSimpleName(ast, valuesVariable), expressionType, loopVariable,
+          node.getBody()));
+    } else if (expressionType.isArray()) {
       ASTUtil.setProperty(node, makeArrayIterationBlock(
           ast, expression, expressionType, loopVariable, node.getBody()));
     } else if (emitJavaIteratorLoop(loopVariable)) {
       ASTUtil.setProperty(node, makeIterableBlock(
           ast, expression, expressionType, loopVariable, node.getBody()));
+    } else if (isRandomAccessList(expressionType)) {
+      ASTUtil.setProperty(node, makeRandomAccessListBlock(
+          ast, expression, expressionType, loopVariable, node.getBody()));
     } else if (loopVariable.getType().isPrimitive()) {
       boxLoopVariable(ast, node, expressionType, loopVariable);
     } else {
@@ -556,6 +577,146 @@ public class Rewriter extends ErrorReportingASTVisitor {
     return block;
   }
 
+  /**
+   * Returns true if an expression invokes the values() method of the enum
+   * whose body contains it. The enum is initialized there, so its values
+   * array can be read directly.
+   */
+  private static boolean isOwnEnumValues(ASTNode node, Expression expression) {
+    if (!(expression instanceof MethodInvocation)) {
+      return false;
+    }
+    IMethodBinding method = Types.getMethodBinding(expression);
+    if (method == null || !BindingUtil.isStatic(method)
+        || !method.getName().equals("values") || method.getParameterTypes().length > 0) {
+      return false;
+    }
+    ITypeBinding declaringClass = method.getDeclaringClass().getTypeDeclaration();
+    if (!declaringClass.isEnum()) {
+      return false;
+    }
+    for (ASTNode n = node.getParent(); n != null; n = n.getParent()) {
+      if (n instanceof AnonymousClassDeclaration) {
+        return false;
+      } else if (n instanceof AbstractTypeDeclaration) {
+        ITypeBinding owner = Types.getTypeBinding(n);
+        return owner != null && owner.getTypeDeclaration().isEqualTo(declaringClass);
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Returns true if the type is an AbstractList subclass that implements
+   * RandomAccess, like ArrayList and Vector, so that its elements can be
+   * iterated by index while checking its modCount.
+   */
+  private static boolean isRandomAccessList(ITypeBinding type) {
+    return type.isClass() && findModCountField(type) != null
+        && BindingUtil.findInterface(type, "java.util.RandomAccess") != null;
+  }
+
+  private static IVariableBinding findModCountField(ITypeBinding type) {
+    for (; type != null; type = type.getSuperclass()) {
+      if (type.getErasure().getQualifiedName().equals("java.util.AbstractList")) {
+        for (IVariableBinding field : type.getDeclaredFields()) {
+          if (field.getName().equals("modCount")) {
+            return field;
+          }
+        }
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Iterates over a RandomAccess list the way AbstractList's iterator does,
+   * without allocating an enumerator or iterator:
+   *
+   *   { List l__ = expr; int n__ = l__.size(); int m__ = l__.modCount;
+   *     for (int i__ = 0; i__ < n__; i__++) {
+   *       if (l__.modCount != m__) throw new ConcurrentModificationException();
+   *       T loopVariable = l__.get(i__);
+   *       ...
+   *     }
+   *   }
+   *
+   * Like the runtime's iterator, which counts down the size the list had when
+   * it was created, the loop runs the list's initial size times, and any
+   * structural modification throws when the next element is read. A change
+   * in the last iteration therefore ends the loop without throwing. Loops
+   * after the first in a unit have numbered variables, such as l__1.
+   */
+  private Block makeRandomAccessListBlock(
+      AST ast, Expression expression, ITypeBinding expressionType, IVariableBinding loopVariable,
+      Statement loopBody) {
+    ITypeBinding listType = BindingUtil.findInterface(expressionType, "java.util.List");
+    IMethodBinding sizeMethod = BindingUtil.findDeclaredMethod(listType, "size");
+    IMethodBinding getMethod = BindingUtil.findDeclaredMethod(listType, "get", "int");
+    IVariableBinding modCountField = findModCountField(expressionType);
+    assert sizeMethod != null && getMethod != null;
+    ITypeBinding intType = ast.resolveWellKnownType("int");
+    ITypeBinding booleanType = ast.resolveWellKnownType("boolean");
+
+    String suffix = listLoopCount > 0 ? Integer.toString(listLoopCount) : "";
+    listLoopCount++;
+    IVariableBinding listVariable = new GeneratedVariableBinding(
+        "l__" + suffix, 0, expressionType, false, false, null, null);
+    IVariableBinding sizeVariable = new GeneratedVariableBinding(
+        "n__" + suffix, 0, intType, false, false, null, null);
+    IVariableBinding modCountVariable = new GeneratedVariableBinding(
+        "m__" + suffix, 0, intType, false, false, null, null);
+    IVariableBinding indexVariable = new GeneratedVariableBinding(
+        "i__" + suffix, 0, intType, false, false, null, null);
+
+    Block block = ast.newBlock();
+    List<Statement> stmts = ASTUtil.getStatements(block);
+    stmts.add(ASTFactory.newVariableDeclarationStatement(
+        ast, listVariable, NodeCopier.copySubtree(ast, expression)));
+    stmts.add(ASTFactory.newVariableDeclarationStatement(
+        ast, sizeVariable, ASTFactory.newMethodInvocation(
+            ast, sizeMethod, ASTFactory.newSimpleName(ast, listVariable))));
+    stmts.add(ASTFactory.newVariableDeclarationStatement(
+        ast, modCountVariable, ASTFactory.newFieldAccess(
+            ast, modCountField, ASTFactory.newSimpleName(ast, listVariable))));
+
+    ITypeBinding cmeType = GeneratedTypeBinding.newTypeBinding(
+        "java.util.ConcurrentModificationException",
+        ast.resolveWellKnownType("java.lang.RuntimeException"), false);
+    ClassInstanceCreation newCme = ast.newClassInstanceCreation();
+    newCme.setType(ASTFactory.newType(ast, cmeType));
+    Types.addBinding(newCme, GeneratedMethodBinding.newConstructor(cmeType, 0));
+    ThrowStatement throwStmt = ast.newThrowStatement();
+    throwStmt.setExpression(newCme);
+    IfStatement modCountCheck = ast.newIfStatement();
+    modCountCheck.setExpression(ASTFactory.newInfixExpression(ast,
+        ASTFactory.newFieldAccess(
+            ast, modCountField, ASTFactory.newSimpleName(ast, listVariable)),
+        InfixExpression.Operator.NOT_EQUALS, ASTFactory.newSimpleName(ast, modCountVariable),
+        booleanType));
+    Block throwBlock = ast.newBlock();
+    ASTUtil.getStatements(throwBlock).add(throwStmt);
+    modCountCheck.setThenStatement(throwBlock);
+
+    MethodInvocation getInvocation = ASTFactory.newMethodInvocation(
+        ast, getMethod, ASTFactory.newSimpleName(ast, listVariable));
+    ASTUtil.getArguments(getInvocation).add(ASTFactory.newSimpleName(ast, indexVariable));
+    Block newLoopBody = makeBlock(NodeCopier.copySubtree(ast, loopBody));
+    List<Statement> bodyStmts = ASTUtil.getStatements(newLoopBody);
+    bodyStmts.add(0, modCountCheck);
+    bodyStmts.add(1, ASTFactory.newVariableDeclarationStatement(
+        ast, loopVariable, getInvocation));
+
+    stmts.add(ASTFactory.newForStatement(ast,
+        ASTFactory.newVariableDeclarationExpression(
+            ast, indexVariable, ASTFactory.makeIntLiteral(ast, 0)),
+        ASTFactory.newInfixExpression(
+            ast, indexVariable, InfixExpression.Operator.LESS, sizeVariable, booleanType),
+        ASTFactory.newPostfixExpression(ast, indexVariable, PostfixExpression.Operator.INCREMENT),
+        newLoopBody));
+    return block;
+  }
+
   private void boxLoopVariable(
       AST ast, EnhancedForStatement node, ITypeBinding expressionType,
       IVariableBinding loopVariable) {
@@ -708,11 +869,27 @@ public class Rewriter extends ErrorReportingASTVisitor {
   }
 
   /**
-   * Moves all variable declarations above the first case statement.
+   * Switches on an enum's ordinal field, and moves all variable declarations
+   * above the first case statement.
    */
   @Override
   public void endVisit(SwitchStatement node) {
     AST ast = node.getAST();
+    Expression expression = node.getExpression();
+    ITypeBinding expressionType = Types.getTypeBinding(expression);
+    if (expressionType.isEnum()) {
+      // Reading the field directly lets the switch compile to a jump table
+      // without sending an ordinal message.
+      ITypeBinding enumType = expressionType;
+      while (!enumType.getErasure().getQualifiedName().equals("java.lang.Enum")) {
+        enumType = enumType.getSuperclass();
+      }
+      IVariableBinding ordinalField = new GeneratedVariableBinding(
+          "ordinal", Modifier.PUBLIC | Modifier.FINAL, Types.resolveJavaType("int"), true,
+          false, enumType.getErasure(), null);
+      node.setExpression(ASTFactory.newFieldAccess(
+          ast, ordinalField, NodeCopier.copySubtree(ast, expression)));
+    }
     List<Statement> statements = ASTUtil.getStatements(node);
     int insertIdx = 0;
     Block block = ast.newBlock();
@@ -822,6 +999,9 @@ public class Rewriter extends ErrorReportingASTVisitor {
     if (superclass != null) {
       addFields(superclass, true, true, fields);
       for (IVariableBinding var : typeBinding.getDeclaredFields()) {
+        if (DeadCodeEliminator.isRemovedField(var)) {
+          continue;
+        }
         String name = var.getName();
         IVariableBinding field = fields.get(name);
         if (field != null) {
@@ -836,7 +1016,8 @@ public class Rewriter extends ErrorReportingASTVisitor {
   private void addFields(ITypeBinding type, boolean includePrivate, boolean includeSuperclasses,
       Map<String, IVariableBinding> fields) {
     for (IVariableBinding field : type.getDeclaredFields()) {
-      if (!fields.containsValue(field)) { // if not already renamed
+      if (!fields.containsValue(field) // if not already renamed
+          && !DeadCodeEliminator.isRemovedField(field)) {
         int mods = field.getModifiers();
         if (!Modifier.isStatic(mods)) {
           if (includePrivate) {
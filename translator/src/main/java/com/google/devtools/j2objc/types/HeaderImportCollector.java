@@ -35,6 +35,9 @@ import java.util.Set;
 
 /**
  * Collects the set of imports needed to resolve type references in a header.
+ * Only supertypes are included, as a header only needs forward declarations
+ * of the other types it references. A supertype whose header is already
+ * included by another supertype's header isn't included again.
  *
  * @author Tom Ball
  */
@@ -43,6 +46,7 @@ public class HeaderImportCollector extends ErrorReportingASTVisitor {
   private Set<Import> forwardDecls = Sets.newLinkedHashSet();
   private Set<Import> superTypes = Sets.newLinkedHashSet();
   private Set<Import> declaredTypes = Sets.newHashSet();
+  private Set<Import> indirectSuperTypes = Sets.newLinkedHashSet();
 
   public void collect(ASTNode node) {
     run(node);
@@ -51,6 +55,37 @@ public class HeaderImportCollector extends ErrorReportingASTVisitor {
         forwardDecls.remove(imp);
       }
     }
+    for (Import imp : superTypes) {
+      addIndirectSuperTypes(imp.getType(), indirectSuperTypes);
+    }
+    indirectSuperTypes.retainAll(superTypes);
+    superTypes.removeAll(indirectSuperTypes);
+  }
+
+  /**
+   * Adds the supertypes that a type's header includes, directly or through
+   * the headers of its supertypes. Only the headers of types translated from
+   * source are known to include all their supertypes.
+   */
+  private static void addIndirectSuperTypes(ITypeBinding type, Set<Import> result) {
+    if (!type.isFromSource()) {
+      return;
+    }
+    ITypeBinding superclass = type.getSuperclass();
+    if (superclass != null) {
+      for (Import imp : Import.getImports(superclass)) {
+        if (result.add(imp)) {
+          addIndirectSuperTypes(imp.getType(), result);
+        }
+      }
+    }
+    for (ITypeBinding interfaze : type.getInterfaces()) {
+      for (Import imp : Import.getImports(interfaze)) {
+        if (result.add(imp)) {
+          addIndirectSuperTypes(imp.getType(), result);
+        }
+      }
+    }
   }
 
   public Set<Import> getForwardDeclarations() {
@@ -61,6 +96,49 @@ public class HeaderImportCollector extends ErrorReportingASTVisitor {
     return superTypes;
   }
 
+  /**
+   * Returns the supertypes that aren't included, because the header of
+   * another supertype includes them.
+   */
+  public Set<Import> getIndirectSuperTypes() {
+    return indirectSuperTypes;
+  }
+
+  /**
+   * Returns the file names of the headers that the included headers include,
+   * directly or through the headers of their supertypes. This is the header
+   * closure clang parses for each file that includes the header, less the
+   * runtime headers.
+   */
+  public Set<String> getIncludeClosure() {
+    Set<String> closure = Sets.newTreeSet();
+    Set<ITypeBinding> visited = Sets.newHashSet();
+    for (Import imp : superTypes) {
+      addIncludeClosure(imp, closure, visited);
+    }
+    return closure;
+  }
+
+  private static void addIncludeClosure(
+      Import imp, Set<String> closure, Set<ITypeBinding> visited) {
+    closure.add(imp.getImportFileName());
+    ITypeBinding type = imp.getType();
+    if (!visited.add(type)) {
+      return;
+    }
+    ITypeBinding superclass = type.getSuperclass();
+    if (superclass != null) {
+      for (Import superImport : Import.getImports(superclass)) {
+        addIncludeClosure(superImport, closure, visited);
+      }
+    }
+    for (ITypeBinding interfaze : type.getInterfaces()) {
+      for (Import superImport : Import.getImports(interfaze)) {
+        addIncludeClosure(superImport, closure, visited);
+      }
+    }
+  }
+
   private void addForwardDecl(Type type) {
     if (type != null) {
       addForwardDecl(Types.getTypeBinding(type));
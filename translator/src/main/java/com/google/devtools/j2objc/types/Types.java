@@ -22,6 +22,7 @@ import com.google.common.collect.Sets;
 import com.google.devtools.j2objc.J2ObjC;
 import com.google.devtools.j2objc.Options;
 import com.google.devtools.j2objc.util.BindingUtil;
+import com.google.devtools.j2objc.util.ClassHierarchy;
 
 import org.eclipse.jdt.core.dom.AST;
 import org.eclipse.jdt.core.dom.ASTNode;
@@ -68,7 +69,8 @@ public class Types {
   private final ITypeBinding voidType;
   private final ITypeBinding booleanType;
 
-  private static Types instance;
+  // Each translation thread has its own instance.
+  private static final ThreadLocal<Types> instances = new ThreadLocal<Types>();
 
   // Non-standard naming pattern is used, since in this case it's more readable.
   private final IOSTypeBinding NSCopying;
@@ -88,6 +90,7 @@ public class Types {
   private final Set<Block> autoreleasePoolBlocks = Sets.newHashSet();
   private final Set<Expression> nilChecks = Sets.newHashSet();
   private final Set<Expression> deferredFieldSetters = Sets.newHashSet();
+  private final Set<IMethodBinding> functionizedMethods = Sets.newHashSet();
 
   // The first argument of a iOS method isn't named, but Java requires some sort of valid parameter
   // name.  The method mapper therefore uses this string, which the generators ignore.
@@ -191,11 +194,15 @@ public class Types {
    * Initialize this service using the AST returned by the parser.
    */
   public static void initialize(CompilationUnit unit) {
-    instance = new Types(unit);
+    instances.set(new Types(unit));
   }
 
   public static void cleanup() {
-    instance = null;
+    instances.remove();
+  }
+
+  private static Types instance() {
+    return instances.get();
   }
 
   /**
@@ -209,6 +216,7 @@ public class Types {
     if (binding.isArray()) {
       return resolveArrayType(binding.getComponentType());
     }
+    Types instance = instance();
     ITypeBinding newBinding = instance.typeMap.get(binding);
     if (newBinding == null && binding.isAssignmentCompatible(instance.javaClassType)) {
       newBinding = instance.typeMap.get(instance.javaClassType);
@@ -220,7 +228,7 @@ public class Types {
    * Given a fully-qualified type name, return its binding.
    */
   public static ITypeBinding mapTypeName(String typeName) {
-    ITypeBinding binding = instance.ast.resolveWellKnownType(typeName);
+    ITypeBinding binding = instance().ast.resolveWellKnownType(typeName);
     return mapType(binding);
   }
 
@@ -228,10 +236,11 @@ public class Types {
    * Returns whether a given type has an iOS equivalent.
    */
   public static boolean hasIOSEquivalent(ITypeBinding binding) {
-    return binding.isArray() || instance.typeMap.containsKey(binding.getTypeDeclaration());
+    return binding.isArray() || instance().typeMap.containsKey(binding.getTypeDeclaration());
   }
 
   public static ITypeBinding resolveJavaType(String name) {
+    Types instance = instance();
     ITypeBinding result = instance.javaBindingMap.get(name);
     if (result == null) {
       result = instance.ast.resolveWellKnownType(name);
@@ -240,32 +249,35 @@ public class Types {
   }
 
   public static ITypeBinding resolveIOSType(String name) {
-    return instance.iosBindingMap.get(name);
+    return instance().iosBindingMap.get(name);
   }
 
   public static boolean isJavaObjectType(ITypeBinding type) {
-    return instance.javaObjectType.equals(type);
+    return instance().javaObjectType.equals(type);
   }
 
   public static boolean isJavaStringType(ITypeBinding type) {
-    return instance.javaStringType.equals(type);
+    return instance().javaStringType.equals(type);
   }
 
   public static boolean isFloatingPointType(ITypeBinding type) {
-    return type.isEqualTo(instance.ast.resolveWellKnownType("double")) ||
-        type.isEqualTo(instance.ast.resolveWellKnownType("float")) ||
-        type == instance.ast.resolveWellKnownType("java.lang.Double") ||
-        type == instance.ast.resolveWellKnownType("java.lang.Float");
+    AST ast = instance().ast;
+    return type.isEqualTo(ast.resolveWellKnownType("double")) ||
+        type.isEqualTo(ast.resolveWellKnownType("float")) ||
+        type == ast.resolveWellKnownType("java.lang.Double") ||
+        type == ast.resolveWellKnownType("java.lang.Float");
   }
 
   public static boolean isBooleanType(ITypeBinding type) {
+    Types instance = instance();
     return type.isEqualTo(instance.booleanType) ||
         type == instance.ast.resolveWellKnownType("java.lang.Boolean");
   }
 
   public static boolean isLongType(ITypeBinding type) {
-    return type.isEqualTo(instance.ast.resolveWellKnownType("long")) ||
-        type == instance.ast.resolveWellKnownType("java.lang.Long");
+    AST ast = instance().ast;
+    return type.isEqualTo(ast.resolveWellKnownType("long")) ||
+        type == ast.resolveWellKnownType("java.lang.Long");
   }
 
   public static ITypeBinding resolveIOSType(Type type) {
@@ -277,19 +289,20 @@ public class Types {
   }
 
   public static IOSTypeBinding resolveArrayType(ITypeBinding binding) {
+    Types instance = instance();
     IOSTypeBinding arrayBinding = instance.arrayBindingMap.get(binding);
     return arrayBinding != null ? arrayBinding : instance.IOSObjectArray;
   }
 
   public static IBinding getBinding(Object node) {
-    IBinding binding = instance.bindingMap.get(node);
+    IBinding binding = instance().bindingMap.get(node);
     assert binding != null;
     return binding;
   }
 
   public static void addBinding(Object node, IBinding binding) {
     assert binding != null;
-    instance.bindingMap.put(node, binding);
+    instance().bindingMap.put(node, binding);
   }
 
   /**
@@ -355,12 +368,12 @@ public class Types {
    * ASTNode type that is supposed to have one.
    */
   public static void verifyNode(ASTNode node) {
-    BindingMapVerifier.verify(node, instance.bindingMap);
+    BindingMapVerifier.verify(node, instance().bindingMap);
   }
 
   public static void verifyNodes(List<? extends ASTNode> nodes) {
     for (ASTNode node : nodes) {
-      BindingMapVerifier.verify(node, instance.bindingMap);
+      BindingMapVerifier.verify(node, instance().bindingMap);
     }
   }
 
@@ -368,13 +381,13 @@ public class Types {
       ITypeBinding originalBinding) {
     ITypeBinding renamedBinding =
         RenamedTypeBinding.rename(newName, newDeclaringClass, originalBinding);
-    instance.renamedTypeMap.put(originalBinding, renamedBinding);
+    instance().renamedTypeMap.put(originalBinding, renamedBinding);
     return renamedBinding;
   }
 
   public static ITypeBinding getRenamedBinding(ITypeBinding original) {
-    return original != null && instance.renamedTypeMap.containsKey(original)
-        ? instance.renamedTypeMap.get(original) : original;
+    return original != null && instance().renamedTypeMap.containsKey(original)
+        ? instance().renamedTypeMap.get(original) : original;
   }
 
   public static boolean isVoidType(Type type) {
@@ -382,75 +395,97 @@ public class Types {
   }
 
   public static boolean isVoidType(ITypeBinding type) {
-    return type.isEqualTo(instance.voidType);
+    return type.isEqualTo(instance().voidType);
   }
 
   public static boolean isJavaVoidType(ITypeBinding type) {
-    return type.isEqualTo(instance.javaVoidType);
+    return type.isEqualTo(instance().javaVoidType);
   }
 
   public static void addReleaseableFields(Collection<IVariableBinding> fields) {
     for (IVariableBinding field : fields) {
-      instance.releaseableFields.add(field.getVariableDeclaration());
+      instance().releaseableFields.add(field.getVariableDeclaration());
     }
   }
 
   public static boolean isReleaseableField(IVariableBinding var) {
-    return var != null ? instance.releaseableFields.contains(var.getVariableDeclaration()) : false;
+    return var != null ? instance().releaseableFields.contains(var.getVariableDeclaration()) : false;
   }
 
   public static ITypeBinding getWrapperType(ITypeBinding primitiveType) {
-    return instance.primitiveToWrapperTypes.get(primitiveType);
+    return instance().primitiveToWrapperTypes.get(primitiveType);
   }
 
   public static ITypeBinding getPrimitiveType(ITypeBinding wrapperType) {
-    return instance.wrapperToPrimitiveTypes.get(wrapperType);
+    return instance().wrapperToPrimitiveTypes.get(wrapperType);
   }
 
   public static boolean isBoxedPrimitive(ITypeBinding type) {
-    return instance.wrapperToPrimitiveTypes.containsKey(type);
+    return instance().wrapperToPrimitiveTypes.containsKey(type);
   }
 
   public static ITypeBinding getNSNumber() {
-    return instance.NSNumber;
+    return instance().NSNumber;
   }
 
   public static ITypeBinding getNSObject() {
-    return instance.NSObject;
+    return instance().NSObject;
   }
 
   public static ITypeBinding getNSString() {
-    return instance.NSString;
+    return instance().NSString;
   }
 
   public static ITypeBinding getIOSClass() {
-    return instance.IOSClass;
+    return instance().IOSClass;
   }
 
   public static void addAutoreleasePool(Block block) {
     if (Options.useGC()) {
       J2ObjC.warning(block, "@AutoreleasePool ignored in GC mode");
     }
-    instance.autoreleasePoolBlocks.add(block);
+    instance().autoreleasePoolBlocks.add(block);
   }
 
   public static boolean hasAutoreleasePool(Block block) {
-    return instance.autoreleasePoolBlocks.contains(block);
+    return instance().autoreleasePoolBlocks.contains(block);
   }
 
   public static void addNilCheck(Expression expression) {
-    instance.nilChecks.add(expression);
+    instance().nilChecks.add(expression);
   }
 
   public static boolean hasNilCheck(Expression expression) {
-    return instance.nilChecks.contains(expression);
+    return instance().nilChecks.contains(expression);
   }
 
   public static void addDeferredFieldSetter(Expression expression) {
-    instance.deferredFieldSetters.add(expression);
+    instance().deferredFieldSetters.add(expression);
   }
 
   public static boolean hasDeferredFieldSetter(Expression expression) {
-    return instance.deferredFieldSetters.contains(expression);
+    return instance().deferredFieldSetters.contains(expression);
+  }
+
+  public static void addFunctionizedMethod(IMethodBinding method) {
+    instance().functionizedMethods.add(method.getMethodDeclaration());
+  }
+
+  /**
+   * Returns true if a method declared in the current compilation unit is
+   * implemented by a C function, which callers may invoke directly.
+   */
+  public static boolean isFunctionizedMethod(IMethodBinding method) {
+    return instance().functionizedMethods.contains(method.getMethodDeclaration());
+  }
+
+  /**
+   * Returns true if a method is implemented by a C function that is declared
+   * in its class's header, so callers in any compilation unit may invoke it
+   * directly. Functions are only exported by closed-world translations.
+   */
+  public static boolean isExportedFunction(IMethodBinding method) {
+    ClassHierarchy hierarchy = Options.getClassHierarchy();
+    return hierarchy != null && hierarchy.hasFunction(method);
   }
 }
@@ -266,6 +266,9 @@ public final class ASTUtil {
         args = ((ConstructorInvocation) parent).arguments();
       } else if (parent instanceof EnumConstantDeclaration) {
         args = ((EnumConstantDeclaration) parent).arguments();
+      } else if (parent instanceof ForStatement) {
+        args = locator == ForStatement.INITIALIZERS_PROPERTY
+            ? ((ForStatement) parent).initializers() : ((ForStatement) parent).updaters();
       } else if (parent instanceof InfixExpression) {
         args = ((InfixExpression) parent).extendedOperands();
       } else if (parent instanceof MethodInvocation) {
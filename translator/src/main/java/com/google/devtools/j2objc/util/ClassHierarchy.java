@@ -0,0 +1,167 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.devtools.j2objc.util;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
+
+import org.eclipse.jdt.core.dom.IMethodBinding;
+import org.eclipse.jdt.core.dom.ITypeBinding;
+
+import java.util.Set;
+
+/**
+ * The class hierarchy of a closed world, where every class of the program is
+ * among the translated sources. A class that no source subclasses, and a
+ * method that no source overrides, are effectively final, so they can be
+ * devirtualized like final ones.
+ *
+ * Classes and methods are identified by their binary names and signatures,
+ * so a hierarchy built from one parse of the sources applies to the
+ * bindings of another.
+ */
+public class ClassHierarchy {
+
+  /**
+   * Collects the classes of a closed world, and the methods they override.
+   */
+  public static class Builder {
+    private final Set<String> classes = Sets.newHashSet();
+    private final Set<String> subclassedClasses = Sets.newHashSet();
+    private final Set<String> overriddenMethods = Sets.newHashSet();
+    private final Set<String> functionCandidates = Sets.newHashSet();
+
+    public ClassHierarchy build() {
+      return new ClassHierarchy(classes, subclassedClasses, overriddenMethods, functionCandidates);
+    }
+
+    /**
+     * Adds a class declared by a source, marking its superclasses as
+     * subclassed and the superclass methods it overrides as overridden.
+     */
+    public Builder addClass(ITypeBinding type) {
+      type = type.getTypeDeclaration();
+      String name = getClassName(type);
+      if (name == null || type.isInterface()) {
+        return this;
+      }
+      classes.add(name);
+      IMethodBinding[] methods = type.getDeclaredMethods();
+      for (ITypeBinding superclass = type.getSuperclass(); superclass != null;
+           superclass = superclass.getSuperclass()) {
+        String superclassName = getClassName(superclass.getTypeDeclaration());
+        if (superclassName != null) {
+          subclassedClasses.add(superclassName);
+        }
+        for (IMethodBinding superMethod : superclass.getDeclaredMethods()) {
+          for (IMethodBinding method : methods) {
+            if (method.overrides(superMethod)) {
+              overriddenMethods.add(getMethodName(superMethod.getMethodDeclaration()));
+            }
+          }
+        }
+      }
+      return this;
+    }
+
+    /**
+     * Adds an instance method whose body can be implemented as a C function,
+     * if the method is effectively final.
+     */
+    public Builder addFunctionCandidate(IMethodBinding method) {
+      String name = getMethodName(method.getMethodDeclaration());
+      if (name != null) {
+        functionCandidates.add(name);
+      }
+      return this;
+    }
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  private final Set<String> classes;
+  private final Set<String> subclassedClasses;
+  private final Set<String> overriddenMethods;
+  private final Set<String> functionCandidates;
+
+  private ClassHierarchy(Set<String> classes, Set<String> subclassedClasses,
+      Set<String> overriddenMethods, Set<String> functionCandidates) {
+    this.classes = ImmutableSet.copyOf(classes);
+    this.subclassedClasses = ImmutableSet.copyOf(subclassedClasses);
+    this.overriddenMethods = ImmutableSet.copyOf(overriddenMethods);
+    this.functionCandidates = ImmutableSet.copyOf(functionCandidates);
+  }
+
+  /**
+   * Returns true if a class is declared by a source in this world.
+   */
+  public boolean contains(ITypeBinding type) {
+    return classes.contains(getClassName(type.getTypeDeclaration()));
+  }
+
+  /**
+   * Returns true if a class is final, or is a class of this world that no
+   * other class extends.
+   */
+  public boolean isEffectivelyFinal(ITypeBinding type) {
+    type = type.getTypeDeclaration();
+    return BindingUtil.isFinal(type)
+        || (contains(type) && !subclassedClasses.contains(getClassName(type)));
+  }
+
+  /**
+   * Returns true if a method can't be overridden, or is declared by a class
+   * of this world and no subclass overrides it.
+   */
+  public boolean isEffectivelyFinal(IMethodBinding method) {
+    method = method.getMethodDeclaration();
+    if (BindingUtil.isFinal(method) || BindingUtil.isPrivate(method)
+        || BindingUtil.isStatic(method)) {
+      return true;
+    }
+    ITypeBinding declaringClass = method.getDeclaringClass();
+    if (!contains(declaringClass)) {
+      return false;
+    }
+    return isEffectivelyFinal(declaringClass)
+        || !overriddenMethods.contains(getMethodName(method));
+  }
+
+  /**
+   * Returns true if an instance method is implemented by a C function that
+   * is declared in its class's header, so that it can be called directly
+   * from any source in this world.
+   */
+  public boolean hasFunction(IMethodBinding method) {
+    method = method.getMethodDeclaration();
+    return !BindingUtil.isStatic(method) && !BindingUtil.isPrivate(method)
+        && contains(method.getDeclaringClass())
+        && functionCandidates.contains(getMethodName(method)) && isEffectivelyFinal(method);
+  }
+
+  private static String getClassName(ITypeBinding type) {
+    return type.getBinaryName();
+  }
+
+  private static String getMethodName(IMethodBinding method) {
+    String className = getClassName(method.getDeclaringClass().getTypeDeclaration());
+    if (className == null) {
+      return null;
+    }
+    return className + '.' + method.getName() + BindingUtil.getSignature(method);
+  }
+}
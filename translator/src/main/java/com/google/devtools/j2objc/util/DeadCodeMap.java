@@ -16,94 +16,236 @@
 
 package com.google.devtools.j2objc.util;
 
-import com.google.common.collect.ArrayListMultimap;
-import com.google.common.collect.HashBasedTable;
-import com.google.common.collect.ImmutableMultimap;
-import com.google.common.collect.ImmutableSet;
-import com.google.common.collect.ImmutableTable;
-import com.google.common.collect.ListMultimap;
-import com.google.common.collect.Table;
-
-import java.util.HashSet;
+import com.google.common.base.Charsets;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Map;
 import java.util.Set;
 
 /**
  * Tracks dead classes and methods that can be ignored during translation.
+ * <p>
+ * Dead members are kept per class in sorted arrays, a method being stored as
+ * its name followed by its signature. A map can be saved to a binary cache
+ * file, which later runs memory-map instead of parsing the ProGuard report
+ * again.
+ * </p>
  *
  * @author Daniel Connelly
  */
 public class DeadCodeMap {
 
+  private static final int CACHE_MAGIC = 0x4a32444d;  // "J2DM"
+  private static final int CACHE_VERSION = 1;
+  private static final String[] NO_MEMBERS = new String[0];
+
   public static class Builder {
-    private final Set<String> deadClasses = new HashSet<String>();
-    private final Table<String, String, Set<String>> deadMethods = HashBasedTable.create();
-    private final ListMultimap<String, String> deadFields = ArrayListMultimap.create();
+    private final Interner<String> classNames = Interners.newStrongInterner();
+    private final Set<String> deadClasses = Sets.newHashSet();
+    private final Map<String, Set<String>> deadMethods = Maps.newHashMap();
+    private final Map<String, Set<String>> deadFields = Maps.newHashMap();
 
     public DeadCodeMap build() {
-      ImmutableTable.Builder<String, String, ImmutableSet<String>> deadMethodsBuilder =
-          ImmutableTable.builder();
-      for (Table.Cell<String, String, Set<String>> cell : this.deadMethods.cellSet()) {
-        deadMethodsBuilder.put(
-            cell.getRowKey(),
-            cell.getColumnKey(),
-            ImmutableSet.copyOf(cell.getValue()));
-      }
-      return new DeadCodeMap(
-          ImmutableSet.copyOf(deadClasses),
-          deadMethodsBuilder.build(),
-          ImmutableMultimap.copyOf(deadFields));
+      String[] classes = deadClasses.toArray(new String[deadClasses.size()]);
+      Arrays.sort(classes);
+      return new DeadCodeMap(classes, toSortedArrays(deadMethods), toSortedArrays(deadFields));
     }
 
     public Builder addDeadClass(String clazz) {
-      deadClasses.add(clazz);
+      deadClasses.add(classNames.intern(clazz));
       return this;
     }
 
     public Builder addDeadMethod(String clazz, String name, String signature) {
-      if (!deadMethods.contains(clazz, name)) {
-        deadMethods.put(clazz, name, new HashSet<String>());
-      }
-      deadMethods.get(clazz, name).add(signature);
+      getMembers(deadMethods, clazz).add(name + signature);
       return this;
     }
 
     public Builder addDeadField(String clazz, String field) {
-      deadFields.put(clazz, field);
+      getMembers(deadFields, clazz).add(field);
       return this;
     }
+
+    private Set<String> getMembers(Map<String, Set<String>> map, String clazz) {
+      Set<String> members = map.get(clazz);
+      if (members == null) {
+        members = Sets.newHashSet();
+        map.put(classNames.intern(clazz), members);
+      }
+      return members;
+    }
+
+    private static Map<String, String[]> toSortedArrays(Map<String, Set<String>> map) {
+      Map<String, String[]> result = Maps.newHashMapWithExpectedSize(map.size());
+      for (Map.Entry<String, Set<String>> entry : map.entrySet()) {
+        Set<String> members = entry.getValue();
+        String[] array = members.toArray(new String[members.size()]);
+        Arrays.sort(array);
+        result.put(entry.getKey(), array);
+      }
+      return result;
+    }
   }
 
   public static Builder builder() {
     return new Builder();
   }
 
-  private final ImmutableSet<String> deadClasses;
-  private final ImmutableTable<String, String, ImmutableSet<String>> deadMethods;
-  private final ImmutableMultimap<String, String> deadFields;
+  private final String[] deadClasses;
+  private final Map<String, String[]> deadMethods;
+  private final Map<String, String[]> deadFields;
 
   private DeadCodeMap(
-      ImmutableSet<String> deadClasses,
-      ImmutableTable<String, String, ImmutableSet<String>> deadMethods,
-      ImmutableMultimap<String, String> deadFields) {
+      String[] deadClasses, Map<String, String[]> deadMethods, Map<String, String[]> deadFields) {
     this.deadClasses = deadClasses;
     this.deadMethods = deadMethods;
     this.deadFields = deadFields;
   }
 
   public boolean isDeadClass(String clazz) {
-    return deadClasses.contains(clazz);
+    return Arrays.binarySearch(deadClasses, clazz) >= 0;
   }
 
   public boolean isDeadMethod(String clazz, String name, String signature) {
-    return deadClasses.contains(clazz)
-        || deadMethods.contains(clazz, name) && deadMethods.get(clazz, name).contains(signature);
+    return isDeadClass(clazz) || contains(deadMethods, clazz, name + signature);
   }
 
   public boolean isDeadField(String clazz, String field) {
-    return deadClasses.contains(clazz) || deadFields.containsEntry(clazz, field);
+    return isDeadClass(clazz) || contains(deadFields, clazz, field);
   }
 
   public boolean isEmpty() {
-    return deadClasses.isEmpty() && deadMethods.isEmpty() && deadFields.isEmpty();
+    return deadClasses.length == 0 && deadMethods.isEmpty() && deadFields.isEmpty();
+  }
+
+  private static boolean contains(Map<String, String[]> map, String clazz, String member) {
+    String[] members = map.get(clazz);
+    return members != null && Arrays.binarySearch(members, member) >= 0;
+  }
+
+  /**
+   * Writes this map to a cache file, stamped with the length and modification
+   * time of the report it was parsed from. The file is written to a temporary
+   * file first, so concurrent runs never read a partial cache.
+   */
+  public void writeCache(File cacheFile, File report) throws IOException {
+    File tempFile = new File(cacheFile.getPath() + ".tmp" + Thread.currentThread().getId());
+    DataOutputStream out = new DataOutputStream(
+        new BufferedOutputStream(new FileOutputStream(tempFile), 1 << 16));
+    try {
+      out.writeInt(CACHE_MAGIC);
+      out.writeInt(CACHE_VERSION);
+      out.writeLong(report.length());
+      out.writeLong(report.lastModified());
+      writeStrings(out, deadClasses);
+      writeMembers(out, deadMethods);
+      writeMembers(out, deadFields);
+    } finally {
+      out.close();
+    }
+    if (!tempFile.renameTo(cacheFile)) {
+      tempFile.delete();
+    }
+  }
+
+  /**
+   * Reads a map from a cache file written by {@link #writeCache}.
+   *
+   * @return the map, or null if the cache file doesn't exist, is invalid, or
+   *     was written for a different version of the report
+   */
+  public static DeadCodeMap readCache(File cacheFile, File report) throws IOException {
+    if (!cacheFile.isFile()) {
+      return null;
+    }
+    FileInputStream in = new FileInputStream(cacheFile);
+    try {
+      FileChannel channel = in.getChannel();
+      ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      if (buffer.getInt() != CACHE_MAGIC || buffer.getInt() != CACHE_VERSION
+          || buffer.getLong() != report.length() || buffer.getLong() != report.lastModified()) {
+        return null;
+      }
+      String[] deadClasses = readStrings(buffer);
+      Map<String, String[]> deadMethods = readMembers(buffer);
+      Map<String, String[]> deadFields = readMembers(buffer);
+      return buffer.hasRemaining() ? null
+          : new DeadCodeMap(deadClasses, deadMethods, deadFields);
+    } catch (BufferUnderflowException e) {
+      return null;
+    } finally {
+      in.close();
+    }
+  }
+
+  private static void writeMembers(DataOutputStream out, Map<String, String[]> map)
+      throws IOException {
+    out.writeInt(map.size());
+    for (Map.Entry<String, String[]> entry : map.entrySet()) {
+      writeString(out, entry.getKey());
+      writeStrings(out, entry.getValue());
+    }
+  }
+
+  private static void writeStrings(DataOutputStream out, String[] strings) throws IOException {
+    out.writeInt(strings.length);
+    for (String s : strings) {
+      writeString(out, s);
+    }
+  }
+
+  private static void writeString(DataOutputStream out, String s) throws IOException {
+    byte[] bytes = s.getBytes(Charsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static Map<String, String[]> readMembers(ByteBuffer buffer) {
+    int size = readLength(buffer);
+    Map<String, String[]> map = Maps.newHashMapWithExpectedSize(size);
+    for (int i = 0; i < size; i++) {
+      map.put(readString(buffer), readStrings(buffer));
+    }
+    return map;
+  }
+
+  private static String[] readStrings(ByteBuffer buffer) {
+    int length = readLength(buffer);
+    if (length == 0) {
+      return NO_MEMBERS;
+    }
+    String[] strings = new String[length];
+    for (int i = 0; i < length; i++) {
+      strings[i] = readString(buffer);
+    }
+    return strings;
+  }
+
+  private static String readString(ByteBuffer buffer) {
+    byte[] bytes = new byte[readLength(buffer)];
+    buffer.get(bytes);
+    return new String(bytes, Charsets.UTF_8);
+  }
+
+  // A count or length larger than the rest of the file means it's corrupt.
+  private static int readLength(ByteBuffer buffer) {
+    int length = buffer.getInt();
+    if (length < 0 || length > buffer.remaining()) {
+      throw new BufferUnderflowException();
+    }
+    return length;
   }
 }
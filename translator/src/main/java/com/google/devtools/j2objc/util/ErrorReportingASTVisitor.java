@@ -31,6 +31,7 @@ import java.util.Stack;
  */
 public class ErrorReportingASTVisitor extends ASTVisitor {
   private Stack<ASTNode> stack = new Stack<ASTNode>();
+  private int visitedNodeCount = 0;
 
   /**
    * Executes this visitor on a specified node.  This entry point should
@@ -50,6 +51,14 @@ public class ErrorReportingASTVisitor extends ASTVisitor {
   @Override
   public void preVisit(ASTNode node) {
     stack.push(node);
+    visitedNodeCount++;
+  }
+
+  /**
+   * Returns the number of nodes this visitor has visited.
+   */
+  public int getVisitedNodeCount() {
+    return visitedNodeCount;
   }
 
   @Override
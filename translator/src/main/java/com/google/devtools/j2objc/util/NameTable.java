@@ -56,7 +56,8 @@ import java.util.logging.Logger;
  */
 public class NameTable {
 
-  private static NameTable instance;
+  // Each translation thread has its own instance.
+  private static final ThreadLocal<NameTable> instances = new ThreadLocal<NameTable>();
   private final Map<IBinding, String> renamings = Maps.newHashMap();
 
   public static final String INIT_NAME = "init";
@@ -240,11 +241,15 @@ public class NameTable {
    * Initialize this service using the AST returned by the parser.
    */
   public static void initialize(CompilationUnit unit) {
-    instance = new NameTable(Options.getPackagePrefixes());
+    instances.set(new NameTable(Options.getPackagePrefixes()));
   }
 
   public static void cleanup() {
-    instance = null;
+    instances.remove();
+  }
+
+  private static NameTable instance() {
+    return instances.get();
   }
 
   /**
@@ -255,7 +260,7 @@ public class NameTable {
   public static String getName(IBinding binding) {
     assert binding != null;
     binding = getBindingDeclaration(binding);
-    String newName = instance.renamings.get(binding);
+    String newName = instance().renamings.get(binding);
     if (newName != null) {
       return newName;
     }
@@ -303,7 +308,7 @@ public class NameTable {
   }
 
   public static boolean isRenamed(IBinding binding) {
-    return instance.renamings.containsKey(binding);
+    return instance().renamings.containsKey(binding);
   }
 
   public static boolean isRenamed(SimpleName node) {
@@ -315,12 +320,12 @@ public class NameTable {
    */
   public static void rename(IBinding oldName, String newName) {
     oldName = getBindingDeclaration(oldName);
-    String previousName = instance.renamings.get(oldName);
+    String previousName = instance().renamings.get(oldName);
     if (previousName != null && !previousName.equals(newName)) {
       logger.fine(String.format("Changing previous rename: %s => %s, now: %s => %s",
           oldName.toString(), previousName, oldName, newName));
     }
-    instance.renamings.put(oldName, newName);
+    instance().renamings.put(oldName, newName);
   }
 
   /**
@@ -445,6 +450,16 @@ public class NameTable {
     return sb.toString();
   }
 
+  /**
+   * Returns the name of the C function that implements a method, which is
+   * the method's selector prefixed by its class, such as "Foo_barWithInt_".
+   */
+  public static String getFunctionName(IMethodBinding method) {
+    method = method.getMethodDeclaration();
+    return getFullName(method.getDeclaringClass()) + '_'
+        + getMethodSelector(method).replace(':', '_');
+  }
+
   /**
    * Convert a Java type to an equivalent Objective-C type with type variables
    * resolved to their bounds.
@@ -658,7 +673,7 @@ public class NameTable {
   }
 
   public static void mapPackageToPrefix(String packageName, String prefix) {
-    instance.prefixMap.put(packageName, prefix);
+    instance().prefixMap.put(packageName, prefix);
   }
 
   /**
@@ -668,7 +683,7 @@ public class NameTable {
    */
   public static String getPrefix(String packageName) {
     if (hasPrefix(packageName)) {
-      return instance.prefixMap.get(packageName);
+      return instance().prefixMap.get(packageName);
     }
     StringBuilder sb = new StringBuilder();
     for (String part : packageName.split("\\.")) {
@@ -678,6 +693,6 @@ public class NameTable {
   }
 
   public static boolean hasPrefix(String packageName) {
-    return instance.prefixMap.containsKey(packageName);
+    return instance().prefixMap.containsKey(packageName);
   }
 }
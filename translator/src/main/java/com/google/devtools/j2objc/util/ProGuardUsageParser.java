@@ -16,6 +16,8 @@
 
 package com.google.devtools.j2objc.util;
 
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.io.CharStreams;
 import com.google.common.io.Files;
 import com.google.common.io.InputSupplier;
@@ -25,11 +27,13 @@ import java.io.File;
 import java.io.IOException;
 import java.io.Reader;
 import java.nio.charset.Charset;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Map;
+import java.util.Set;
 
 /**
- * Parses dead code reports generated by ProGuard.
+ * Parses dead code reports generated by ProGuard. Reports are read a line at
+ * a time, and each line is scanned once without regular expressions, so that
+ * very large reports parse quickly.
  *
  * Example ProGuard configuration file to generate an acceptable listing:
  *
@@ -57,65 +61,80 @@ import java.util.regex.Pattern;
  */
 public class ProGuardUsageParser {
 
-  private static final Pattern proGuardMethodPattern = Pattern.compile(
-      "    " + // leading indent
-      "(\\d+:\\d+:)?" + // method line numbers (optional)
-      "((public|private|protected|static|synchronized|varargs|bridge|" +
-          "native|abstract|strictfp|final|synthetic)\\s)*" + // keywords
-      "((\\S+)\\s)?(\\S+)\\((\\S*)\\)"); // return type, method name, arguments
+  private static final String INDENT = "    ";
+
+  private static final Set<String> MODIFIERS = ImmutableSet.of(
+      "public", "private", "protected", "static", "synchronized", "varargs", "bridge",
+      "native", "abstract", "strictfp", "final", "synthetic");
+
+  private static final Map<String, String> PRIMITIVE_SIGNATURES =
+      ImmutableMap.<String, String>builder()
+      .put("byte", "B")
+      .put("char", "C")
+      .put("double", "D")
+      .put("float", "F")
+      .put("int", "I")
+      .put("long", "J")
+      .put("short", "S")
+      .put("boolean", "Z")
+      .put("void", "V")
+      .build();
 
   private ProGuardUsageParser() {
     // Don't instantiate.
   }
 
-  private static String buildTypeSignature(String type) {
-    if (type.equals("byte")) {
-      return "B";
+  private static void appendTypeSignature(StringBuilder signature, String type) {
+    int end = type.length();
+    while (end >= 2 && type.charAt(end - 2) == '[' && type.charAt(end - 1) == ']') {
+      signature.append('[');
+      end -= 2;
     }
-    if (type.equals("char")) {
-      return "C";
+    if (end == 0) {
+      return;
     }
-    if (type.equals("double")) {
-      return "D";
+    String elementType = end == type.length() ? type : type.substring(0, end);
+    String primitive = PRIMITIVE_SIGNATURES.get(elementType);
+    if (primitive != null) {
+      signature.append(primitive);
+    } else {
+      signature.append('L').append(elementType.replace('.', '/')).append(';');
     }
-    if (type.equals("float")) {
-      return "F";
-    }
-    if (type.equals("int")) {
-      return "I";
-    }
-    if (type.equals("long")) {
-      return "J";
-    }
-    if (type.equals("short")) {
-      return "S";
-    }
-    if (type.equals("boolean")) {
-      return "Z";
-    }
-    if (type.equals("void")) {
-      return "V";
-    }
-    if (type.endsWith("[]")) {
-      return "[" + buildTypeSignature(type.substring(0, type.length() - 2));
-    }
-    if (type.length() == 0) {
-      return "";
-    }
-    return "L" + type.replace('.', '/') + ";";
   }
 
   private static String buildMethodSignature(String returnType, String argumentList) {
-    String[] arguments = argumentList.split(",");
-    StringBuilder signature = new StringBuilder().append("(");
-    for (String argument : arguments) {
-      signature.append(buildTypeSignature(argument));
+    StringBuilder signature = new StringBuilder().append('(');
+    int start = 0;
+    int comma;
+    while ((comma = argumentList.indexOf(',', start)) >= 0) {
+      appendTypeSignature(signature, argumentList.substring(start, comma));
+      start = comma + 1;
     }
-    signature.append(")");
-    signature.append(buildTypeSignature(returnType != null ? returnType : "void"));
+    appendTypeSignature(signature, argumentList.substring(start));
+    signature.append(')');
+    appendTypeSignature(signature, returnType != null ? returnType : "void");
     return signature.toString();
   }
 
+  /**
+   * Returns the index just past a "first:last:" line number prefix that
+   * starts at index start, or start if there isn't one.
+   */
+  private static int skipLineNumbers(String line, int start) {
+    int i = start;
+    for (int colons = 0; colons < 2; colons++) {
+      int digits = i;
+      while (i < line.length() && Character.isDigit(line.charAt(i))) {
+        i++;
+      }
+      if (i == digits || i == line.length() || line.charAt(i) != ':') {
+        return start;
+      }
+      i++;
+    }
+    return i;
+  }
+
   public static DeadCodeMap parse(InputSupplier<? extends Reader> listing) throws IOException {
     return CharStreams.readLines(listing, new LineProcessor<DeadCodeMap>() {
       DeadCodeMap.Builder dead = DeadCodeMap.builder();
@@ -136,16 +155,34 @@ public class ProGuardUsageParser {
       }
 
       private void handleMethod(String line) throws IOException {
-        Matcher methodMatcher = proGuardMethodPattern.matcher(line);
-        if (!methodMatcher.matches()) {
+        // [first:last:]{modifier }[returnType ]name(argumentTypes)
+        int start = skipLineNumbers(line, INDENT.length());
+        int open = line.indexOf('(', start);
+        if (open < 0 || !line.endsWith(")")) {
           throw new AssertionError("Line doesn't match expected ProGuard format!");
         }
         if (lastClass == null) {
           throw new IOException("Bad listing format: method not attached to a class");
         }
-        String returnType = methodMatcher.group(5);
-        String methodName = methodMatcher.group(6);
-        String arguments = methodMatcher.group(7);
+        int nameStart = line.lastIndexOf(' ', open) + 1;
+        if (nameStart <= start) {
+          nameStart = start;
+        }
+        String returnType = null;
+        int wordStart = start;
+        while (wordStart < nameStart) {
+          int wordEnd = line.indexOf(' ', wordStart);
+          String word = line.substring(wordStart, wordEnd);
+          if (!word.isEmpty() && !MODIFIERS.contains(word)) {
+            if (returnType != null) {
+              throw new AssertionError("Line doesn't match expected ProGuard format!");
+            }
+            returnType = word;
+          }
+          wordStart = wordEnd + 1;
+        }
+        String methodName = line.substring(nameStart, open);
+        String arguments = line.substring(open + 1, line.length() - 1);
         String signature = buildMethodSignature(returnType, arguments);
         dead.addDeadMethod(lastClass, methodName, signature);
       }
@@ -159,9 +196,9 @@ public class ProGuardUsageParser {
       public boolean processLine(String line) throws IOException {
         if (line.startsWith("ProGuard, version") || line.startsWith("Reading ")) {
           // ignore output header
-        } else if (!line.startsWith("    ")) {
+        } else if (!line.startsWith(INDENT)) {
           handleClass(line);
-        } else if (line.startsWith("    ") && !line.contains("(")) {
+        } else if (line.indexOf('(') < 0) {
           handleField(line);
         } else {
           handleMethod(line);
@@ -0,0 +1,305 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.devtools.j2objc.util;
+
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The classes, methods and fields of a program, and the references between
+ * them, from which the code that can't be reached from a set of roots is
+ * found without a ProGuard usage report.
+ *
+ * Classes are identified by their binary names, and members by their class
+ * name, a '#' and the member's name, followed by its signature for methods.
+ * A class is reachable when any of its members is; a reachable class makes
+ * its superclass, interfaces, enclosing class and static initialization
+ * reachable. A reachable method makes its overrides in reachable classes
+ * reachable, as do methods of classes outside the graph, which library code
+ * may call. A method a class inherits from its superclass can implement one
+ * of the class's interfaces, so it is reachable through the interface method
+ * once that class is.
+ */
+public class ReachabilityGraph {
+
+  private static final String CLASS_INITIALIZER = "<clinit>";
+  private static final String INSTANCE_INITIALIZER = "<init>";
+
+  private static class ClassNode {
+    final String name;
+    final List<String> supertypes = Lists.newArrayList();
+    final List<String> methods = Lists.newArrayList();
+    // Inherited methods that implement the class's interfaces.
+    final List<String> inheritedMethods = Lists.newArrayList();
+    final List<String> fields = Lists.newArrayList();
+    String enclosingClass;
+    boolean isAnnotation;
+
+    ClassNode(String name) {
+      this.name = name;
+    }
+  }
+
+  // The name and signature of a method, as a ProGuard usage report lists it.
+  private static class MethodNode {
+    final String name;
+    final String signature;
+
+    MethodNode(String name, String signature) {
+      this.name = name;
+      this.signature = signature;
+    }
+  }
+
+  private final Map<String, ClassNode> classes = Maps.newHashMap();
+  private final Map<String, MethodNode> methods = Maps.newHashMap();
+  private final Map<String, Set<String>> references = Maps.newHashMap();
+  private final Map<String, Set<String>> overriddenMethods = Maps.newHashMap();
+  private final Map<String, Set<String>> overridingMethods = Maps.newHashMap();
+  private final Set<String> roots = Sets.newLinkedHashSet();
+
+  public static String getMethodKey(String clazz, String name, String signature) {
+    return clazz + '#' + name + signature;
+  }
+
+  public static String getFieldKey(String clazz, String name) {
+    return clazz + '#' + name;
+  }
+
+  /**
+   * Returns the key of a class's static initialization: its static field
+   * initializers, initializer blocks and enum constants.
+   */
+  public static String getClassInitializerKey(String clazz) {
+    return clazz + '#' + CLASS_INITIALIZER;
+  }
+
+  /**
+   * Returns the key of a class's instance field initializers and initializer
+   * blocks, which every constructor runs.
+   */
+  public static String getInstanceInitializerKey(String clazz) {
+    return clazz + '#' + INSTANCE_INITIALIZER;
+  }
+
+  /**
+   * Adds a class, which must be added before its members.
+   */
+  public void addClass(
+      String clazz, String enclosingClass, List<String> supertypes, boolean isAnnotation) {
+    ClassNode node = getClassNode(clazz);
+    node.enclosingClass = enclosingClass;
+    node.supertypes.addAll(supertypes);
+    node.isAnnotation = isAnnotation;
+  }
+
+  /**
+   * Adds a method, returning its key.
+   */
+  public String addMethod(String clazz, String name, String signature) {
+    String key = getMethodKey(clazz, name, signature);
+    if (!methods.containsKey(key)) {
+      methods.put(key, new MethodNode(name, signature));
+      getClassNode(clazz).methods.add(key);
+    }
+    return key;
+  }
+
+  /**
+   * Adds a field, returning its key.
+   */
+  public String addField(String clazz, String name) {
+    String key = getFieldKey(clazz, name);
+    getClassNode(clazz).fields.add(key);
+    return key;
+  }
+
+  /**
+   * Records that reaching a member, initializer or class reaches a class or
+   * member it references.
+   */
+  public void addReference(String from, String to) {
+    getSet(references, from).add(to);
+  }
+
+  /**
+   * Records that a method overrides another, which may be declared by a
+   * class outside the graph.
+   */
+  public void addOverride(String method, String overriddenMethod) {
+    getSet(overriddenMethods, method).add(overriddenMethod);
+    getSet(overridingMethods, overriddenMethod).add(method);
+  }
+
+  /**
+   * Records that a class inherits a method that implements a method of one
+   * of its interfaces, which the class that declares it doesn't implement.
+   * The inherited method is reached when the interface method is reached
+   * and the inheriting class is reached, like a method the class declares.
+   */
+  public void addInheritedImplementation(String clazz, String method, String interfaceMethod) {
+    String key = clazz + method.substring(method.indexOf('#'));
+    getClassNode(clazz).inheritedMethods.add(key);
+    addOverride(key, interfaceMethod);
+    addReference(key, method);
+  }
+
+  /**
+   * Adds a class or member that is reached independently of the graph's
+   * references, such as an entry point or a method called by reflection.
+   */
+  public void addRoot(String key) {
+    roots.add(key);
+  }
+
+  /**
+   * Adds a root by name: a class name reaches all of the class's members,
+   * while a class name followed by '#' and a member name reaches all the
+   * members with that name.
+   *
+   * @return false if there is no such class or member in the graph
+   */
+  public boolean addRootByName(String name) {
+    int hash = name.indexOf('#');
+    String clazz = hash < 0 ? name : name.substring(0, hash);
+    ClassNode node = classes.get(clazz);
+    if (node == null) {
+      return false;
+    }
+    boolean found = hash < 0;
+    roots.add(clazz);
+    for (String member : Iterables.concat(node.methods, node.fields)) {
+      if (hash < 0 || getMemberName(member).equals(name.substring(hash + 1))) {
+        roots.add(member);
+        found = true;
+      }
+    }
+    return found;
+  }
+
+  /**
+   * Walks the references from the roots, and returns the classes, methods
+   * and fields that weren't reached.
+   */
+  public DeadCodeMap findDeadCode() {
+    Set<String> reached = Sets.newHashSet();
+    Deque<String> worklist = new ArrayDeque<String>(roots);
+    while (!worklist.isEmpty()) {
+      String key = worklist.remove();
+      if (!reached.add(key)) {
+        continue;
+      }
+      int hash = key.indexOf('#');
+      if (hash < 0) {
+        reachClass(key, reached, worklist);
+        continue;
+      }
+      worklist.add(key.substring(0, hash));
+      worklist.addAll(getReferences(references, key));
+      for (String overrider : getReferences(overridingMethods, key)) {
+        if (reached.contains(getClassName(overrider))) {
+          worklist.add(overrider);
+        }
+      }
+    }
+
+    DeadCodeMap.Builder dead = DeadCodeMap.builder();
+    for (ClassNode node : classes.values()) {
+      if (node.isAnnotation) {
+        continue;
+      }
+      if (!reached.contains(node.name)) {
+        dead.addDeadClass(node.name);
+        continue;
+      }
+      for (String method : node.methods) {
+        if (!reached.contains(method)) {
+          MethodNode methodNode = methods.get(method);
+          dead.addDeadMethod(node.name, methodNode.name, methodNode.signature);
+        }
+      }
+      for (String field : node.fields) {
+        if (!reached.contains(field)) {
+          dead.addDeadField(node.name, getMemberName(field));
+        }
+      }
+    }
+    return dead.build();
+  }
+
+  private void reachClass(String clazz, Set<String> reached, Deque<String> worklist) {
+    ClassNode node = classes.get(clazz);
+    if (node == null) {
+      return;  // A library class.
+    }
+    worklist.addAll(node.supertypes);
+    if (node.enclosingClass != null) {
+      worklist.add(node.enclosingClass);
+    }
+    worklist.add(getClassInitializerKey(clazz));
+    // Overrides of reached methods, and of methods that library code may
+    // call, are reached along with their class.
+    for (String method : Iterables.concat(node.methods, node.inheritedMethods)) {
+      for (String overridden : getReferences(overriddenMethods, method)) {
+        if (reached.contains(overridden) || !classes.containsKey(getClassName(overridden))) {
+          worklist.add(method);
+          break;
+        }
+      }
+    }
+  }
+
+  private ClassNode getClassNode(String clazz) {
+    ClassNode node = classes.get(clazz);
+    if (node == null) {
+      node = new ClassNode(clazz);
+      classes.put(clazz, node);
+    }
+    return node;
+  }
+
+  private static String getClassName(String member) {
+    return member.substring(0, member.indexOf('#'));
+  }
+
+  private static String getMemberName(String member) {
+    String name = member.substring(member.indexOf('#') + 1);
+    int paren = name.indexOf('(');
+    return paren < 0 ? name : name.substring(0, paren);
+  }
+
+  private static Set<String> getSet(Map<String, Set<String>> map, String key) {
+    Set<String> set = map.get(key);
+    if (set == null) {
+      set = Sets.newHashSet();
+      map.put(key, set);
+    }
+    return set;
+  }
+
+  private static Set<String> getReferences(Map<String, Set<String>> map, String key) {
+    Set<String> set = map.get(key);
+    return set != null ? set : Collections.<String>emptySet();
+  }
+}
@@ -0,0 +1,230 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.devtools.j2objc.util;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.io.Files;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Records the time each translation pass takes on each file, the number of
+ * nodes it visits, and counters of the constructs passes insert, such as
+ * nil_chk calls and boxing conversions. The records are written as a JSON
+ * or CSV report by --timing-report, so translator performance can be
+ * tracked over time.
+ * <p>
+ * Each thread records the file it is translating, so units can be
+ * translated concurrently. Nothing is recorded unless a file was started.
+ * </p>
+ */
+public class TranslationStatistics {
+
+  private static final List<FileStatistics> files = Lists.newArrayList();
+
+  private static final ThreadLocal<FileStatistics> currentFile =
+      new ThreadLocal<FileStatistics>();
+
+  /**
+   * The statistics of one translated file.
+   */
+  private static class FileStatistics {
+    private final String fileName;
+    // Passes are kept in the order they were run.
+    private final Map<String, PassStatistics> passes = Maps.newLinkedHashMap();
+    private final Map<String, Integer> counters = Maps.newTreeMap();
+
+    FileStatistics(String fileName) {
+      this.fileName = fileName;
+    }
+  }
+
+  private static class PassStatistics {
+    private long nanos = 0L;
+    private int nodes = 0;
+  }
+
+  /**
+   * Starts recording the statistics of a file, on the current thread.
+   */
+  public static void startFile(String fileName) {
+    currentFile.set(new FileStatistics(fileName));
+  }
+
+  /**
+   * Finishes recording the statistics of the current thread's file.
+   */
+  public static void endFile() {
+    FileStatistics stats = currentFile.get();
+    if (stats != null) {
+      currentFile.remove();
+      synchronized (files) {
+        files.add(stats);
+      }
+    }
+  }
+
+  /**
+   * Records the time taken by a pass or phase of the current file's
+   * translation.
+   *
+   * @param name the pass's name
+   * @param nanos the elapsed time, in nanoseconds
+   * @param nodes the number of nodes the pass visited, or zero if the
+   *     phase doesn't visit the AST
+   */
+  public static void recordPass(String name, long nanos, int nodes) {
+    FileStatistics stats = currentFile.get();
+    if (stats != null) {
+      PassStatistics pass = stats.passes.get(name);
+      if (pass == null) {
+        pass = new PassStatistics();
+        stats.passes.put(name, pass);
+      }
+      pass.nanos += nanos;
+      pass.nodes += nodes;
+    }
+  }
+
+  /**
+   * Increments a counter of the current file, such as the number of
+   * nil_chk calls inserted.
+   */
+  public static void increment(String counter) {
+    add(counter, 1);
+  }
+
+  /**
+   * Adds to a counter of the current file, such as the number of headers
+   * its header includes.
+   */
+  public static void add(String counter, int n) {
+    FileStatistics stats = currentFile.get();
+    if (stats != null) {
+      Integer count = stats.counters.get(counter);
+      stats.counters.put(counter, count == null ? n : count + n);
+    }
+  }
+
+  public static void reset() {
+    synchronized (files) {
+      files.clear();
+    }
+    currentFile.remove();
+  }
+
+  /**
+   * Writes the recorded statistics, along with totals for all files. The
+   * report is CSV if the file name ends with ".csv", and JSON otherwise.
+   */
+  public static void writeReport(File file) throws IOException {
+    FileStatistics totals = new FileStatistics("total");
+    List<FileStatistics> allFiles;
+    synchronized (files) {
+      allFiles = Lists.newArrayList(files);
+    }
+    for (FileStatistics stats : allFiles) {
+      for (Map.Entry<String, PassStatistics> entry : stats.passes.entrySet()) {
+        PassStatistics total = totals.passes.get(entry.getKey());
+        if (total == null) {
+          total = new PassStatistics();
+          totals.passes.put(entry.getKey(), total);
+        }
+        total.nanos += entry.getValue().nanos;
+        total.nodes += entry.getValue().nodes;
+      }
+      for (Map.Entry<String, Integer> entry : stats.counters.entrySet()) {
+        Integer count = totals.counters.get(entry.getKey());
+        totals.counters.put(entry.getKey(), (count == null ? 0 : count) + entry.getValue());
+      }
+    }
+    String report = file.getName().endsWith(".csv")
+        ? toCsv(allFiles, totals) : toJson(allFiles, totals);
+    Files.write(report, file, Charsets.UTF_8);
+  }
+
+  private static String toCsv(List<FileStatistics> allFiles, FileStatistics totals) {
+    StringBuilder sb = new StringBuilder("file,kind,name,time_us,count\n");
+    allFiles.add(totals);
+    for (FileStatistics stats : allFiles) {
+      String fileName = csvQuote(stats.fileName);
+      for (Map.Entry<String, PassStatistics> entry : stats.passes.entrySet()) {
+        PassStatistics pass = entry.getValue();
+        sb.append(String.format("%s,pass,%s,%d,%d\n",
+            fileName, entry.getKey(), pass.nanos / 1000, pass.nodes));
+      }
+      for (Map.Entry<String, Integer> entry : stats.counters.entrySet()) {
+        sb.append(String.format("%s,counter,%s,,%d\n", fileName, entry.getKey(), entry.getValue()));
+      }
+    }
+    return sb.toString();
+  }
+
+  private static String csvQuote(String s) {
+    if (s.indexOf(',') < 0 && s.indexOf('"') < 0) {
+      return s;
+    }
+    return '"' + s.replace("\"", "\"\"") + '"';
+  }
+
+  private static String toJson(List<FileStatistics> allFiles, FileStatistics totals) {
+    StringBuilder sb = new StringBuilder("{\n  \"files\": [");
+    for (int i = 0; i < allFiles.size(); i++) {
+      sb.append(i == 0 ? "\n" : ",\n");
+      appendJson(allFiles.get(i), sb);
+    }
+    sb.append("\n  ],\n  \"totals\":\n");
+    appendJson(totals, sb);
+    sb.append("\n}\n");
+    return sb.toString();
+  }
+
+  private static void appendJson(FileStatistics stats, StringBuilder sb) {
+    sb.append("    {\"file\": ").append(jsonQuote(stats.fileName)).append(", \"passes\": [");
+    String separator = "";
+    for (Map.Entry<String, PassStatistics> entry : stats.passes.entrySet()) {
+      PassStatistics pass = entry.getValue();
+      sb.append(separator).append(String.format("{\"name\": %s, \"time_us\": %d, \"nodes\": %d}",
+          jsonQuote(entry.getKey()), pass.nanos / 1000, pass.nodes));
+      separator = ", ";
+    }
+    sb.append("], \"counters\": {");
+    separator = "";
+    for (Map.Entry<String, Integer> entry : stats.counters.entrySet()) {
+      sb.append(separator).append(jsonQuote(entry.getKey())).append(": ").append(entry.getValue());
+      separator = ", ";
+    }
+    sb.append("}}");
+  }
+
+  private static String jsonQuote(String s) {
+    StringBuilder sb = new StringBuilder("\"");
+    for (char c : s.toCharArray()) {
+      if (c == '"' || c == '\\') {
+        sb.append('\\').append(c);
+      } else if (c < ' ') {
+        sb.append(String.format("\\u%04x", (int) c));
+      } else {
+        sb.append(c);
+      }
+    }
+    return sb.append('"').toString();
+  }
+}
@@ -141,7 +141,6 @@ public abstract class GenerationTest extends TestCase {
       });
       CompilationUnit unit = compileType(name, source, assertErrors);
       J2ObjC.initializeTranslation(unit);
-      J2ObjC.removeDeadCode(unit, source);
       J2ObjC.translate(unit);
       lastLog = stringWriter.toString();
       return unit;
@@ -0,0 +1,130 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.devtools.j2objc;
+
+import com.google.common.io.Files;
+import com.google.devtools.j2objc.translate.InnerClassExtractor;
+
+import org.eclipse.jdt.core.dom.CompilationUnit;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Tests for {@link J2ObjC}.
+ */
+public class J2ObjCTest extends GenerationTest {
+  private static final String[] TYPES = { "A", "B", "C", "D", "E", "F" };
+
+  private File sourceDir;
+
+  @Override
+  protected void setUp() throws IOException {
+    super.setUp();
+    sourceDir = createTempDir();
+    for (int i = 0; i < TYPES.length; i++) {
+      String next = TYPES[(i + 1) % TYPES.length];
+      Files.write(String.format(
+          "public class %s { %s next; int f(int i) { return next.f(i + %d); } }",
+          TYPES[i], next, i), new File(sourceDir, TYPES[i] + ".java"), Options.getCharset());
+    }
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    Options.setClassHierarchy(null);
+    deleteTempDir(sourceDir);
+    super.tearDown();
+  }
+
+  public void testConcurrentTranslation() throws IOException {
+    File serialDir = translateAll("1");
+    File concurrentDir = translateAll("4");
+    assertEquals(0, J2ObjC.getErrorCount());
+    for (String type : TYPES) {
+      for (String suffix : new String[] { ".h", ".m" }) {
+        String name = type + suffix;
+        assertEquals(name, Files.toString(new File(serialDir, name), Options.getCharset()),
+            Files.toString(new File(concurrentDir, name), Options.getCharset()));
+      }
+    }
+  }
+
+  // Each file is analyzed in its own batch, but calls to the next type are
+  // still devirtualized as if all files were parsed together.
+  public void testBatchedWholeProgramAnalysis() throws IOException {
+    File singleBatchDir = analyzeAndTranslateAll(Integer.toString(TYPES.length));
+    File batchedDir = analyzeAndTranslateAll("1");
+    assertEquals(0, J2ObjC.getErrorCount());
+    for (int i = 0; i < TYPES.length; i++) {
+      String name = TYPES[i] + ".m";
+      String translation = Files.toString(new File(batchedDir, name), Options.getCharset());
+      assertEquals(name,
+          Files.toString(new File(singleBatchDir, name), Options.getCharset()), translation);
+      assertTranslation(translation,
+          TYPES[(i + 1) % TYPES.length] + "_fWithInt_(nil_chk(self->next_), i + " + i + ")");
+    }
+  }
+
+  public void testTranslateStopsBeforePass() {
+    String source = "public class Test { class Inner {} }";
+    CompilationUnit unit = compileType("Test", source);
+    J2ObjC.initializeTranslation(unit);
+    J2ObjC.translate(unit, InnerClassExtractor.class);
+    assertEquals(1, unit.types().size());
+    unit = compileType("Test", source);
+    J2ObjC.initializeTranslation(unit);
+    J2ObjC.translate(unit, null);
+    assertEquals(2, unit.types().size());
+  }
+
+  private File translateAll(String nThreads) throws IOException {
+    File outputDir = new File(tempDir, "j" + nThreads);
+    Options.load(new String[] { "-d", outputDir.getAbsolutePath(),
+        "-sourcepath", sourceDir.getAbsolutePath(), "-j", nThreads });
+    try {
+      J2ObjC.reset();
+      addSourceFiles();
+      J2ObjC.translate();
+    } finally {
+      Options.setTranslationThreads(1);
+    }
+    return outputDir;
+  }
+
+  private File analyzeAndTranslateAll(String batchMaximum) throws IOException {
+    File outputDir = new File(tempDir, "batch" + batchMaximum);
+    Options.load(new String[] { "-d", outputDir.getAbsolutePath(),
+        "-sourcepath", sourceDir.getAbsolutePath(), "--closed-world",
+        "--batch-translate-maximum", batchMaximum });
+    try {
+      J2ObjC.reset();
+      addSourceFiles();
+      J2ObjC.analyzeWholeProgram();
+      J2ObjC.translate();
+    } finally {
+      Options.setClosedWorld(false);
+      Options.setDevirtualize(false);
+      Options.setBatchTranslateMaximum(0);
+    }
+    return outputDir;
+  }
+
+  private void addSourceFiles() {
+    for (String type : TYPES) {
+      J2ObjC.addSourceFile(new File(sourceDir, type + ".java").getAbsolutePath());
+    }
+  }
+}
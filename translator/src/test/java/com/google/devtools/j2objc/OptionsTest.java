@@ -65,4 +65,18 @@ public class OptionsTest extends GenerationTest {
     assertEquals("JL", prefixMap.get("java.lang"));
     assertEquals("FB", prefixMap.get("foo.bar"));
   }
+
+  public void testBatchTranslateMaximum() throws IOException {
+    assertEquals(0, Options.batchTranslateMaximum());
+    String[] files = Options.load(new String[] {
+      "-d", tempDir.getAbsolutePath(), "--batch-translate-maximum", "50", "Test.java"
+    });
+    try {
+      assertEquals(50, Options.batchTranslateMaximum());
+      assertEquals(1, files.length);
+      assertEquals("Test.java", files[0]);
+    } finally {
+      Options.setBatchTranslateMaximum(0);
+    }
+  }
 }
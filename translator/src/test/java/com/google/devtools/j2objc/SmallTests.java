@@ -29,10 +29,12 @@ import com.google.devtools.j2objc.gen.StatementGeneratorTest;
 import com.google.devtools.j2objc.translate.ASTFactoryTest;
 import com.google.devtools.j2objc.translate.AnonymousClassConverterTest;
 import com.google.devtools.j2objc.translate.AutoboxerTest;
+import com.google.devtools.j2objc.translate.BoxingEliminatorTest;
 import com.google.devtools.j2objc.translate.ComplexExpressionExtractorTest;
 import com.google.devtools.j2objc.translate.CopyAllFieldsWriterTest;
 import com.google.devtools.j2objc.translate.DeadCodeEliminatorTest;
 import com.google.devtools.j2objc.translate.DestructorGeneratorTest;
+import com.google.devtools.j2objc.translate.FunctionizerTest;
 import com.google.devtools.j2objc.translate.GwtConverterTest;
 import com.google.devtools.j2objc.translate.InitializationNormalizerTest;
 import com.google.devtools.j2objc.translate.InnerClassExtractorTest;
@@ -41,6 +43,7 @@ import com.google.devtools.j2objc.translate.NilCheckResolverTest;
 import com.google.devtools.j2objc.translate.OperatorRewriterTest;
 import com.google.devtools.j2objc.translate.OuterReferenceFixerTest;
 import com.google.devtools.j2objc.translate.OuterReferenceResolverTest;
+import com.google.devtools.j2objc.translate.ReachabilityAnalyzerTest;
 import com.google.devtools.j2objc.translate.RewriterTest;
 import com.google.devtools.j2objc.translate.StaticVarRewriterTest;
 import com.google.devtools.j2objc.translate.TypeSorterTest;
@@ -55,6 +58,7 @@ import com.google.devtools.j2objc.util.DeadCodeMapTest;
 import com.google.devtools.j2objc.util.ErrorReportingASTVisitorTest;
 import com.google.devtools.j2objc.util.NameTableTest;
 import com.google.devtools.j2objc.util.ProGuardUsageParserTest;
+import com.google.devtools.j2objc.util.TranslationStatisticsTest;
 import com.google.devtools.j2objc.util.UnicodeUtilsTest;
 
 import junit.framework.Test;
@@ -75,18 +79,21 @@ public class SmallTests {
     AutoboxerTest.class,
     BindingMapBuilderTest.class,
     BindingUtilTest.class,
+    BoxingEliminatorTest.class,
     ComplexExpressionExtractorTest.class,
     CopyAllFieldsWriterTest.class,
     DeadCodeEliminatorTest.class,
     DeadCodeMapTest.class,
     DestructorGeneratorTest.class,
     ErrorReportingASTVisitorTest.class,
+    FunctionizerTest.class,
     GwtConverterTest.class,
     HeaderImportCollectorTest.class,
     HiddenFieldDetectorTest.class,
     ImplementationImportCollectorTest.class,
     InitializationNormalizerTest.class,
     InnerClassExtractorTest.class,
+    J2ObjCTest.class,
     JavaToIOSMethodTranslatorTest.class,
     LineDirectivesTest.class,
     ModifiedTypeBindingTest.class,
@@ -102,10 +109,15 @@ public class SmallTests {
     OuterReferenceResolverTest.class,
     PrimitiveArrayTest.class,
     ProGuardUsageParserTest.class,
+    ReachabilityAnalyzerTest.class,
     RenamedTypeBindingTest.class,
     RewriterTest.class,
+    SourcePathIndexTest.class,
     StatementGeneratorTest.class,
     StaticVarRewriterTest.class,
+    TranslationCacheTest.class,
+    TranslationDaemonTest.class,
+    TranslationStatisticsTest.class,
     TypeSorterTest.class,
     UnicodeUtilsTest.class,
     UnsequencedExpressionRewriterTest.class
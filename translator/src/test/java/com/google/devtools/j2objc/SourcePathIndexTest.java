@@ -0,0 +1,111 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.devtools.j2objc;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Tests for {@link SourcePathIndex}.
+ */
+public class SourcePathIndexTest extends GenerationTest {
+  private File sourceDir;
+  private File sourceJar;
+  private SourcePathIndex index;
+
+  @Override
+  protected void setUp() throws IOException {
+    super.setUp();
+    sourceDir = new File(tempDir, "src");
+    new File(sourceDir, "foo").mkdirs();
+    Files.write("class A {}", new File(sourceDir, "foo/A.java"), Charsets.UTF_8);
+    sourceJar = new File(tempDir, "src.jar");
+    ZipOutputStream out = new ZipOutputStream(new FileOutputStream(sourceJar));
+    try {
+      for (String name : new String[] { "foo/A.java", "foo/B.java" }) {
+        out.putNextEntry(new ZipEntry(name));
+        out.write(("// archived " + name).getBytes(Charsets.UTF_8));
+        out.closeEntry();
+      }
+    } finally {
+      out.close();
+    }
+    File notAnArchive = new File(tempDir, "notes.txt");
+    Files.write("not a zip file", notAnArchive, Charsets.UTF_8);
+    index = new SourcePathIndex(new String[] {
+        sourceDir.getPath(), notAnArchive.getPath(), sourceJar.getPath(),
+        new File(tempDir, "missing").getPath() });
+  }
+
+  public void testFindInDirectory() {
+    SourcePathIndex.Entry entry = index.find("foo/A.java");
+    assertNotNull(entry);
+    assertEquals(sourceDir.getPath(), entry.getPathEntry());
+    assertEquals(new File(sourceDir, "foo/A.java"), entry.getFile());
+    assertFalse(entry.isArchived());
+    assertEquals(entry.getFile().lastModified(), entry.lastModified());
+  }
+
+  public void testFindInArchive() throws IOException {
+    SourcePathIndex.Entry entry = index.find("foo/B.java");
+    assertNotNull(entry);
+    assertEquals(sourceJar.getPath(), entry.getPathEntry());
+    assertEquals(sourceJar, entry.getFile());
+    assertTrue(entry.isArchived());
+    assertEquals("// archived foo/B.java",
+        SourcePathIndex.readArchivedSource(entry, "foo/B.java"));
+  }
+
+  public void testFindFileAndFindArchived() {
+    assertNull(index.findFile("foo/B.java"));
+    SourcePathIndex.Entry entry = index.findArchived("foo/A.java");
+    assertNotNull(entry);
+    assertTrue(entry.isArchived());
+    assertFalse(index.findFile("foo/A.java").isArchived());
+  }
+
+  public void testMissingFiles() {
+    assertNull(index.find("foo/C.java"));
+    assertNull(index.find("bar/A.java"));
+    assertNull(index.find("A.java"));
+  }
+
+  public void testDirectoryListedOnFirstLookup() throws IOException {
+    Files.write("class C {}", new File(sourceDir, "foo/C.java"), Charsets.UTF_8);
+    assertNotNull(index.find("foo/C.java"));
+  }
+
+  public void testCaseMismatch() {
+    // Directory lookups follow the file system, like File.exists().
+    boolean caseInsensitive = new File(sourceDir, "foo/a.java").exists();
+    SourcePathIndex.Entry entry = index.findFile("foo/a.java");
+    assertEquals(caseInsensitive, entry != null);
+    // Archive lookups are always case-sensitive.
+    assertNull(index.findArchived("foo/b.java"));
+  }
+
+  public void testHasPathEntries() {
+    assertTrue(index.hasPathEntries(new String[] {
+        sourceDir.getPath(), new File(tempDir, "notes.txt").getPath(), sourceJar.getPath(),
+        new File(tempDir, "missing").getPath() }));
+    assertFalse(index.hasPathEntries(new String[] { sourceDir.getPath() }));
+  }
+}
@@ -0,0 +1,160 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.devtools.j2objc;
+
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+import com.google.common.io.Resources;
+
+import org.eclipse.jdt.core.dom.CompilationUnit;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Tests for {@link TranslationCache}.
+ */
+public class TranslationCacheTest extends GenerationTest {
+  private static final String SOURCE_A =
+      "public class A { int f(B b) { return b.g(); } }";
+  private static final String SOURCE_B =
+      "public class B { public int g() { return 1; } }";
+
+  private File cacheDir;
+  private TranslationCache cache;
+
+  @Override
+  protected void setUp() throws IOException {
+    super.setUp();
+    Options.load(new String[] { "-d", tempDir.getAbsolutePath(),
+        "-sourcepath", tempDir.getAbsolutePath() });
+    cacheDir = createTempDir();
+    cache = new TranslationCache(cacheDir);
+    addSourceFile(SOURCE_B, "B.java");
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    deleteTempDir(cacheDir);
+    super.tearDown();
+  }
+
+  public void testRestoresCachedTranslation() throws IOException {
+    String translation = storeTranslation();
+    new File(tempDir, "A.m").delete();
+    new File(tempDir, "A.h").delete();
+
+    List<String> closureTypes = cache.restore("A.java", SOURCE_A);
+    assertNotNull(closureTypes);
+    assertTrue(closureTypes.contains("B"));
+    assertEquals(translation, getTranslatedFile("A.m"));
+  }
+
+  public void testChangedSourceIsNotRestored() throws IOException {
+    storeTranslation();
+    assertNull(cache.restore("A.java", SOURCE_A.replace("b.g()", "b.g() + 1")));
+  }
+
+  public void testDependencyImplementationChange() throws IOException {
+    storeTranslation();
+    addSourceFile(SOURCE_B.replace("return 1;", "return 2;"), "B.java");
+    assertNotNull(new TranslationCache(cacheDir).restore("A.java", SOURCE_A));
+  }
+
+  public void testDependencyApiChange() throws IOException {
+    storeTranslation();
+    addSourceFile(SOURCE_B.replace("int g()", "long g()"), "B.java");
+    assertNull(new TranslationCache(cacheDir).restore("A.java", SOURCE_A));
+  }
+
+  public void testClassPathDirectory() throws IOException {
+    File classDir = createTempDir();
+    try {
+      File classFile = new File(classDir, "junit/framework/Protectable.class");
+      Files.createParentDirs(classFile);
+      byte[] classBytes =
+          Resources.toByteArray(Resources.getResource("junit/framework/Protectable.class"));
+      Files.write(classBytes, classFile);
+      Options.load(new String[] { "-d", tempDir.getAbsolutePath(),
+          "-sourcepath", tempDir.getAbsolutePath(), "-classpath", classDir.getAbsolutePath() });
+      String source = "public class C { void f(junit.framework.Protectable p) {} }";
+      CompilationUnit unit = compileType("C", source);
+      TranslationCache.UnitApi api = TranslationCache.getApi(unit);
+      translateSourceFile(source, "C", "C.m");
+      cache = new TranslationCache(cacheDir);
+      cache.store("C.java", source, unit, api, Lists.<String>newArrayList());
+
+      // Unrelated class files in a class path directory don't invalidate the cache.
+      File otherFile = new File(classDir, "other/Protectable.class");
+      Files.createParentDirs(otherFile);
+      Files.write(classBytes, otherFile);
+      assertNotNull(new TranslationCache(cacheDir).restore("C.java", source));
+
+      // Only a class file's contents are checked, not its path or time stamp.
+      assertTrue(classFile.setLastModified(classFile.lastModified() - 10000));
+      assertNotNull(new TranslationCache(cacheDir).restore("C.java", source));
+      File movedDir = createTempDir();
+      try {
+        File movedFile = new File(movedDir, "junit/framework/Protectable.class");
+        Files.createParentDirs(movedFile);
+        Files.write(classBytes, movedFile);
+        Options.load(new String[] { "-d", tempDir.getAbsolutePath(),
+            "-sourcepath", tempDir.getAbsolutePath(), "-classpath", movedDir.getAbsolutePath() });
+        assertNotNull(new TranslationCache(cacheDir).restore("C.java", source));
+        Files.write(new byte[] { 0 }, movedFile);
+        assertNull(new TranslationCache(cacheDir).restore("C.java", source));
+      } finally {
+        deleteTempDir(movedDir);
+      }
+    } finally {
+      deleteTempDir(classDir);
+    }
+  }
+
+  public void testClassPathJarIdentifiedByContents() throws IOException {
+    File jarDir = createTempDir();
+    try {
+      File jar = new File(jarDir, "lib.jar");
+      Files.write(new byte[] { 1, 2, 3 }, jar);
+      Options.load(new String[] { "-d", tempDir.getAbsolutePath(),
+          "-sourcepath", tempDir.getAbsolutePath(), "-classpath", jar.getAbsolutePath() });
+      cache = new TranslationCache(cacheDir);
+      storeTranslation();
+
+      // A rebuilt but identical jar in another directory still matches.
+      File rebuiltJar = new File(jarDir, "out/lib.jar");
+      Files.createParentDirs(rebuiltJar);
+      Files.write(new byte[] { 1, 2, 3 }, rebuiltJar);
+      assertTrue(rebuiltJar.setLastModified(jar.lastModified() + 10000));
+      Options.load(new String[] { "-d", tempDir.getAbsolutePath(),
+          "-sourcepath", tempDir.getAbsolutePath(), "-classpath", rebuiltJar.getAbsolutePath() });
+      assertNotNull(new TranslationCache(cacheDir).restore("A.java", SOURCE_A));
+
+      Files.write(new byte[] { 1, 2, 4 }, rebuiltJar);
+      assertNull(new TranslationCache(cacheDir).restore("A.java", SOURCE_A));
+    } finally {
+      deleteTempDir(jarDir);
+    }
+  }
+
+  private String storeTranslation() throws IOException {
+    CompilationUnit unit = compileType("A", SOURCE_A);
+    TranslationCache.UnitApi api = TranslationCache.getApi(unit);
+    String translation = translateSourceFile(SOURCE_A, "A", "A.m");
+    cache.store("A.java", SOURCE_A, unit, api, Lists.newArrayList("B"));
+    return translation;
+  }
+}
@@ -0,0 +1,86 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.devtools.j2objc;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Joiner;
+import com.google.common.io.Files;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Tests for {@link TranslationDaemon}.
+ */
+public class TranslationDaemonTest extends GenerationTest {
+  private File clientDir;
+  private File tokenFile;
+  private TranslationDaemon daemon;
+
+  @Override
+  protected void setUp() throws IOException {
+    super.setUp();
+    clientDir = createTempDir();
+    new File(clientDir, "src/foo").mkdirs();
+    Files.write("package foo; public class A { int f() { return 1; } }",
+        new File(clientDir, "src/foo/A.java"), Charsets.UTF_8);
+    tokenFile = new File(tempDir, "token");
+    daemon = new TranslationDaemon(0, tokenFile);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    daemon.close();
+    deleteTempDir(clientDir);
+    super.tearDown();
+  }
+
+  public void testTokenFile() throws IOException {
+    assertTrue(tokenFile.canRead());
+    assertEquals(64, Files.readFirstLine(tokenFile, Charsets.UTF_8).length());
+  }
+
+  public void testRelativePathsResolvedAgainstClientDirectory() throws IOException {
+    String response = request(Files.readFirstLine(tokenFile, Charsets.UTF_8),
+        clientDir.getAbsolutePath(), "-d", "out", "-sourcepath", "src", "src/foo/A.java");
+    assertTrue(response, response.endsWith(TranslationDaemon.EXIT_STATUS_PREFIX + "0\n"));
+    String translation = Files.toString(new File(clientDir, "out/foo/A.m"), Charsets.UTF_8);
+    assertTranslation(translation, "//  source: src/foo/A.java");
+    assertTrue(new File(clientDir, "out/foo/A.h").exists());
+    assertFalse(TranslationDaemon.isServing());
+  }
+
+  public void testInvalidTokenRejected() throws IOException {
+    String response = request("not-the-token",
+        clientDir.getAbsolutePath(), "-d", "out", "-sourcepath", "src", "src/foo/A.java");
+    assertTrue(response, response.endsWith(TranslationDaemon.EXIT_STATUS_PREFIX + "2\n"));
+    assertFalse(new File(clientDir, "out").exists());
+  }
+
+  public void testRelativeClientDirectoryRejected() throws IOException {
+    String response = request(Files.readFirstLine(tokenFile, Charsets.UTF_8),
+        "client", "-d", "out", "src/foo/A.java");
+    assertTrue(response, response.endsWith(TranslationDaemon.EXIT_STATUS_PREFIX + "2\n"));
+  }
+
+  private String request(String token, String dir, String... args) throws IOException {
+    String request = token + '\n' + dir + '\n' + Joiner.on('\n').join(args) + "\n\n";
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    daemon.serveRequest(new ByteArrayInputStream(request.getBytes(Charsets.UTF_8)), out);
+    return new String(out.toByteArray(), Charsets.UTF_8);
+  }
+}
@@ -20,6 +20,7 @@ import com.google.devtools.j2objc.GenerationTest;
 
 import org.eclipse.jdt.core.dom.Statement;
 
+import java.io.IOException;
 import java.util.List;
 
 /**
@@ -77,4 +78,40 @@ public class ArrayAccessTest extends GenerationTest {
     result = generateStatement(stmts.get(2));
     assertEquals("(*IOSIntArray_GetRef(arr, 1))--;", result);
   }
+
+  public void testCountedLoopAccessesBuffer() throws IOException {
+    String translation = translateSourceFile(
+        "class Test { final String[] names = {}; " +
+        "  int sum(int[] a) { int s = 0; " +
+        "    for (int i = 0; i < a.length; i++) { s += a[i]; a[i] = s; } return s; }" +
+        "  int length() { int n = 0; " +
+        "    for (int i = 0; i < names.length; ++i) { n += names[i].length(); } return n; }}",
+        "Test", "Test.m");
+    assertTranslation(translation, "s += a->buffer_[i];");
+    assertTranslation(translation, "a->buffer_[i] = s;");
+    assertTranslation(translation, "[((NSString *) names_->buffer_[i]) length]");
+    assertNotInTranslation(translation, "IOSIntArray_Get");
+    assertNotInTranslation(translation, "IOSObjectArray_Get");
+  }
+
+  public void testUncountedLoopKeepsBoundsChecks() throws IOException {
+    String translation = translateSourceFile(
+        "class Test { int[] data; " +
+        "  int sum(int[] a, int[] b) { int s = 0; " +
+        "    for (int i = 0; i < a.length; i++) { s += a[i]; a = b; }" +
+        "    for (int i = 0; i < b.length; i++) { s += b[i]; i += 2; }" +
+        "    for (int i = 0; i < data.length; i++) { s += data[i]; }" +
+        "    for (int i = -1; i < b.length; i++) { s += b[i + 1]; } return s; }}",
+        "Test", "Test.m");
+    assertOccurrences(translation, "IOSIntArray_Get(", 4);
+    assertNotInTranslation(translation, "buffer_");
+  }
+
+  public void testCountedLoopStoresObjectsWithRetain() throws IOException {
+    String translation = translateSourceFile(
+        "class Test { void fill(Object[] a, Object o) { " +
+        "  for (int i = 0; i < a.length; i++) { a[i] = o; }}}",
+        "Test", "Test.m");
+    assertTranslation(translation, "IOSObjectArray_Set(a, i, o);");
+  }
 }
@@ -34,6 +34,7 @@ public class ObjectiveCImplementationGeneratorTest extends GenerationTest {
     Options.resetDeprecatedDeclarations();
     Options.resetMemoryManagementOption();
     Options.setStripReflection(false);
+    Options.setCompactReflection(false);
     super.tearDown();
   }
 
@@ -237,8 +238,12 @@ public class ObjectiveCImplementationGeneratorTest extends GenerationTest {
         "ColorEnum_values = [[IOSObjectArray alloc] initWithObjects:(id[]){ " +
         "ColorEnum_RED, ColorEnum_WHITE, ColorEnum_BLUE, nil } " +
         "count:3 type:[IOSClass classWithClass:[ColorEnum class]]];");
-    assertTranslation(translation, "for (int i = 0; i < [ColorEnum_values count]; i++) {");
-    assertTranslation(translation, "ColorEnum *e = ColorEnum_values->buffer_[i];");
+    assertTranslation(translation,
+        "ColorEnum_namesToValues = [[NSDictionary alloc] initWithObjects:(id[]){ " +
+        "ColorEnum_RED, ColorEnum_WHITE, ColorEnum_BLUE, nil } " +
+        "forKeys:(id[]){ @\"RED\", @\"WHITE\", @\"BLUE\", nil } count:3];");
+    assertTranslation(translation,
+        "ColorEnum *e = [ColorEnum_namesToValues objectForKey:name];");
   }
 
   public void testEnumWithParameters() throws IOException {
@@ -775,6 +780,45 @@ public class ObjectiveCImplementationGeneratorTest extends GenerationTest {
     		"\"Ljava.lang.InterruptedException;Ljava.lang.Error;\" },");
   }
 
+  public void testCompactMetadata() throws IOException {
+    Options.setCompactReflection(true);
+    String translation = translateSourceFile(
+        "import java.util.ArrayList; class Test { String s; int i; String get() { return s; }" +
+        "  static class Inner extends ArrayList<String> { String get() { return null; } } }",
+        "Test", "Test.m");
+    // Each string is stored once, and offset 0 is NULL.
+    assertTranslation(translation,
+        "static const char Test_metadataStrings[] =\n" +
+        "  \"\\0\"\n" +
+        "  \"get\\0\"\n" +
+        "  \"Ljava.lang.String;\\0\"\n" +
+        "  \"init\\0\"\n" +
+        "  \"s_\\0\"\n" +
+        "  \"i_\\0\"\n" +
+        "  \"I\\0\"\n" +
+        "  \"Test\\0\"\n" +
+        "  \"Inner\\0\";");
+    assertOccurrences(translation, "\"Ljava.lang.String;\\0\"", 1);
+    assertTranslatedLines(translation,
+        "+ (J2ObjcCompactClassInfo *)__compactMetadata {",
+        "static const J2ObjcCompactMethodInfo methods[] = {",
+        "{ 1, 0, 5, 0x0, 0 },",
+        "{ 24, 0, 0, 0x0, 0 },",
+        "};",
+        "static const J2ObjcCompactFieldInfo fields[] = {",
+        "{ 29, 0, 0x0, 5 },",
+        "{ 32, 0, 0x0, 35 },",
+        "};",
+        "static J2ObjcCompactClassInfo _Test = { Test_metadataStrings, 37, 0, 0, 0x0, " +
+        "2, methods, 2, fields, 0, NULL};",
+        "return &_Test;",
+        "}");
+    assertTranslation(translation, "static const uint32_t superclass_type_args[] = {5};");
+    assertTranslation(translation, "static J2ObjcCompactClassInfo _Test_Inner = " +
+        "{ Test_metadataStrings, 42, 0, 37, 0x8, 2, methods, 0, NULL, 1, superclass_type_args};");
+    assertNotInTranslation(translation, "__metadata");
+  }
+
   public void testAnnotationWithField() throws IOException {
     String translation = translateSourceFile(
         "@interface Test { String FOO = \"foo\"; int I = 5; }", "Test", "Test.h");
@@ -16,10 +16,12 @@
 
 package com.google.devtools.j2objc.gen;
 
+import com.google.common.io.Files;
 import com.google.devtools.j2objc.GenerationTest;
 import com.google.devtools.j2objc.Options;
 import com.google.devtools.j2objc.util.NameTable;
 
+import java.io.File;
 import java.io.IOException;
 
 /**
@@ -135,4 +137,92 @@ public class ObjectiveCSourceFileGeneratorTest extends GenerationTest {
     assertTranslation(translation, "- (id)initWithNSString:(NSString *)s;");
     assertNotInTranslation(translation, "initWithId");
   }
+
+  public void testWriteIfChanged() throws IOException {
+    String source = "public class Test { int foo() { return 1; } }";
+    translateSourceFile(source, "Test", "Test.m");
+    File header = new File(tempDir, "Test.h");
+    File impl = new File(tempDir, "Test.m");
+    assertTrue(header.setLastModified(1000L));
+    assertTrue(impl.setLastModified(1000L));
+
+    Options.setWriteIfChanged(true);
+    try {
+      SourceFileGenerator.resetOutputCounts();
+      translateSourceFile(source, "Test", "Test.m");
+      assertEquals(1000L, header.lastModified());
+      assertEquals(1000L, impl.lastModified());
+      assertEquals(2, SourceFileGenerator.getOutputCount());
+      assertEquals(0, SourceFileGenerator.getChangedOutputCount());
+
+      // Only the implementation changes.
+      String translation = translateSourceFile(source.replace("1", "2"), "Test", "Test.m");
+      assertTranslation(translation, "return 2;");
+      assertEquals(1000L, header.lastModified());
+      assertEquals(4, SourceFileGenerator.getOutputCount());
+      assertEquals(1, SourceFileGenerator.getChangedOutputCount());
+    } finally {
+      Options.setWriteIfChanged(false);
+    }
+  }
+
+  public void testUnityBuild() throws IOException {
+    Options.setUnityBuild(true);
+    try {
+      UnityFileGenerator.reset();
+      translateSourceFile("package foo.bar; public class B {}", "foo/bar/B", "foo/bar/B.m");
+      translateSourceFile("package foo.bar; public class A {}", "foo/bar/A", "foo/bar/A.m");
+      translateSourceFile("public class Test {}", "Test", "Test.m");
+      UnityFileGenerator.generate();
+
+      String translation = getTranslatedFile("foo/bar/FooBar+Unity.m");
+      assertTranslatedLines(translation, "#include \"A.m\"", "#include \"B.m\"");
+      assertNotInTranslation(translation, "Test.m");
+      assertTranslation(getTranslatedFile("Default+Unity.m"), "#include \"Test.m\"");
+      assertTrue(new File(tempDir, "foo/bar/A.h").exists());
+
+      // Split the package's files between numbered unity files.
+      Options.setUnityBuildMaximum(1);
+      UnityFileGenerator.generate();
+      translation = getTranslatedFile("foo/bar/FooBar+Unity.m");
+      assertTranslation(translation, "#include \"A.m\"");
+      assertNotInTranslation(translation, "B.m");
+      assertTranslation(getTranslatedFile("foo/bar/FooBar+Unity2.m"), "#include \"B.m\"");
+    } finally {
+      UnityFileGenerator.reset();
+      Options.setUnityBuild(false);
+      Options.setUnityBuildMaximum(0);
+    }
+  }
+
+  public void testUnityBuildAcrossRuns() throws IOException {
+    Options.setUnityBuild(true);
+    Options.setUnityBuildMaximum(1);
+    try {
+      UnityFileGenerator.reset();
+      translateSourceFile("package foo.bar; public class A {}", "foo/bar/A", "foo/bar/A.m");
+      translateSourceFile("package foo.bar; public class B {}", "foo/bar/B", "foo/bar/B.m");
+      UnityFileGenerator.generate();
+      assertTrue(new File(tempDir, "foo/bar/FooBar+Unity2.m").exists());
+
+      // An incremental run only translates the changed source, but the unity
+      // file still includes the directory's other generated implementation
+      // file, and not files the translator didn't generate.
+      Files.write("", new File(tempDir, "foo/bar/Extra.m"), Options.getCharset());
+      UnityFileGenerator.reset();
+      Options.setUnityBuildMaximum(0);
+      translateSourceFile(
+          "package foo.bar; public class A { int i; }", "foo/bar/A", "foo/bar/A.m");
+      UnityFileGenerator.generate();
+      String translation = getTranslatedFile("foo/bar/FooBar+Unity.m");
+      assertTranslatedLines(translation, "#include \"A.m\"", "#include \"B.m\"");
+      assertNotInTranslation(translation, "Unity");
+      assertNotInTranslation(translation, "Extra.m");
+      assertFalse(new File(tempDir, "foo/bar/FooBar+Unity2.m").exists());
+    } finally {
+      UnityFileGenerator.reset();
+      Options.setUnityBuild(false);
+      Options.setUnityBuildMaximum(0);
+    }
+  }
 }
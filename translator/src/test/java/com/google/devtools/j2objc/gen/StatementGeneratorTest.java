@@ -35,6 +35,8 @@ public class StatementGeneratorTest extends GenerationTest {
   @Override
   protected void tearDown() throws Exception {
     Options.resetMemoryManagementOption();
+    Options.setStringConcatFunction(false);
+    Options.setEliminateBoxing(true);
     super.tearDown();
   }
 
@@ -73,7 +75,7 @@ public class StatementGeneratorTest extends GenerationTest {
       "public static void doSomething(EnumType e) {" +
       " switch (e) { case ONE: break; case TWO: break; }}}",
       "A", "A.m");
-    assertTranslation(translation, "switch ([e ordinal]) {");
+    assertTranslation(translation, "switch (((A_EnumTypeEnum *) nil_chk(e))->ordinal__) {");
     assertTranslation(translation, "case A_EnumType_ONE:");
   }
 
@@ -624,7 +626,31 @@ public class StatementGeneratorTest extends GenerationTest {
         "Test foo() { return Test.ONE; } " +
         "void bar() { switch (foo()) { case ONE: break; case TWO: break; }}}",
         "Example", "Example.m");
-    assertTranslation(translation, "switch ([[self foo] ordinal])");
+    assertTranslation(translation, "switch (((Example_TestEnum *) nil_chk([self foo]))->ordinal__)");
+  }
+
+  public void testEnumSwitchReadsOrdinalField() throws IOException {
+    String translation = translateSourceFile(
+        "public class A { enum State { START, RUN, STOP } State state = State.START;" +
+        "  int step(State s) { switch (s) { case START: return 0; case RUN: return 1; }" +
+        "    switch (s) { case STOP: return 2; } return 3; } }",
+        "A", "A.m");
+    assertTranslatedLines(translation,
+        "- (int)stepWithA_StateEnum:(A_StateEnum *)s {",
+        "switch (((A_StateEnum *) nil_chk(s))->ordinal__) {",
+          "case A_State_START:",
+          "return 0;",
+          "case A_State_RUN:",
+          "return 1;",
+        "}",
+        // The first switch dereferenced s, so it's known not to be nil.
+        "switch (s->ordinal__) {",
+          "case A_State_STOP:",
+          "return 2;",
+        "}",
+        "return 3;",
+        "}");
+    assertNotInTranslation(translation, " ordinal]");
   }
 
   public void testClassVariable() throws IOException {
@@ -733,6 +759,7 @@ public class StatementGeneratorTest extends GenerationTest {
   }
 
   public void testJreDoubleNegativeInfinity() throws IOException {
+    Options.setEliminateBoxing(false);
     String translation = translateSourceFile(
         "public class Test { " +
         "  public void foo() { Double d = Double.NEGATIVE_INFINITY; } }",
@@ -1089,6 +1116,27 @@ public class StatementGeneratorTest extends GenerationTest {
         "[NSString stringWithString:[NSString stringWithFormat:@\"%@%@\", o, [B separator]]];");
   }
 
+  public void testStringConcatenationFunction() throws IOException {
+    Options.setStringConcatFunction(true);
+    String translation = translateSourceFile(
+      "public class A { String test(Object o, String s, boolean b, char c, int i, long l, " +
+      "  float f, double d) { return \"o=\" + o + s + b + c + i + l + f + d; }}",
+      "A", "A.m");
+    assertTranslation(translation,
+        "return JreStrcat(\"*@$ZCIJFD\", \"o=\", o, s, b, c, i, l, f, d);");
+  }
+
+  public void testStringConcatenationFunctionFoldsConstants() throws IOException {
+    Options.setStringConcatFunction(true);
+    String translation = translateSourceFile(
+      "public class A { static final String KEY = \"key\"; static final int VERSION = 2; " +
+      "  String test(int i) { String s = KEY + VERSION + '/' + 1.5f + true + null; " +
+      "  return KEY + '-' + VERSION + \": \" + i + \"%\" + \"\\u00e9\"; }}",
+      "A", "A.m");
+    assertTranslation(translation, "NSString *s = @\"key2/1.5truenull\";");
+    assertTranslation(translation, "return JreStrcat(\"*I$\", \"key-2: \", i, @\"%\\u00e9\");");
+  }
+
   public void testStringConcatWithBoolean() throws IOException {
     String translation = translateSourceFile(
       "public class A { String test(boolean b) { return \"foo: \" + b; }}",
@@ -1500,11 +1548,14 @@ public class StatementGeneratorTest extends GenerationTest {
     assertTranslation(translation, "case 0:\n      return 42;");
     assertTranslation(translation, "case 1:\n      return 666;");
     assertTranslation(translation, "default:\n      return -1;");
+    assertTranslation(translation, "static NSDictionary *__caseIndexes;");
+    assertTranslation(translation, "dispatch_once(&__caseIndexesOnce, ^{");
     assertTranslation(translation,
-        "NSArray *__caseValues = [NSArray arrayWithObjects:@\"foo\", @\"bar\", nil];");
+        "__caseIndexes = [[NSDictionary alloc] initWithObjectsAndKeys:" +
+        "[NSNumber numberWithInt:0], @\"foo\", [NSNumber numberWithInt:1], @\"bar\", nil];");
     assertTranslation(translation,
-        "NSUInteger __index = [__caseValues indexOfObject:s];");
-    assertTranslation(translation, "switch (__index)");
+        "NSNumber *__index = [__caseIndexes objectForKey:s];");
+    assertTranslation(translation, "switch (__index ? [__index intValue] : -1)");
   }
 
   // Verify Java 7 try-with-resources translation.
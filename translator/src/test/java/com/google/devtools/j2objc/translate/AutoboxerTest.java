@@ -17,6 +17,7 @@
 package com.google.devtools.j2objc.translate;
 
 import com.google.devtools.j2objc.GenerationTest;
+import com.google.devtools.j2objc.Options;
 
 import org.eclipse.jdt.core.dom.Statement;
 
@@ -30,6 +31,20 @@ import java.util.List;
  */
 public class AutoboxerTest extends GenerationTest {
 
+  // BoxingEliminator would declare most of these tests' boxed locals as
+  // primitives, so only the Autoboxer's output is tested here.
+  @Override
+  protected void setUp() throws IOException {
+    super.setUp();
+    Options.setEliminateBoxing(false);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    Options.setEliminateBoxing(true);
+    super.tearDown();
+  }
+
   public void testDoNotBoxIntInVarargMethod() throws IOException {
     String source = "public class Test { Test(String s) {} " +
         "int one(String s, int i) { return two(new Test(s), i, 1, 2); }" +
@@ -0,0 +1,129 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.devtools.j2objc.translate;
+
+import com.google.devtools.j2objc.GenerationTest;
+import com.google.devtools.j2objc.Options;
+
+import java.io.IOException;
+
+/**
+ * Unit tests for {@link BoxingEliminator}.
+ */
+public class BoxingEliminatorTest extends GenerationTest {
+
+  public void testBoxedLocalDeclaredAsPrimitive() throws IOException {
+    String translation = translateSourceFile(
+        "class Test { int test(int n) { Integer sum = 0;" +
+        "  for (Integer i = 0; i < n; i++) { sum = sum + i; ++sum; }" +
+        "  return sum; }}",
+        "Test", "Test.m");
+    assertTranslation(translation, "int sum = 0;");
+    assertTranslation(translation, "for (int i = 0; i < n; i++) {");
+    assertTranslation(translation, "sum = sum + i;");
+    assertTranslation(translation, "++sum;");
+    assertTranslation(translation, "return sum;");
+    assertNotInTranslation(translation, "JavaLangInteger");
+  }
+
+  public void testUnboxedResultStoredInLocal() throws IOException {
+    String translation = translateSourceFile(
+        "import java.util.Map; class Test { int test(Map<String, Integer> map) {" +
+        "  Integer count = map.get(\"a\") + 1; return count * 2; }}",
+        "Test", "Test.m");
+    assertTranslation(translation,
+        "int count = [((JavaLangInteger *) nil_chk([((id<JavaUtilMap>) nil_chk(map)) " +
+        "getWithId:@\"a\"])) intValue] + 1;");
+    assertTranslation(translation, "return count * 2;");
+    assertNotInTranslation(translation, "valueOf");
+  }
+
+  public void testEscapingLocalsStayBoxed() throws IOException {
+    String translation = translateSourceFile(
+        "import java.util.List; class Test { void test(List<Integer> list) {" +
+        "  Integer passed = 1; list.add(passed);" +
+        "  Integer compared = 2; if (compared == list.get(0)) {}" +
+        "  Integer nulled = 3; nulled = null;" +
+        "  final Integer captured = 4;" +
+        "  Runnable r = new Runnable() { public void run() { int i = captured; }}; }}",
+        "Test", "Test.m");
+    assertTranslation(translation,
+        "JavaLangInteger *passed = [JavaLangInteger valueOfWithInt:1];");
+    assertTranslation(translation,
+        "JavaLangInteger *compared = [JavaLangInteger valueOfWithInt:2];");
+    assertTranslation(translation,
+        "JavaLangInteger *nulled = [JavaLangInteger valueOfWithInt:3];");
+    assertTranslation(translation,
+        "JavaLangInteger *captured = [JavaLangInteger valueOfWithInt:4];");
+  }
+
+  public void testBoxThenUnboxChainRemoved() throws IOException {
+    String translation = translateSourceFile(
+        "class Test { long test(long n) { long l = (Long) n; return Long.valueOf(l).longValue(); }}",
+        "Test", "Test.m");
+    assertTranslation(translation, "long long int l = n;");
+    assertTranslation(translation, "return l;");
+    assertNotInTranslation(translation, "valueOf");
+  }
+  public void testValueOfLocalsDeclaredAsPrimitives() throws IOException {
+    String translation = translateSourceFile(
+        "class Test { void test() {" +
+        "  byte b = 5; Byte foo = Byte.valueOf((byte) 3); b = foo;" +
+        "  char c = 'a'; Character bar = Character.valueOf('b'); bar = c; }}",
+        "Test", "Test.m");
+    assertTranslation(translation, "char foo = (char) 3;");
+    assertTranslation(translation, "b = foo;");
+    assertTranslation(translation, "unichar bar = 'b';");
+    assertTranslation(translation, "bar = c;");
+    assertNotInTranslation(translation, "valueOf");
+  }
+
+  public void testBoxedLocalAssignments() throws IOException {
+    String translation = translateSourceFile(
+        "class Test { void test() { Integer test = 3; Integer i; i = (Integer) 12;" +
+        "  switch (test) { case 1: case 2: case 3: } }}",
+        "Test", "Test.m");
+    assertTranslation(translation, "int test = 3;");
+    assertTranslation(translation, "int i;");
+    assertTranslation(translation, "i = 12;");
+    assertTranslation(translation, "switch (test) {");
+  }
+
+  public void testBoxedIncrementAndDecrement() throws IOException {
+    String translation = translateSourceFile(
+        "class Test { void test() { Integer i = 1; i++; Byte b = 2; b--; Character c = 'a'; ++c;" +
+        "  Double d = 3.0; --d; }}",
+        "Test", "Test.m");
+    assertTranslation(translation, "int i = 1;");
+    assertTranslation(translation, "i++;");
+    assertTranslation(translation, "unichar c = 'a';");
+    assertTranslation(translation, "++c;");
+    assertTranslation(translation, "double d = 3.0;");
+    assertTranslation(translation, "--d;");
+    // The Byte is left boxed, since its initial value is an int constant.
+    assertTranslation(translation, "PostDecrByte(&b);");
+  }
+
+  public void testEliminationDisabled() throws IOException {
+    Options.setEliminateBoxing(false);
+    try {
+      String translation = translateSourceFile(
+          "class Test { int test() { Integer i = 3; return i; }}", "Test", "Test.m");
+      assertTranslation(translation, "JavaLangInteger *i = [JavaLangInteger valueOfWithInt:3];");
+    } finally {
+      Options.setEliminateBoxing(true);
+    }
+  }
+}
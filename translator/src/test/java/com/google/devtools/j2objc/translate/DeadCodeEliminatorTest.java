@@ -22,7 +22,10 @@ import com.google.devtools.j2objc.Options;
 import com.google.devtools.j2objc.util.DeadCodeMap;
 
 import org.eclipse.jdt.core.dom.CompilationUnit;
+import org.eclipse.jface.text.BadLocationException;
+import org.eclipse.jface.text.Document;
 
+import java.io.IOException;
 import java.util.regex.Pattern;
 
 /**
@@ -40,8 +43,15 @@ public class DeadCodeEliminatorTest extends GenerationTest {
 
   private String getStrippedCode(String typeName, String source) {
     CompilationUnit unit = compileType(typeName, source);
-    unit.recordModifications();
-    source = J2ObjC.removeDeadCode(unit, source);
+    J2ObjC.initializeTranslation(unit);
+    new DeadCodeEliminator(Options.getDeadCodeMap()).run(unit);
+    Document doc = new Document(source);
+    try {
+      unit.rewrite(doc, Options.getCompilerOptions()).apply(doc);
+    } catch (BadLocationException e) {
+      throw new AssertionError(e);
+    }
+    source = doc.get();
     compileType(typeName, source);
     return source;
   }
@@ -437,6 +447,83 @@ public class DeadCodeEliminatorTest extends GenerationTest {
     assertRemoved(stripped, "import static java.lang.System.in");
   }
 
+  public void testDeadFieldNotCopied() throws IOException {
+    String source = "class A implements Cloneable {\n" +
+        "  int foo;\n" +
+        "  int bar;\n" +
+        "}\n";
+    DeadCodeMap map = DeadCodeMap.builder()
+        .addDeadField("A", "foo")
+        .build();
+    Options.setDeadCodeMap(map);
+    String translation = translateSourceFile(source, "A", "A.m");
+    assertTranslation(translation, "other->bar_ = bar_;");
+    assertNotInTranslation(translation, "foo_");
+  }
+
+  public void testDeadMethodTranslation() throws IOException {
+    String source = "abstract class B {\n" +
+        "  abstract java.util.List<String> foo(int i);\n" +
+        "}\n" +
+        "class A extends B {\n" +
+        "  java.util.List<String> foo(int i) { return null; }\n" +
+        "  void bar() {}\n" +
+        "}\n";
+    DeadCodeMap map = DeadCodeMap.builder()
+        .addDeadMethod("A", "foo", "(I)Ljava/util/List;")
+        .addDeadMethod("A", "bar", "()V")
+        .build();
+    Options.setDeadCodeMap(map);
+    String translation = translateSourceFile(source, "A", "A.m");
+    assertNotInTranslation(translation, "- (void)bar");
+    assertTranslation(translation, "- (id<JavaUtilList>)fooWithInt:(int)arg0 {\n" +
+        "  @throw [[[JavaLangAssertionError alloc] " +
+        "initWithId:@\"Cannot invoke dead method\"] autorelease];");
+  }
+
+  public void testDeadConstantNotDefined() throws IOException {
+    String source = "class A {\n" +
+        "  static final int FOO = -1;\n" +
+        "  static final int BAR = 2;\n" +
+        "  int f() { return -FOO + A.FOO + BAR; }\n" +
+        "}\n";
+    DeadCodeMap map = DeadCodeMap.builder()
+        .addDeadField("A", "FOO")
+        .build();
+    Options.setDeadCodeMap(map);
+    String translation = translateSourceFile(source, "A", "A.h");
+    assertNotInTranslation(translation, "#define A_FOO");
+    assertTranslation(translation, "#define A_BAR 2");
+    translation = getTranslatedFile("A.m");
+    assertTranslation(translation, "return -(-1) + (-1) + A_BAR;");
+  }
+
+  public void testDeadSuperclassFieldDoesNotRenameField() throws IOException {
+    String source = "class B { int foo; }\n" +
+        "class A extends B {\n" +
+        "  int foo;\n" +
+        "  int f() { return foo; }\n" +
+        "}\n";
+    DeadCodeMap map = DeadCodeMap.builder()
+        .addDeadField("B", "foo")
+        .build();
+    Options.setDeadCodeMap(map);
+    String translation = translateSourceFile(source, "A", "A.m");
+    assertTranslation(translation, "return foo_;");
+  }
+
+  public void testDeadSuperclassMethodDoesNotImplementInterface() throws IOException {
+    String source = "interface I { int m(); }\n" +
+        "abstract class B { public int m() { return 1; } }\n" +
+        "abstract class A extends B implements I {}\n";
+    DeadCodeMap map = DeadCodeMap.builder()
+        .addDeadMethod("B", "m", "()I")
+        .build();
+    Options.setDeadCodeMap(map);
+    String translation = translateSourceFile(source, "A", "A.m");
+    assertTranslation(translation, "- (int)m {\n  // can't call an abstract method");
+  }
+
   public void testDeadInitializer() {
     String source = "class A {\n" +
         "  static final int baz = 9;\n" +
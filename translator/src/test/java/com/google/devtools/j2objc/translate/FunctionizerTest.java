@@ -0,0 +1,156 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.devtools.j2objc.translate;
+
+import com.google.devtools.j2objc.GenerationTest;
+import com.google.devtools.j2objc.Options;
+import com.google.devtools.j2objc.util.ClassHierarchy;
+
+import org.eclipse.jdt.core.dom.CompilationUnit;
+
+import java.io.IOException;
+
+/**
+ * Unit tests for {@link Functionizer}.
+ */
+public class FunctionizerTest extends GenerationTest {
+
+  @Override
+  protected void setUp() throws IOException {
+    super.setUp();
+    Options.setDevirtualize(true);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    Options.setDevirtualize(false);
+    Options.setClassHierarchy(null);
+    super.tearDown();
+  }
+
+  public void testPrivateMethod() throws IOException {
+    String translation = translateSourceFile(
+        "class Test { int count; " +
+        "  private int add(int n) { count += n; return count; }" +
+        "  int test(Test other) { return add(1) + other.add(2); }}",
+        "Test", "Test.m");
+    assertTranslation(translation, "static int Test_addWithInt_(Test *self, int n);");
+    assertTranslatedLines(translation,
+        "- (int)addWithInt:(int)n {",
+        "  return Test_addWithInt_(self, n);",
+        "}",
+        "",
+        "static int Test_addWithInt_(Test *self, int n) {",
+        "  self->count_ += n;",
+        "  return self->count_;",
+        "}");
+    assertTranslation(translation,
+        "return Test_addWithInt_(self, 1) + Test_addWithInt_(nil_chk(other), 2);");
+  }
+
+  public void testFinalMethodsAndClasses() throws IOException {
+    String translation = translateSourceFile(
+        "class Test { String name; " +
+        "  final String getName() { return name; }" +
+        "  String test(Final f) { f.run(); return getName(); }" +
+        "  static final class Final { void run() {} }}",
+        "Test", "Test.m");
+    assertTranslation(translation, "static NSString *Test_getName(Test *self) {");
+    assertTranslation(translation, "Test_Final_run(nil_chk(f));");
+    assertTranslation(translation, "return Test_getName(self);");
+  }
+
+  public void testStaticMethodCalledFromItsClass() throws IOException {
+    String translation = translateSourceFile(
+        "class Test { static int twice(int i) { return i * 2; }" +
+        "  int test() { return twice(3); }" +
+        "  static class Inner { int test() { return twice(4); }}}",
+        "Test", "Test.m");
+    assertTranslation(translation, "static int Test_twiceWithInt_(int i) {");
+    assertTranslation(translation, "return Test_twiceWithInt_(3);");
+    // Calling the function from another class could skip Test's +initialize.
+    assertTranslation(translation, "return [Test twiceWithInt:4];");
+  }
+
+  public void testOverridableMethodsNotFunctionized() throws IOException {
+    String translation = translateSourceFile(
+        "class Test { int size() { return 0; }" +
+        "  final String test() { size(); return toString(); }" +
+        "  public final String toString() { return super.toString(); }}",
+        "Test", "Test.m");
+    assertTranslation(translation, "[self size];");
+    assertNotInTranslation(translation, "Test_size");
+    // Mapped methods and methods calling super keep their Objective-C methods.
+    assertNotInTranslation(translation, "Test_description");
+    assertTranslation(translation, "return [self description];");
+  }
+
+  public void testMethodsNotFunctionizedByDefault() throws IOException {
+    Options.setDevirtualize(false);
+    String translation = translateSourceFile(
+        "class Test { private int one() { return 1; } int test() { return one(); }}",
+        "Test", "Test.m");
+    assertTranslation(translation, "return [self one];");
+    assertNotInTranslation(translation, "Test_one");
+  }
+
+  public void testClosedWorldEffectivelyFinalMethods() throws IOException {
+    String source = "class Test { int count; int getCount() { return count; }" +
+        "  int size() { return 0; }" +
+        "  int test(Test t) { return t.getCount() + t.size(); }" +
+        "  static class Sub extends Test { int size() { return 1; }}}";
+    loadClassHierarchy(compileType("Test", source));
+    String translation = translateSourceFile(source, "Test", "Test.m");
+    assertTranslation(translation, "int Test_getCount(Test *self) {");
+    assertNotInTranslation(translation, "static int Test_getCount");
+    assertTranslation(translation, "int Test_Sub_size(Test_Sub *self) {");
+    assertTranslation(translation, "return Test_getCount(nil_chk(t)) + [t size];");
+    // Test.size() is overridden by Sub.
+    assertNotInTranslation(translation, "Test_size");
+    translation = getTranslatedFile("Test.h");
+    assertTranslation(translation, "FOUNDATION_EXPORT int Test_getCount(Test *self);");
+    assertTranslation(translation, "FOUNDATION_EXPORT int Test_Sub_size(Test_Sub *self);");
+  }
+
+  public void testClosedWorldFunctionCalledFromOtherSource() throws IOException {
+    String testSource = "public class Test { int count; int getCount() { return count; }" +
+        "  public String toString() { return \"Test\"; }}";
+    String callerSource =
+        "class Caller { int test(Test t) { int n = t.getCount(); t.toString(); return n; }}";
+    addSourceFile(testSource, "Test.java");
+    loadClassHierarchy(compileType("Test", testSource), compileType("Caller", callerSource));
+    String translation = translateSourceFile(callerSource, "Caller", "Caller.m");
+    assertTranslation(translation, "int n = Test_getCount(nil_chk(t));");
+    // Mapped methods are still sent as messages.
+    assertTranslation(translation, "[t description];");
+  }
+
+  public void testOpenWorldMethodsNotExported() throws IOException {
+    String translation = translateSourceFile(
+        "class Test { final int one() { return 1; } int two() { return 2; }}",
+        "Test", "Test.m");
+    assertTranslation(translation, "static int Test_one(Test *self) {");
+    assertNotInTranslation(translation, "Test_two");
+    assertNotInTranslation(getTranslatedFile("Test.h"), "FOUNDATION_EXPORT");
+  }
+
+  private void loadClassHierarchy(CompilationUnit... units) {
+    ClassHierarchy.Builder builder = ClassHierarchy.builder();
+    for (CompilationUnit unit : units) {
+      new ClassHierarchyAnalyzer(builder).run(unit);
+    }
+    Options.setClassHierarchy(builder.build());
+  }
+}
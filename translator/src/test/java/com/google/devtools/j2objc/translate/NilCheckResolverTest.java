@@ -15,7 +15,9 @@
 package com.google.devtools.j2objc.translate;
 
 import com.google.devtools.j2objc.GenerationTest;
+import com.google.devtools.j2objc.util.TranslationStatistics;
 
+import java.io.File;
 import java.io.IOException;
 
 /**
@@ -137,4 +139,122 @@ public class NilCheckResolverTest extends GenerationTest {
         "Test", "Test.m");
     assertTranslation(translation, "nil_chk(strings)");
   }
+
+  public void testNoNilCheckAfterEarlyReturn() throws IOException {
+    String translation = translateSourceFile(
+        "class Test { void test(Object o1, Object o2) { "
+        + "if (o1 == null) { return; } o1.toString(); "
+        + "if (o2 == null) { throw new NullPointerException(); } else { } o2.toString(); } }",
+        "Test", "Test.m");
+    assertTranslatedLines(translation,
+        "if (o1 == nil) {",
+        "return;",
+        "}",
+        "[o1 description];");
+    assertTranslation(translation, "[o2 description];");
+  }
+
+  public void testNoNilCheckAfterBothBranches() throws IOException {
+    String translation = translateSourceFile(
+        "class Test { void test(Object o, boolean b) { "
+        + "if (b) { o = new Object(); } else { o.toString(); } o.toString(); } }",
+        "Test", "Test.m");
+    assertTranslatedLines(translation,
+        "[nil_chk(o) description];",
+        "}",
+        "[o description];");
+  }
+
+  public void testNilCheckAfterReassignmentInLoop() throws IOException {
+    String translation = translateSourceFile(
+        "abstract class Test { abstract Object foo(); void test(Object o, boolean b) { "
+        + "o.toString(); while (b) { o.toString(); o = foo(); } } }",
+        "Test", "Test.m");
+    assertTranslatedLines(translation,
+        "[nil_chk(o) description];",
+        "while (b) {",
+        "[nil_chk(o) description];");
+  }
+
+  public void testInstanceofTest() throws IOException {
+    String translation = translateSourceFile(
+        "class Test { void test(Object o) { "
+        + "if (o instanceof String) { o.toString(); } "
+        + "if (!(o instanceof String)) { } else { o.hashCode(); } } }",
+        "Test", "Test.m");
+    assertTranslation(translation, "[o description];");
+    assertTranslation(translation, "[o hash];");
+    assertNotInTranslation(translation, "nil_chk(o)");
+  }
+
+  public void testInstanceofInMethodArgument() throws IOException {
+    String translation = translateSourceFile(
+        "class Test { boolean f(boolean b) { return b; } "
+        + "int test(Object x) { if (f(x instanceof String)) return x.hashCode(); return 0; } }",
+        "Test", "Test.m");
+    assertTranslation(translation, "return ((int) [nil_chk(x) hash]);");
+  }
+
+  public void testInstanceofComparedToFalse() throws IOException {
+    String translation = translateSourceFile(
+        "class Test { void test(Object x) { if ((x instanceof String) == false) x.hashCode(); } }",
+        "Test", "Test.m");
+    assertTranslation(translation, "[nil_chk(x) hash];");
+  }
+
+  public void testNullTestInMethodArgument() throws IOException {
+    String translation = translateSourceFile(
+        "class Test { boolean f(boolean b) { return b; } "
+        + "void test(Object x) { if (f(x != null)) x.hashCode(); } }",
+        "Test", "Test.m");
+    assertTranslation(translation, "[nil_chk(x) hash];");
+  }
+
+  public void testNullTestInConditionalExpressionBranch() throws IOException {
+    String translation = translateSourceFile(
+        "class Test { void test(Object x, boolean b) { if (b ? true : x != null) x.hashCode(); } }",
+        "Test", "Test.m");
+    assertTranslation(translation, "[nil_chk(x) hash];");
+  }
+
+  public void testNullTestInAssignedCondition() throws IOException {
+    String translation = translateSourceFile(
+        "class Test { boolean test(Object x) { boolean b = x != null && x.hashCode() > 0; "
+        + "return b; } }",
+        "Test", "Test.m");
+    assertTranslation(translation, "x != nil && ((int) [x hash]) > 0;");
+    assertNotInTranslation(translation, "nil_chk(x)");
+  }
+
+  public void testRemovedNilCheckCounter() throws IOException {
+    try {
+      TranslationStatistics.startFile("Test.java");
+      translateSourceFile(
+          "class Test { int test(String s, Object o) { s.length(); s.length(); "
+          + "if (o == null) { return 0; } return o.hashCode(); } }",
+          "Test", "Test.m");
+      TranslationStatistics.endFile();
+      TranslationStatistics.writeReport(new File(tempDir, "report.csv"));
+      String csv = getTranslatedFile("report.csv");
+      // The second s.length() was already known safe before flow analysis.
+      assertTranslation(csv, "Test.java,counter,nil_chk,,1\n");
+      assertTranslation(csv, "Test.java,counter,nil_chk_removed,,1\n");
+    } finally {
+      TranslationStatistics.reset();
+    }
+  }
+
+  public void testNonnullAnnotations() throws IOException {
+    String translation = translateSourceFile(
+        "import javax.annotation.Nonnull; import javax.annotation.meta.When; "
+        + "abstract class Test { @Nonnull Object f; "
+        + "@Nonnull abstract Object foo(); @Nonnull(when=When.MAYBE) abstract Object bar(); "
+        + "void test(@Nonnull Object o) { o.toString(); f.toString(); foo().toString(); "
+        + "bar().toString(); } }",
+        "Test", "Test.m");
+    assertTranslation(translation, "[o description];");
+    assertTranslation(translation, "[f_ description];");
+    assertTranslation(translation, "[[self foo] description];");
+    assertTranslation(translation, "[nil_chk([self bar]) description];");
+  }
 }
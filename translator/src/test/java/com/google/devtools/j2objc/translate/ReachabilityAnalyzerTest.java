@@ -0,0 +1,139 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.devtools.j2objc.translate;
+
+import com.google.devtools.j2objc.GenerationTest;
+import com.google.devtools.j2objc.Options;
+import com.google.devtools.j2objc.util.DeadCodeMap;
+import com.google.devtools.j2objc.util.ReachabilityGraph;
+
+import java.io.IOException;
+
+/**
+ * Unit tests for {@link ReachabilityAnalyzer}.
+ */
+public class ReachabilityAnalyzerTest extends GenerationTest {
+
+  @Override
+  protected void tearDown() throws Exception {
+    Options.setDeadCodeMap(null);
+    super.tearDown();
+  }
+
+  private DeadCodeMap findDeadCode(String source, String... roots) {
+    ReachabilityGraph graph = new ReachabilityGraph();
+    new ReachabilityAnalyzer(graph).run(compileType("Test", source));
+    for (String root : roots) {
+      assertTrue(root, graph.addRootByName(root));
+    }
+    return graph.findDeadCode();
+  }
+
+  public void testUnreachableMembers() {
+    DeadCodeMap map = findDeadCode(
+        "class Test { static int unusedField; int usedField;" +
+        "  public static void main(String[] args) { new Test().run(); }" +
+        "  void run() { usedField = helper(); }" +
+        "  private int helper() { return 1; }" +
+        "  void unused() {}" +
+        "  static class Unused { void foo() {} }}",
+        "Test#main");
+    assertFalse(map.isDeadClass("Test"));
+    assertFalse(map.isDeadMethod("Test", "Test", "()V"));
+    assertFalse(map.isDeadMethod("Test", "run", "()V"));
+    assertFalse(map.isDeadMethod("Test", "helper", "()I"));
+    assertFalse(map.isDeadField("Test", "usedField"));
+    assertTrue(map.isDeadMethod("Test", "unused", "()V"));
+    assertTrue(map.isDeadField("Test", "unusedField"));
+    assertTrue(map.isDeadClass("Test$Unused"));
+  }
+
+  public void testOverridesOfReachedMethods() {
+    DeadCodeMap map = findDeadCode(
+        "class Test {" +
+        "  static abstract class Shape { abstract double area(); void unused() {} }" +
+        "  static class Square extends Shape { double area() { return 1; }" +
+        "    public String toString() { return \"Square\"; } void extra() {} }" +
+        "  static class Circle extends Shape { double area() { return 2; } }" +
+        "  static double test(Shape s) { new Square(); return s.area(); }}",
+        "Test#test");
+    assertFalse(map.isDeadMethod("Test$Shape", "area", "()D"));
+    assertFalse(map.isDeadMethod("Test$Square", "area", "()D"));
+    // Library code may call methods that override library methods.
+    assertFalse(map.isDeadMethod("Test$Square", "toString", "()Ljava/lang/String;"));
+    assertTrue(map.isDeadMethod("Test$Square", "extra", "()V"));
+    assertTrue(map.isDeadMethod("Test$Shape", "unused", "()V"));
+    assertTrue(map.isDeadClass("Test$Circle"));
+  }
+
+  public void testInheritedInterfaceImplementation() {
+    String types = "interface I { int m(); }" +
+        "  static class A { public int m() { return 1; } public int n() { return 2; } }" +
+        "  static class B extends A implements I {}";
+    DeadCodeMap map = findDeadCode(
+        "class Test { " + types +
+        "  public static void main(String[] args) { I i = new B(); i.m(); }}",
+        "Test#main");
+    assertFalse(map.isDeadMethod("Test$I", "m", "()I"));
+    assertFalse(map.isDeadMethod("Test$A", "m", "()I"));
+    assertTrue(map.isDeadMethod("Test$A", "n", "()I"));
+
+    // The inherited method isn't reached unless the interface method is.
+    map = findDeadCode(
+        "class Test { " + types +
+        "  public static void main(String[] args) { new B(); }}",
+        "Test#main");
+    assertTrue(map.isDeadMethod("Test$A", "m", "()I"));
+  }
+
+  public void testClassLiteralReachesConstructors() {
+    DeadCodeMap map = findDeadCode(
+        "class Test { static class Foo { Foo() {} Foo(int i) {} void unused() {} }" +
+        "  static class Bar { Bar() {} Bar(int i) {} }" +
+        "  public static void main(String[] args) throws Exception {" +
+        "    Foo.class.newInstance(); new Bar(); }}",
+        "Test#main");
+    assertFalse(map.isDeadClass("Test$Foo"));
+    assertFalse(map.isDeadMethod("Test$Foo", "Test$Foo", "()V"));
+    assertFalse(map.isDeadMethod("Test$Foo", "Test$Foo", "(I)V"));
+    assertTrue(map.isDeadMethod("Test$Foo", "unused", "()V"));
+    assertTrue(map.isDeadMethod("Test$Bar", "Test$Bar", "(I)V"));
+  }
+
+  public void testAnnotatedRoots() {
+    DeadCodeMap map = findDeadCode(
+        "import com.google.j2objc.annotations.ReachabilityRoot;" +
+        "class Test { @ReachabilityRoot void callback() { helper(); }" +
+        "  void helper() {} void unused() {}" +
+        "  @ReachabilityRoot static class Kept { void foo() {} }" +
+        "  static class Initialized { static Object o = new Object(); }" +
+        "  @ReachabilityRoot static Object kept = Initialized.o; }");
+    assertFalse(map.isDeadMethod("Test", "callback", "()V"));
+    assertFalse(map.isDeadMethod("Test", "helper", "()V"));
+    assertTrue(map.isDeadMethod("Test", "unused", "()V"));
+    assertFalse(map.isDeadMethod("Test$Kept", "foo", "()V"));
+    assertFalse(map.isDeadField("Test", "kept"));
+    assertFalse(map.isDeadField("Test$Initialized", "o"));
+  }
+
+  public void testDeadCodeRemovedFromTranslation() throws IOException {
+    String source = "class Test { public static void main(String[] args) { used(); }" +
+        "  static void used() {} static void unused() {} }";
+    Options.setDeadCodeMap(findDeadCode(source, "Test#main"));
+    String translation = translateSourceFile(source, "Test", "Test.m");
+    assertTranslation(translation, "+ (void)used {");
+    assertNotInTranslation(translation, "unused");
+  }
+}
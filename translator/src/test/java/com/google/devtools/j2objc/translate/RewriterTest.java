@@ -409,6 +409,109 @@ public class RewriterTest extends GenerationTest {
         "}");
   }
 
+  public void testEnhancedForLoopOverRandomAccessList() throws IOException {
+    String translation = translateSourceFile(
+        "import java.util.ArrayList;" +
+        "class Test { void test(ArrayList<String> strings) { for (String s : strings) {} } }",
+        "Test", "Test.m");
+    assertTranslatedLines(translation,
+        "- (void)testWithJavaUtilArrayList:(JavaUtilArrayList *)strings {",
+          "{",
+            "JavaUtilArrayList *l__ = strings;",
+            "int n__ = [((JavaUtilArrayList *) nil_chk(l__)) size];",
+            "int m__ = l__->modCount_;",
+            "for (int i__ = 0; i__ < n__; i__++) {",
+              "if (l__->modCount_ != m__) {",
+                "@throw [[[JavaUtilConcurrentModificationException alloc] init] autorelease];",
+              "}",
+              "NSString *s = [l__ getWithInt:i__];",
+            "}",
+          "}",
+        "}");
+  }
+
+  // Like AbstractList's iterator, the loop runs the list's initial size
+  // times, so an element added in the last iteration isn't visited and
+  // doesn't throw.
+  public void testRandomAccessListAddDuringLastIteration() throws IOException {
+    String translation = translateSourceFile(
+        "import java.util.ArrayList;" +
+        "class Test { void test(ArrayList<String> strings) { " +
+        "  for (String s : strings) { if (s.isEmpty()) { strings.add(s); } } } }",
+        "Test", "Test.m");
+    assertTranslatedLines(translation,
+        "int n__ = [((JavaUtilArrayList *) nil_chk(l__)) size];",
+        "int m__ = l__->modCount_;",
+        "for (int i__ = 0; i__ < n__; i__++) {");
+    assertNotInTranslation(translation, "i__ < [l__ size]");
+  }
+
+  // Removing the second-to-last element leaves one more iteration, whose
+  // modCount check throws before reading past the end, like next().
+  public void testRandomAccessListRemoveSecondToLast() throws IOException {
+    String translation = translateSourceFile(
+        "import java.util.ArrayList;" +
+        "class Test { void test(ArrayList<String> strings) { " +
+        "  for (String s : strings) { strings.remove(strings.size() - 2); } } }",
+        "Test", "Test.m");
+    assertTranslatedLines(translation,
+        "for (int i__ = 0; i__ < n__; i__++) {",
+          "if (l__->modCount_ != m__) {",
+            "@throw [[[JavaUtilConcurrentModificationException alloc] init] autorelease];",
+          "}",
+          "NSString *s = [l__ getWithInt:i__];");
+  }
+
+  public void testNestedRandomAccessListLoops() throws IOException {
+    String translation = translateSourceFile(
+        "import java.util.ArrayList;" +
+        "class Test { int test(ArrayList<String> a, ArrayList<String> b) { int n = 0; " +
+        "  for (String s : a) { for (String t : b) { n++; } } return n; } }",
+        "Test", "Test.m");
+    assertTranslatedLines(translation,
+        "JavaUtilArrayList *l__1 = a;",
+        "int n__1 = [((JavaUtilArrayList *) nil_chk(l__1)) size];",
+        "int m__1 = l__1->modCount_;",
+        "for (int i__1 = 0; i__1 < n__1; i__1++) {");
+    assertTranslatedLines(translation,
+        "JavaUtilArrayList *l__ = b;",
+        "int n__ = [((JavaUtilArrayList *) nil_chk(l__)) size];",
+        "int m__ = l__->modCount_;",
+        "for (int i__ = 0; i__ < n__; i__++) {");
+  }
+
+  public void testEnhancedForLoopOverOwnEnumValues() throws IOException {
+    String translation = translateSourceFile(
+        "enum Test { A, B; static int test() { int n = 0; for (Test t : values()) { n++; } " +
+        "  for (Test t : Test.values()) { n++; } return n; } }",
+        "Test", "Test.m");
+    assertTranslatedLines(translation,
+        "IOSObjectArray *a__ = TestEnum_values;",
+        "TestEnum * const *b__ = ((IOSObjectArray *) nil_chk(a__))->buffer_;");
+    assertOccurrences(translation, "IOSObjectArray *a__ = TestEnum_values;", 2);
+    assertNotInTranslation(translation, "[TestEnum values]");
+  }
+
+  public void testEnhancedForLoopOverOtherEnumValues() throws IOException {
+    // The enum may not be initialized yet, so its values() are copied.
+    String translation = translateSourceFile(
+        "class Test { enum E { A, B } int test() { int n = 0; " +
+        "  for (E e : E.values()) { n++; } return n; } }",
+        "Test", "Test.m");
+    assertTranslation(translation, "IOSObjectArray *a__ = [Test_EEnum values];");
+    assertNotInTranslation(translation, "= Test_EEnum_values;");
+  }
+
+  public void testEnhancedForLoopOverListInterface() throws IOException {
+    // A List isn't known to support random access, so it's enumerated.
+    String translation = translateSourceFile(
+        "import java.util.List;" +
+        "class Test { void test(List<String> strings) { for (String s : strings) {} } }",
+        "Test", "Test.m");
+    assertTranslation(translation, "for (NSString * __strong s in nil_chk(strings)) {");
+    assertNotInTranslation(translation, "modCount");
+  }
+
   public void testStaticArrayInitializerMove() throws IOException {
     String source = "class Test { static final double[] EVERY_SIXTEENTH_FACTORIAL = " +
         "{ 0x1.0p0, 0x1.30777758p44, 0x1.956ad0aae33a4p117, 0x1.ee69a78d72cb6p202, " +
@@ -562,8 +665,8 @@ public class RewriterTest extends GenerationTest {
         "return (object == this) || (object instanceof Test) && (i == ((Test) object).i); } }",
         "Test", "Test.m");
     assertTranslatedLines(translation, "(object == self) || " +
-        "(([object isKindOfClass:[Test class]]) && (i_ == ((Test *) nil_chk(((Test *) " +
-        "check_class_cast(object, [Test class]))))->i_));");
+        "(([object isKindOfClass:[Test class]]) && (i_ == ((Test *) " +
+        "check_class_cast(object, [Test class]))->i_));");
   }
 
   // Objective-C requires that bit-wise and tests be surrounded by parens when mixed with or tests.
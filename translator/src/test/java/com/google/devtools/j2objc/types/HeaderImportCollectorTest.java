@@ -33,4 +33,30 @@ public class HeaderImportCollectorTest extends GenerationTest {
     assertTranslation(translation, "@class IOSObjectArray");
     assertNotInTranslation(translation, "@protocol JavaLangRunnable");
   }
+
+  public void testFieldAndParameterTypesForwardDeclared() throws IOException {
+    String translation = translateSourceFile(
+        "class Test { java.util.ArrayList<String> list; void test(Runnable r) {} }",
+        "Test", "Test.h");
+    assertTranslation(translation, "@class JavaUtilArrayList");
+    assertTranslation(translation, "@protocol JavaLangRunnable");
+    assertNotInTranslation(translation, "#include");
+  }
+
+  public void testSuperTypeIncludedByOtherSuperTypeHeader() throws IOException {
+    addSourceFile("class B implements java.io.Serializable {}", "B.java");
+    String translation = translateSourceFile(
+        "class A extends B implements java.io.Serializable {}", "A", "A.h");
+    assertTranslation(translation, "#include \"B.h\"");
+    assertNotInTranslation(translation, "java/io/Serializable.h");
+    assertTranslation(translation, "@interface A : B < JavaIoSerializable >");
+  }
+
+  public void testLibrarySuperTypeHeadersNotAssumed() throws IOException {
+    String translation = translateSourceFile(
+        "abstract class Test extends java.io.OutputStream implements java.io.Closeable {}",
+        "Test", "Test.h");
+    assertTranslation(translation, "#include \"java/io/OutputStream.h\"");
+    assertTranslation(translation, "#include \"java/io/Closeable.h\"");
+  }
 }
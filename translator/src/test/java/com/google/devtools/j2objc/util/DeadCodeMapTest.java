@@ -16,8 +16,14 @@
 
 package com.google.devtools.j2objc.util;
 
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
 import junit.framework.TestCase;
 
+import java.io.File;
+import java.io.IOException;
+
 /**
  * Unit tests for DeadCodeReport.
  *
@@ -55,4 +61,34 @@ public class DeadCodeMapTest extends TestCase {
     assertFalse(report.isDeadMethod("foo.bah.Bar", "def", "()"));
     assertFalse(report.isDeadMethod("x.y.Z", "abc", "()"));
   }
+
+  public void testCache() throws IOException {
+    File report = File.createTempFile("usage", ".txt");
+    File cache = File.createTempFile("usage", ".cache");
+    try {
+      Files.write("foo.bar.Baz\n", report, Charsets.UTF_8);
+      assertNull(DeadCodeMap.readCache(cache, report));
+
+      DeadCodeMap.builder()
+          .addDeadClass("foo.bar.Baz")
+          .addDeadMethod("foo.bah.Bar", "abc", "(I)V")
+          .addDeadField("foo.bah.Bar", "def")
+          .build()
+          .writeCache(cache, report);
+      DeadCodeMap map = DeadCodeMap.readCache(cache, report);
+      assertNotNull(map);
+      assertTrue(map.isDeadClass("foo.bar.Baz"));
+      assertTrue(map.isDeadMethod("foo.bah.Bar", "abc", "(I)V"));
+      assertFalse(map.isDeadMethod("foo.bah.Bar", "abc", "()V"));
+      assertTrue(map.isDeadField("foo.bah.Bar", "def"));
+      assertFalse(map.isDeadField("foo.bah.Bar", "abc"));
+
+      // A changed report invalidates the cache.
+      Files.write("foo.bar.Baz\nfoo.bar.Bah\n", report, Charsets.UTF_8);
+      assertNull(DeadCodeMap.readCache(cache, report));
+    } finally {
+      report.delete();
+      cache.delete();
+    }
+  }
 }
@@ -76,6 +76,17 @@ public class ProGuardUsageParserTest extends TestCase {
     assertTrue(dead.isDeadMethod("com.foo.Baz", "Constructor", "(I)V"));
   }
 
+  public void testParse_Method_Modifiers() throws IOException {
+    String listing = "com.foo.Baz:\n" +
+        "    12:14:public static synchronized varargs " +
+            "java.lang.String[][] format(int,java.lang.Object[])\n" +
+        "    protected final Baz(long)\n";
+    DeadCodeMap dead = ProGuardUsageParser.parse(CharStreams.newReaderSupplier(listing));
+    assertTrue(dead.isDeadMethod(
+        "com.foo.Baz", "format", "(I[Ljava/lang/Object;)[[Ljava/lang/String;"));
+    assertTrue(dead.isDeadMethod("com.foo.Baz", "Baz", "(J)V"));
+  }
+
   public void testParse_Fields_NoLineNumbers() throws IOException {
     String listing = "com.foo.Baz:\n    int FOO\n";
     DeadCodeMap dead = ProGuardUsageParser.parse(CharStreams.newReaderSupplier(listing));
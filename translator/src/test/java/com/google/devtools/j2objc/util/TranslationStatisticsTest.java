@@ -0,0 +1,91 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.devtools.j2objc.util;
+
+import com.google.devtools.j2objc.GenerationTest;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Unit tests for {@link TranslationStatistics}.
+ */
+public class TranslationStatisticsTest extends GenerationTest {
+
+  private static final String SOURCE =
+      "public class Test { Integer test(String s, int[] a) { return s.length() + a[0]; } }";
+
+  @Override
+  protected void tearDown() throws Exception {
+    TranslationStatistics.reset();
+    super.tearDown();
+  }
+
+  public void testCsvReport() throws IOException {
+    TranslationStatistics.startFile("Test.java");
+    translateSourceFile(SOURCE, "Test", "Test.m");
+    TranslationStatistics.endFile();
+    File report = new File(tempDir, "report.csv");
+    TranslationStatistics.writeReport(report);
+    String csv = getTranslatedFile("report.csv");
+    assertTrue(csv.startsWith("file,kind,name,time_us,count\n"));
+    assertTranslation(csv, "Test.java,pass,Rewriter,");
+    assertTranslation(csv, "Test.java,pass,NilCheckResolver,");
+    assertTranslation(csv, "Test.java,counter,array_access,,1\n");
+    assertTranslation(csv, "Test.java,counter,box,,1\n");
+    assertTranslation(csv, "Test.java,counter,nil_chk,,2\n");
+    assertTranslation(csv, "total,counter,nil_chk,,2\n");
+  }
+
+  public void testJsonReport() throws IOException {
+    TranslationStatistics.startFile("Test.java");
+    translateSourceFile(SOURCE, "Test", "Test.m");
+    TranslationStatistics.endFile();
+    TranslationStatistics.startFile("Test2.java");
+    translateSourceFile(SOURCE, "Test", "Test.m");
+    TranslationStatistics.endFile();
+    File report = new File(tempDir, "report.json");
+    TranslationStatistics.writeReport(report);
+    String json = getTranslatedFile("report.json");
+    assertTranslation(json, "{\"file\": \"Test.java\", \"passes\": [{\"name\": \"GwtConverter\"");
+    assertTranslation(json, "{\"file\": \"Test2.java\"");
+    assertTranslation(json, "\"totals\":\n    {\"file\": \"total\"");
+    assertTranslation(json, "\"counters\": {\"array_access\": 2, \"box\": 2, "
+        + "\"header_forward_declarations\": 4, \"header_include_closure\": 0, "
+        + "\"header_includes\": 0, \"header_includes_removed\": 0, \"nil_chk\": 4}");
+  }
+
+  public void testHeaderIncludeFanOut() throws IOException {
+    addSourceFile("class B implements java.io.Serializable {}", "B.java");
+    TranslationStatistics.startFile("A.java");
+    translateSourceFile(
+        "class A extends B implements java.io.Serializable, Runnable { public void run() {} }",
+        "A", "A.h");
+    TranslationStatistics.endFile();
+    File report = new File(tempDir, "report.csv");
+    TranslationStatistics.writeReport(report);
+    String csv = getTranslatedFile("report.csv");
+    assertTranslation(csv, "A.java,counter,header_includes,,2\n");
+    assertTranslation(csv, "A.java,counter,header_includes_removed,,1\n");
+    assertTranslation(csv, "A.java,counter,header_include_closure,,3\n");
+  }
+
+  public void testNothingRecordedWithoutFile() throws IOException {
+    translateSourceFile(SOURCE, "Test", "Test.m");
+    File report = new File(tempDir, "report.csv");
+    TranslationStatistics.writeReport(report);
+    assertEquals("file,kind,name,time_us,count\n", getTranslatedFile("report.csv"));
+  }
+}